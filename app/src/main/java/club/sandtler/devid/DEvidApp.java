@@ -23,9 +23,20 @@ import android.content.Context;
 
 import androidx.annotation.Nullable;
 
+import club.sandtler.devid.lib.MemoryGovernor;
+import club.sandtler.devid.startup.AppInitializer;
+import club.sandtler.devid.startup.AuthInitializer;
+import club.sandtler.devid.startup.ConnectionInitializer;
+import club.sandtler.devid.startup.MemoryInitializer;
+import club.sandtler.devid.startup.RepositoryInitializer;
+import club.sandtler.devid.startup.StartupTrace;
+import club.sandtler.devid.startup.VoteQueueInitializer;
+
 /**
  * The main application class.
- * This is only used for making the application context globally accessible.
+ * This makes the application context globally accessible and runs all
+ * {@link club.sandtler.devid.startup.Initializer}s when the app starts.
+ * Memory pressure callbacks are forwarded to the {@link MemoryGovernor}.
  */
 public class DEvidApp extends Application {
 
@@ -34,10 +45,36 @@ public class DEvidApp extends Application {
     @SuppressLint("StaticFieldLeak")
     private static Context sContext;
 
+    @Override
+    protected void attachBaseContext(Context base) {
+        StartupTrace.markProcessStart();
+        super.attachBaseContext(base);
+    }
+
     @Override
     public void onCreate() {
         super.onCreate();
         DEvidApp.sContext = getApplicationContext();
+
+        StartupTrace.section("DEvidApp.onCreate", () -> new AppInitializer()
+                .add(new ConnectionInitializer())
+                .add(new MemoryInitializer())
+                .add(new AuthInitializer())
+                .add(new RepositoryInitializer())
+                .add(new VoteQueueInitializer())
+                .start(this));
+    }
+
+    @Override
+    public void onTrimMemory(int level) {
+        super.onTrimMemory(level);
+        MemoryGovernor.getDefault().onTrimMemory(level);
+    }
+
+    @Override
+    public void onLowMemory() {
+        super.onLowMemory();
+        MemoryGovernor.getDefault().onLowMemory();
     }
 
     @Override
@@ -36,18 +36,20 @@ public abstract class AbstractDataSource {
 
     /**
      * Create a new data source.
+     * Requests are authenticated with the current user's token if they are
+     * logged in, and sent anonymously otherwise.
      */
     public AbstractDataSource() {
-        mNetworkUtil = NetworkUtil.getDefault();
+        this(NetworkUtil.getAuthenticated());
     }
 
     /**
-     * Create a new authenticated data source.
+     * Create a new data source that uses a specific network utility.
      *
-     * @param authToken The authentication token from the backend server.
+     * @param networkUtil The network utility.
      */
-    public AbstractDataSource(String authToken) {
-        mNetworkUtil = new NetworkUtil(authToken);
+    protected AbstractDataSource(NetworkUtil networkUtil) {
+        mNetworkUtil = networkUtil;
     }
 
     /**
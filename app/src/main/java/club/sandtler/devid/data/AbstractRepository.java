@@ -20,14 +20,19 @@ package club.sandtler.devid.data;
 import android.util.Log;
 
 import club.sandtler.devid.lib.Constants;
+import club.sandtler.devid.lib.MemoryGovernor;
 
 /**
  * Abstract base class for all repositories.
  * <p>
  * Child classes should override at least one of the
- * cache cleaning methods defined here.
+ * cache cleaning methods defined here.  Repositories are trimmed through
+ * {@link #trimMemory(float)} when the system is low on memory; whoever
+ * creates a repository registers it with the {@link MemoryGovernor} once it
+ * has been fully constructed, because the governor may call it from another
+ * thread right away.
  */
-public abstract class AbstractRepository {
+public abstract class AbstractRepository implements MemoryGovernor.Trimmable {
 
     /**
      * Return the repository instance.
@@ -60,6 +65,21 @@ public abstract class AbstractRepository {
         Log.v(Constants.LOG_TAG, "clearMemCache()");
     }
 
+    /**
+     * Release part of the in-memory data cache.
+     * <p>
+     * Repositories with a memory cache should override this; the default
+     * implementation does nothing, because {@link #clearMemCache()} may do
+     * more than releasing memory.
+     *
+     * @param keepFraction The fraction of cached data to keep.
+     * @return The estimated amount of memory released in bytes.
+     */
+    @Override
+    public long trimMemory(float keepFraction) {
+        return 0L;
+    }
+
     /**
      * Clear the database cache.
      *
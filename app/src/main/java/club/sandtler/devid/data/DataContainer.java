@@ -0,0 +1,133 @@
+/*
+ * Copyright (c) 2019 Felix Kopp <sandtler@sandtler.club>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package club.sandtler.devid.data;
+
+import androidx.annotation.NonNull;
+
+import club.sandtler.devid.lib.Lazy;
+import club.sandtler.devid.lib.MemoryGovernor;
+import club.sandtler.devid.lib.NetworkUtil;
+
+/**
+ * Container that owns the repositories and their data sources.
+ * <p>
+ * Every repository is created lazily on first access, exactly once per
+ * container, no matter how many threads ask for it at the same time.  This
+ * makes sure there is only a single in-memory cache per repository.
+ * <p>
+ * The app uses the container returned by {@link #get()}, which talks to the
+ * backend over the shared {@link NetworkUtil} instances.  Tests may create
+ * their own container with stand-in instances.
+ */
+public final class DataContainer {
+
+    /** The video repository. */
+    private final Lazy<VideoRepository> mVideoRepository;
+    /** The user repository. */
+    private final Lazy<UserRepository> mUserRepository;
+    /** The login repository. */
+    private final Lazy<LoginRepository> mLoginRepository;
+
+    /**
+     * Create a new container.
+     *
+     * @param authenticated The network utility for requests that are to be
+     *                      authenticated if the user is logged in.
+     * @param anonymous The network utility for requests that must always be
+     *                  sent anonymously (logging in).
+     */
+    DataContainer(@NonNull NetworkUtil authenticated, @NonNull NetworkUtil anonymous) {
+        mVideoRepository = new Lazy<>(
+                () -> register(new VideoRepository(new VideoDataSource(authenticated)))
+        );
+        mUserRepository = new Lazy<>(
+                () -> register(new UserRepository(new UserDataSource(authenticated)))
+        );
+        mLoginRepository = new Lazy<>(
+                () -> register(new LoginRepository(new LoginDataSource(anonymous)))
+        );
+    }
+
+    /**
+     * Register a newly created repository with the {@link MemoryGovernor}.
+     * This must not happen in the repository's constructor, because the
+     * governor could trim it before its caches have been initialized.
+     *
+     * @param repository The repository.
+     * @param <T> The repository type.
+     * @return The repository.
+     */
+    private static <T extends AbstractRepository> T register(@NonNull T repository) {
+        MemoryGovernor.getDefault().register(repository);
+        return repository;
+    }
+
+    /**
+     * Return the container used by the app.
+     *
+     * @return The container.
+     */
+    @NonNull
+    public static DataContainer get() {
+        return DefaultHolder.INSTANCE;
+    }
+
+    /**
+     * Return the video repository.
+     *
+     * @return The video repository.
+     */
+    @NonNull
+    public VideoRepository getVideoRepository() {
+        return mVideoRepository.get();
+    }
+
+    /**
+     * Return the user repository.
+     *
+     * @return The user repository.
+     */
+    @NonNull
+    public UserRepository getUserRepository() {
+        return mUserRepository.get();
+    }
+
+    /**
+     * Return the login repository.
+     *
+     * @return The login repository.
+     */
+    @NonNull
+    public LoginRepository getLoginRepository() {
+        return mLoginRepository.get();
+    }
+
+    /**
+     * Holder for the default container.  The JVM initializes this class,
+     * and thereby creates the container, exactly once on first access.
+     */
+    private static final class DefaultHolder {
+
+        private static final DataContainer INSTANCE = new DataContainer(
+                NetworkUtil.getAuthenticated(),
+                NetworkUtil.getDefault()
+        );
+
+    }
+
+}
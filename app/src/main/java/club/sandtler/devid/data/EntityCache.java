@@ -0,0 +1,230 @@
+/*
+ * Copyright (c) 2019 Felix Kopp <sandtler@sandtler.club>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package club.sandtler.devid.data;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.collection.LruCache;
+
+import java.util.Set;
+
+/**
+ * In-memory LRU cache of model objects, used by the repositories.
+ * <p>
+ * Entries are weighed by an estimate of the memory they retain rather than
+ * counted, so a video with a long description takes up more of the cache
+ * than one without any, and the memory used by the cache is predictable.
+ * All methods are thread-safe.
+ *
+ * @param <V> The model type.
+ */
+final class EntityCache<V> {
+
+    /**
+     * Estimates the memory retained by a model object.
+     *
+     * @param <V> The model type.
+     */
+    interface SizeEstimator<V> {
+        /**
+         * Return the estimated memory retained by an object.
+         *
+         * @param value The object.
+         * @return The estimated size in bytes.
+         */
+        long estimateSize(@NonNull V value);
+    }
+
+    /**
+     * Gets notified when an entry leaves the cache.
+     *
+     * @param <V> The model type.
+     */
+    interface RemovalListener<V> {
+        /**
+         * Called when an entry was evicted, removed or replaced.
+         * This is called without holding any locks of the cache.
+         *
+         * @param key The key.
+         * @param oldValue The entry that left the cache.
+         * @param newValue The entry that replaced it, or {@code null} if
+         *                 it was evicted or removed.
+         */
+        void onRemoved(@NonNull String key, @NonNull V oldValue, @Nullable V newValue);
+    }
+
+    /** The estimator for the size of entries. */
+    private final SizeEstimator<V> mEstimator;
+    /** The listener for removed entries, if any. */
+    @Nullable
+    private final RemovalListener<V> mRemovalListener;
+    /** The actual cache, weighed in bytes. */
+    private final LruCache<String, V> mCache;
+
+    /**
+     * Create a new cache.
+     * The estimator must always return the same size for the same entry.
+     *
+     * @param maxBytes The maximum estimated size of all entries in bytes.
+     * @param estimator The estimator for the size of entries.
+     */
+    EntityCache(int maxBytes, @NonNull SizeEstimator<V> estimator) {
+        this(maxBytes, estimator, null);
+    }
+
+    /**
+     * Create a new cache that notifies a listener about removed entries.
+     * The estimator must always return the same size for the same entry.
+     *
+     * @param maxBytes The maximum estimated size of all entries in bytes.
+     * @param estimator The estimator for the size of entries.
+     * @param removalListener The listener for removed entries.
+     */
+    EntityCache(int maxBytes, @NonNull SizeEstimator<V> estimator,
+                @Nullable RemovalListener<V> removalListener) {
+        mEstimator = estimator;
+        mRemovalListener = removalListener;
+        mCache = new LruCache<String, V>(maxBytes) {
+            @Override
+            protected int sizeOf(@NonNull String key, @NonNull V value) {
+                return sizeOfEntry(value);
+            }
+
+            @Override
+            protected void entryRemoved(boolean evicted, @NonNull String key,
+                                        @NonNull V oldValue, @Nullable V newValue) {
+                if (mRemovalListener != null) {
+                    mRemovalListener.onRemoved(key, oldValue, newValue);
+                }
+            }
+        };
+    }
+
+    /**
+     * Return a cached entry, and mark it as most recently used.
+     *
+     * @param key The key.
+     * @return The entry, or {@code null} if it is not cached.
+     */
+    @Nullable
+    V get(@NonNull String key) {
+        return mCache.get(key);
+    }
+
+    /**
+     * Put an entry into the cache, evicting the least recently used ones
+     * until it fits.  An existing entry with the same key is replaced.
+     * An entry larger than the whole cache is not cached at all.
+     *
+     * @param key The key.
+     * @param value The entry.
+     * @return Whether the entry was cached.
+     */
+    boolean put(@NonNull String key, @NonNull V value) {
+        if (sizeOfEntry(value) > mCache.maxSize()) {
+            // The LruCache would evict everything else before evicting this
+            mCache.remove(key);
+            return false;
+        }
+
+        mCache.put(key, value);
+        return true;
+    }
+
+    /**
+     * Remove an entry from the cache.
+     *
+     * @param key The key.
+     */
+    void remove(@NonNull String key) {
+        mCache.remove(key);
+    }
+
+    /** Remove all entries. */
+    void clear() {
+        mCache.evictAll();
+    }
+
+    /**
+     * Return a snapshot of the keys of all entries.
+     * Unlike {@link #get(String)}, this does not affect the eviction order.
+     *
+     * @return The keys.
+     */
+    @NonNull
+    Set<String> keys() {
+        return mCache.snapshot().keySet();
+    }
+
+    /**
+     * Return the estimated memory retained by all entries.
+     *
+     * @return The estimated size in bytes.
+     */
+    long getEstimatedBytes() {
+        return mCache.size();
+    }
+
+    /**
+     * Return the maximum estimated size of all entries.
+     *
+     * @return The maximum size in bytes.
+     */
+    int getMaxBytes() {
+        return mCache.maxSize();
+    }
+
+    /**
+     * Change the maximum estimated size of all entries, evicting the least
+     * recently used ones if the cache is too large now.
+     *
+     * @param maxBytes The maximum size in bytes.
+     */
+    void resize(int maxBytes) {
+        mCache.resize(maxBytes);
+    }
+
+    /**
+     * Return the estimated size of an entry, as an int.
+     *
+     * @param value The entry.
+     * @return The estimated size in bytes.
+     */
+    private int sizeOfEntry(@NonNull V value) {
+        return (int) Math.min(Integer.MAX_VALUE, mEstimator.estimateSize(value));
+    }
+
+    /**
+     * Evict the least recently used entries until at most the given fraction
+     * of the current size is left.
+     *
+     * @param keepFraction The fraction of the size to keep.
+     * @return The estimated amount of memory released in bytes.
+     */
+    long trim(float keepFraction) {
+        long before = mCache.size();
+        if (keepFraction <= 0f) {
+            mCache.evictAll();
+        } else if (keepFraction < 1f) {
+            mCache.trimToSize((int) (before * keepFraction));
+        }
+
+        return before - mCache.size();
+    }
+
+}
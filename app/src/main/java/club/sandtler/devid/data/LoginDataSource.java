@@ -24,6 +24,7 @@ import javax.security.auth.login.LoginException;
 
 import club.sandtler.devid.data.model.LoggedInUser;
 import club.sandtler.devid.lib.Constants;
+import club.sandtler.devid.lib.NetworkUtil;
 
 /**
  * Class that handles authentication w/ login credentials
@@ -31,6 +32,23 @@ import club.sandtler.devid.lib.Constants;
  */
 public class LoginDataSource extends AbstractDataSource {
 
+    /**
+     * Create a new login data source.
+     * Login requests are always sent anonymously.
+     */
+    public LoginDataSource() {
+        super(NetworkUtil.getDefault());
+    }
+
+    /**
+     * Create a new login data source that uses a specific network utility.
+     *
+     * @param networkUtil The network utility.
+     */
+    LoginDataSource(NetworkUtil networkUtil) {
+        super(networkUtil);
+    }
+
     /**
      * Attempt to login with the given credentials.
      * Must not be called from the UI thread.
@@ -26,32 +26,28 @@ import club.sandtler.devid.data.model.LoggedInUser;
  */
 public class LoginRepository extends AbstractRepository {
 
-    /** The instance (singleton access). */
-    private static volatile LoginRepository sInstance;
-
     /** The data source. */
     private LoginDataSource mDataSource;
 
     /** The logged in user cache. */
     private LoggedInUser mUser = null;
 
-    // private constructor : singleton access
-    private LoginRepository(LoginDataSource dataSource) {
+    // package-private constructor : singleton access over DataContainer
+    LoginRepository(LoginDataSource dataSource) {
         mDataSource = dataSource;
     }
 
     /**
      * Return the instance of this repository.
      *
-     * @param dataSource The data source to use.
+     * @param dataSource Ignored, the instance is created with the data
+     *                   source of {@link DataContainer}.
      * @return The instance.
+     * @deprecated Use {@link DataContainer#getLoginRepository()} instead.
      */
+    @Deprecated
     public static LoginRepository getInstance(LoginDataSource dataSource) {
-        if (sInstance == null) {
-            sInstance = new LoginRepository(dataSource);
-        }
-
-        return sInstance;
+        return DataContainer.get().getLoginRepository();
     }
 
     /** {@inheritDoc} */
@@ -106,4 +102,22 @@ public class LoginRepository extends AbstractRepository {
         return result;
     }
 
+    /**
+     * Send a new login request to the backend even if the user is logged in
+     * already, in order to obtain a new authentication token.
+     *
+     * @param userName The user name.
+     * @param password The password.
+     * @return Either the result with the {@link LoggedInUser} instance
+     *         holding the new token, or an error.
+     */
+    public Result<LoggedInUser> refresh(String userName, String password) {
+        Result<LoggedInUser> result = mDataSource.login(userName, password);
+        if (result instanceof Result.Success) {
+            mUser = ((Result.Success<LoggedInUser>) result).getData();
+        }
+
+        return result;
+    }
+
 }
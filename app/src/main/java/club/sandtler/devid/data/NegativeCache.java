@@ -0,0 +1,147 @@
+/*
+ * Copyright (c) 2019 Felix Kopp <sandtler@sandtler.club>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package club.sandtler.devid.data;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import org.json.JSONException;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import club.sandtler.devid.lib.HttpStatusException;
+import club.sandtler.devid.lib.RetryPolicy;
+
+/**
+ * Remembers for a short time which entities do not exist, so that
+ * revisiting deleted content or following stale links to it doesn't send
+ * the same failing request to the backend again and again.
+ * <p>
+ * Only errors that will reliably occur again are cached, i.e. the server
+ * saying the entity doesn't exist or responding with data we can't parse.
+ * Transient errors like timeouts or server errors are never cached.
+ * All methods are thread-safe.
+ */
+final class NegativeCache {
+
+    /** A cached error. */
+    private static final class Entry {
+        /** The error the request failed with. */
+        private final Exception mError;
+        /** The time the entry expires at. */
+        private final long mExpiresAt;
+
+        private Entry(Exception error, long expiresAt) {
+            mError = error;
+            mExpiresAt = expiresAt;
+        }
+    }
+
+    /** How long errors are cached in milliseconds. */
+    private final long mTtlMs;
+    /** Source of the current time. */
+    private final RetryPolicy.Clock mClock;
+    /** The cached errors, oldest first. */
+    private final LinkedHashMap<String, Entry> mEntries;
+
+    /**
+     * Create a new cache.
+     *
+     * @param ttlMs How long errors are cached in milliseconds.
+     * @param maxEntries The maximum amount of cached errors.
+     * @param clock Source of the current time.
+     */
+    NegativeCache(long ttlMs, final int maxEntries, @NonNull RetryPolicy.Clock clock) {
+        mTtlMs = ttlMs;
+        mClock = clock;
+        mEntries = new LinkedHashMap<String, Entry>() {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    /**
+     * Return whether an error means that the entity does not exist (anymore),
+     * or that the server's response for it will never be usable.
+     *
+     * @param error The error.
+     * @return Whether the error is permanent.
+     */
+    static boolean isPermanent(@NonNull Exception error) {
+        if (error instanceof HttpStatusException) {
+            int statusCode = ((HttpStatusException) error).getStatusCode();
+            return statusCode == 404 || statusCode == 410;
+        }
+
+        return error instanceof JSONException;
+    }
+
+    /**
+     * Return the cached error for an entity, if it has not expired yet.
+     *
+     * @param key The entity key.
+     * @return The error, or {@code null} if there is none.
+     */
+    @Nullable
+    synchronized Exception get(@NonNull String key) {
+        Entry entry = mEntries.get(key);
+        if (entry == null) {
+            return null;
+        }
+
+        if (mClock.now() >= entry.mExpiresAt) {
+            mEntries.remove(key);
+            return null;
+        }
+
+        return entry.mError;
+    }
+
+    /**
+     * Cache the error a request for an entity has failed with.
+     * This has no effect if the error is not permanent.
+     *
+     * @param key The entity key.
+     * @param error The error.
+     */
+    synchronized void put(@NonNull String key, @NonNull Exception error) {
+        if (isPermanent(error)) {
+            // Remove first, so the entry moves to the end of the eviction order
+            mEntries.remove(key);
+            mEntries.put(key, new Entry(error, mClock.now() + mTtlMs));
+        }
+    }
+
+    /**
+     * Forget the error for an entity, e.g. because it has been found after all.
+     *
+     * @param key The entity key.
+     */
+    synchronized void remove(@NonNull String key) {
+        mEntries.remove(key);
+    }
+
+    /** Forget all errors. */
+    synchronized void clear() {
+        mEntries.clear();
+    }
+
+}
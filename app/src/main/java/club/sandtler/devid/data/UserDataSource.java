@@ -21,11 +21,13 @@ import android.graphics.Bitmap;
 
 import androidx.annotation.NonNull;
 
+import org.json.JSONException;
 import org.json.JSONObject;
 
 import java.io.IOException;
 
 import club.sandtler.devid.data.model.User;
+import club.sandtler.devid.lib.NetworkUtil;
 import static club.sandtler.devid.lib.Constants.URLPaths;
 
 /**
@@ -35,6 +37,23 @@ import static club.sandtler.devid.lib.Constants.URLPaths;
  */
 public class UserDataSource extends AbstractDataSource {
 
+    /**
+     * Create a new data source that uses the shared authenticated
+     * network utility.
+     */
+    public UserDataSource() {
+        super();
+    }
+
+    /**
+     * Create a new data source that uses a specific network utility.
+     *
+     * @param networkUtil The network utility.
+     */
+    UserDataSource(NetworkUtil networkUtil) {
+        super(networkUtil);
+    }
+
     /**
      * Fetch user details from the backend server.
      *
@@ -100,6 +119,9 @@ public class UserDataSource extends AbstractDataSource {
     private Result<User> retrieveByPath(String path) {
         try {
             final JSONObject userData = getNetworkUtil().get(path);
+            if (userData == null) {
+                throw new JSONException("Empty response");
+            }
             return new Result.Success<>(User.fromJSON(userData));
         } catch (Exception e) {
             return new Result.Error(e);
@@ -20,77 +20,148 @@ package club.sandtler.devid.data;
 import android.graphics.Bitmap;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 
 import java.util.HashMap;
 
 import club.sandtler.devid.data.model.User;
 import club.sandtler.devid.lib.Constants;
+import club.sandtler.devid.lib.MemoryGovernor;
 
 /**
  * Class that requests user information from the backend server over the
  * {@link UserDataSource} and maintains an in-memory cache of them
  * to save some bandwidth (and prevent a DDoS against my server).
+ * Users that don't exist are remembered for a short time as well.
  */
 public class UserRepository extends AbstractRepository {
 
-    /** The instance (singleton access). */
-    private static volatile UserRepository sInstance;
-
     /** The data source for retrieving information from the backend server. */
     private UserDataSource mDataSource;
     /** The user cache, indexed by user id. */
-    private HashMap<String, User> mCacheById;
-    /** The user cache, indexed by user name. */
-    private HashMap<String, User> mCacheByUserName;
+    private final EntityCache<User> mCache;
+    /**
+     * User ids indexed by user name, for looking up users in {@link #mCache}.
+     * Entries are removed together with the users they point to.
+     */
+    private final HashMap<String, String> mIdsByUserName;
+    /** Errors for users that don't exist, indexed by user id. */
+    private final NegativeCache mMissingById;
+    /** Errors for users that don't exist, indexed by user name. */
+    private final NegativeCache mMissingByUserName;
 
     /**
-     * Private constructor to ensure there is only one instance of this class.
-     * (because we want only one instance of our HashMaps)
+     * Create a new repository.  Only {@link DataContainer} may do this, to
+     * ensure there is only one instance of this class.
+     * (because we want only one instance of our caches)
      */
-    private UserRepository(UserDataSource dataSource) {
+    UserRepository(UserDataSource dataSource) {
         this.mDataSource = dataSource;
-        this.mCacheById = new HashMap<>();
-        this.mCacheByUserName = new HashMap<>();
+        this.mCache = new EntityCache<>(
+                MemoryGovernor.getDefault().getCacheBudget(
+                        Constants.CacheSize.USER_MEM_SHARE,
+                        Constants.CacheSize.MIN_MODEL_MEM_BYTES,
+                        Constants.CacheSize.MAX_MODEL_MEM_BYTES
+                ),
+                User::estimateRetainedBytes,
+                this::onUserRemoved
+        );
+        this.mIdsByUserName = new HashMap<>();
+        this.mMissingById = new NegativeCache(
+                Constants.CacheSize.NEGATIVE_TTL_MS,
+                Constants.CacheSize.MAX_NEGATIVE_ENTRIES,
+                System::currentTimeMillis
+        );
+        this.mMissingByUserName = new NegativeCache(
+                Constants.CacheSize.NEGATIVE_TTL_MS,
+                Constants.CacheSize.MAX_NEGATIVE_ENTRIES,
+                System::currentTimeMillis
+        );
     }
 
     /**
-     * Return the instance of UserRepository.
+     * Return the instance of this repository.
      *
-     * @param dataSource A new instance of {@link UserDataSource}.
+     * @param dataSource Ignored, the instance is created with the data
+     *                   source of {@link DataContainer}.
      * @return The instance.
+     * @deprecated Use {@link DataContainer#getUserRepository()} instead.
      */
+    @Deprecated
     @NonNull
     public static UserRepository getInstance(UserDataSource dataSource) {
-        if (sInstance == null) {
-            sInstance = new UserRepository(dataSource);
+        return DataContainer.get().getUserRepository();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void clearMemCache() {
+        mCache.clear();
+        synchronized (mIdsByUserName) {
+            mIdsByUserName.clear();
         }
+        mMissingById.clear();
+        mMissingByUserName.clear();
+    }
 
-        return sInstance;
+    /**
+     * Change the maximum size of the in-memory cache.
+     * By default, it takes up {@link Constants.CacheSize#USER_MEM_SHARE}
+     * of the device's memory class.
+     *
+     * @param maxBytes The maximum estimated size of all cached users in bytes.
+     */
+    public void setMemCacheSize(int maxBytes) {
+        mCache.resize(maxBytes);
+    }
+
+    /**
+     * Return the maximum size of the in-memory cache.
+     *
+     * @return The maximum estimated size of all cached users in bytes.
+     */
+    public int getMemCacheSize() {
+        return mCache.getMaxBytes();
     }
 
     /** {@inheritDoc} */
     @Override
-    public void clearMemCache() {
-        mCacheById.clear();
-        mCacheByUserName.clear();
+    public long trimMemory(float keepFraction) {
+        long freed = mCache.trim(keepFraction);
+        if (keepFraction <= 0f) {
+            mMissingById.clear();
+            mMissingByUserName.clear();
+        }
+        return freed;
     }
 
     /**
      * Retrieve user information by the user id.
+     * If the user was not found or their data was invalid recently, that
+     * error is returned again without asking the backend.
      *
      * @param id The user id.
      * @return The result.
      */
     @NonNull
+    @SuppressWarnings("unchecked")
     public Result<User> getById(String id) {
-        if (mCacheById.containsKey(id)) {
-            return new Result.Success<>(mCacheById.get(id));
+        User cached = mCache.get(id);
+        if (cached != null) {
+            return new Result.Success<>(cached);
+        }
+
+        Exception missing = mMissingById.get(id);
+        if (missing != null) {
+            return new Result.Error(missing);
         }
 
         Result<User> result = mDataSource.getById(id);
         if (result instanceof Result.Success) {
             User user = ((Result.Success<User>) result).getData();
             putToCache(user);
+        } else if (result instanceof Result.Error) {
+            mMissingById.put(id, ((Result.Error) result).getError());
         }
 
         return result;
@@ -98,20 +169,31 @@ public class UserRepository extends AbstractRepository {
 
     /**
      * Retrieve user information by the user name.
+     * If the user was not found or their data was invalid recently, that
+     * error is returned again without asking the backend.
      *
      * @param userName The user name.
      * @return The result.
      */
     @NonNull
+    @SuppressWarnings("unchecked")
     public Result<User> getByUserName(String userName) {
-        if (mCacheByUserName.containsKey(userName)) {
-            return new Result.Success<>(mCacheByUserName.get(userName));
+        User cached = getCachedByUserName(userName);
+        if (cached != null) {
+            return new Result.Success<>(cached);
+        }
+
+        Exception missing = mMissingByUserName.get(userName);
+        if (missing != null) {
+            return new Result.Error(missing);
         }
 
         Result<User> result = mDataSource.getByUserName(userName);
         if (result instanceof Result.Success) {
             User user = ((Result.Success<User>) result).getData();
             putToCache(user);
+        } else if (result instanceof Result.Error) {
+            mMissingByUserName.put(userName, ((Result.Error) result).getError());
         }
 
         return result;
@@ -130,19 +212,71 @@ public class UserRepository extends AbstractRepository {
     }
 
     /**
-     * Store a user in the in-memory cache.
+     * Look up a user in the in-memory cache by the user name.
+     *
+     * @param userName The user name.
+     * @return The user, or {@code null} if it is not cached.
+     */
+    private User getCachedByUserName(String userName) {
+        String id;
+        synchronized (mIdsByUserName) {
+            id = mIdsByUserName.get(userName);
+        }
+        if (id == null) {
+            return null;
+        }
+
+        User user = mCache.get(id);
+        // The user may have been evicted, or renamed since the index was updated
+        return user != null && userName.equals(user.getUserName()) ? user : null;
+    }
+
+    /**
+     * Store a user in the in-memory cache, evicting the least recently used
+     * ones if the cache is full.
      *
      * @param user The user.
      */
     private void putToCache(User user) {
-        if (mCacheById.size() > Constants.CacheSize.MAX_USER_MEM) {
-            User removeUser = mCacheById.entrySet().iterator().next().getValue();
-            mCacheById.remove(removeUser.getId());
-            mCacheByUserName.remove(removeUser.getUserName());
+        mMissingById.remove(user.getId());
+        mMissingByUserName.remove(user.getUserName());
+        // Index first, so a concurrent eviction can't leave a stale entry behind
+        synchronized (mIdsByUserName) {
+            mIdsByUserName.put(user.getUserName(), user.getId());
+        }
+        if (!mCache.put(user.getId(), user)) {
+            removeFromUserNameIndex(user.getUserName(), user.getId());
+        }
+    }
+
+    /**
+     * Keep the user name index in sync with the cache.
+     *
+     * @param id The id of the user that has left the cache.
+     * @param oldUser The user that has left the cache.
+     * @param newUser The user that replaced it, or {@code null}.
+     */
+    private void onUserRemoved(@NonNull String id, @NonNull User oldUser,
+                               @Nullable User newUser) {
+        if (newUser != null && newUser.getUserName().equals(oldUser.getUserName())) {
+            return;
         }
+        removeFromUserNameIndex(oldUser.getUserName(), id);
+    }
 
-        mCacheById.put(user.getId(), user);
-        mCacheByUserName.put(user.getUserName(), user);
+    /**
+     * Remove an entry from the user name index, unless the user name has
+     * been given to another user in the meantime.
+     *
+     * @param userName The user name.
+     * @param id The user id the entry must point to.
+     */
+    private void removeFromUserNameIndex(String userName, String id) {
+        synchronized (mIdsByUserName) {
+            if (id.equals(mIdsByUserName.get(userName))) {
+                mIdsByUserName.remove(userName);
+            }
+        }
     }
 
 }
@@ -19,16 +19,45 @@ package club.sandtler.devid.data;
 
 import androidx.annotation.NonNull;
 
+import org.json.JSONArray;
+import org.json.JSONException;
 import org.json.JSONObject;
 
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
 import static club.sandtler.devid.lib.Constants.URLPaths;
 import club.sandtler.devid.data.model.Video;
+import club.sandtler.devid.lib.Constants;
+import club.sandtler.devid.lib.NetworkUtil;
 
 /**
  * Class for retrieving video meta data from the backend server.
  */
 public class VideoDataSource extends AbstractDataSource {
 
+    /** JSON object key for the array of videos in a feed page. */
+    private static final String KEY_FEED_VIDEOS = "videos";
+
+    /**
+     * Create a new data source that uses the shared authenticated
+     * network utility.
+     */
+    public VideoDataSource() {
+        super();
+    }
+
+    /**
+     * Create a new data source that uses a specific network utility.
+     *
+     * @param networkUtil The network utility.
+     */
+    VideoDataSource(NetworkUtil networkUtil) {
+        super(networkUtil);
+    }
+
     /**
      * Fetch video meta data from the backend server.
      *
@@ -45,6 +74,53 @@ public class VideoDataSource extends AbstractDataSource {
         return retrieveByPath(path);
     }
 
+    /**
+     * Fetch a page of the home feed from the backend server.
+     *
+     * @param page The page index, starting at 0.
+     * @param pageSize The amount of videos per page.
+     * @return The videos on that page, which are less than {@code pageSize}
+     *         if it is the last one, or an error object.
+     */
+    @SuppressWarnings("unchecked")
+    public Result<List<Video>> getFeedPage(int page, int pageSize) {
+        try {
+            final JSONObject response = getNetworkUtil().get(
+                    String.format(Locale.ROOT, URLPaths.VIDEO_FEED, page, pageSize)
+            );
+            final JSONArray videos = response.getJSONArray(KEY_FEED_VIDEOS);
+            final List<Video> result = new ArrayList<>(videos.length());
+            for (int i = 0; i < videos.length(); i++) {
+                result.add(Video.fromJSON(videos.getJSONObject(i)));
+            }
+            return new Result.Success<>(result);
+        } catch (Exception e) {
+            return new Result.Error(e);
+        }
+    }
+
+    /**
+     * Download a thumbnail variant of a video.
+     *
+     * @param videoId The video id.
+     * @param width The variant width, one of {@link Constants.Thumbnails#WIDTHS}.
+     * @return The encoded image data, or an error object.
+     */
+    @SuppressWarnings("unchecked")
+    public Result<byte[]> getThumbnail(@NonNull String videoId, int width) {
+        if (!isIdValid(videoId)) {
+            return new Result.Error(new IllegalArgumentException("Invalid video id format"));
+        }
+
+        try {
+            return new Result.Success<>(getNetworkUtil().getBytes(
+                    String.format(Locale.ROOT, URLPaths.CDN_VIDEO_THUMBNAIL, videoId, width)
+            ));
+        } catch (IOException e) {
+            return new Result.Error(e);
+        }
+    }
+
     /**
      * Post the user's own vote for a video.
      *
@@ -70,6 +146,28 @@ public class VideoDataSource extends AbstractDataSource {
         }
     }
 
+    /**
+     * Download a sprite sheet of seek preview thumbnails.
+     *
+     * @param videoId The video id.
+     * @param index The index of the sprite sheet.
+     * @return The encoded image data, or an error object.
+     */
+    @SuppressWarnings("unchecked")
+    public Result<byte[]> getSeekSprite(@NonNull String videoId, int index) {
+        if (!isIdValid(videoId)) {
+            return new Result.Error(new IllegalArgumentException("Invalid video id format"));
+        }
+
+        try {
+            return new Result.Success<>(getNetworkUtil().getBytes(
+                    String.format(Locale.ROOT, URLPaths.CDN_VIDEO_SEEK_SPRITE, videoId, index)
+            ));
+        } catch (IOException e) {
+            return new Result.Error(e);
+        }
+    }
+
     /**
      * Retrieve and parse video meta data when we already know the path.
      *
@@ -80,6 +178,9 @@ public class VideoDataSource extends AbstractDataSource {
     private Result<Video> retrieveByPath(String path) {
         try {
             final JSONObject videoData = getNetworkUtil().get(path);
+            if (videoData == null) {
+                throw new JSONException("Empty response");
+            }
             return new Result.Success<>(Video.fromJSON(videoData));
         } catch (Exception e) {
             return new Result.Error(e);
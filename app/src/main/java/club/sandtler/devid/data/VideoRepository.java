@@ -1,79 +1,229 @@
 package club.sandtler.devid.data;
 
-import java.util.HashMap;
+import java.util.List;
 
 import club.sandtler.devid.data.model.Video;
 import club.sandtler.devid.lib.Constants;
+import club.sandtler.devid.lib.MemoryGovernor;
 
 /**
  * Class that requests video meta data from the backend server over the
  * {@link VideoDataSource} and maintains an in-memory cache of them.
+ * Videos that don't exist are remembered for a short time, so links to
+ * deleted videos don't hit the backend every time they are opened.
  */
 public class VideoRepository extends AbstractRepository {
 
-    /** The instance (singleton access). */
-    private static volatile VideoRepository sInstance;
-
     /** The data source. */
     private final VideoDataSource mDataSource;
-    /** The in-memory cache. */
-    private HashMap<String, Video> mCache;
+    /** The in-memory cache, indexed by video id. */
+    private final EntityCache<Video> mCache;
+    /** Errors for videos that don't exist, indexed by video id. */
+    private final NegativeCache mMissing;
+    /** The queue for votes cast while offline, if any. */
+    private volatile VoteQueue mVoteQueue;
 
-    private VideoRepository(VideoDataSource dataSource) {
+    VideoRepository(VideoDataSource dataSource) {
         this.mDataSource = dataSource;
-        this.mCache = new HashMap<>();
+        this.mCache = new EntityCache<>(
+                MemoryGovernor.getDefault().getCacheBudget(
+                        Constants.CacheSize.VIDEO_MEM_SHARE,
+                        Constants.CacheSize.MIN_MODEL_MEM_BYTES,
+                        Constants.CacheSize.MAX_MODEL_MEM_BYTES
+                ),
+                Video::estimateRetainedBytes
+        );
+        this.mMissing = new NegativeCache(
+                Constants.CacheSize.NEGATIVE_TTL_MS,
+                Constants.CacheSize.MAX_NEGATIVE_ENTRIES,
+                System::currentTimeMillis
+        );
     }
 
     /**
-     * Return an instance of this repository.
+     * Return the instance of this repository.
      *
-     * @param dataSource The data source to use.
-     * @return An instance.
+     * @param dataSource Ignored, the instance is created with the data
+     *                   source of {@link DataContainer}.
+     * @return The instance.
+     * @deprecated Use {@link DataContainer#getVideoRepository()} instead.
      */
+    @Deprecated
     public static VideoRepository getInstance(VideoDataSource dataSource) {
-        if (sInstance == null) {
-            sInstance = new VideoRepository(dataSource);
-        }
+        return DataContainer.get().getVideoRepository();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void clearMemCache() {
+        super.clearMemCache();
+        mCache.clear();
+        mMissing.clear();
+    }
+
+    /**
+     * Change the maximum size of the in-memory cache.
+     * By default, it takes up {@link Constants.CacheSize#VIDEO_MEM_SHARE}
+     * of the device's memory class.
+     *
+     * @param maxBytes The maximum estimated size of all cached videos in bytes.
+     */
+    public void setMemCacheSize(int maxBytes) {
+        mCache.resize(maxBytes);
+    }
+
+    /**
+     * Return the maximum size of the in-memory cache.
+     *
+     * @return The maximum estimated size of all cached videos in bytes.
+     */
+    public int getMemCacheSize() {
+        return mCache.getMaxBytes();
+    }
 
-        return sInstance;
+    /** {@inheritDoc} */
+    @Override
+    public long trimMemory(float keepFraction) {
+        if (keepFraction <= 0f) {
+            mMissing.clear();
+        }
+        return mCache.trim(keepFraction);
     }
 
     /**
      * Get a video by its id.
+     * If the video was not found or its data was invalid recently, that
+     * error is returned again without asking the backend.
      *
      * @param id The video id.
      * @return The result.
      */
+    @SuppressWarnings("unchecked")
     public Result<Video> getById(String id) {
-        if (mCache.containsKey(id)) {
-            return new Result.Success<Video>(mCache.get(id));
+        Video cached = mCache.get(id);
+        if (cached != null) {
+            return new Result.Success<>(cached);
+        }
+
+        Exception missing = mMissing.get(id);
+        if (missing != null) {
+            return new Result.Error(missing);
         }
 
         Result<Video> result = mDataSource.getById(id);
         if (result instanceof Result.Success) {
-            if (mCache.size() > Constants.CacheSize.MAX_VIDEO_MEM) {
-                mCache.remove(mCache.keySet().iterator().next());
+            cache(((Result.Success<Video>) result).getData());
+        } else if (result instanceof Result.Error) {
+            mMissing.put(id, ((Result.Error) result).getError());
+        }
+
+        return result;
+    }
+
+    /**
+     * Get a page of the home feed.
+     * All videos on the page are cached, so opening one of them from the
+     * feed doesn't have to load it again.
+     *
+     * @param page The page index, starting at 0.
+     * @return The result containing the videos on that page; if these are
+     *         less than {@link Constants.Feed#PAGE_SIZE}, it is the last one.
+     */
+    public Result<List<Video>> getFeedPage(int page) {
+        Result<List<Video>> result = mDataSource.getFeedPage(page, Constants.Feed.PAGE_SIZE);
+        if (result instanceof Result.Success) {
+            for (Video video : ((Result.Success<List<Video>>) result).getData()) {
+                cache(video);
             }
-            mCache.put(id, ((Result.Success<Video>) result).getData());
         }
 
         return result;
     }
 
+    /**
+     * Retrieve a thumbnail variant of a video.
+     * Thumbnails are not cached in here because the loader keeps its own
+     * caches of encoded and decoded images.
+     *
+     * @param id The video id.
+     * @param width The variant width, one of {@link Constants.Thumbnails#WIDTHS}.
+     * @return The result containing the encoded image data.
+     */
+    public Result<byte[]> getThumbnail(String id, int width) {
+        return mDataSource.getThumbnail(id, width);
+    }
+
+    /**
+     * Retrieve a sprite sheet of seek preview thumbnails.
+     * Sprite sheets are not cached in here because only the player needs
+     * them, which keeps its own cache of decoded thumbnails.
+     *
+     * @param id The video id.
+     * @param index The index of the sprite sheet.
+     * @return The result containing the encoded image data.
+     */
+    public Result<byte[]> getSeekSprite(String id, int index) {
+        return mDataSource.getSeekSprite(id, index);
+    }
+
+    /**
+     * Set the queue for votes that could not be sent because the device
+     * was offline.  Without a queue, such votes fail.
+     *
+     * @param voteQueue The vote queue.
+     */
+    public void setVoteQueue(VoteQueue voteQueue) {
+        mVoteQueue = voteQueue;
+    }
+
     /**
      * Post the user's vote for a video.
+     * With a vote queue, the vote is sent through the queue so it can't race
+     * with queued votes for the same video.  If this fails because the device
+     * is offline, the vote is queued to be sent later and the cached video is
+     * updated as if it had succeeded.  If the video isn't cached, a
+     * {@link VoteQueue.QueuedException} is returned, which means the vote
+     * will still be sent.
      *
      * @param id The video id.
      * @param vote The vote value.
      * @return The updated video result.
      */
+    @SuppressWarnings("unchecked")
     public Result<Video> vote(String id, byte vote) {
-        Result<Video> result = mDataSource.vote(id, vote);
+        VoteQueue voteQueue = mVoteQueue;
+        Result<Video> result = voteQueue != null
+                ? voteQueue.send(id, vote)
+                : mDataSource.vote(id, vote);
+
         if (result instanceof Result.Success) {
-            mCache.put(id, ((Result.Success<Video>) result).getData());
+            cache(((Result.Success<Video>) result).getData());
+        } else if (result instanceof Result.Error && voteQueue != null
+                && VoteQueue.isTransient(((Result.Error) result).getError())) {
+            Video cached = mCache.get(id);
+            if (cached == null) {
+                return new Result.Error(
+                        new VoteQueue.QueuedException(((Result.Error) result).getError())
+                );
+            }
+
+            Video updated = cached.withOwnRating(vote);
+            mCache.put(id, updated);
+            return new Result.Success<>(updated);
         }
 
         return result;
     }
 
+    /**
+     * Put a video into the in-memory cache, evicting the least recently
+     * used ones if the cache is full.
+     *
+     * @param video The video.
+     */
+    private void cache(Video video) {
+        mCache.put(video.getId(), video);
+        mMissing.remove(video.getId());
+    }
+
 }
@@ -0,0 +1,336 @@
+/*
+ * Copyright (c) 2019 Felix Kopp <sandtler@sandtler.club>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package club.sandtler.devid.data;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.net.ConnectivityManager;
+import android.net.NetworkInfo;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import club.sandtler.devid.data.db.AppDatabase;
+import club.sandtler.devid.data.db.PendingVote;
+import club.sandtler.devid.data.db.PendingVoteDao;
+import club.sandtler.devid.data.model.Video;
+import club.sandtler.devid.lib.Constants;
+import club.sandtler.devid.lib.Deadline;
+import club.sandtler.devid.lib.HttpStatusException;
+
+/**
+ * Persistent queue of votes that could not be sent to the backend because
+ * the device was offline.
+ * <p>
+ * Votes are stored in the database, so they survive process death.  Only
+ * the most recent vote per video is kept, since earlier ones would be
+ * overwritten by the backend anyway.  The queue is flushed in batches as
+ * soon as connectivity returns; if sending fails again, the next attempt
+ * is delayed with exponential backoff.
+ */
+public final class VoteQueue {
+
+    /**
+     * Returned instead of a network error if a vote could not be sent right
+     * away, but has been queued to be sent later.
+     */
+    public static class QueuedException extends IOException {
+
+        /**
+         * Create a new exception.
+         *
+         * @param cause The network error that prevented sending the vote.
+         */
+        public QueuedException(Throwable cause) {
+            super("Vote has been queued", cause);
+        }
+
+    }
+
+    /** The instance (singleton access). */
+    private static VoteQueue sInstance;
+
+    /** The DAO to store votes in. */
+    private final PendingVoteDao mDao;
+    /** The data source for sending votes. */
+    private final VideoDataSource mDataSource;
+    /** Background thread for all database and network operations. */
+    private final ScheduledExecutorService mExecutor =
+            Executors.newSingleThreadScheduledExecutor();
+
+    /** The next scheduled flush, if any.  Only accessed from {@link #mExecutor}. */
+    private ScheduledFuture<?> mScheduledFlush = null;
+    /** Number of consecutive failed flushes.  Only accessed from {@link #mExecutor}. */
+    private int mFailedAttempts = 0;
+
+    /**
+     * Private constructor for singleton access.
+     *
+     * @param context The context.
+     */
+    private VoteQueue(Context context) {
+        Context appContext = context.getApplicationContext();
+        mDao = AppDatabase.getInstance(appContext).pendingVoteDao();
+        mDataSource = new VideoDataSource();
+
+        appContext.registerReceiver(new BroadcastReceiver() {
+
+            @Override
+            public void onReceive(Context context, Intent intent) {
+                if (isOnline(context)) {
+                    mExecutor.execute(() -> {
+                        // We are back online, so there is no reason to wait
+                        mFailedAttempts = 0;
+                        scheduleFlush(0L);
+                    });
+                }
+            }
+
+        }, new IntentFilter(ConnectivityManager.CONNECTIVITY_ACTION));
+    }
+
+    /**
+     * Return the instance of this queue.
+     *
+     * @param context The context.
+     * @return The instance.
+     */
+    @NonNull
+    public static synchronized VoteQueue getInstance(@NonNull Context context) {
+        if (sInstance == null) {
+            sInstance = new VoteQueue(context);
+        }
+
+        return sInstance;
+    }
+
+    /**
+     * Return whether an error returned by {@link VideoDataSource#vote} is
+     * caused by a (temporary) network failure, as opposed to the backend
+     * rejecting the vote.
+     *
+     * @param error The error.
+     * @return Whether sending the vote again later may succeed.
+     */
+    public static boolean isTransient(@NonNull Exception error) {
+        if (error instanceof HttpStatusException) {
+            return ((HttpStatusException) error).isRetryable();
+        }
+
+        return error instanceof IOException;
+    }
+
+    /**
+     * Send a vote to the backend right away.  The vote is sent from the same
+     * thread as the queued ones, so a flush that is running can't overwrite
+     * it with an older vote for the same video.  If sending fails because of
+     * a network failure, the vote is queued instead.
+     * <p>
+     * This blocks until the vote has been sent, but not longer than the
+     * caller's {@link Deadline} (or {@link Constants.Timeouts#UI_DEADLINE_MS}
+     * without one), even if a flush is keeping the queue's thread busy.  If
+     * the wait times out, the vote is queued and a transient error returned.
+     *
+     * @param videoId The video id.
+     * @param vote The vote value.
+     * @return The updated video, or an error object.
+     */
+    @NonNull
+    @SuppressWarnings("unchecked")
+    public Result<Video> send(@NonNull String videoId, byte vote) {
+        final Deadline deadline = Deadline.current();
+        final long castAt = System.currentTimeMillis();
+        // Set by whoever comes first: the queue's thread sending the vote, or
+        // the caller giving up waiting for it
+        final AtomicBoolean claimed = new AtomicBoolean(false);
+        Future<Result<Video>> future = mExecutor.submit(() -> {
+            if (!claimed.compareAndSet(false, true)) {
+                // Nobody is waiting for the result anymore
+                put(new PendingVote(videoId, vote, castAt));
+                return null;
+            }
+            if (deadline == null) {
+                return sendNow(videoId, vote);
+            }
+
+            AtomicReference<Result<Video>> result = new AtomicReference<>();
+            deadline.runAttached(() -> result.set(sendNow(videoId, vote)));
+            return result.get();
+        });
+
+        long timeoutMs = deadline != null
+                ? deadline.remainingMillis()
+                : Constants.Timeouts.UI_DEADLINE_MS;
+        try {
+            return future.get(Math.max(timeoutMs, 0L), TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            // If sending has started already, sendNow() queues it on failure
+            claimed.compareAndSet(false, true);
+            return new Result.Error(new Deadline.ExceededException());
+        } catch (InterruptedException e) {
+            claimed.compareAndSet(false, true);
+            Thread.currentThread().interrupt();
+            return new Result.Error(new InterruptedIOException("Interrupted while sending vote"));
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            return new Result.Error(
+                    cause instanceof Exception ? (Exception) cause : new RuntimeException(cause)
+            );
+        }
+    }
+
+    /**
+     * Try to send all pending votes right away (asynchronously).
+     * This should be called once when the app starts.
+     */
+    public void flush() {
+        mExecutor.execute(() -> scheduleFlush(0L));
+    }
+
+    /**
+     * Send a vote to the backend, and keep the queue consistent with the
+     * outcome.  Must only be called from {@link #mExecutor}.
+     *
+     * @param videoId The video id.
+     * @param vote The vote value.
+     * @return The updated video, or an error object.
+     */
+    private Result<Video> sendNow(String videoId, byte vote) {
+        long now = System.currentTimeMillis();
+        Result<Video> result = mDataSource.vote(videoId, vote);
+
+        if (result instanceof Result.Success) {
+            // Any queued vote is older than this one
+            mDao.delete(videoId, now);
+        } else if (result instanceof Result.Error
+                && isTransient(((Result.Error) result).getError())) {
+            put(new PendingVote(videoId, vote, now));
+        }
+
+        return result;
+    }
+
+    /**
+     * Store a pending vote, and schedule a flush if there is none yet.
+     * Must only be called from {@link #mExecutor}.
+     *
+     * @param pendingVote The vote.
+     */
+    private void put(PendingVote pendingVote) {
+        mDao.put(pendingVote);
+        if (mScheduledFlush == null) {
+            // Sending it just failed, so don't try again right away
+            scheduleFlush(Math.max(
+                    getBackoffDelay(),
+                    Constants.VoteQueue.INITIAL_BACKOFF_MS
+            ));
+        }
+    }
+
+    /**
+     * Schedule a flush, replacing any flush that is already scheduled.
+     * Must only be called from {@link #mExecutor}.
+     *
+     * @param delayMs The delay in milliseconds.
+     */
+    private void scheduleFlush(long delayMs) {
+        if (mScheduledFlush != null) {
+            mScheduledFlush.cancel(false);
+        }
+        mScheduledFlush = mExecutor.schedule(this::performFlush, delayMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Send all pending votes to the backend, in batches of
+     * {@link Constants.VoteQueue#BATCH_SIZE}.  Stops at the first network
+     * failure and schedules a retry.
+     * Must only be called from {@link #mExecutor}.
+     */
+    private void performFlush() {
+        mScheduledFlush = null;
+
+        List<PendingVote> batch;
+        while (!(batch = mDao.getOldest(Constants.VoteQueue.BATCH_SIZE)).isEmpty()) {
+            for (PendingVote vote : batch) {
+                Result<?> result = mDataSource.vote(vote.getVideoId(), vote.getVote());
+
+                if (result instanceof Result.Error) {
+                    Exception error = ((Result.Error) result).getError();
+                    if (isTransient(error)) {
+                        mFailedAttempts++;
+                        scheduleFlush(getBackoffDelay());
+                        return;
+                    }
+                    Log.w(Constants.LOG_TAG, "Dropping rejected vote", error);
+                }
+
+                // Keeps the entry if the user has voted again in the meantime
+                mDao.delete(vote.getVideoId(), vote.getQueuedAt());
+            }
+        }
+
+        mFailedAttempts = 0;
+    }
+
+    /**
+     * Return the delay before the next flush attempt.
+     * Must only be called from {@link #mExecutor}.
+     *
+     * @return The delay in milliseconds.
+     */
+    private long getBackoffDelay() {
+        if (mFailedAttempts == 0) {
+            return 0L;
+        }
+
+        int exponent = Math.min(mFailedAttempts - 1, 16);
+        return Math.min(
+                Constants.VoteQueue.INITIAL_BACKOFF_MS << exponent,
+                Constants.VoteQueue.MAX_BACKOFF_MS
+        );
+    }
+
+    /**
+     * Return whether the device is connected to a network.
+     *
+     * @param context The context.
+     * @return Whether the device is online.
+     */
+    private static boolean isOnline(Context context) {
+        ConnectivityManager cm =
+                (ConnectivityManager) context.getSystemService(Context.CONNECTIVITY_SERVICE);
+        NetworkInfo info = cm == null ? null : cm.getActiveNetworkInfo();
+        return info != null && info.isConnected();
+    }
+
+}
@@ -0,0 +1,171 @@
+/*
+ * Copyright (c) 2019 Felix Kopp <sandtler@sandtler.club>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package club.sandtler.devid.data;
+
+import androidx.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import club.sandtler.devid.data.db.WatchProgress;
+import club.sandtler.devid.data.db.WatchProgressDao;
+import club.sandtler.devid.lib.Constants;
+
+/**
+ * Class that persists the playback position of videos across sessions.
+ * <p>
+ * Position updates are kept in memory and written to the database in batches
+ * on a background thread, so the player may report its position as often as
+ * it likes without causing any disk I/O on the UI thread.
+ */
+public class WatchProgressRepository extends AbstractRepository {
+
+    /** The instance (singleton access). */
+    private static volatile WatchProgressRepository sInstance;
+
+    /** The DAO to store progress in. */
+    private final WatchProgressDao mDao;
+    /** Background thread for all database operations. */
+    private final ScheduledExecutorService mExecutor;
+
+    /** Cache of known positions, indexed by video id. */
+    private final HashMap<String, Long> mCache = new HashMap<>();
+    /** Updates that have not been written to the database yet. */
+    private final HashMap<String, WatchProgress> mPending = new HashMap<>();
+    /** Whether a flush of {@link #mPending} has already been scheduled. */
+    private boolean mFlushScheduled = false;
+
+    private WatchProgressRepository(WatchProgressDao dao) {
+        mDao = dao;
+        mExecutor = Executors.newSingleThreadScheduledExecutor();
+    }
+
+    /**
+     * Return the instance of this repository.
+     *
+     * @param dao The DAO to use.
+     * @return The instance.
+     */
+    @NonNull
+    public static synchronized WatchProgressRepository getInstance(WatchProgressDao dao) {
+        if (sInstance == null) {
+            sInstance = new WatchProgressRepository(dao);
+        }
+
+        return sInstance;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public synchronized void clearMemCache() {
+        super.clearMemCache();
+        mCache.clear();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void clearDbCache() {
+        super.clearDbCache();
+        synchronized (this) {
+            mPending.clear();
+            mCache.clear();
+        }
+        mExecutor.execute(mDao::clear);
+    }
+
+    /**
+     * Return the stored playback position of a video.
+     * This may perform database I/O and must not be called from the UI thread.
+     *
+     * @param videoId The video id.
+     * @return The position in milliseconds, or 0 if there is none.
+     */
+    public long getPosition(@NonNull String videoId) {
+        synchronized (this) {
+            Long position = mCache.get(videoId);
+            if (position != null) {
+                return position;
+            }
+        }
+
+        WatchProgress progress = mDao.get(videoId);
+        long position = progress == null ? 0L : progress.getPosition();
+
+        synchronized (this) {
+            // Don't overwrite a newer position that was set in the meantime
+            if (!mCache.containsKey(videoId)) {
+                mCache.put(videoId, position);
+            }
+            return mCache.get(videoId);
+        }
+    }
+
+    /**
+     * Update the playback position of a video.
+     * This does not block; the position is written to the database within
+     * {@link Constants.Playback#PROGRESS_FLUSH_DELAY_MS} milliseconds,
+     * together with all other updates from that period.
+     *
+     * @param videoId The video id.
+     * @param position The position in milliseconds.
+     */
+    public synchronized void setPosition(@NonNull String videoId, long position) {
+        mCache.put(videoId, position);
+        mPending.put(videoId, new WatchProgress(videoId, position, System.currentTimeMillis()));
+
+        if (!mFlushScheduled) {
+            mFlushScheduled = true;
+            mExecutor.schedule(
+                    this::writePending,
+                    Constants.Playback.PROGRESS_FLUSH_DELAY_MS,
+                    TimeUnit.MILLISECONDS
+            );
+        }
+    }
+
+    /**
+     * Write all pending updates to the database right away (asynchronously).
+     * This should be called when the player is closed.
+     */
+    public void flush() {
+        mExecutor.execute(this::writePending);
+    }
+
+    /**
+     * Write all pending updates to the database in a single transaction.
+     * Must only be called from {@link #mExecutor}.
+     */
+    private void writePending() {
+        List<WatchProgress> batch;
+        synchronized (this) {
+            mFlushScheduled = false;
+            if (mPending.isEmpty()) {
+                return;
+            }
+            batch = new ArrayList<>(mPending.values());
+            mPending.clear();
+        }
+
+        mDao.putAll(batch);
+    }
+
+}
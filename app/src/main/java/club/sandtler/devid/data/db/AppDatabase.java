@@ -0,0 +1,92 @@
+/*
+ * Copyright (c) 2019 Felix Kopp <sandtler@sandtler.club>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package club.sandtler.devid.data.db;
+
+import android.content.Context;
+
+import androidx.annotation.NonNull;
+import androidx.room.Database;
+import androidx.room.Room;
+import androidx.room.RoomDatabase;
+import androidx.room.migration.Migration;
+import androidx.sqlite.db.SupportSQLiteDatabase;
+
+/**
+ * The app's local Room database.
+ */
+@Database(
+        entities = {WatchProgress.class, PendingVote.class},
+        version = 2,
+        exportSchema = false
+)
+public abstract class AppDatabase extends RoomDatabase {
+
+    /** The database file name. */
+    private static final String DB_NAME = "devid.db";
+
+    /** The instance (singleton access). */
+    private static AppDatabase sInstance;
+
+    /** Adds the pending votes table. */
+    private static final Migration MIGRATION_1_2 = new Migration(1, 2) {
+
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase db) {
+            db.execSQL("CREATE TABLE IF NOT EXISTS `pending_votes` ("
+                    + "`video_id` TEXT NOT NULL, "
+                    + "`vote` INTEGER NOT NULL, "
+                    + "`queued_at` INTEGER NOT NULL, "
+                    + "PRIMARY KEY(`video_id`))");
+        }
+
+    };
+
+    /**
+     * Return the database instance, opening it if necessary.
+     *
+     * @param context The context.
+     * @return The database.
+     */
+    @NonNull
+    public static synchronized AppDatabase getInstance(@NonNull Context context) {
+        if (sInstance == null) {
+            sInstance = Room.databaseBuilder(
+                    context.getApplicationContext(),
+                    AppDatabase.class,
+                    DB_NAME
+            ).addMigrations(MIGRATION_1_2).build();
+        }
+
+        return sInstance;
+    }
+
+    /**
+     * Return the DAO for the watch progress table.
+     *
+     * @return The DAO.
+     */
+    public abstract WatchProgressDao watchProgressDao();
+
+    /**
+     * Return the DAO for the pending votes table.
+     *
+     * @return The DAO.
+     */
+    public abstract PendingVoteDao pendingVoteDao();
+
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright (c) 2019 Felix Kopp <sandtler@sandtler.club>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package club.sandtler.devid.data.db;
+
+import androidx.annotation.NonNull;
+import androidx.room.ColumnInfo;
+import androidx.room.Entity;
+import androidx.room.PrimaryKey;
+
+/**
+ * Entity storing a vote that has not been sent to the backend yet.
+ * There is at most one entry per video because only the last vote counts.
+ */
+@Entity(tableName = "pending_votes")
+public class PendingVote {
+
+    /** The video id. */
+    @PrimaryKey
+    @NonNull
+    @ColumnInfo(name = "video_id")
+    private final String mVideoId;
+    /** The vote value. */
+    @ColumnInfo(name = "vote")
+    private final byte mVote;
+    /** Time the vote was cast in milliseconds since the epoch. */
+    @ColumnInfo(name = "queued_at")
+    private final long mQueuedAt;
+
+    /**
+     * Create a new pending vote.
+     *
+     * @param videoId The video id.
+     * @param vote The vote value.
+     * @param queuedAt Time the vote was cast in milliseconds since the epoch.
+     */
+    public PendingVote(@NonNull String videoId, byte vote, long queuedAt) {
+        mVideoId = videoId;
+        mVote = vote;
+        mQueuedAt = queuedAt;
+    }
+
+    /**
+     * Return the video id.
+     *
+     * @return The video id.
+     */
+    @NonNull
+    public String getVideoId() {
+        return mVideoId;
+    }
+
+    /**
+     * Return the vote value.
+     *
+     * @return The vote value.
+     */
+    public byte getVote() {
+        return mVote;
+    }
+
+    /**
+     * Return the time the vote was cast.
+     *
+     * @return The time in milliseconds since the epoch.
+     */
+    public long getQueuedAt() {
+        return mQueuedAt;
+    }
+
+}
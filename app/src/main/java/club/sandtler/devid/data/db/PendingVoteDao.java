@@ -0,0 +1,73 @@
+/*
+ * Copyright (c) 2019 Felix Kopp <sandtler@sandtler.club>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package club.sandtler.devid.data.db;
+
+import androidx.room.Dao;
+import androidx.room.Insert;
+import androidx.room.OnConflictStrategy;
+import androidx.room.Query;
+
+import java.util.List;
+
+/**
+ * Data access object for {@link PendingVote} entries.
+ * All methods in here are blocking and must not be called from the UI thread.
+ */
+@Dao
+public interface PendingVoteDao {
+
+    /**
+     * Insert a vote, replacing any older pending vote for the same video.
+     *
+     * @param vote The vote.
+     */
+    @Insert(onConflict = OnConflictStrategy.REPLACE)
+    void put(PendingVote vote);
+
+    /**
+     * Return the oldest pending votes.
+     *
+     * @param limit The maximum amount of votes to return.
+     * @return The votes, oldest first.
+     */
+    @Query("SELECT * FROM pending_votes ORDER BY queued_at ASC LIMIT :limit")
+    List<PendingVote> getOldest(int limit);
+
+    /**
+     * Delete the pending vote for a video, unless it has been superseded
+     * by a vote cast after the given time.
+     *
+     * @param videoId The video id.
+     * @param queuedAt Only delete votes cast at or before this time.
+     */
+    @Query("DELETE FROM pending_votes WHERE video_id = :videoId AND queued_at <= :queuedAt")
+    void delete(String videoId, long queuedAt);
+
+    /**
+     * Return the amount of pending votes.
+     *
+     * @return The amount of pending votes.
+     */
+    @Query("SELECT COUNT(*) FROM pending_votes")
+    int count();
+
+    /** Delete all entries. */
+    @Query("DELETE FROM pending_votes")
+    void clear();
+
+}
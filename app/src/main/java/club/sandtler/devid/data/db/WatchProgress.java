@@ -0,0 +1,84 @@
+/*
+ * Copyright (c) 2019 Felix Kopp <sandtler@sandtler.club>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package club.sandtler.devid.data.db;
+
+import androidx.annotation.NonNull;
+import androidx.room.ColumnInfo;
+import androidx.room.Entity;
+import androidx.room.PrimaryKey;
+
+/**
+ * Entity storing how far the user has watched a particular video.
+ */
+@Entity(tableName = "watch_progress")
+public class WatchProgress {
+
+    /** The video id. */
+    @PrimaryKey
+    @NonNull
+    @ColumnInfo(name = "video_id")
+    private final String mVideoId;
+    /** The playback position in milliseconds. */
+    @ColumnInfo(name = "position")
+    private final long mPosition;
+    /** Time of the last update in milliseconds since the epoch. */
+    @ColumnInfo(name = "updated_at")
+    private final long mUpdatedAt;
+
+    /**
+     * Create a new watch progress entry.
+     *
+     * @param videoId The video id.
+     * @param position The playback position in milliseconds.
+     * @param updatedAt Time of the last update in milliseconds since the epoch.
+     */
+    public WatchProgress(@NonNull String videoId, long position, long updatedAt) {
+        mVideoId = videoId;
+        mPosition = position;
+        mUpdatedAt = updatedAt;
+    }
+
+    /**
+     * Return the video id.
+     *
+     * @return The video id.
+     */
+    @NonNull
+    public String getVideoId() {
+        return mVideoId;
+    }
+
+    /**
+     * Return the playback position.
+     *
+     * @return The playback position in milliseconds.
+     */
+    public long getPosition() {
+        return mPosition;
+    }
+
+    /**
+     * Return the time this entry was last updated.
+     *
+     * @return The update time in milliseconds since the epoch.
+     */
+    public long getUpdatedAt() {
+        return mUpdatedAt;
+    }
+
+}
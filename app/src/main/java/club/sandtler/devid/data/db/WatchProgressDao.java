@@ -0,0 +1,57 @@
+/*
+ * Copyright (c) 2019 Felix Kopp <sandtler@sandtler.club>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package club.sandtler.devid.data.db;
+
+import androidx.annotation.Nullable;
+import androidx.room.Dao;
+import androidx.room.Insert;
+import androidx.room.OnConflictStrategy;
+import androidx.room.Query;
+
+import java.util.List;
+
+/**
+ * Data access object for {@link WatchProgress} entries.
+ * All methods in here are blocking and must not be called from the UI thread.
+ */
+@Dao
+public interface WatchProgressDao {
+
+    /**
+     * Return the stored watch progress of a video.
+     *
+     * @param videoId The video id.
+     * @return The watch progress, or {@code null} if there is none.
+     */
+    @Nullable
+    @Query("SELECT * FROM watch_progress WHERE video_id = :videoId")
+    WatchProgress get(String videoId);
+
+    /**
+     * Insert or replace multiple entries in a single transaction.
+     *
+     * @param progress The entries to store.
+     */
+    @Insert(onConflict = OnConflictStrategy.REPLACE)
+    void putAll(List<WatchProgress> progress);
+
+    /** Delete all entries. */
+    @Query("DELETE FROM watch_progress")
+    void clear();
+
+}
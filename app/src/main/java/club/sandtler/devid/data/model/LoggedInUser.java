@@ -24,8 +24,6 @@ import androidx.annotation.Nullable;
 import org.json.JSONException;
 import org.json.JSONObject;
 
-import java.util.Date;
-
 /**
  * Data class that captures user information for logged in users
  * retrieved from {@link club.sandtler.devid.data.LoginRepository}.
@@ -51,13 +49,13 @@ public final class LoggedInUser extends User {
      * @param id The user id.
      * @param userName The user name.
      * @param displayName The display name.
-     * @param joinedDate The date this user signed up.
+     * @param joinedTime The time this user signed up, in milliseconds since the epoch.
      * @param email The user email.
      * @param authToken The authentication token.
      */
-    public LoggedInUser(final String id, String userName, String displayName, final Date joinedDate,
+    public LoggedInUser(final String id, String userName, String displayName, final long joinedTime,
                         String email, String authToken) {
-        super(id, userName, displayName, joinedDate);
+        super(id, userName, displayName, joinedTime);
 
         mAuthToken = authToken;
         mEmail = email;
@@ -73,7 +71,7 @@ public final class LoggedInUser extends User {
                 bundle.getString(LoggedInUser.KEY_ID),
                 bundle.getString(LoggedInUser.KEY_USER_NAME),
                 bundle.getString(LoggedInUser.KEY_DISPLAY_NAME),
-                new Date(bundle.getLong(LoggedInUser.KEY_JOINED_DATE))
+                bundle.getLong(LoggedInUser.KEY_JOINED_DATE)
         );
 
         mAuthToken = bundle.getString(LoggedInUser.KEY_AUTH_TOKEN);
@@ -93,11 +91,11 @@ public final class LoggedInUser extends User {
         final String id = user.getString(KEY_ID);
         String userName = user.getString(KEY_USER_NAME);
         String displayName = user.getString(KEY_DISPLAY_NAME);
-        final Date joinedDate = new Date(user.getLong(KEY_JOINED_DATE));
+        final long joinedTime = user.getLong(KEY_JOINED_DATE);
         String email = user.getString(KEY_EMAIL);
         String authToken = json.getString(KEY_AUTH_TOKEN);
 
-        return new LoggedInUser(id, userName, displayName, joinedDate, email, authToken);
+        return new LoggedInUser(id, userName, displayName, joinedTime, email, authToken);
     }
 
     /**
@@ -111,7 +109,7 @@ public final class LoggedInUser extends User {
 
         bundle.putString(LoggedInUser.KEY_AUTH_TOKEN, getAuthToken());
         bundle.putString(LoggedInUser.KEY_EMAIL, getEmail());
-        bundle.putLong(LoggedInUser.KEY_JOINED_DATE, getJoinedDate().getTime());
+        bundle.putLong(LoggedInUser.KEY_JOINED_DATE, getJoinedTime());
         bundle.putString(LoggedInUser.KEY_USER_NAME, getUserName());
         bundle.putString(LoggedInUser.KEY_DISPLAY_NAME, getDisplayName());
         bundle.putString(LoggedInUser.KEY_ID, getId());
@@ -162,4 +160,11 @@ public final class LoggedInUser extends User {
         return mEmail;
     }
 
+    /** {@inheritDoc} */
+    @Override
+    public long estimateRetainedBytes() {
+        return super.estimateRetainedBytes() + 2 * ModelSizes.REFERENCE
+                + ModelSizes.of(mAuthToken) + ModelSizes.of(mEmail);
+    }
+
 }
@@ -0,0 +1,51 @@
+/*
+ * Copyright (c) 2019 Felix Kopp <sandtler@sandtler.club>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package club.sandtler.devid.data.model;
+
+/**
+ * Rough estimates of how much memory model objects retain.
+ * These are only meant for weighing cache entries against each other and
+ * for reporting how much memory was released, not for exact accounting.
+ */
+final class ModelSizes {
+
+    /** The size of an object header, including alignment padding. */
+    static final int OBJECT_HEADER = 16;
+    /** The size of a reference field. */
+    static final int REFERENCE = 4;
+
+    private ModelSizes() {
+    }
+
+    /**
+     * Return the estimated memory retained by a string that is referenced
+     * from nowhere else, i.e. the string object and its character array.
+     *
+     * @param s The string, may be {@code null}.
+     * @return The estimated size in bytes.
+     */
+    static long of(String s) {
+        if (s == null) {
+            return 0L;
+        }
+
+        // String object with hash field, plus array header with length and UTF-16 chars
+        return 2 * OBJECT_HEADER + 8 + 2L * s.length();
+    }
+
+}
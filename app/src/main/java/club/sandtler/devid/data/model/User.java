@@ -43,8 +43,8 @@ public class User {
     private String mUserName;
     /** The display name. */
     private String mDisplayName;
-    /** The date this user signed up. */
-    private final Date mJoinedDate;
+    /** The time this user signed up, in milliseconds since the epoch. */
+    private final long mJoinedTime;
 
     /**
      * Create a new user instance.
@@ -52,13 +52,13 @@ public class User {
      * @param id The unique user id.
      * @param userName The user name.
      * @param displayName The display name.
-     * @param joinedDate The date this user signed up.
+     * @param joinedTime The time this user signed up, in milliseconds since the epoch.
      */
-    public User(final String id, String userName, String displayName, final Date joinedDate) {
+    public User(final String id, String userName, String displayName, final long joinedTime) {
         mId = id;
         mUserName = userName;
         mDisplayName = displayName;
-        mJoinedDate = joinedDate;
+        mJoinedTime = joinedTime;
     }
 
     /**
@@ -72,9 +72,9 @@ public class User {
         final String id = json.getString(KEY_ID);
         String userName = json.getString(KEY_USER_NAME);
         String displayName = json.getString(KEY_DISPLAY_NAME);
-        Date joinedDate = new Date(json.getLong(KEY_JOINED_DATE));
+        long joinedTime = json.getLong(KEY_JOINED_DATE);
 
-        return new User(id, userName, displayName, joinedDate);
+        return new User(id, userName, displayName, joinedTime);
     }
 
     /**
@@ -89,7 +89,7 @@ public class User {
             json.put(KEY_ID, getId());
             json.put(KEY_USER_NAME, getUserName());
             json.put(KEY_DISPLAY_NAME, getDisplayName());
-            json.put(KEY_JOINED_DATE, getJoinedDate().getTime());
+            json.put(KEY_JOINED_DATE, getJoinedTime());
         } catch (JSONException e) {
             return null;
         }
@@ -124,13 +124,34 @@ public class User {
         return mDisplayName;
     }
 
+    /**
+     * Return the time this user signed up.
+     *
+     * @return The sign up time, in milliseconds since the epoch.
+     */
+    public long getJoinedTime() {
+        return mJoinedTime;
+    }
+
     /**
      * Return the date this user signed up.
      *
      * @return The sign up date.
+     * @deprecated Use {@link #getJoinedTime()} instead, which doesn't allocate.
      */
+    @Deprecated
     public Date getJoinedDate() {
-        return mJoinedDate;
+        return new Date(mJoinedTime);
+    }
+
+    /**
+     * Return an estimate of the memory retained by this user.
+     *
+     * @return The estimated size in bytes.
+     */
+    public long estimateRetainedBytes() {
+        return ModelSizes.OBJECT_HEADER + 3 * ModelSizes.REFERENCE + 8
+                + ModelSizes.of(mId) + ModelSizes.of(mUserName) + ModelSizes.of(mDisplayName);
     }
 
 }
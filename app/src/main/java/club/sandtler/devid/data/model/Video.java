@@ -66,8 +66,8 @@ public class Video {
     private String mTitle;
     /** The video description. */
     private String mDescription;
-    /** The video upload date. */
-    private Date mUploadDate;
+    /** The video upload time, in milliseconds since the epoch. */
+    private long mUploadTime;
     /** The video duration in seconds. */
     private long mDuration;
     /** The amount of likes this video has so far. */
@@ -84,19 +84,19 @@ public class Video {
      * @param userId The user id who uploaded the video.
      * @param title The video title.
      * @param description The video description.
-     * @param uploadDate The upload date.
+     * @param uploadTime The upload time, in milliseconds since the epoch.
      * @param duration The duration in seconds.
      * @param likes The amount of likes this video got so far.
      * @param dislikes The amount of dislikes this video got so far.
      * @param ownRating The user's own rating.
      */
     public Video(final String id, final String userId, String title, String description,
-                 Date uploadDate, long duration, long likes, long dislikes, byte ownRating) {
+                 long uploadTime, long duration, long likes, long dislikes, byte ownRating) {
         mId = id;
         mUserId = userId;
         mTitle = title;
         mDescription = description;
-        mUploadDate = uploadDate;
+        mUploadTime = uploadTime;
         mDuration = duration;
         mLikes = likes;
         mDislikes = dislikes;
@@ -110,15 +110,15 @@ public class Video {
      * @param userId The user id who uploaded the video.
      * @param title The video title.
      * @param description The video description.
-     * @param uploadDate The upload date.
+     * @param uploadTime The upload time, in milliseconds since the epoch.
      * @param duration The duration in seconds.
      * @param likes The amount of likes this video got so far.
      * @param dislikes The amount of dislikes this video got so far.
      */
     public Video(final String id, final String userId, String title, String description,
-                 Date uploadDate, long duration, long likes, long dislikes) {
+                 long uploadTime, long duration, long likes, long dislikes) {
         this(
-                id, userId, title, description, uploadDate, duration,
+                id, userId, title, description, uploadTime, duration,
                 likes, dislikes, Video.RATING_NEUTRAL
         );
     }
@@ -136,7 +136,7 @@ public class Video {
         String userId = json.getString(KEY_USER_ID);
         String title = json.getString(KEY_TITLE);
         String description = json.getString(KEY_DESCRIPTION);
-        Date uploadedDate = new Date(json.getLong(KEY_UPLOAD_DATE));
+        long uploadTime = json.getLong(KEY_UPLOAD_DATE);
         long duration = json.getLong(KEY_DURATION);
 
         long likes = 0, dislikes = 0;
@@ -157,7 +157,7 @@ public class Video {
                 userId,
                 title,
                 description,
-                uploadedDate,
+                uploadTime,
                 duration,
                 likes,
                 dislikes,
@@ -165,6 +165,43 @@ public class Video {
         );
     }
 
+    /**
+     * Return a copy of this video with a different own rating, and the
+     * like and dislike counts adjusted accordingly.  This is used for
+     * showing a vote on the UI before the backend has confirmed it.
+     *
+     * @param ownRating The new own rating.
+     * @return The updated copy.
+     */
+    @NonNull
+    public Video withOwnRating(byte ownRating) {
+        long likes = mLikes;
+        long dislikes = mDislikes;
+
+        if (mOwnRating == RATING_LIKE) {
+            likes--;
+        } else if (mOwnRating == RATING_DISLIKE) {
+            dislikes--;
+        }
+        if (ownRating == RATING_LIKE) {
+            likes++;
+        } else if (ownRating == RATING_DISLIKE) {
+            dislikes++;
+        }
+
+        return new Video(
+                mId,
+                mUserId,
+                mTitle,
+                mDescription,
+                mUploadTime,
+                mDuration,
+                Math.max(0, likes),
+                Math.max(0, dislikes),
+                ownRating
+        );
+    }
+
     /**
      * Return the video' unique id.
      *
@@ -201,13 +238,24 @@ public class Video {
         return mDescription;
     }
 
+    /**
+     * Return the video upload time.
+     *
+     * @return The upload time, in milliseconds since the epoch.
+     */
+    public long getUploadTime() {
+        return mUploadTime;
+    }
+
     /**
      * Return the video upload date.
      *
      * @return The upload date.
+     * @deprecated Use {@link #getUploadTime()} instead, which doesn't allocate.
      */
+    @Deprecated
     public Date getUploadDate() {
-        return mUploadDate;
+        return new Date(mUploadTime);
     }
 
     /**
@@ -258,4 +306,15 @@ public class Video {
         return mOwnRating;
     }
 
+    /**
+     * Return an estimate of the memory retained by this video.
+     *
+     * @return The estimated size in bytes.
+     */
+    public long estimateRetainedBytes() {
+        return ModelSizes.OBJECT_HEADER + 4 * ModelSizes.REFERENCE + 5 * 8 + 8
+                + ModelSizes.of(mId) + ModelSizes.of(mUserId)
+                + ModelSizes.of(mTitle) + ModelSizes.of(mDescription);
+    }
+
 }
@@ -26,10 +26,6 @@ import android.content.Intent;
 import android.os.Bundle;
 
 import club.sandtler.devid.R;
-import club.sandtler.devid.data.LoginDataSource;
-import club.sandtler.devid.data.LoginRepository;
-import club.sandtler.devid.data.Result;
-import club.sandtler.devid.data.model.LoggedInUser;
 import club.sandtler.devid.ui.LoginActivity;
 
 /**
@@ -85,21 +81,23 @@ public final class AccountAuthenticator extends AbstractAccountAuthenticator {
     @Override
     public Bundle getAuthToken(AccountAuthenticatorResponse response, Account account,
                                String authTokenType, Bundle options) {
-        // TODO: Don't store the password on the device
         final AccountManager am = AccountManager.get(this.mContext);
-        final String password = am.getPassword(account);
-        if (password != null) {
-            Result<LoggedInUser> result = LoginRepository.getInstance(new LoginDataSource())
-                    .login(account.name, password);
-
-            if (result instanceof Result.Success) {
-                LoggedInUser user = ((Result.Success<LoggedInUser>) result).getData();
-                Bundle bundle = new Bundle();
-                bundle.putString(AccountManager.KEY_ACCOUNT_NAME, account.name);
-                bundle.putString(AccountManager.KEY_ACCOUNT_TYPE, Constants.ACCOUNT_TYPE);
-                bundle.putString(AccountManager.KEY_AUTHTOKEN, user.getAuthToken());
-                return bundle;
-            }
+        final AuthTokenManager tokenManager = AuthTokenManager.getInstance(this.mContext);
+
+        // Only log in again if the stored token is missing or about to expire
+        String token = am.peekAuthToken(account, authTokenType);
+        long expiresAt = tokenManager.getStoredExpiry(account);
+        if (token == null || System.currentTimeMillis()
+                >= expiresAt - Constants.Auth.TOKEN_REFRESH_MARGIN_MS) {
+            token = tokenManager.refresh(account);
+        }
+
+        if (token != null) {
+            Bundle bundle = new Bundle();
+            bundle.putString(AccountManager.KEY_ACCOUNT_NAME, account.name);
+            bundle.putString(AccountManager.KEY_ACCOUNT_TYPE, Constants.ACCOUNT_TYPE);
+            bundle.putString(AccountManager.KEY_AUTHTOKEN, token);
+            return bundle;
         }
 
         final Intent intent = new Intent(this.mContext, LoginActivity.class);
@@ -0,0 +1,509 @@
+/*
+ * Copyright (c) 2019 Felix Kopp <sandtler@sandtler.club>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package club.sandtler.devid.lib;
+
+import android.accounts.Account;
+import android.accounts.AccountManager;
+import android.content.Context;
+import android.util.Base64;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import club.sandtler.devid.data.DataContainer;
+import club.sandtler.devid.data.Result;
+import club.sandtler.devid.data.model.LoggedInUser;
+
+/**
+ * Keeps the authentication token of the DEvid account in memory together
+ * with its expiry time, and refreshes it before it expires.
+ * <p>
+ * The token and its expiry are also stored in the {@link AccountManager}
+ * so they survive process death.  A refresh is only ever performed once at
+ * a time; all callers requesting a refresh while one is in flight wait for
+ * that one instead of logging in again themselves.  After a refresh has
+ * failed, e.g. because the device is offline, no further one is attempted
+ * until an exponentially growing backoff delay has passed.
+ */
+public final class AuthTokenManager implements NetworkUtil.TokenRefresher {
+
+    /** Account user data key for the token expiry time (epoch millis). */
+    private static final String KEY_TOKEN_EXPIRY = "tokenExpiry";
+
+    /** The instance (singleton access). */
+    private static AuthTokenManager sInstance;
+
+    /** The account manager. */
+    private final AccountManager mAccountManager;
+    /** Background thread for proactive refreshes. */
+    private final ScheduledExecutorService mExecutor =
+            Executors.newSingleThreadScheduledExecutor();
+
+    /** Lock for all fields below. */
+    private final Object mLock = new Object();
+    /** The cached token, or {@code null} if it has not been loaded yet. */
+    private String mToken = null;
+    /** The expiry time of {@link #mToken} (epoch millis). */
+    private long mExpiresAt = 0L;
+    /** The refresh that is currently in flight, if any. */
+    private FutureTask<String> mRefreshTask = null;
+    /** The scheduled proactive refresh, if any. */
+    private ScheduledFuture<?> mScheduledRefresh = null;
+    /** Number of consecutive failed refreshes. */
+    private int mFailedRefreshes = 0;
+    /** When the last refresh has failed (epoch millis). */
+    private long mLastFailedRefreshAt = 0L;
+
+    /**
+     * Private constructor for singleton access.
+     *
+     * @param context The context.
+     */
+    private AuthTokenManager(Context context) {
+        mAccountManager = AccountManager.get(context.getApplicationContext());
+        NetworkUtil.getAuthenticated().setTokenRefresher(this);
+    }
+
+    /**
+     * Return the instance of this manager.
+     *
+     * @param context The context.
+     * @return The instance.
+     */
+    @NonNull
+    public static synchronized AuthTokenManager getInstance(@NonNull Context context) {
+        if (sInstance == null) {
+            sInstance = new AuthTokenManager(context);
+        }
+
+        return sInstance;
+    }
+
+    /**
+     * Return the DEvid account on this device, if there is one.
+     *
+     * @return The account.
+     */
+    @Nullable
+    public Account getAccount() {
+        Account[] accounts = mAccountManager.getAccountsByType(Constants.ACCOUNT_TYPE);
+        return accounts.length == 0 ? null : accounts[0];
+    }
+
+    /**
+     * Load the stored token into the shared authenticated
+     * {@link NetworkUtil} instance, refreshing it if necessary.
+     * This should be called once when the app starts.
+     */
+    public void restore() {
+        mExecutor.execute(this::getAuthToken);
+    }
+
+    /**
+     * Return a valid authentication token.
+     * The cached token is returned if it is still valid; otherwise, a new one
+     * is obtained from the backend, which may block for a network round trip.
+     *
+     * @return The token, or {@code null} if the user is not logged in or the
+     *         token could not be refreshed.
+     */
+    @Nullable
+    @WorkerThread
+    public String getAuthToken() {
+        Account account = getAccount();
+        if (account == null) {
+            return null;
+        }
+
+        long now = System.currentTimeMillis();
+        synchronized (mLock) {
+            if (mToken == null) {
+                loadStoredToken(account);
+            }
+            if (mToken != null && now < mExpiresAt) {
+                scheduleRefreshLocked();
+                return mToken;
+            }
+        }
+
+        return refresh(account);
+    }
+
+    /**
+     * Return the cached token without ever touching the network.
+     *
+     * @return The token, or {@code null} if there is no valid token in memory.
+     */
+    @Nullable
+    public String peekAuthToken() {
+        synchronized (mLock) {
+            return mToken != null && System.currentTimeMillis() < mExpiresAt ? mToken : null;
+        }
+    }
+
+    /**
+     * Obtain a new token from the backend.
+     * If a refresh is in flight already, this waits for that one to finish
+     * and returns its result rather than starting another one.  If the last
+     * refresh has failed recently, this fails right away.
+     *
+     * @param account The account to refresh the token of.
+     * @return The new token, or {@code null} if the refresh failed.
+     */
+    @Nullable
+    @WorkerThread
+    public String refresh(@NonNull Account account) {
+        FutureTask<String> task;
+        boolean isOwner;
+        synchronized (mLock) {
+            isOwner = mRefreshTask == null;
+            if (isOwner && isBackingOffLocked()) {
+                return null;
+            }
+            task = getRefreshTaskLocked(account);
+        }
+
+        return awaitRefresh(task, isOwner);
+    }
+
+    /**
+     * Run a refresh task if we created it, and wait for its result.
+     *
+     * @param task The refresh task.
+     * @param isOwner Whether the calling thread created the task.
+     * @return The new token, or {@code null} if the refresh failed.
+     */
+    @Nullable
+    private String awaitRefresh(@NonNull FutureTask<String> task, boolean isOwner) {
+        if (isOwner) {
+            task.run();
+        }
+
+        String token = null;
+        try {
+            token = task.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            Log.e(Constants.LOG_TAG, "Token refresh failed", e.getCause());
+        }
+
+        if (isOwner) {
+            synchronized (mLock) {
+                mRefreshTask = null;
+                if (token == null) {
+                    mFailedRefreshes++;
+                    mLastFailedRefreshAt = System.currentTimeMillis();
+                }
+            }
+        }
+        return token;
+    }
+
+    /**
+     * {@inheritDoc}
+     * If the token has been rotated already since the rejected one was
+     * handed out, the current one is returned without another refresh.
+     */
+    @Nullable
+    @Override
+    @WorkerThread
+    public String refreshRejectedToken(@NonNull String rejectedToken) {
+        Account account = getAccount();
+        if (account == null) {
+            return null;
+        }
+
+        FutureTask<String> task;
+        boolean isOwner;
+        synchronized (mLock) {
+            if (mToken != null && !mToken.equals(rejectedToken)) {
+                return mToken;
+            }
+
+            isOwner = mRefreshTask == null;
+            if (isOwner && isBackingOffLocked()) {
+                return null;
+            }
+            if (isOwner) {
+                // We are the first to notice; don't hand it out again
+                mAccountManager.invalidateAuthToken(Constants.ACCOUNT_TYPE, rejectedToken);
+                mToken = null;
+                mExpiresAt = 0L;
+                cancelScheduledRefreshLocked();
+            }
+            task = getRefreshTaskLocked(account);
+        }
+
+        return awaitRefresh(task, isOwner);
+    }
+
+    /**
+     * Store a token that was just obtained from a login.
+     *
+     * @param account The account the token belongs to.
+     * @param token The token.
+     */
+    public void setAuthToken(@NonNull Account account, @NonNull String token) {
+        long expiresAt = parseExpiry(token, System.currentTimeMillis());
+        mAccountManager.setAuthToken(account, Constants.AUTH_TOKEN_TYPE, token);
+        mAccountManager.setUserData(account, KEY_TOKEN_EXPIRY, Long.toString(expiresAt));
+
+        synchronized (mLock) {
+            mToken = token;
+            mExpiresAt = expiresAt;
+            mFailedRefreshes = 0;
+            NetworkUtil.getAuthenticated().setAuthToken(token);
+            cancelScheduledRefreshLocked();
+            scheduleRefreshLocked();
+        }
+    }
+
+    /**
+     * Return the stored expiry time of a token that was set with
+     * {@link #setAuthToken}.
+     *
+     * @param account The account.
+     * @return The expiry time (epoch millis), or 0 if unknown.
+     */
+    public long getStoredExpiry(@NonNull Account account) {
+        String expiry = mAccountManager.getUserData(account, KEY_TOKEN_EXPIRY);
+        try {
+            return expiry == null ? 0L : Long.parseLong(expiry);
+        } catch (NumberFormatException e) {
+            return 0L;
+        }
+    }
+
+    /**
+     * Mark a token as invalid, e.g. because the backend rejected it.
+     * The next call to {@link #getAuthToken} will obtain a new one.
+     *
+     * @param token The token to invalidate.
+     */
+    public void invalidate(@NonNull String token) {
+        mAccountManager.invalidateAuthToken(Constants.ACCOUNT_TYPE, token);
+        synchronized (mLock) {
+            if (token.equals(mToken)) {
+                mToken = null;
+                mExpiresAt = 0L;
+                NetworkUtil.getAuthenticated().setAuthToken(null);
+                cancelScheduledRefreshLocked();
+            }
+        }
+    }
+
+    /**
+     * Log in again with the stored credentials and store the new token.
+     *
+     * @param account The account.
+     * @return The new token, or {@code null} if the login failed.
+     */
+    @Nullable
+    private String performRefresh(@NonNull Account account) {
+        // TODO: Don't store the password on the device
+        String password = mAccountManager.getPassword(account);
+        if (password == null) {
+            return null;
+        }
+
+        Result<LoggedInUser> result = DataContainer.get().getLoginRepository()
+                .refresh(account.name, password);
+        if (!(result instanceof Result.Success)) {
+            return null;
+        }
+
+        String token = ((Result.Success<LoggedInUser>) result).getData().getAuthToken();
+        setAuthToken(account, token);
+        return token;
+    }
+
+    /**
+     * Return the refresh task that is in flight, or create a new one.
+     * The caller must hold {@link #mLock}.
+     *
+     * @param account The account to refresh the token of.
+     * @return The refresh task.
+     */
+    @NonNull
+    private FutureTask<String> getRefreshTaskLocked(@NonNull Account account) {
+        if (mRefreshTask == null) {
+            mRefreshTask = new FutureTask<>(() -> performRefresh(account));
+        }
+
+        return mRefreshTask;
+    }
+
+    /**
+     * Load the token and its expiry from the account manager.
+     * The caller must hold {@link #mLock}.
+     *
+     * @param account The account.
+     */
+    private void loadStoredToken(@NonNull Account account) {
+        String token = mAccountManager.peekAuthToken(account, Constants.AUTH_TOKEN_TYPE);
+        if (token != null) {
+            mToken = token;
+            mExpiresAt = getStoredExpiry(account);
+            NetworkUtil.getAuthenticated().setAuthToken(token);
+        }
+    }
+
+    /**
+     * Return whether the last refresh has failed too recently to try again.
+     * The caller must hold {@link #mLock}.
+     *
+     * @return Whether no refresh may be attempted right now.
+     */
+    private boolean isBackingOffLocked() {
+        return mFailedRefreshes > 0 && System.currentTimeMillis()
+                < mLastFailedRefreshAt + getBackoffDelay(mFailedRefreshes);
+    }
+
+    /**
+     * Schedule a background refresh shortly before the current token expires,
+     * unless one is scheduled already.  The caller must hold {@link #mLock}.
+     */
+    private void scheduleRefreshLocked() {
+        if (mScheduledRefresh != null || mToken == null) {
+            return;
+        }
+
+        long delay = getRefreshDelay(mExpiresAt, System.currentTimeMillis(), mFailedRefreshes);
+        mScheduledRefresh = mExecutor.schedule(() -> {
+            synchronized (mLock) {
+                mScheduledRefresh = null;
+            }
+            Account account = getAccount();
+            if (account != null) {
+                refresh(account);
+            }
+        }, delay, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Return the delay before the next background refresh.
+     * This is {@link Constants.Auth#TOKEN_REFRESH_MARGIN_MS} before the token
+     * expires, but never less than the backoff delay, even if the token
+     * expires soon or has a short lifetime.
+     *
+     * @param expiresAt The expiry time of the token (epoch millis).
+     * @param now The current time (epoch millis).
+     * @param failedRefreshes The number of consecutive failed refreshes.
+     * @return The delay in milliseconds.
+     */
+    static long getRefreshDelay(long expiresAt, long now, int failedRefreshes) {
+        long delay = expiresAt - Constants.Auth.TOKEN_REFRESH_MARGIN_MS - now;
+        return Math.max(delay, getBackoffDelay(failedRefreshes));
+    }
+
+    /**
+     * Return the minimum delay before the next refresh attempt.
+     *
+     * @param failedRefreshes The number of consecutive failed refreshes.
+     * @return The delay in milliseconds.
+     */
+    static long getBackoffDelay(int failedRefreshes) {
+        int exponent = Math.min(failedRefreshes, 16);
+        return Math.min(
+                Constants.Auth.MIN_REFRESH_DELAY_MS << exponent,
+                Constants.Auth.MAX_REFRESH_BACKOFF_MS
+        );
+    }
+
+    /** Cancel the scheduled refresh, if any.  The caller must hold {@link #mLock}. */
+    private void cancelScheduledRefreshLocked() {
+        if (mScheduledRefresh != null) {
+            mScheduledRefresh.cancel(false);
+            mScheduledRefresh = null;
+        }
+    }
+
+    /**
+     * Determine when a token expires.
+     * Tokens in JWT format carry their expiry in the {@code exp} claim; for
+     * anything else, {@link Constants.Auth#DEFAULT_TOKEN_LIFETIME_MS} is
+     * assumed.
+     *
+     * @param token The token.
+     * @param now The current time (epoch millis).
+     * @return The expiry time (epoch millis).
+     */
+    static long parseExpiry(@NonNull String token, long now) {
+        return parseExpiry(
+                token,
+                now,
+                encoded -> Base64.decode(encoded, Base64.URL_SAFE | Base64.NO_WRAP)
+        );
+    }
+
+    /**
+     * Determine when a token expires, using a specific Base64 decoder.
+     *
+     * @param token The token.
+     * @param now The current time (epoch millis).
+     * @param decoder The decoder for the URL safe Base64 encoded JWT payload.
+     * @return The expiry time (epoch millis).
+     * @see #parseExpiry(String, long)
+     */
+    static long parseExpiry(@NonNull String token, long now, @NonNull Base64Decoder decoder) {
+        String[] parts = token.split("\\.");
+        if (parts.length == 3) {
+            try {
+                byte[] payload = decoder.decode(parts[1]);
+                JSONObject claims = new JSONObject(new String(payload, StandardCharsets.UTF_8));
+                if (claims.has("exp")) {
+                    return claims.getLong("exp") * 1000L;
+                }
+            } catch (IllegalArgumentException | JSONException e) {
+                // Not a JWT after all
+            }
+        }
+
+        return now + Constants.Auth.DEFAULT_TOKEN_LIFETIME_MS;
+    }
+
+    /**
+     * Decodes URL safe Base64 without padding.
+     * Only exists so the JVM unit tests can replace {@link Base64}.
+     */
+    interface Base64Decoder {
+        /**
+         * Decode a string.
+         *
+         * @param encoded The encoded string.
+         * @return The decoded bytes.
+         * @throws IllegalArgumentException If the string is not valid Base64.
+         */
+        byte[] decode(String encoded);
+    }
+
+}
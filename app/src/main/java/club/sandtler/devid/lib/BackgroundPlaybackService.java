@@ -0,0 +1,387 @@
+/*
+ * Copyright (c) 2019 Felix Kopp <sandtler@sandtler.club>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package club.sandtler.devid.lib;
+
+import android.app.Notification;
+import android.app.PendingIntent;
+import android.app.Service;
+import android.content.Context;
+import android.content.Intent;
+import android.graphics.Bitmap;
+import android.os.Handler;
+import android.os.IBinder;
+import android.os.PowerManager;
+import android.util.Log;
+
+import androidx.annotation.MainThread;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.core.app.NotificationCompat;
+import androidx.core.content.ContextCompat;
+
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.ExoPlayerFactory;
+import com.google.android.exoplayer2.Player;
+import com.google.android.exoplayer2.Renderer;
+import com.google.android.exoplayer2.RenderersFactory;
+import com.google.android.exoplayer2.SimpleExoPlayer;
+import com.google.android.exoplayer2.audio.MediaCodecAudioRenderer;
+import com.google.android.exoplayer2.mediacodec.MediaCodecSelector;
+import com.google.android.exoplayer2.source.MediaSource;
+import com.google.android.exoplayer2.source.ProgressiveMediaSource;
+import com.google.android.exoplayer2.trackselection.DefaultTrackSelector;
+import com.google.android.exoplayer2.ui.PlayerNotificationManager;
+
+import club.sandtler.devid.R;
+import club.sandtler.devid.data.DataContainer;
+import club.sandtler.devid.data.Result;
+import club.sandtler.devid.data.WatchProgressRepository;
+import club.sandtler.devid.data.db.AppDatabase;
+import club.sandtler.devid.data.model.Video;
+import club.sandtler.devid.ui.VideoPlayerActivity;
+
+/**
+ * Foreground service that keeps playing the audio of a video after the user
+ * has left the player activity.
+ * <p>
+ * The player in here has no video renderer at all, so nothing is decoded or
+ * rendered but the audio track.  For adaptive streams, this also means that
+ * the track selector only ever selects audio tracks and no video data is
+ * downloaded.  The playback position is persisted just like in the regular
+ * player, and handed back to it with {@link #takeOver} when the user returns.
+ */
+public class BackgroundPlaybackService extends Service
+        implements Player.EventListener,
+        PlayerNotificationManager.NotificationListener,
+        PlayerNotificationManager.MediaDescriptionAdapter {
+
+    /** Intent extra for specifying the video id. */
+    private static final String EXTRA_VIDEO_ID =
+            "club.sandtler.devid.lib.BackgroundPlaybackService.VIDEO_ID";
+    /** Intent extra for specifying the playback position to start at. */
+    private static final String EXTRA_POSITION =
+            "club.sandtler.devid.lib.BackgroundPlaybackService.POSITION";
+    /** Notification id for the playback notification. */
+    private static final int NOTIFICATION_ID = 2;
+
+    /** The running instance, if any.  Only accessed from the UI thread. */
+    private static BackgroundPlaybackService sInstance;
+
+    /** The audio-only player. */
+    private SimpleExoPlayer mPlayer;
+    /** Manages the media style notification. */
+    private PlayerNotificationManager mNotificationManager;
+    /** Keeps the CPU awake while playing. */
+    private PowerManager.WakeLock mWakeLock;
+    /** The repository for persisting the playback position. */
+    private WatchProgressRepository mProgressRepository;
+    /** The id of the video being played. */
+    private String mVideoId;
+    /** The title of the video being played, if it has been loaded already. */
+    private String mTitle;
+
+    /** Handler for periodically saving the playback position. */
+    private final Handler mHandler = new Handler();
+    /** Saves the playback position and reschedules itself. */
+    private final Runnable mSaveProgressRunnable = new Runnable() {
+
+        @Override
+        public void run() {
+            saveProgress();
+            mHandler.postDelayed(this, Constants.Playback.PROGRESS_SAVE_INTERVAL_MS);
+        }
+
+    };
+
+    /**
+     * Continue playing a video in the background.
+     *
+     * @param context The context.
+     * @param videoId The video id.
+     * @param positionMs The playback position to start at, in milliseconds.
+     */
+    public static void start(@NonNull Context context, @NonNull String videoId, long positionMs) {
+        Intent intent = new Intent(context, BackgroundPlaybackService.class);
+        intent.putExtra(EXTRA_VIDEO_ID, videoId);
+        intent.putExtra(EXTRA_POSITION, positionMs);
+        ContextCompat.startForegroundService(context, intent);
+    }
+
+    /**
+     * Stop background playback so that the regular player can take over.
+     *
+     * @param context The context.
+     * @param videoId The video id the caller is about to play.
+     * @return The current background playback position if the service was
+     *         playing the same video, {@code null} otherwise.
+     */
+    @Nullable
+    @MainThread
+    public static Long takeOver(@NonNull Context context, @Nullable String videoId) {
+        BackgroundPlaybackService instance = sInstance;
+        if (instance == null) {
+            // The service might not have been created yet
+            context.stopService(new Intent(context, BackgroundPlaybackService.class));
+            return null;
+        }
+
+        Long position = null;
+        if (instance.mVideoId != null && instance.mVideoId.equals(videoId)) {
+            position = instance.mPlayer.getCurrentPosition();
+        }
+        instance.stopSelf();
+
+        return position;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void onCreate() {
+        super.onCreate();
+        sInstance = this;
+
+        mProgressRepository = WatchProgressRepository.getInstance(
+                AppDatabase.getInstance(this).watchProgressDao()
+        );
+
+        mPlayer = ExoPlayerFactory.newSimpleInstance(
+                this,
+                createAudioOnlyRenderersFactory(),
+                new DefaultTrackSelector(),
+                PlayerLoadProfile.select(this).createLoadControl()
+        );
+        mPlayer.addListener(this);
+
+        PowerManager powerManager = (PowerManager) getSystemService(POWER_SERVICE);
+        mWakeLock = powerManager.newWakeLock(
+                PowerManager.PARTIAL_WAKE_LOCK,
+                "devid:BackgroundPlayback"
+        );
+        mWakeLock.setReferenceCounted(false);
+
+        mNotificationManager = PlayerNotificationManager.createWithNotificationChannel(
+                this,
+                Constants.Playback.NOTIFICATION_CHANNEL_ID,
+                R.string.playback_channel_name,
+                NOTIFICATION_ID,
+                this
+        );
+        mNotificationManager.setNotificationListener(this);
+        mNotificationManager.setSmallIcon(R.drawable.ic_play_arrow_white_48dp);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public int onStartCommand(Intent intent, int flags, int startId) {
+        // Must happen for every start, the player notification may come late or never
+        startForeground(NOTIFICATION_ID, createPlaceholderNotification());
+
+        String videoId = intent == null ? null : intent.getStringExtra(EXTRA_VIDEO_ID);
+        if (videoId == null) {
+            stopSelf();
+            return START_NOT_STICKY;
+        }
+
+        if (!videoId.equals(mVideoId)) {
+            saveProgress();
+            mVideoId = videoId;
+            mTitle = null;
+            loadTitle();
+        }
+
+        mPlayer.seekTo(intent.getLongExtra(EXTRA_POSITION, 0L));
+        mPlayer.prepare(createMediaSource(), false, false);
+        mPlayer.setPlayWhenReady(true);
+        mNotificationManager.setPlayer(mPlayer);
+
+        mHandler.removeCallbacks(mSaveProgressRunnable);
+        mHandler.postDelayed(mSaveProgressRunnable, Constants.Playback.PROGRESS_SAVE_INTERVAL_MS);
+
+        return START_NOT_STICKY;
+    }
+
+    /**
+     * Create the notification to show until the player notification is posted.
+     * It has the same id, so the player notification replaces it.
+     *
+     * @return The notification.
+     */
+    @NonNull
+    private Notification createPlaceholderNotification() {
+        return new NotificationCompat.Builder(this, Constants.Playback.NOTIFICATION_CHANNEL_ID)
+                .setSmallIcon(R.drawable.ic_play_arrow_white_48dp)
+                .setContentTitle(mTitle == null ? getString(R.string.app_name) : mTitle)
+                .setOngoing(true)
+                .build();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void onDestroy() {
+        super.onDestroy();
+        sInstance = null;
+
+        mHandler.removeCallbacks(mSaveProgressRunnable);
+        saveProgress();
+        mProgressRepository.flush();
+
+        mNotificationManager.setPlayer(null);
+        mPlayer.release();
+        mPlayer = null;
+        mWakeLock.release();
+    }
+
+    /** {@inheritDoc} */
+    @Nullable
+    @Override
+    public IBinder onBind(Intent intent) {
+        return null;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void onPlayerStateChanged(boolean playWhenReady, int playbackState) {
+        switch (playbackState) {
+            case Player.STATE_BUFFERING:
+            case Player.STATE_READY:
+                if (playWhenReady) {
+                    mWakeLock.acquire();
+                } else {
+                    mWakeLock.release();
+                }
+                break;
+            case Player.STATE_ENDED:
+                stopSelf();
+                // fall through
+            default:
+                mWakeLock.release();
+                break;
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void onNotificationPosted(int notificationId, Notification notification,
+                                     boolean ongoing) {
+        if (ongoing) {
+            startForeground(notificationId, notification);
+        } else {
+            // Paused; allow the user to dismiss the notification
+            stopForeground(false);
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void onNotificationCancelled(int notificationId, boolean dismissedByUser) {
+        stopSelf();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public String getCurrentContentTitle(Player player) {
+        return mTitle == null ? getString(R.string.app_name) : mTitle;
+    }
+
+    /** {@inheritDoc} */
+    @Nullable
+    @Override
+    public PendingIntent createCurrentContentIntent(Player player) {
+        Intent intent = new Intent(this, VideoPlayerActivity.class);
+        intent.putExtra(VideoPlayerActivity.EXTRA_VIDEO_ID, mVideoId);
+        return PendingIntent.getActivity(this, 0, intent, PendingIntent.FLAG_UPDATE_CURRENT);
+    }
+
+    /** {@inheritDoc} */
+    @Nullable
+    @Override
+    public String getCurrentContentText(Player player) {
+        return null;
+    }
+
+    /** {@inheritDoc} */
+    @Nullable
+    @Override
+    public Bitmap getCurrentLargeIcon(Player player,
+                                      PlayerNotificationManager.BitmapCallback callback) {
+        return null;
+    }
+
+    /**
+     * Create a renderers factory that only creates an audio renderer.
+     * Without a video renderer, no video decoder is ever allocated and the
+     * track selector does not select any video tracks.
+     *
+     * @return The renderers factory.
+     */
+    private RenderersFactory createAudioOnlyRenderersFactory() {
+        return (handler, videoListener, audioListener, textOutput, metadataOutput,
+                drmSessionManager) -> new Renderer[] {
+                new MediaCodecAudioRenderer(this, MediaCodecSelector.DEFAULT, handler, audioListener)
+        };
+    }
+
+    /**
+     * Craft a new media source for the current video id.
+     *
+     * @return The media source.
+     */
+    private MediaSource createMediaSource() {
+        VideoDownloadManager downloadManager = VideoDownloadManager.getInstance(this);
+        return new ProgressiveMediaSource.Factory(downloadManager.buildDataSourceFactory(mVideoId))
+                .createMediaSource(VideoDownloadManager.getVideoUri(mVideoId));
+    }
+
+    /** Asynchronously load the title of the current video for the notification. */
+    private void loadTitle() {
+        final String videoId = mVideoId;
+        new Promise<>(() -> DataContainer.get().getVideoRepository().getById(videoId))
+                .withDeadline(Constants.Timeouts.UI_DEADLINE_MS)
+                .withPriority(NetworkUtil.BACKEND_HOST, NetworkDispatcher.PRIORITY_VISIBLE)
+                .then(result -> {
+                    if (result instanceof Result.Success && videoId.equals(mVideoId)
+                            && mPlayer != null) {
+                        mTitle = ((Result.Success<Video>) result).getData().getTitle();
+                        mNotificationManager.invalidate();
+                    }
+                })
+                .expect(error -> Log.w(Constants.LOG_TAG, "Unable to load video title", error))
+                .execute();
+    }
+
+    /**
+     * Hand the current playback position over to the repository.
+     * If the video is (almost) over, the position is reset so the video
+     * starts from the beginning the next time.
+     */
+    private void saveProgress() {
+        if (mPlayer == null || mVideoId == null) {
+            return;
+        }
+
+        long position = mPlayer.getCurrentPosition();
+        long duration = mPlayer.getDuration();
+        if (duration != C.TIME_UNSET
+                && duration - position < Constants.Playback.PROGRESS_END_THRESHOLD_MS) {
+            position = 0L;
+        }
+
+        mProgressRepository.setPosition(mVideoId, position);
+    }
+
+}
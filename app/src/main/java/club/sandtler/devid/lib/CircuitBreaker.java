@@ -0,0 +1,153 @@
+/*
+ * Copyright (c) 2019 Felix Kopp <sandtler@sandtler.club>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package club.sandtler.devid.lib;
+
+import java.io.IOException;
+
+/**
+ * Circuit breaker for requests to a single host.
+ * <p>
+ * After {@link #getFailureThreshold()} consecutive failures, the circuit
+ * <i>opens</i> and all requests fail immediately for a cool-down period
+ * instead of piling up on a server that is down anyway.  After that, a single
+ * trial request is let through (<i>half-open</i>).  If it succeeds, the
+ * circuit closes again; otherwise, it opens for another cool-down period.
+ * If the outcome of the trial request is never reported, another one is let
+ * through after the cool-down period, so the circuit can't get stuck.
+ * <p>
+ * This class is thread safe.
+ */
+public final class CircuitBreaker {
+
+    /** Circuit state: requests pass. */
+    public static final int STATE_CLOSED = 0;
+    /** Circuit state: requests fail immediately. */
+    public static final int STATE_OPEN = 1;
+    /** Circuit state: a single trial request is in flight. */
+    public static final int STATE_HALF_OPEN = 2;
+
+    /** Thrown instead of performing a request while the circuit is open. */
+    public static class OpenException extends IOException {
+
+        /**
+         * Create a new exception.
+         *
+         * @param host The host whose circuit is open.
+         */
+        OpenException(String host) {
+            super("Circuit open for " + host);
+        }
+
+    }
+
+    /** The host this breaker is responsible for. */
+    private final String mHost;
+    /** Consecutive failures after which the circuit opens. */
+    private final int mFailureThreshold;
+    /** How long the circuit stays open, in milliseconds. */
+    private final long mOpenDurationMs;
+    /** The clock. */
+    private final RetryPolicy.Clock mClock;
+
+    /** The current state. */
+    private int mState = STATE_CLOSED;
+    /** The number of consecutive failures. */
+    private int mFailures = 0;
+    /** The time the circuit was opened at. */
+    private long mOpenedAt = 0L;
+    /** The time the current trial request was let through at. */
+    private long mTrialStartedAt = 0L;
+
+    /**
+     * Create a new circuit breaker.
+     *
+     * @param host The host this breaker is responsible for.
+     * @param failureThreshold Consecutive failures after which the circuit opens.
+     * @param openDurationMs How long the circuit stays open, in milliseconds.
+     * @param clock The clock.
+     */
+    CircuitBreaker(String host, int failureThreshold, long openDurationMs,
+                   RetryPolicy.Clock clock) {
+        mHost = host;
+        mFailureThreshold = failureThreshold;
+        mOpenDurationMs = openDurationMs;
+        mClock = clock;
+    }
+
+    /**
+     * Check whether a request may be performed right now.
+     *
+     * @throws OpenException If the circuit is open.
+     */
+    public synchronized void acquire() throws OpenException {
+        switch (mState) {
+            case STATE_CLOSED:
+                return;
+            case STATE_OPEN:
+                if (mClock.now() - mOpenedAt >= mOpenDurationMs) {
+                    mState = STATE_HALF_OPEN;
+                    mTrialStartedAt = mClock.now();
+                    return;
+                }
+                throw new OpenException(mHost);
+            case STATE_HALF_OPEN:
+            default:
+                if (mClock.now() - mTrialStartedAt >= mOpenDurationMs) {
+                    // The trial request's outcome was lost, let another one through
+                    mTrialStartedAt = mClock.now();
+                    return;
+                }
+                // Only the one trial request may pass
+                throw new OpenException(mHost);
+        }
+    }
+
+    /** Record a successful request. */
+    public synchronized void onSuccess() {
+        mState = STATE_CLOSED;
+        mFailures = 0;
+    }
+
+    /** Record a failed request. */
+    public synchronized void onFailure() {
+        mFailures++;
+        if (mState == STATE_HALF_OPEN || mFailures >= mFailureThreshold) {
+            mState = STATE_OPEN;
+            mOpenedAt = mClock.now();
+        }
+    }
+
+    /**
+     * Return the current state.
+     *
+     * @return The state.
+     */
+    public synchronized int getState() {
+        return mState;
+    }
+
+    /**
+     * Return the number of consecutive failures after which the circuit opens.
+     *
+     * @return The failure threshold.
+     */
+    public int getFailureThreshold() {
+        return mFailureThreshold;
+    }
+
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright (c) 2019 Felix Kopp <sandtler@sandtler.club>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package club.sandtler.devid.lib;
+
+import android.content.Context;
+import android.net.ConnectivityManager;
+import android.net.NetworkInfo;
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.util.Locale;
+
+/**
+ * Warms up the connections to the backend and the CDN right after startup.
+ * <p>
+ * The first request to a host has to resolve its name and perform the TCP
+ * and TLS handshakes, which easily takes several round trips on a mobile
+ * network.  Doing this in the background while the UI is still being set up
+ * means the first request the user is actually waiting for can reuse a
+ * pooled connection.
+ * <p>
+ * The time it takes to warm up each host is logged, as is the latency of the
+ * first backend request in {@link NetworkUtil}, so the effect can be
+ * measured by toggling {@link Constants.Warmup#ENABLED}.
+ */
+public final class ConnectionWarmer {
+
+    private ConnectionWarmer() {
+    }
+
+    /**
+     * Start warming up the connections to the backend and the CDN.
+     * This does not block; the actual work is queued on the
+     * {@link NetworkDispatcher} with the lowest priority, so it never delays
+     * a request the user is waiting for.  Nothing is done if warm-up is
+     * disabled or there is no network connection.
+     *
+     * @param context The context.
+     */
+    public static void warmUp(@NonNull Context context) {
+        if (!Constants.Warmup.ENABLED || !isConnected(context)) {
+            return;
+        }
+
+        NetworkDispatcher dispatcher = NetworkDispatcher.getDefault();
+        dispatcher.execute(
+                NetworkUtil.BACKEND_HOST,
+                NetworkDispatcher.PRIORITY_PREFETCH,
+                () -> warmUp(NetworkUtil.BACKEND_HOST, Constants.URLPaths.BACKEND_ROOT)
+        );
+        if (!NetworkUtil.CDN_HOST.equals(NetworkUtil.BACKEND_HOST)) {
+            dispatcher.execute(
+                    NetworkUtil.CDN_HOST,
+                    NetworkDispatcher.PRIORITY_PREFETCH,
+                    () -> warmUp(NetworkUtil.CDN_HOST, Constants.URLPaths.CDN_ROOT)
+            );
+        }
+    }
+
+    /**
+     * Resolve a host name and open a pooled connection to it.
+     * Errors are only logged, the real request will run into them again.
+     *
+     * @param host The host name.
+     * @param rootUrl The root URL of the host.
+     */
+    private static void warmUp(String host, String rootUrl) {
+        long start = SystemClock.elapsedRealtime();
+        try {
+            InetAddress.getAllByName(host);
+            long resolved = SystemClock.elapsedRealtime();
+
+            NetworkUtil.preconnect(rootUrl);
+            long connected = SystemClock.elapsedRealtime();
+
+            Log.i(Constants.LOG_TAG, String.format(
+                    Locale.ROOT,
+                    "Warmed up %s in %d ms (DNS %d ms, connection %d ms)",
+                    host,
+                    connected - start,
+                    resolved - start,
+                    connected - resolved
+            ));
+        } catch (IOException e) {
+            Log.w(Constants.LOG_TAG, "Unable to warm up connection to " + host, e);
+        }
+    }
+
+    /**
+     * Return whether there is a network connection.
+     *
+     * @param context The context.
+     * @return Whether the device is online.
+     */
+    private static boolean isConnected(Context context) {
+        ConnectivityManager cm =
+                (ConnectivityManager) context.getSystemService(Context.CONNECTIVITY_SERVICE);
+        NetworkInfo info = cm == null ? null : cm.getActiveNetworkInfo();
+        return info != null && info.isConnected();
+    }
+
+}
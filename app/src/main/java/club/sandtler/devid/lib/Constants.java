@@ -70,6 +70,12 @@ public final class Constants {
         /** Path to POST the user's own vote value for a video. */
         public static final String VIDEO_POST_VOTE = "/video/vote";
 
+        /**
+         * Path to retrieve a page of the home feed by the page index
+         * (starting at 0) and the amount of videos per page.
+         */
+        public static final String VIDEO_FEED = "/video/feed?page=%d&count=%d";
+
         /**
          * CDN path to retrieve a raw video file in default quality.
          * Different qualities are to be supported in a later version.
@@ -83,25 +89,357 @@ public final class Constants {
          */
         public static final String CDN_VIDEO_DEFAULT = "/video/%s";
 
+        /**
+         * CDN path to retrieve a sprite sheet of seek preview thumbnails
+         * by the video id and the index of the sheet.
+         *
+         * @see Constants.SeekPreview
+         */
+        public static final String CDN_VIDEO_SEEK_SPRITE = "/sprite/%s/%d";
+
+        /**
+         * CDN path to retrieve the thumbnail of a video by its id and the
+         * width of the variant, which is one of {@link Thumbnails#WIDTHS}.
+         */
+        public static final String CDN_VIDEO_THUMBNAIL = "/thumb/%s/%d";
+
         private URLPaths() {
         }
 
     }
 
+    /** Settings for reacting to memory pressure, see {@link MemoryGovernor}. */
+    public static final class Memory {
+
+        /**
+         * Devices with a memory class of at most this many megabytes are
+         * considered to have little memory, and caches are trimmed harder.
+         */
+        public static final int LOW_MEMORY_CLASS_MB = 64;
+
+        /** The memory class to assume until the actual one is known. */
+        public static final int DEFAULT_MEMORY_CLASS_MB = 64;
+
+        private Memory() {
+        }
+
+    }
+
     /** Sizes for in-memory, database and storage cache. */
     public static final class CacheSize {
 
-        /** The maximum amount of entries in the in-memory user cache. */
-        public static final long MAX_USER_MEM = 512;
+        /** The share of the memory class for the in-memory user cache. */
+        public static final float USER_MEM_SHARE = 1f / 256;
+
+        /** The share of the memory class for the in-memory video meta cache. */
+        public static final float VIDEO_MEM_SHARE = 1f / 128;
+
+        /** The minimum size of an in-memory model cache in bytes. */
+        public static final int MIN_MODEL_MEM_BYTES = 128 * 1024;
 
-        /** The maximum amount of entries in the in-memory video meta cache. */
-        public static final long MAX_VIDEO_MEM = 512;
+        /** The maximum size of an in-memory model cache in bytes. */
+        public static final int MAX_MODEL_MEM_BYTES = 4 * 1024 * 1024;
+
+        /** How long to remember that a user or video doesn't exist, in milliseconds. */
+        public static final long NEGATIVE_TTL_MS = 2 * 60 * 1000;
+
+        /** The maximum amount of users or videos to remember as nonexistent. */
+        public static final int MAX_NEGATIVE_ENTRIES = 256;
 
         private CacheSize() {
         }
 
     }
 
+    /** Settings for HTTP content compression. */
+    public static final class Compression {
+
+        /**
+         * Request bodies of at least this size are sent gzip compressed.
+         * Smaller ones are not worth the CPU time and header overhead.
+         */
+        public static final int MIN_REQUEST_BODY_BYTES = 1024;
+
+        private Compression() {
+        }
+
+    }
+
+    /** Network timeouts, per endpoint. */
+    public static final class Timeouts {
+
+        /** Timeout for connecting to the backend. */
+        public static final int BACKEND_CONNECT_MS = 10000;
+
+        /** Timeout for reading a response from the backend. */
+        public static final int BACKEND_READ_MS = 15000;
+
+        /** Timeout for connecting to the CDN. */
+        public static final int CDN_CONNECT_MS = 10000;
+
+        /** Timeout for reading a (possibly large) response from the CDN. */
+        public static final int CDN_READ_MS = 30000;
+
+        /** Overall deadline for loading data that the user is waiting for. */
+        public static final long UI_DEADLINE_MS = 20000;
+
+        private Timeouts() {
+        }
+
+    }
+
+    /** Settings for warming up connections at startup, see {@link ConnectionWarmer}. */
+    public static final class Warmup {
+
+        /**
+         * Whether to open connections to the backend and the CDN in the
+         * background right after the app has started.
+         */
+        public static final boolean ENABLED = true;
+
+        private Warmup() {
+        }
+
+    }
+
+    /** Settings for scheduling network requests, see {@link NetworkDispatcher}. */
+    public static final class Dispatcher {
+
+        /** The maximum amount of requests running at the same time. */
+        public static final int MAX_REQUESTS = 6;
+
+        /** The maximum amount of requests running for a single host. */
+        public static final int MAX_REQUESTS_PER_HOST = 4;
+
+        /**
+         * Waiting time after which a queued request is promoted by one
+         * priority level, so that unimportant requests don't starve.
+         */
+        public static final long AGING_INTERVAL_MS = 2000;
+
+        /** How long idle dispatcher threads are kept around. */
+        public static final long THREAD_KEEP_ALIVE_MS = 30000;
+
+        private Dispatcher() {
+        }
+
+    }
+
+    /** Settings for retrying failed network requests. */
+    public static final class Retry {
+
+        /** The maximum amount of attempts per request, including the first one. */
+        public static final int MAX_ATTEMPTS = 4;
+
+        /** Upper bound of the random delay before the first retry. */
+        public static final long BASE_DELAY_MS = 500;
+
+        /** Upper bound of the random delay before any retry. */
+        public static final long MAX_DELAY_MS = 8000;
+
+        /**
+         * Retry tokens earned per request; a retry costs one token.
+         * This limits retries to roughly 10% of all requests.
+         */
+        public static final double BUDGET_PER_REQUEST = 0.1;
+
+        /** The maximum amount of retry tokens that can be saved up. */
+        public static final double MAX_BUDGET = 10.0;
+
+        /** Consecutive failures after which requests to a host fail fast. */
+        public static final int CIRCUIT_FAILURE_THRESHOLD = 5;
+
+        /** How long requests to a failing host fail fast before trying again. */
+        public static final long CIRCUIT_OPEN_DURATION_MS = 30000;
+
+        private Retry() {
+        }
+
+    }
+
+    /** Settings for authentication tokens. */
+    public static final class Auth {
+
+        /**
+         * Assumed lifetime of tokens that don't carry an expiry time
+         * themselves, in milliseconds.
+         */
+        public static final long DEFAULT_TOKEN_LIFETIME_MS = 60 * 60 * 1000;
+
+        /** How long before its expiry a token is refreshed in the background. */
+        public static final long TOKEN_REFRESH_MARGIN_MS = 5 * 60 * 1000;
+
+        /**
+         * Minimum delay before a background refresh, so short-lived tokens
+         * don't cause back-to-back logins.  Doubled after every failed refresh.
+         */
+        public static final long MIN_REFRESH_DELAY_MS = 30 * 1000;
+
+        /** Maximum delay before retrying a failed refresh. */
+        public static final long MAX_REFRESH_BACKOFF_MS = 30 * 60 * 1000;
+
+        private Auth() {
+        }
+
+    }
+
+    /** Settings for video votes. */
+    public static final class Votes {
+
+        /**
+         * Time to wait after the last tap on a vote button before sending
+         * the vote to the backend.  Taps within this period are coalesced
+         * into a single request for the final state.
+         */
+        public static final long DEBOUNCE_MS = 600;
+
+        private Votes() {
+        }
+
+    }
+
+    /** Settings for the queue of votes cast while offline. */
+    public static final class VoteQueue {
+
+        /** The maximum amount of votes read from the database at once. */
+        public static final int BATCH_SIZE = 20;
+
+        /** Delay before the first retry after a failed flush. */
+        public static final long INITIAL_BACKOFF_MS = 5000;
+
+        /** The maximum delay between two retries. */
+        public static final long MAX_BACKOFF_MS = 15 * 60 * 1000;
+
+        private VoteQueue() {
+        }
+
+    }
+
+    /** Settings for the video player. */
+    public static final class Playback {
+
+        /** Interval in which the playback position is saved while playing. */
+        public static final long PROGRESS_SAVE_INTERVAL_MS = 5000;
+
+        /**
+         * Maximum delay before updated playback positions are written to the
+         * database.  All updates within this period are written in one batch.
+         */
+        public static final long PROGRESS_FLUSH_DELAY_MS = 15000;
+
+        /**
+         * If the remaining playback time is less than this when the player is
+         * closed, the video counts as watched and will start from the
+         * beginning the next time.
+         */
+        public static final long PROGRESS_END_THRESHOLD_MS = 10000;
+
+        /** Notification channel id for the background playback notification. */
+        public static final String NOTIFICATION_CHANNEL_ID = "playback";
+
+        private Playback() {
+        }
+
+    }
+
+    /**
+     * Layout of the seek preview sprite sheets on the CDN and settings for
+     * their in-memory caches.
+     * <p>
+     * Every sheet is a grid of {@link #TILE_COLUMNS} by {@link #TILE_ROWS}
+     * equally sized thumbnails, one for every {@link #TILE_INTERVAL_MS}
+     * milliseconds of the video, in row-major order.  The first sheet has
+     * index 0 and covers the first {@code TILE_COLUMNS * TILE_ROWS} tiles.
+     */
+    public static final class SeekPreview {
+
+        /** Time span covered by a single thumbnail tile, in milliseconds. */
+        public static final long TILE_INTERVAL_MS = 5000;
+
+        /** Number of tile columns per sprite sheet. */
+        public static final int TILE_COLUMNS = 10;
+
+        /** Number of tile rows per sprite sheet. */
+        public static final int TILE_ROWS = 10;
+
+        /** The maximum size of the decoded tile cache in bytes. */
+        public static final int MAX_TILE_CACHE_BYTES = 2 * 1024 * 1024;
+
+        /** The maximum amount of sprite sheets kept in memory. */
+        public static final int MAX_SHEET_CACHE_ENTRIES = 3;
+
+        private SeekPreview() {
+        }
+
+    }
+
+    /** Settings for the home feed. */
+    public static final class Feed {
+
+        /** The amount of videos requested per page. */
+        public static final int PAGE_SIZE = 20;
+
+        /**
+         * The maximum amount of pages kept in memory.  Pages far away from
+         * the visible ones are dropped, and loaded again when the user
+         * scrolls back to them.
+         */
+        public static final int MAX_PAGES = 5;
+
+        /**
+         * The next page is loaded once the user has scrolled to less than
+         * this many videos before the end of the loaded ones.
+         */
+        public static final int PREFETCH_DISTANCE = 10;
+
+        private Feed() {
+        }
+
+    }
+
+    /** Settings for video thumbnails. */
+    public static final class Thumbnails {
+
+        /** Widths of the thumbnail variants on the CDN in pixels, ascending. */
+        public static final int[] WIDTHS = {160, 320, 640, 1280};
+
+        /** The maximum size of the decoded thumbnail cache in bytes. */
+        public static final int MAX_MEM_CACHE_BYTES = 8 * 1024 * 1024;
+
+        /** The maximum size of the encoded thumbnail cache on disk in bytes. */
+        public static final long MAX_DISK_CACHE_BYTES = 32 * 1024 * 1024;
+
+        /** Name of the directory (relative to the app's cache dir) to cache thumbnails in. */
+        public static final String DISK_CACHE_DIRECTORY = "thumbnails";
+
+        /** The amount of threads for reading thumbnails from disk and decoding them. */
+        public static final int DECODE_THREADS = 2;
+
+        private Thumbnails() {
+        }
+
+    }
+
+    /** Settings for offline video downloads. */
+    public static final class Downloads {
+
+        /** Name of the directory (relative to the app's files dir) to store downloads in. */
+        public static final String DIRECTORY = "downloads";
+
+        /** The maximum amount of videos that are downloaded at the same time. */
+        public static final int MAX_PARALLEL = 2;
+
+        /** How often a failed download is retried before giving up. */
+        public static final int MIN_RETRY_COUNT = 5;
+
+        /** Notification channel id for the download progress notification. */
+        public static final String NOTIFICATION_CHANNEL_ID = "downloads";
+
+        private Downloads() {
+        }
+
+    }
+
     /**
      * The root URL for all backend requests.
      *
@@ -0,0 +1,279 @@
+/*
+ * Copyright (c) 2019 Felix Kopp <sandtler@sandtler.club>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package club.sandtler.devid.lib;
+
+import android.content.Context;
+import android.content.res.Resources;
+
+import androidx.annotation.NonNull;
+
+import java.text.DateFormat;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.Locale;
+
+import club.sandtler.devid.R;
+
+/**
+ * Shared, thread-safe formatter for absolute and relative points in time.
+ * <p>
+ * Date formats are expensive to create and not thread-safe, so every thread
+ * keeps its own instance that is only recreated when the default locale
+ * changes.  Relative times ("3 days ago") are rendered from plural resources
+ * and cached per unit and amount, so that rendering them for list items
+ * doesn't allocate anything once the cache is warm.
+ */
+public final class DateFormatter {
+
+    /** Relative time unit for anything less than a minute ago. */
+    static final int UNIT_NOW = 0;
+    /** Relative time unit for minutes. */
+    static final int UNIT_MINUTES = 1;
+    /** Relative time unit for hours. */
+    static final int UNIT_HOURS = 2;
+    /** Relative time unit for days. */
+    static final int UNIT_DAYS = 3;
+    /** Relative time unit for weeks. */
+    static final int UNIT_WEEKS = 4;
+    /** Relative time unit for months. */
+    static final int UNIT_MONTHS = 5;
+    /** Relative time unit for years. */
+    static final int UNIT_YEARS = 6;
+
+    /** Plural resource ids for every relative time unit except {@link #UNIT_NOW}. */
+    private static final int[] UNIT_PLURALS = {
+            0,
+            R.plurals.time_minutes_ago,
+            R.plurals.time_hours_ago,
+            R.plurals.time_days_ago,
+            R.plurals.time_weeks_ago,
+            R.plurals.time_months_ago,
+            R.plurals.time_years_ago,
+    };
+    /** Amounts per unit for which rendered relative times are cached. */
+    private static final int CACHED_AMOUNTS = 64;
+
+    private static final long MINUTE_MS = 60 * 1000L;
+    private static final long HOUR_MS = 60 * MINUTE_MS;
+    private static final long DAY_MS = 24 * HOUR_MS;
+
+    /** The instance (singleton access). */
+    private static DateFormatter sInstance;
+
+    /** The resources to load relative time strings from. */
+    private final Resources mResources;
+    /** Per-thread date and time format. */
+    private final ThreadLocal<CachedFormat> mDateTimeFormat = new ThreadLocal<CachedFormat>() {
+        @Override
+        protected CachedFormat initialValue() {
+            return new CachedFormat();
+        }
+    };
+
+    /** Rendered relative times, indexed by unit and amount. */
+    private final String[][] mRelativeCache = new String[UNIT_PLURALS.length][CACHED_AMOUNTS];
+    /** The locale {@link #mRelativeCache} was populated for. */
+    private Locale mRelativeLocale;
+
+    /**
+     * Create a new formatter.
+     *
+     * @param resources The resources to load relative time strings from.
+     */
+    DateFormatter(Resources resources) {
+        mResources = resources;
+    }
+
+    /**
+     * Return the instance of this formatter.
+     *
+     * @param context The context.
+     * @return The instance.
+     */
+    @NonNull
+    public static synchronized DateFormatter getInstance(@NonNull Context context) {
+        if (sInstance == null) {
+            sInstance = new DateFormatter(context.getApplicationContext().getResources());
+        }
+
+        return sInstance;
+    }
+
+    /**
+     * Format a point in time as date and time in the current locale.
+     * Formatting the same time again returns the previous result.
+     *
+     * @param time The time, in milliseconds since the epoch.
+     * @return The formatted date and time.
+     */
+    @NonNull
+    public String formatDateTime(long time) {
+        return mDateTimeFormat.get().format(time);
+    }
+
+    /**
+     * Format a point in time relative to now, e.g. "3 days ago".
+     *
+     * @param time The time, in milliseconds since the epoch.
+     * @return The formatted relative time.
+     */
+    @NonNull
+    public String formatRelative(long time) {
+        return formatRelative(time, System.currentTimeMillis());
+    }
+
+    /**
+     * Format a point in time relative to another one, e.g. "3 days ago".
+     * Points in the future are treated as "just now".
+     *
+     * @param time The time, in milliseconds since the epoch.
+     * @param now The time to format relative to, in milliseconds since the epoch.
+     * @return The formatted relative time.
+     */
+    @NonNull
+    public synchronized String formatRelative(long time, long now) {
+        long delta = now - time;
+        int unit = relativeUnit(delta);
+        long amount = relativeAmount(delta, unit);
+
+        Locale locale = Locale.getDefault();
+        if (!locale.equals(mRelativeLocale)) {
+            for (String[] amounts : mRelativeCache) {
+                Arrays.fill(amounts, null);
+            }
+            mRelativeLocale = locale;
+        }
+
+        if (amount >= CACHED_AMOUNTS) {
+            return renderRelative(unit, (int) Math.min(amount, Integer.MAX_VALUE));
+        }
+
+        String relative = mRelativeCache[unit][(int) amount];
+        if (relative == null) {
+            relative = renderRelative(unit, (int) amount);
+            mRelativeCache[unit][(int) amount] = relative;
+        }
+        return relative;
+    }
+
+    /**
+     * Return the largest unit that fits into a time span at least once.
+     *
+     * @param delta The time span in milliseconds.
+     * @return The unit, one of the {@code UNIT_} constants.
+     */
+    static int relativeUnit(long delta) {
+        if (delta < MINUTE_MS) {
+            return UNIT_NOW;
+        } else if (delta < HOUR_MS) {
+            return UNIT_MINUTES;
+        } else if (delta < DAY_MS) {
+            return UNIT_HOURS;
+        } else if (delta < 7 * DAY_MS) {
+            return UNIT_DAYS;
+        } else if (delta < 30 * DAY_MS) {
+            return UNIT_WEEKS;
+        } else if (delta < 365 * DAY_MS) {
+            return UNIT_MONTHS;
+        } else {
+            return UNIT_YEARS;
+        }
+    }
+
+    /**
+     * Return how many whole units fit into a time span.
+     *
+     * @param delta The time span in milliseconds.
+     * @param unit The unit, as returned by {@link #relativeUnit(long)}.
+     * @return The amount of units.
+     */
+    static long relativeAmount(long delta, int unit) {
+        switch (unit) {
+            case UNIT_MINUTES:
+                return delta / MINUTE_MS;
+            case UNIT_HOURS:
+                return delta / HOUR_MS;
+            case UNIT_DAYS:
+                return delta / DAY_MS;
+            case UNIT_WEEKS:
+                return delta / (7 * DAY_MS);
+            case UNIT_MONTHS:
+                return delta / (30 * DAY_MS);
+            case UNIT_YEARS:
+                return delta / (365 * DAY_MS);
+            default:
+                return 0;
+        }
+    }
+
+    /**
+     * Load the string for a relative time from the resources.
+     *
+     * @param unit The unit.
+     * @param amount The amount of units.
+     * @return The relative time.
+     */
+    private String renderRelative(int unit, int amount) {
+        if (unit == UNIT_NOW) {
+            return mResources.getString(R.string.time_just_now);
+        }
+        return mResources.getQuantityString(UNIT_PLURALS[unit], amount, amount);
+    }
+
+    /**
+     * A date format for a single thread, together with the locale it was
+     * created for and the last formatted result.
+     */
+    private static final class CachedFormat {
+
+        /** Reused for every call so that no new date has to be allocated. */
+        private final Date mDate = new Date();
+        /** The locale {@link #mFormat} was created for. */
+        private Locale mLocale;
+        /** The format. */
+        private DateFormat mFormat;
+        /** The time of {@link #mLastResult}. */
+        private long mLastTime;
+        /** The result of the last call to {@link #format(long)}. */
+        private String mLastResult;
+
+        /**
+         * Format a point in time.
+         *
+         * @param time The time, in milliseconds since the epoch.
+         * @return The formatted time.
+         */
+        private String format(long time) {
+            Locale locale = Locale.getDefault();
+            if (!locale.equals(mLocale)) {
+                mLocale = locale;
+                mFormat = DateFormat.getDateTimeInstance(DateFormat.MEDIUM, DateFormat.SHORT, locale);
+                mLastResult = null;
+            }
+
+            if (mLastResult == null || mLastTime != time) {
+                mDate.setTime(time);
+                mLastResult = mFormat.format(mDate);
+                mLastTime = time;
+            }
+            return mLastResult;
+        }
+
+    }
+
+}
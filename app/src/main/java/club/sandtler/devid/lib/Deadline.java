@@ -0,0 +1,175 @@
+/*
+ * Copyright (c) 2019 Felix Kopp <sandtler@sandtler.club>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package club.sandtler.devid.lib;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.InterruptedIOException;
+
+/**
+ * A point in time by which an operation has to be completed.
+ * <p>
+ * Deadlines are carried along implicitly on the thread performing the
+ * operation, so that code deep down the stack (like {@link NetworkUtil}) can
+ * limit its timeouts to the time that is left, and give up right away if
+ * there is none.  Use {@link Promise#withDeadline} to attach one to an
+ * asynchronous operation, pass one to {@link NetworkDispatcher#execute} to
+ * attach one to a dispatcher task, or {@link #run} to attach one to a block
+ * of code.
+ */
+public final class Deadline {
+
+    /** Thrown if an operation is started or continued after its deadline. */
+    public static class ExceededException extends InterruptedIOException {
+
+        /** Create a new exception. */
+        public ExceededException() {
+            super("Deadline exceeded");
+        }
+
+    }
+
+    /** The deadline of the operation running on the current thread, if any. */
+    private static final ThreadLocal<Deadline> sCurrent = new ThreadLocal<>();
+
+    /** The point in time as returned by {@link System#nanoTime()}. */
+    private final long mExpiresAtNanos;
+
+    /**
+     * Private constructor, use {@link #after} instead.
+     *
+     * @param expiresAtNanos The point in time as returned by {@link System#nanoTime()}.
+     */
+    private Deadline(long expiresAtNanos) {
+        mExpiresAtNanos = expiresAtNanos;
+    }
+
+    /**
+     * Create a deadline that expires after the specified amount of time.
+     *
+     * @param timeoutMs The time from now on in milliseconds.
+     * @return The deadline.
+     */
+    @NonNull
+    public static Deadline after(long timeoutMs) {
+        return new Deadline(System.nanoTime() + timeoutMs * 1000000L);
+    }
+
+    /**
+     * Return the deadline of the operation running on the current thread.
+     *
+     * @return The deadline, or {@code null} if there is none.
+     */
+    @Nullable
+    public static Deadline current() {
+        return sCurrent.get();
+    }
+
+    /**
+     * Limit a timeout to the time left until the current thread's deadline.
+     *
+     * @param timeoutMs The timeout to use if there is enough time left.
+     * @return The timeout in milliseconds, which is always greater than zero.
+     * @throws ExceededException If the current deadline has expired already.
+     */
+    public static int clampTimeout(int timeoutMs) throws ExceededException {
+        Deadline deadline = current();
+        if (deadline == null) {
+            return timeoutMs;
+        }
+
+        long remaining = deadline.remainingMillis();
+        if (remaining <= 0) {
+            throw new ExceededException();
+        }
+
+        return (int) Math.min(timeoutMs, remaining);
+    }
+
+    /**
+     * Return the time left until this deadline.
+     *
+     * @return The time left in milliseconds, zero or negative if expired.
+     */
+    public long remainingMillis() {
+        return (mExpiresAtNanos - System.nanoTime()) / 1000000L;
+    }
+
+    /**
+     * Return whether this deadline has passed.
+     *
+     * @return Whether this deadline has passed.
+     */
+    public boolean isExpired() {
+        return remainingMillis() <= 0;
+    }
+
+    /**
+     * Run something with this deadline attached to the current thread.
+     * If an earlier deadline is attached already, that one stays in effect.
+     *
+     * @param runnable What to run.
+     * @param <T> The result type.
+     * @return The result.
+     * @throws ExceededException If this deadline had expired before starting.
+     * @throws Exception Anything thrown by the runnable.
+     */
+    public <T> T run(@NonNull Promise.TypedRunnable<T> runnable) throws Exception {
+        if (isExpired()) {
+            throw new ExceededException();
+        }
+
+        Deadline previous = sCurrent.get();
+        if (previous != null && previous.mExpiresAtNanos - mExpiresAtNanos < 0) {
+            return runnable.run();
+        }
+
+        sCurrent.set(this);
+        try {
+            return runnable.run();
+        } finally {
+            sCurrent.set(previous);
+        }
+    }
+
+    /**
+     * Run a task with this deadline attached to the current thread.
+     * Unlike {@link #run}, the task is run even if this deadline has expired
+     * already, so that it can report the failure of the requests it makes,
+     * which then fail right away with an {@link ExceededException}.
+     * If an earlier deadline is attached already, that one stays in effect.
+     *
+     * @param task What to run.
+     */
+    public void runAttached(@NonNull Runnable task) {
+        Deadline previous = sCurrent.get();
+        if (previous != null && previous.mExpiresAtNanos - mExpiresAtNanos < 0) {
+            task.run();
+            return;
+        }
+
+        sCurrent.set(this);
+        try {
+            task.run();
+        } finally {
+            sCurrent.set(previous);
+        }
+    }
+
+}
@@ -0,0 +1,267 @@
+/*
+ * Copyright (c) 2019 Felix Kopp <sandtler@sandtler.club>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package club.sandtler.devid.lib;
+
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * A simple least-recently-used cache of byte arrays in a directory on disk,
+ * bounded by the total size of its files.
+ * <p>
+ * Every entry is stored in a file named after its key.  The access order
+ * is kept in memory and persisted in the files' modification times, so it
+ * survives process death.  The directory is scanned the first time the
+ * cache is used, which may therefore take a little longer.
+ * <p>
+ * All operations are synchronized and perform disk I/O, so this is meant
+ * for small files and must not be used from the UI thread.
+ */
+@WorkerThread
+public final class DiskCache {
+
+    /** Suffix for files that are still being written. */
+    private static final String TEMP_SUFFIX = ".tmp";
+    /** Pattern for valid keys, which must be usable as file names. */
+    private static final Pattern KEY_PATTERN = Pattern.compile("^[A-Za-z0-9_-]+$");
+
+    /** The directory to store files in. */
+    private final File mDirectory;
+    /** The maximum total size of all files in bytes. */
+    private final long mMaxBytes;
+    /** File sizes by key, in access order (least recently used first). */
+    private final LinkedHashMap<String, Long> mEntries = new LinkedHashMap<>(16, 0.75f, true);
+    /** The total size of all files in bytes. */
+    private long mSize = 0L;
+    /** Whether {@link #mDirectory} has been scanned yet. */
+    private boolean mInitialized = false;
+
+    /**
+     * Create a new disk cache.
+     *
+     * @param directory The directory to store files in.  It is created if
+     *                  necessary, and must not be used for anything else.
+     * @param maxBytes The maximum total size of all files in bytes.
+     */
+    public DiskCache(@NonNull File directory, long maxBytes) {
+        mDirectory = directory;
+        mMaxBytes = maxBytes;
+    }
+
+    /**
+     * Return the data stored for a key, and mark it as recently used.
+     *
+     * @param key The key, which may only consist of letters, digits,
+     *            underscores and dashes.
+     * @return The data, or {@code null} if there is none.
+     */
+    @Nullable
+    public synchronized byte[] get(@NonNull String key) {
+        initialize();
+        Long size = mEntries.get(checkKey(key));
+        if (size == null) {
+            return null;
+        }
+
+        File file = new File(mDirectory, key);
+        try (InputStream in = new FileInputStream(file)) {
+            byte[] data = new byte[(int) (long) size];
+            int offset = 0;
+            int n;
+            while (offset < data.length
+                    && (n = in.read(data, offset, data.length - offset)) != -1) {
+                offset += n;
+            }
+            if (offset != data.length) {
+                throw new IOException("Unexpected end of file");
+            }
+
+            //noinspection ResultOfMethodCallIgnored
+            file.setLastModified(System.currentTimeMillis());
+            return data;
+        } catch (IOException e) {
+            // The file has been removed or truncated from outside
+            Log.w(Constants.LOG_TAG, "Unable to read cache file " + file, e);
+            remove(key);
+            return null;
+        }
+    }
+
+    /**
+     * Store data for a key, replacing any previous data, and evict the
+     * least recently used entries if the cache has grown too large.
+     * Data larger than the whole cache is not stored.
+     *
+     * @param key The key, which may only consist of letters, digits,
+     *            underscores and dashes.
+     * @param data The data.
+     */
+    public synchronized void put(@NonNull String key, @NonNull byte[] data) {
+        initialize();
+        checkKey(key);
+        if (data.length > mMaxBytes) {
+            return;
+        }
+
+        File file = new File(mDirectory, key);
+        File temp = new File(mDirectory, key + TEMP_SUFFIX);
+        try (OutputStream out = new FileOutputStream(temp)) {
+            out.write(data);
+        } catch (IOException e) {
+            Log.w(Constants.LOG_TAG, "Unable to write cache file " + temp, e);
+            //noinspection ResultOfMethodCallIgnored
+            temp.delete();
+            return;
+        }
+
+        remove(key);
+        // Readers never see partially written files
+        if (!temp.renameTo(file)) {
+            //noinspection ResultOfMethodCallIgnored
+            temp.delete();
+            return;
+        }
+
+        mEntries.put(key, (long) data.length);
+        mSize += data.length;
+        trimTo(mMaxBytes);
+    }
+
+    /**
+     * Return the total size of all files in the cache.
+     *
+     * @return The size in bytes.
+     */
+    public synchronized long getSize() {
+        initialize();
+        return mSize;
+    }
+
+    /**
+     * Delete all files in the cache.
+     */
+    public synchronized void clear() {
+        initialize();
+        trimTo(0L);
+    }
+
+    /**
+     * Delete the least recently used files until the total size is at most
+     * the given amount.
+     *
+     * @param maxBytes The maximum total size in bytes.
+     */
+    private void trimTo(long maxBytes) {
+        Iterator<Map.Entry<String, Long>> iterator = mEntries.entrySet().iterator();
+        while (mSize > maxBytes && iterator.hasNext()) {
+            Map.Entry<String, Long> entry = iterator.next();
+            //noinspection ResultOfMethodCallIgnored
+            new File(mDirectory, entry.getKey()).delete();
+            mSize -= entry.getValue();
+            iterator.remove();
+        }
+    }
+
+    /**
+     * Delete the file for a key, if there is one.
+     *
+     * @param key The key.
+     */
+    private void remove(String key) {
+        Long size = mEntries.remove(key);
+        if (size != null) {
+            //noinspection ResultOfMethodCallIgnored
+            new File(mDirectory, key).delete();
+            mSize -= size;
+        }
+    }
+
+    /**
+     * Scan the cache directory for existing files, unless that has been
+     * done already.
+     */
+    private void initialize() {
+        if (mInitialized) {
+            return;
+        }
+        mInitialized = true;
+
+        if (!mDirectory.isDirectory() && !mDirectory.mkdirs()) {
+            Log.w(Constants.LOG_TAG, "Unable to create cache directory " + mDirectory);
+            return;
+        }
+
+        File[] files = mDirectory.listFiles();
+        if (files == null) {
+            return;
+        }
+
+        long[] lastModified = new long[files.length];
+        Integer[] order = new Integer[files.length];
+        for (int i = 0; i < files.length; i++) {
+            lastModified[i] = files[i].lastModified();
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> Long.compare(lastModified[a], lastModified[b]));
+
+        for (int i : order) {
+            File file = files[i];
+            if (file.getName().endsWith(TEMP_SUFFIX)) {
+                // Left over from a write that was interrupted
+                //noinspection ResultOfMethodCallIgnored
+                file.delete();
+            } else if (file.isFile()) {
+                mEntries.put(file.getName(), file.length());
+                mSize += file.length();
+            }
+        }
+
+        // The maximum size may have been lowered since the last run
+        trimTo(mMaxBytes);
+    }
+
+    /**
+     * Make sure a key is a valid file name.
+     *
+     * @param key The key.
+     * @return The key.
+     * @throws IllegalArgumentException If the key contains illegal characters.
+     */
+    private static String checkKey(String key) {
+        if (!KEY_PATTERN.matcher(key).matches()) {
+            throw new IllegalArgumentException("Illegal cache key: " + key);
+        }
+        return key;
+    }
+
+}
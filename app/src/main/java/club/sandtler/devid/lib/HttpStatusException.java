@@ -0,0 +1,60 @@
+/*
+ * Copyright (c) 2019 Felix Kopp <sandtler@sandtler.club>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package club.sandtler.devid.lib;
+
+import java.io.IOException;
+
+/**
+ * Thrown if the server responded with an HTTP error status code (4xx/5xx).
+ */
+public class HttpStatusException extends IOException {
+
+    /** The HTTP status code. */
+    private final int mStatusCode;
+
+    /**
+     * Create a new exception.
+     *
+     * @param statusCode The HTTP status code.
+     * @param message The HTTP status message, if any.
+     */
+    public HttpStatusException(int statusCode, String message) {
+        super("HTTP " + statusCode + (message == null ? "" : " " + message));
+        mStatusCode = statusCode;
+    }
+
+    /**
+     * Return the HTTP status code.
+     *
+     * @return The status code.
+     */
+    public int getStatusCode() {
+        return mStatusCode;
+    }
+
+    /**
+     * Return whether the same request may succeed if it is sent again later,
+     * i.e. whether this is a server error rather than a client error.
+     *
+     * @return Whether the request may be retried.
+     */
+    public boolean isRetryable() {
+        return mStatusCode >= 500 || mStatusCode == 408 || mStatusCode == 429;
+    }
+
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright (c) 2019 Felix Kopp <sandtler@sandtler.club>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package club.sandtler.devid.lib;
+
+import androidx.annotation.NonNull;
+
+/**
+ * A value that is created on first access, exactly once.
+ * <p>
+ * Once the value exists, {@link #get()} is a single volatile read.  Before
+ * that, the first thread to access the value runs the factory while holding
+ * the lock of this instance, and threads that access the value at the same
+ * time block on the lock until it has been published, rather than spinning
+ * on the CPU.  If the factory throws, nothing is stored and the next access
+ * tries again.  A factory that accesses its own value fails with an
+ * {@link IllegalStateException} instead of recursing.
+ *
+ * @param <T> The value type.
+ */
+public final class Lazy<T> {
+
+    /** The factory to create the value with. */
+    private final Factory<T> mFactory;
+    /** The value, or {@code null} if not created yet. */
+    private volatile T mValue;
+    /** The thread that is running the factory right now, guarded by {@code this}. */
+    private Thread mCreatingThread;
+
+    /**
+     * Create a new lazy value.
+     *
+     * @param factory The factory to create the value with.
+     */
+    public Lazy(@NonNull Factory<T> factory) {
+        mFactory = factory;
+    }
+
+    /**
+     * Return the value, creating it if this is the first access.
+     *
+     * @return The value.
+     * @throws IllegalStateException If this is called from within the factory.
+     */
+    @NonNull
+    public T get() {
+        T value = mValue;
+        if (value != null) {
+            return value;
+        }
+
+        synchronized (this) {
+            value = mValue;
+            if (value != null) {
+                return value;
+            }
+            if (mCreatingThread == Thread.currentThread()) {
+                // The monitor is reentrant, so this would recurse
+                throw new IllegalStateException("Factory depends on its own value");
+            }
+
+            mCreatingThread = Thread.currentThread();
+            try {
+                value = mFactory.create();
+            } finally {
+                mCreatingThread = null;
+            }
+            if (value == null) {
+                throw new NullPointerException("Factory returned null");
+            }
+
+            mValue = value;
+            return value;
+        }
+    }
+
+    /**
+     * Return whether the value has been created already.
+     *
+     * @return Whether the value exists.
+     */
+    public boolean isCreated() {
+        return mValue != null;
+    }
+
+    /**
+     * Creates the value of a {@link Lazy}.
+     *
+     * @param <T> The value type.
+     */
+    public interface Factory<T> {
+        /**
+         * Create the value.
+         * This is called at most once per successful {@link Lazy#get()}.
+         *
+         * @return The value, must not be {@code null}.
+         */
+        T create();
+    }
+
+}
@@ -0,0 +1,241 @@
+/*
+ * Copyright (c) 2019 Felix Kopp <sandtler@sandtler.club>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package club.sandtler.devid.lib;
+
+import android.content.ComponentCallbacks2;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.WeakHashMap;
+
+/**
+ * Releases cached data when the system is running low on memory.
+ * <p>
+ * Every component holding a memory cache registers itself as a
+ * {@link Trimmable}.  When the application receives a trim memory callback,
+ * all of them are asked to shrink to a fraction of their current size that
+ * depends on how urgent the situation is: while the app is in the
+ * foreground only part of the caches is released, and the more likely the
+ * process is to be killed, the more is released.  Devices with a small
+ * memory class are trimmed harder.  The amount of memory freed is logged
+ * and recorded per trim level.
+ * <p>
+ * Caches should also size themselves with {@link #getCacheBudget}, so they
+ * take up the same share of the available memory on every device.
+ */
+public final class MemoryGovernor {
+
+    /** A component holding cached data that can be released. */
+    public interface Trimmable {
+        /**
+         * Release cached data until at most the given fraction of what is
+         * cached right now is left.  This may be called from any thread.
+         *
+         * @param keepFraction The fraction to keep, between 0 (release
+         *                     everything) and 1 (release nothing).
+         * @return The estimated amount of memory released in bytes.
+         */
+        long trimMemory(float keepFraction);
+    }
+
+    /** The instance (singleton access). */
+    private static MemoryGovernor sInstance;
+
+    /** All registered components.  Held weakly, so they needn't unregister. */
+    private final Set<Trimmable> mTrimmables = Collections.newSetFromMap(new WeakHashMap<>());
+    /** The total amount of memory freed in bytes, indexed by trim level. */
+    private final HashMap<Integer, Long> mFreedBytes = new HashMap<>();
+    /** The memory class of the device in megabytes. */
+    private volatile int mMemoryClassMb = Constants.Memory.DEFAULT_MEMORY_CLASS_MB;
+    /** Whether this is a device with little memory. */
+    private volatile boolean mLowMemoryDevice = false;
+
+    /**
+     * Create a new governor.
+     * The app should use the instance returned by {@link #getDefault()}.
+     */
+    MemoryGovernor() {
+    }
+
+    /**
+     * Return the instance of this governor.
+     *
+     * @return The instance.
+     */
+    @NonNull
+    public static synchronized MemoryGovernor getDefault() {
+        if (sInstance == null) {
+            sInstance = new MemoryGovernor();
+        }
+
+        return sInstance;
+    }
+
+    /**
+     * Set the memory class of the device, as reported by the activity manager.
+     *
+     * @param memoryClassMb The memory class in megabytes.
+     * @param lowRamDevice Whether the system considers this a low RAM device.
+     */
+    public void setMemoryClass(int memoryClassMb, boolean lowRamDevice) {
+        mMemoryClassMb = memoryClassMb;
+        mLowMemoryDevice = lowRamDevice || memoryClassMb <= Constants.Memory.LOW_MEMORY_CLASS_MB;
+    }
+
+    /**
+     * Return the memory class of the device.
+     *
+     * @return The memory class in megabytes.
+     */
+    public int getMemoryClassMb() {
+        return mMemoryClassMb;
+    }
+
+    /**
+     * Return the size for a cache that takes up a share of the memory class.
+     *
+     * @param share The share of the memory class.
+     * @param minBytes The minimum size in bytes.
+     * @param maxBytes The maximum size in bytes.
+     * @return The cache size in bytes.
+     */
+    public int getCacheBudget(float share, int minBytes, int maxBytes) {
+        return getCacheBudget(mMemoryClassMb, share, minBytes, maxBytes);
+    }
+
+    /**
+     * Register a component to be trimmed when memory is low.
+     * Components are referenced weakly, so they have to be referenced
+     * somewhere else for as long as they are to be trimmed; in particular,
+     * registering a lambda does not work.
+     *
+     * @param trimmable The component.
+     */
+    public synchronized void register(@NonNull Trimmable trimmable) {
+        mTrimmables.add(trimmable);
+    }
+
+    /**
+     * Trim all registered components according to a trim level.
+     * To be called from {@link android.app.Application#onTrimMemory(int)}.
+     *
+     * @param level The trim level.
+     * @return The estimated amount of memory freed in bytes.
+     */
+    public long onTrimMemory(int level) {
+        final float keepFraction = getKeepFraction(level, mLowMemoryDevice);
+        if (keepFraction >= 1f) {
+            return 0L;
+        }
+
+        List<Trimmable> trimmables;
+        synchronized (this) {
+            trimmables = new ArrayList<>(mTrimmables);
+        }
+
+        long freed = 0L;
+        for (Trimmable trimmable : trimmables) {
+            long freedByTrimmable = trimmable.trimMemory(keepFraction);
+            Log.d(Constants.LOG_TAG, String.format(Locale.ROOT, "%s freed %d bytes",
+                    trimmable.getClass().getSimpleName(), freedByTrimmable));
+            freed += freedByTrimmable;
+        }
+
+        synchronized (this) {
+            Long total = mFreedBytes.get(level);
+            mFreedBytes.put(level, (total == null ? 0L : total) + freed);
+        }
+        Log.i(Constants.LOG_TAG, String.format(Locale.ROOT,
+                "Trim level %d (keeping %d%%): freed %d bytes in %d caches",
+                level, Math.round(keepFraction * 100), freed, trimmables.size()));
+
+        return freed;
+    }
+
+    /**
+     * Release all cached data.
+     * To be called from {@link android.app.Application#onLowMemory()}.
+     *
+     * @return The estimated amount of memory freed in bytes.
+     */
+    public long onLowMemory() {
+        return onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_COMPLETE);
+    }
+
+    /**
+     * Return the total amount of memory freed for a trim level so far.
+     *
+     * @param level The trim level.
+     * @return The amount in bytes.
+     */
+    public synchronized long getFreedBytes(int level) {
+        Long freed = mFreedBytes.get(level);
+        return freed == null ? 0L : freed;
+    }
+
+    /**
+     * Return the size for a cache that takes up a share of a memory class.
+     *
+     * @param memoryClassMb The memory class in megabytes.
+     * @param share The share of the memory class.
+     * @param minBytes The minimum size in bytes.
+     * @param maxBytes The maximum size in bytes.
+     * @return The cache size in bytes.
+     */
+    static int getCacheBudget(int memoryClassMb, float share, int minBytes, int maxBytes) {
+        long budget = (long) (memoryClassMb * 1024L * 1024L * share);
+        return (int) Math.max(minBytes, Math.min(maxBytes, budget));
+    }
+
+    /**
+     * Return the fraction of cached data to keep at a trim level.
+     *
+     * @param level The trim level.
+     * @param lowMemoryDevice Whether this is a device with little memory.
+     * @return The fraction, between 0 and 1.
+     */
+    static float getKeepFraction(int level, boolean lowMemoryDevice) {
+        float keepFraction;
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_MODERATE) {
+            // We are in the second half of the LRU list and may be killed any time
+            keepFraction = 0f;
+        } else if (level >= ComponentCallbacks2.TRIM_MEMORY_BACKGROUND) {
+            keepFraction = 0.25f;
+        } else if (level >= ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN) {
+            keepFraction = 0.5f;
+        } else if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL) {
+            keepFraction = 0.25f;
+        } else if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW) {
+            keepFraction = 0.5f;
+        } else if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_MODERATE) {
+            keepFraction = 0.75f;
+        } else {
+            return 1f;
+        }
+
+        return lowMemoryDevice ? keepFraction / 2 : keepFraction;
+    }
+
+}
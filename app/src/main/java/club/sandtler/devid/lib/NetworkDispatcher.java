@@ -0,0 +1,381 @@
+/*
+ * Copyright (c) 2019 Felix Kopp <sandtler@sandtler.club>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package club.sandtler.devid.lib;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Scheduler for all tasks that perform network requests.
+ * <p>
+ * Tasks are queued with a priority and the host they are going to talk to.
+ * Whenever a slot becomes free, the waiting task with the highest priority is
+ * run next, so data the user is looking at right now is not stuck behind a
+ * bunch of prefetch or image requests.  Tasks with the same priority run in
+ * the order they were queued.  To keep low priority tasks from starving when
+ * there is a constant stream of more important ones, a task is promoted by
+ * one priority level for every {@link Constants.Dispatcher#AGING_INTERVAL_MS}
+ * milliseconds it has been waiting.
+ * <p>
+ * At most {@link Constants.Dispatcher#MAX_REQUESTS} tasks run at the same
+ * time, and at most {@link Constants.Dispatcher#MAX_REQUESTS_PER_HOST} of
+ * them for any single host.  A host that is saturated does not block tasks
+ * for other hosts.
+ * <p>
+ * Running tasks are never interrupted; priorities only affect which of the
+ * waiting tasks gets to run next.  Tasks may be queued with a
+ * {@link Deadline}, which covers both the time spent waiting in the queue
+ * and all requests the task makes.
+ */
+public final class NetworkDispatcher {
+
+    /** Priority for data that is visible on the screen right now. */
+    public static final int PRIORITY_VISIBLE = 0;
+    /** Priority for actions the user has explicitly triggered. */
+    public static final int PRIORITY_USER_ACTION = 1;
+    /** Priority for images like profile pictures. */
+    public static final int PRIORITY_IMAGE = 2;
+    /** Priority for data that might be needed in the future. */
+    public static final int PRIORITY_PREFETCH = 3;
+
+    /** The instance used by the app. */
+    private static NetworkDispatcher sDefaultInstance;
+
+    /** The maximum amount of tasks running at the same time. */
+    private final int mMaxRequests;
+    /** The maximum amount of tasks running for a single host. */
+    private final int mMaxRequestsPerHost;
+    /** Waiting time after which a task is promoted by one priority level. */
+    private final long mAgingIntervalMs;
+    /** The clock to measure waiting times with. */
+    private final RetryPolicy.Clock mClock;
+    /** Threads to run the tasks on. */
+    private final ExecutorService mExecutorService;
+
+    /** All tasks waiting to be run, in the order they were queued. */
+    private final ArrayList<Call> mReadyCalls = new ArrayList<>();
+    /** Amount of running tasks, indexed by host. */
+    private final HashMap<String, Integer> mRunningPerHost = new HashMap<>();
+    /** Amount of running tasks. */
+    private int mRunning = 0;
+
+    /**
+     * Create a new dispatcher with the default limits.
+     */
+    public NetworkDispatcher() {
+        this(
+                Constants.Dispatcher.MAX_REQUESTS,
+                Constants.Dispatcher.MAX_REQUESTS_PER_HOST,
+                Constants.Dispatcher.AGING_INTERVAL_MS,
+                System::currentTimeMillis
+        );
+    }
+
+    /**
+     * Create a new dispatcher.
+     *
+     * @param maxRequests The maximum amount of tasks running at the same time.
+     * @param maxRequestsPerHost The maximum amount of running tasks per host.
+     * @param agingIntervalMs Waiting time after which a task is promoted by
+     *                        one priority level.
+     * @param clock The clock to measure waiting times with.
+     */
+    NetworkDispatcher(int maxRequests, int maxRequestsPerHost, long agingIntervalMs,
+                      @NonNull RetryPolicy.Clock clock) {
+        mMaxRequests = maxRequests;
+        mMaxRequestsPerHost = maxRequestsPerHost;
+        mAgingIntervalMs = agingIntervalMs;
+        mClock = clock;
+
+        // The amount of threads is limited by promoteAndExecute() already
+        mExecutorService = new ThreadPoolExecutor(
+                0,
+                Integer.MAX_VALUE,
+                Constants.Dispatcher.THREAD_KEEP_ALIVE_MS,
+                TimeUnit.MILLISECONDS,
+                new SynchronousQueue<>(),
+                new DispatcherThreadFactory()
+        );
+    }
+
+    /**
+     * Return the dispatcher instance used by the app.
+     *
+     * @return The instance.
+     */
+    @NonNull
+    public static synchronized NetworkDispatcher getDefault() {
+        if (sDefaultInstance == null) {
+            sDefaultInstance = new NetworkDispatcher();
+        }
+
+        return sDefaultInstance;
+    }
+
+    /**
+     * Queue a task without a deadline.
+     *
+     * @param host The host the task is going to send requests to.
+     * @param priority The priority, one of the {@code PRIORITY_} constants.
+     * @param task The task.
+     */
+    public void execute(@NonNull String host, int priority, @NonNull Runnable task) {
+        execute(host, priority, null, task);
+    }
+
+    /**
+     * Queue a task.
+     * The deadline is attached to the thread running the task, so all of its
+     * requests fail once it has passed.  The task is still run if the
+     * deadline passes while it is waiting, so that it can report the error.
+     *
+     * @param host The host the task is going to send requests to.
+     * @param priority The priority, one of the {@code PRIORITY_} constants.
+     * @param deadline The deadline, or {@code null} if there is none.
+     * @param task The task.
+     */
+    public void execute(@NonNull String host, int priority, @Nullable Deadline deadline,
+                        @NonNull Runnable task) {
+        synchronized (this) {
+            mReadyCalls.add(new Call(host, priority, mClock.now(), deadline, task));
+        }
+
+        promoteAndExecute();
+    }
+
+    /**
+     * Return an {@link Executor} that queues all tasks for the same host and
+     * with the same priority.  This is meant for running an
+     * {@link android.os.AsyncTask} on the dispatcher, using
+     * {@link android.os.AsyncTask#executeOnExecutor}.
+     *
+     * @param host The host the tasks are going to send requests to.
+     * @param priority The priority, one of the {@code PRIORITY_} constants.
+     * @return The executor.
+     */
+    @NonNull
+    public Executor getExecutor(@NonNull String host, int priority) {
+        return getExecutor(host, priority, 0L);
+    }
+
+    /**
+     * Return an {@link Executor} that queues all tasks for the same host and
+     * with the same priority, each with its own deadline that starts when
+     * the task is queued.
+     *
+     * @param host The host the tasks are going to send requests to.
+     * @param priority The priority, one of the {@code PRIORITY_} constants.
+     * @param timeoutMs The time each task has, or 0 for no deadline.
+     * @return The executor.
+     */
+    @NonNull
+    public Executor getExecutor(@NonNull String host, int priority, long timeoutMs) {
+        return task -> execute(
+                host,
+                priority,
+                timeoutMs > 0 ? Deadline.after(timeoutMs) : null,
+                task
+        );
+    }
+
+    /**
+     * Return the amount of tasks that are waiting to be run.
+     *
+     * @return The amount of waiting tasks.
+     */
+    public synchronized int getQueuedCount() {
+        return mReadyCalls.size();
+    }
+
+    /**
+     * Return the amount of tasks that are running right now.
+     *
+     * @return The amount of running tasks.
+     */
+    public synchronized int getRunningCount() {
+        return mRunning;
+    }
+
+    /**
+     * Start as many waiting tasks as the limits allow, most important first.
+     */
+    private void promoteAndExecute() {
+        ArrayList<Call> executable = new ArrayList<>();
+
+        synchronized (this) {
+            long now = mClock.now();
+            while (mRunning < mMaxRequests) {
+                Call next = pollNextLocked(now);
+                if (next == null) {
+                    // Nothing left, or all remaining hosts are saturated
+                    break;
+                }
+
+                mRunning++;
+                mRunningPerHost.put(next.mHost, getRunningCountLocked(next.mHost) + 1);
+                executable.add(next);
+            }
+        }
+
+        for (Call call : executable) {
+            mExecutorService.execute(call);
+        }
+    }
+
+    /**
+     * Remove and return the waiting task to be run next.
+     * Must only be called while holding the lock on this instance.
+     *
+     * @param now The current time.
+     * @return The task, or {@code null} if no task may be run right now.
+     */
+    private Call pollNextLocked(long now) {
+        int bestIndex = -1;
+        long bestPriority = Long.MAX_VALUE;
+
+        // mReadyCalls is in the order the tasks were queued, so the first
+        // task with the best priority is also the one that has been waiting longest.
+        for (int i = 0; i < mReadyCalls.size(); i++) {
+            Call call = mReadyCalls.get(i);
+            if (getRunningCountLocked(call.mHost) >= mMaxRequestsPerHost) {
+                continue;
+            }
+
+            long priority = call.getEffectivePriority(now, mAgingIntervalMs);
+            if (priority < bestPriority) {
+                bestPriority = priority;
+                bestIndex = i;
+            }
+        }
+
+        return bestIndex == -1 ? null : mReadyCalls.remove(bestIndex);
+    }
+
+    /**
+     * Return the amount of running tasks for a host.
+     * Must only be called while holding the lock on this instance.
+     *
+     * @param host The host.
+     * @return The amount of running tasks.
+     */
+    private int getRunningCountLocked(String host) {
+        Integer count = mRunningPerHost.get(host);
+        return count == null ? 0 : count;
+    }
+
+    /**
+     * Release the slot of a task that has finished and start the next one.
+     *
+     * @param call The finished task.
+     */
+    private void finished(Call call) {
+        synchronized (this) {
+            mRunning--;
+            int hostCount = getRunningCountLocked(call.mHost) - 1;
+            if (hostCount == 0) {
+                mRunningPerHost.remove(call.mHost);
+            } else {
+                mRunningPerHost.put(call.mHost, hostCount);
+            }
+        }
+
+        promoteAndExecute();
+    }
+
+    /**
+     * A queued task.
+     */
+    private final class Call implements Runnable {
+
+        /** The host the task is going to send requests to. */
+        private final String mHost;
+        /** The priority the task was queued with. */
+        private final int mPriority;
+        /** The time the task was queued at. */
+        private final long mQueuedAt;
+        /** The deadline of the task, if any. */
+        private final Deadline mDeadline;
+        /** The actual task. */
+        private final Runnable mTask;
+
+        private Call(String host, int priority, long queuedAt, Deadline deadline, Runnable task) {
+            mHost = host;
+            mPriority = priority;
+            mQueuedAt = queuedAt;
+            mDeadline = deadline;
+            mTask = task;
+        }
+
+        /**
+         * Return the priority of this task after promotion for the time it
+         * has been waiting.  Lower values are more important.
+         *
+         * @param now The current time.
+         * @param agingIntervalMs Waiting time per priority level.
+         * @return The effective priority.
+         */
+        private long getEffectivePriority(long now, long agingIntervalMs) {
+            long promotion = agingIntervalMs > 0 ? (now - mQueuedAt) / agingIntervalMs : 0;
+            return mPriority - promotion;
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public void run() {
+            try {
+                if (mDeadline == null) {
+                    mTask.run();
+                } else {
+                    mDeadline.runAttached(mTask);
+                }
+            } finally {
+                finished(this);
+            }
+        }
+
+    }
+
+    /**
+     * Thread factory that gives all dispatcher threads a recognizable name.
+     */
+    private static final class DispatcherThreadFactory implements ThreadFactory {
+
+        /** Number of the next thread. */
+        private final AtomicInteger mNextId = new AtomicInteger(1);
+
+        /** {@inheritDoc} */
+        @Override
+        public Thread newThread(@NonNull Runnable r) {
+            Thread thread = new Thread(r, "NetworkDispatcher-" + mNextId.getAndIncrement());
+            thread.setPriority(Thread.NORM_PRIORITY - 1);
+            return thread;
+        }
+
+    }
+
+}
@@ -19,6 +19,8 @@ package club.sandtler.devid.lib;
 
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
+import android.os.SystemClock;
+import android.util.Log;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
@@ -27,18 +29,25 @@ import org.json.JSONException;
 import org.json.JSONObject;
 
 import java.io.BufferedInputStream;
-import java.io.BufferedReader;
-import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.OutputStream;
-import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.net.HttpURLConnection;
+import java.net.MalformedURLException;
 import java.net.URL;
+import java.net.URLConnection;
 import java.nio.charset.StandardCharsets;
 import java.security.SecureRandom;
 import java.security.cert.CertificateException;
 import java.security.cert.X509Certificate;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.InflaterInputStream;
 
 import javax.net.ssl.HostnameVerifier;
 import javax.net.ssl.HttpsURLConnection;
@@ -58,11 +67,58 @@ import club.sandtler.devid.BuildConfig;
  */
 public final class NetworkUtil {
 
+    /** Prefix of the {@code Authentication} header value. */
+    private static final String AUTH_HEADER_PREFIX = "Bearer ";
+
+    /** Content encoding name for gzip. */
+    private static final String ENCODING_GZIP = "gzip";
+    /** Content encoding name for zlib/deflate. */
+    private static final String ENCODING_DEFLATE = "deflate";
+    /** All response content encodings we support, for negotiation. */
+    private static final String ACCEPT_ENCODING = ENCODING_GZIP + ", " + ENCODING_DEFLATE;
+
+    /** The backend host name, for retries, circuit breaking and scheduling. */
+    public static final String BACKEND_HOST = getHost(Constants.URLPaths.BACKEND_ROOT);
+    /** The CDN host name, for scheduling. */
+    public static final String CDN_HOST = getHost(Constants.URLPaths.CDN_ROOT);
+    /** Retry policy shared by all instances. */
+    private static final RetryPolicy sRetryPolicy = new RetryPolicy();
+    /** Whether the latency of the first backend request has been logged. */
+    private static final AtomicBoolean sFirstRequestLogged = new AtomicBoolean(false);
+
     /** The default instance. */
     private static NetworkUtil sDefaultInstance = new NetworkUtil(null);
+    /**
+     * The shared authenticated instance.
+     * Its token is swapped whenever the user logs in or the token is
+     * refreshed, so there is no need to create new instances for that.
+     */
+    private static NetworkUtil sAuthenticatedInstance = new NetworkUtil(null);
 
-    /** The authentication token. */
-    private final String mAuthToken;
+    static {
+        /*
+         * I know this check is duplicate.
+         * However, this is definitively something that CAN NOT,
+         * UNDER ALL CIRCUMSTANCES, get fucked up.  I'm paranoid.
+         */
+        if (BuildConfig.DEBUG) {
+            disableAllSSLCertificateChecks();
+        }
+    }
+
+    /**
+     * The complete value of the {@code Authentication} request header, or
+     * {@code null} if requests are to be sent anonymously.
+     * This is only ever replaced as a whole, so requests running concurrently
+     * to a token rotation either use the old or the new token.
+     */
+    private volatile String mAuthHeader;
+    /** Obtains a new token when the backend rejects the current one. */
+    private volatile TokenRefresher mTokenRefresher;
+    /** Held while a rejected token is being refreshed, so only one refresh runs at a time. */
+    private final Object mRefreshLock = new Object();
+    /** The root URL of the backend. */
+    private final String mRootUrl;
 
     /**
      * Return the default (unauthenticated) instance.
@@ -74,24 +130,96 @@ public final class NetworkUtil {
         return sDefaultInstance;
     }
 
+    /**
+     * Return the shared instance that authenticates all requests with the
+     * current user's token, if there is one.
+     *
+     * @return The authenticated instance.
+     */
+    @NonNull
+    public static NetworkUtil getAuthenticated() {
+        return sAuthenticatedInstance;
+    }
+
+    /**
+     * Create a new unauthenticated instance that is independent from the
+     * shared ones.  The app itself should always use the shared instances;
+     * this is meant for injecting stand-ins, e.g. into a
+     * {@link club.sandtler.devid.data.DataContainer} under test.
+     *
+     * @return The new instance.
+     */
+    @NonNull
+    public static NetworkUtil newInstance() {
+        return new NetworkUtil(null);
+    }
+
+    /**
+     * Create a new unauthenticated instance that talks to another backend,
+     * e.g. a local server in tests.
+     *
+     * @param rootUrl The root URL of the backend.
+     * @return The new instance.
+     */
+    @NonNull
+    static NetworkUtil newInstance(@NonNull String rootUrl) {
+        return new NetworkUtil(rootUrl, null);
+    }
+
     /**
      * Create a new authenticated network utility.
      * If the authentication token is null, the <code>Authentication</code>
      * request header will be omitted.
      *
      * @param authToken The logged in user's authentication token.
+     * @deprecated Use {@link #getAuthenticated()} instead, which is kept up
+     *             to date with the current token.
      */
+    @Deprecated
     public NetworkUtil(@Nullable String authToken) {
-        /*
-         * I know this check is duplicate.
-         * However, this is definitively something that CAN NOT,
-         * UNDER ALL CIRCUMSTANCES, get fucked up.  I'm paranoid.
-         */
-        if (BuildConfig.DEBUG) {
-            disableAllSSLCertificateChecks();
-        }
+        this(Constants.URLPaths.BACKEND_ROOT, authToken);
+    }
+
+    /**
+     * Create a new network utility.
+     *
+     * @param rootUrl The root URL of the backend.
+     * @param authToken The logged in user's authentication token, if any.
+     */
+    private NetworkUtil(@NonNull String rootUrl, @Nullable String authToken) {
+        mRootUrl = rootUrl;
+        setAuthToken(authToken);
+    }
+
+    /**
+     * Replace the authentication token sent with all subsequent requests.
+     * Requests that are already in flight are not affected.
+     *
+     * @param authToken The new token, or {@code null} to send requests
+     *                  anonymously from now on.
+     */
+    public void setAuthToken(@Nullable String authToken) {
+        mAuthHeader = authToken == null ? null : AUTH_HEADER_PREFIX + authToken;
+    }
 
-        mAuthToken = authToken;
+    /**
+     * Set the callback for obtaining a new token if the backend responds
+     * with HTTP 401 Unauthorized.  Without one, such responses are reported
+     * as errors to the caller.
+     *
+     * @param tokenRefresher The token refresher.
+     */
+    public void setTokenRefresher(@Nullable TokenRefresher tokenRefresher) {
+        mTokenRefresher = tokenRefresher;
+    }
+
+    /**
+     * Return whether requests are currently sent with an authentication token.
+     *
+     * @return Whether this instance is authenticated.
+     */
+    public boolean isAuthenticated() {
+        return mAuthHeader != null;
     }
 
     /**
@@ -105,17 +233,7 @@ public final class NetworkUtil {
      */
     @Nullable
     public JSONObject get(@NonNull String path) throws IOException, JSONException {
-        HttpsURLConnection conn = getConnection(path);
-        JSONObject response;
-
-        try {
-            conn.setRequestMethod("GET");
-            response = readResponse(conn);
-        } finally {
-            conn.disconnect();
-        }
-
-        return response;
+        return request("GET", path, null, true);
     }
 
     /**
@@ -131,27 +249,8 @@ public final class NetworkUtil {
     @Nullable
     public JSONObject post(@NonNull String path, @NonNull JSONObject body)
     throws IOException, JSONException {
-        HttpsURLConnection conn = getConnection(path);
-        JSONObject response;
-
-        try {
-            conn.setDoOutput(true);
-
-            OutputStream out = conn.getOutputStream();
-            BufferedWriter writer = new BufferedWriter(
-                    new OutputStreamWriter(out, StandardCharsets.UTF_8)
-            );
-            writer.write(body.toString());
-            writer.flush();
-            writer.close();
-            out.close();
-
-            response = readResponse(conn);
-        } finally {
-            conn.disconnect();
-        }
-
-        return response;
+        // POST requests are not necessarily idempotent, so never retry them
+        return request("POST", path, body.toString().getBytes(StandardCharsets.UTF_8), false);
     }
 
     /**
@@ -164,63 +263,398 @@ public final class NetworkUtil {
      * @throws IOException If there was a network error,
      *                     or the response did not contain an image.
      */
+    @NonNull
     public Bitmap getBitmap(@NonNull String path) throws IOException {
-        InputStream in = new URL(Constants.URLPaths.CDN_ROOT + path).openStream();
-        return BitmapFactory.decodeStream(in);
+        final URL url = new URL(Constants.URLPaths.CDN_ROOT + path);
+        final byte[] data = sRetryPolicy.execute(url.getHost(), () -> {
+            HttpURLConnection conn = (HttpURLConnection) url.openConnection();
+            setTimeouts(conn, Constants.Timeouts.CDN_CONNECT_MS, Constants.Timeouts.CDN_READ_MS);
+            try (InputStream in = getResponseStream(conn)) {
+                return readFully(in);
+            } finally {
+                conn.disconnect();
+            }
+        });
+
+        Bitmap bitmap = BitmapFactory.decodeByteArray(data, 0, data.length);
+        if (bitmap == null) {
+            throw new IOException("Response is not an image");
+        }
+        return bitmap;
+    }
+
+    /**
+     * Perform a HTTP GET request to the CDN and return the raw response body.
+     *
+     * @param path The absolute URL path (will be appended to
+     *             {@link Constants.URLPaths#CDN_ROOT}).
+     * @return The response body.
+     * @throws IOException If there was a network error.
+     */
+    @NonNull
+    public byte[] getBytes(@NonNull String path) throws IOException {
+        final URL url = new URL(Constants.URLPaths.CDN_ROOT + path);
+        return sRetryPolicy.execute(url.getHost(), () -> {
+            HttpURLConnection conn = (HttpURLConnection) url.openConnection();
+            setTimeouts(conn, Constants.Timeouts.CDN_CONNECT_MS, Constants.Timeouts.CDN_READ_MS);
+            try (InputStream in = getResponseStream(conn)) {
+                return readFully(in);
+            } finally {
+                conn.disconnect();
+            }
+        });
+    }
+
+    /**
+     * Open a connection to a host and keep it in the platform's connection
+     * pool, so that the next request to that host does not have to pay for
+     * DNS, TCP and TLS setup.  This only sends a {@code HEAD} request for
+     * the root URL, which is cheap on both ends.
+     * This performs network I/O and must not be called from the UI thread.
+     *
+     * @param rootUrl The root URL, either {@link Constants.URLPaths#BACKEND_ROOT}
+     *                or {@link Constants.URLPaths#CDN_ROOT}.
+     * @throws IOException If the connection could not be established.
+     */
+    public static void preconnect(@NonNull String rootUrl) throws IOException {
+        URL url = new URL(rootUrl + "/");
+        HttpURLConnection conn = (HttpURLConnection) url.openConnection();
+        setTimeouts(conn, Constants.Timeouts.BACKEND_CONNECT_MS, Constants.Timeouts.BACKEND_READ_MS);
+        conn.setRequestMethod("HEAD");
+
+        // Any status will do, we are only interested in the connection.  The
+        // response has to be consumed completely for the connection to be
+        // returned to the pool, and it must not be disconnect()ed.
+        int status = conn.getResponseCode();
+        InputStream in = status >= 400 ? conn.getErrorStream() : conn.getInputStream();
+        if (in != null) {
+            try {
+                byte[] buf = new byte[256];
+                while (in.read(buf) != -1) {
+                    // Discard
+                }
+            } finally {
+                in.close();
+            }
+        }
     }
 
     /**
-     * Instantiate a new {@link HttpsURLConnection} to the specified path
+     * Perform a HTTP request to the backend and return the JSON response.
+     *
+     * @param method The request method.
+     * @param path The absolute request path (will be appended to
+     *             {@link Constants.URLPaths#BACKEND_ROOT}).
+     * @param body The request body, or {@code null} if there is none.
+     * @param retry Whether to retry the request if it fails transiently.
+     *              Only pass {@code true} for idempotent requests.
+     * @return The JSON response, or null if it was empty.
+     * @throws IOException If there was an error while transmitting data.
+     * @throws JSONException If the JSON response was malformed.
+     */
+    @Nullable
+    private JSONObject request(@NonNull String method, @NonNull String path,
+                               @Nullable byte[] body, boolean retry)
+    throws IOException, JSONException {
+        // Compress once up front rather than on every attempt
+        final byte[] payload;
+        final String contentEncoding;
+        if (body != null && body.length >= Constants.Compression.MIN_REQUEST_BODY_BYTES) {
+            payload = gzip(body);
+            contentEncoding = ENCODING_GZIP;
+        } else {
+            payload = body;
+            contentEncoding = null;
+        }
+
+        long start = SystemClock.elapsedRealtime();
+        String response;
+        if (retry) {
+            response = sRetryPolicy.execute(
+                    BACKEND_HOST,
+                    () -> send(method, path, payload, contentEncoding)
+            );
+        } else {
+            response = send(method, path, payload, contentEncoding);
+        }
+
+        if (sFirstRequestLogged.compareAndSet(false, true)) {
+            // For measuring the effect of ConnectionWarmer
+            Log.i(Constants.LOG_TAG, String.format(
+                    Locale.ROOT,
+                    "First backend request took %d ms",
+                    SystemClock.elapsedRealtime() - start
+            ));
+        }
+
+        return response.isEmpty() ? null : new JSONObject(response);
+    }
+
+    /**
+     * Send a single HTTP request to the backend and return the raw response.
+     * If the backend rejects our token, the token is refreshed and the
+     * request is sent once more with the new one.
+     *
+     * @param method The request method.
+     * @param path The absolute request path (will be appended to
+     *             {@link Constants.URLPaths#BACKEND_ROOT}).
+     * @param body The (possibly compressed) request body, or {@code null} if
+     *             there is none.
+     * @param contentEncoding The encoding of the request body, or {@code null}
+     *                        if it is not compressed.
+     * @return The response body, which may be empty.
+     * @throws IOException If there was an error while transmitting data, or
+     *                     the backend responded with an error status.
+     */
+    @NonNull
+    private String send(@NonNull String method, @NonNull String path, @Nullable byte[] body,
+                        @Nullable String contentEncoding)
+    throws IOException {
+        String authHeader = mAuthHeader;
+        boolean mayReplay = true;
+
+        while (true) {
+            HttpURLConnection conn = getConnection(path, authHeader);
+            try {
+                conn.setRequestMethod(method);
+                if (body != null) {
+                    conn.setDoOutput(true);
+                    conn.setFixedLengthStreamingMode(body.length);
+                    if (contentEncoding != null) {
+                        conn.setRequestProperty("Content-Encoding", contentEncoding);
+                    }
+                    try (OutputStream out = conn.getOutputStream()) {
+                        out.write(body);
+                    }
+                }
+
+                if (mayReplay && authHeader != null
+                        && conn.getResponseCode() == HttpURLConnection.HTTP_UNAUTHORIZED) {
+                    mayReplay = false;
+                    String newAuthHeader = handleUnauthorized(authHeader);
+                    if (newAuthHeader != null) {
+                        authHeader = newAuthHeader;
+                        continue;
+                    }
+                }
+
+                return readResponse(conn);
+            } finally {
+                conn.disconnect();
+            }
+        }
+    }
+
+    /**
+     * Obtain a new authentication header after the backend has rejected
+     * the given one.  If the token has already been rotated by a concurrent
+     * request in the meantime, the current header is returned right away.
+     * Otherwise, the refresh is delegated to the {@link TokenRefresher}.
+     * Only one refresh runs at a time; requests whose token was rejected
+     * while it runs wait for it and then use its result.
+     *
+     * @param rejectedAuthHeader The header that was rejected.
+     * @return The new header, or {@code null} if the token could not be
+     *         refreshed.
+     */
+    @Nullable
+    private String handleUnauthorized(@NonNull String rejectedAuthHeader) {
+        String current = mAuthHeader;
+        if (current != null && !current.equals(rejectedAuthHeader)) {
+            return current;
+        }
+
+        TokenRefresher refresher = mTokenRefresher;
+        if (refresher == null) {
+            return null;
+        }
+
+        synchronized (mRefreshLock) {
+            // Another request may have refreshed it while we were waiting
+            current = mAuthHeader;
+            if (current != null && !current.equals(rejectedAuthHeader)) {
+                return current;
+            }
+
+            String token = refresher.refreshRejectedToken(
+                    rejectedAuthHeader.substring(AUTH_HEADER_PREFIX.length())
+            );
+            if (token == null) {
+                return null;
+            }
+
+            setAuthToken(token);
+            return mAuthHeader;
+        }
+    }
+
+    /**
+     * Instantiate a new {@link HttpURLConnection} to the specified path
      * and set common headers.
      *
      * @param path The absolute request path (will be appended to
      *             {@link Constants.URLPaths#BACKEND_ROOT}).
+     * @param authHeader The value of the {@code Authentication} header,
+     *                   or {@code null} to omit it.
      * @return The new connection.
      * @throws IOException If the URL was malformed, or the connection could
      *                     not be established.
      */
-    private HttpsURLConnection getConnection(String path) throws IOException {
-        URL url = new URL(Constants.URLPaths.BACKEND_ROOT + path);
-        HttpsURLConnection conn = (HttpsURLConnection) url.openConnection();
-
-        if (mAuthToken != null) {
-            conn.setRequestProperty("Authentication", "Bearer " + mAuthToken);
+    private HttpURLConnection getConnection(String path, @Nullable String authHeader)
+    throws IOException {
+        URL url = new URL(mRootUrl + path);
+        HttpURLConnection conn = (HttpURLConnection) url.openConnection();
+        setTimeouts(
+                conn,
+                Constants.Timeouts.BACKEND_CONNECT_MS,
+                Constants.Timeouts.BACKEND_READ_MS
+        );
+
+        if (authHeader != null) {
+            conn.setRequestProperty("Authentication", authHeader);
         }
 
         conn.setRequestProperty("Content-Type", "application/json; charset=utf-8");
+        // Setting this explicitly disables the platform's transparent gzip
+        // handling, so decodeResponseStream() takes care of it instead
+        conn.setRequestProperty("Accept-Encoding", ACCEPT_ENCODING);
         return conn;
     }
 
+    /**
+     * Set the connect and read timeouts of a connection, limited to the time
+     * left until the current thread's {@link Deadline}.
+     *
+     * @param conn The connection.
+     * @param connectTimeoutMs The connect timeout if there is no deadline.
+     * @param readTimeoutMs The read timeout if there is no deadline.
+     * @throws Deadline.ExceededException If the deadline has expired already.
+     */
+    private static void setTimeouts(URLConnection conn, int connectTimeoutMs, int readTimeoutMs)
+    throws Deadline.ExceededException {
+        conn.setConnectTimeout(Deadline.clampTimeout(connectTimeoutMs));
+        conn.setReadTimeout(Deadline.clampTimeout(readTimeoutMs));
+    }
+
+    /**
+     * Return the response body stream of a request after it was sent.
+     *
+     * @param conn The connection.
+     * @return The response body stream.
+     * @throws HttpStatusException If the server responded with an error status.
+     * @throws IOException If the response could not be read.
+     */
+    private static InputStream getResponseStream(HttpURLConnection conn) throws IOException {
+        int status = conn.getResponseCode();
+        if (status >= 400) {
+            throw new HttpStatusException(status, conn.getResponseMessage());
+        }
+
+        return conn.getInputStream();
+    }
+
+    /**
+     * Read a stream until its end.
+     *
+     * @param in The stream.
+     * @return All bytes read from the stream.
+     * @throws IOException If the stream could not be read.
+     */
+    private static byte[] readFully(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buf = new byte[8192];
+        int n;
+        while ((n = in.read(buf)) != -1) {
+            out.write(buf, 0, n);
+        }
+        return out.toByteArray();
+    }
+
     /**
      * Read the response from a HTTP request after it was sent.
      *
      * @param conn The connection.
-     * @return The JSON response, or null if it was empty.
+     * @return The response body, which may be empty.
+     * @throws HttpStatusException If the server responded with an error status.
      * @throws IOException If an error was encountered while trying to read the
      *                     response body.
-     * @throws JSONException If the response body did not contain valid JSON.
      */
-    private static JSONObject readResponse(HttpsURLConnection conn)
-    throws IOException, JSONException {
-        InputStream in = new BufferedInputStream(conn.getInputStream());
-        BufferedReader reader = new BufferedReader(new InputStreamReader(in));
-        StringBuffer responseBuf = new StringBuffer();
-
-        while (true) {
-            String line = reader.readLine();
-            if (line == null) {
-                break;
+    private static String readResponse(HttpURLConnection conn) throws IOException {
+        // The body is decompressed and decoded in a single pass, so the
+        // compressed bytes are never buffered; only the decoded text is
+        String encoding = conn.getContentEncoding();
+        boolean identity = encoding == null || encoding.equalsIgnoreCase("identity");
+        // The content length of a compressed body says little about its decoded size
+        int lengthHint = identity ? conn.getContentLength() : -1;
+        StringBuilder responseBuf = new StringBuilder(lengthHint > 0 ? lengthHint : 1024);
+
+        try (Reader reader = new InputStreamReader(
+                decodeResponseStream(conn, getResponseStream(conn)),
+                StandardCharsets.UTF_8
+        )) {
+            char[] buf = new char[4096];
+            int n;
+            while ((n = reader.read(buf)) != -1) {
+                responseBuf.append(buf, 0, n);
             }
-            responseBuf.append(line);
         }
-        reader.close();
-        in.close();
 
-        if (responseBuf.length() > 0) {
-            return new JSONObject(responseBuf.toString());
+        return responseBuf.toString();
+    }
+
+    /**
+     * Wrap a response body stream in a decompressing stream according to
+     * the {@code Content-Encoding} response header.
+     *
+     * @param conn The connection.
+     * @param in The raw response body stream.
+     * @return The decompressed response body stream.
+     * @throws IOException If the response body is not in the declared format,
+     *                     or uses an encoding we did not ask for.
+     */
+    private static InputStream decodeResponseStream(HttpURLConnection conn, InputStream in)
+    throws IOException {
+        InputStream buffered = new BufferedInputStream(in);
+        String encoding = conn.getContentEncoding();
+        if (encoding == null || encoding.equalsIgnoreCase("identity")) {
+            return buffered;
+        } else if (encoding.equalsIgnoreCase(ENCODING_GZIP)) {
+            return new GZIPInputStream(buffered);
+        } else if (encoding.equalsIgnoreCase(ENCODING_DEFLATE)) {
+            return new InflaterInputStream(buffered);
+        }
+
+        buffered.close();
+        throw new IOException("Unsupported content encoding: " + encoding);
+    }
+
+    /**
+     * Compress a request body with gzip.
+     *
+     * @param data The uncompressed data.
+     * @return The compressed data.
+     * @throws IOException Can never be thrown.
+     */
+    private static byte[] gzip(byte[] data) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(data.length / 2);
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+            gzip.write(data);
         }
+        return out.toByteArray();
+    }
 
-        return null;
+    /**
+     * Return the host name of a root URL.
+     *
+     * @param rootUrl The root URL.
+     * @return The host name, or the URL itself if it is malformed.
+     */
+    private static String getHost(String rootUrl) {
+        try {
+            return new URL(rootUrl).getHost();
+        } catch (MalformedURLException e) {
+            return rootUrl;
+        }
     }
 
     /**
@@ -272,4 +706,21 @@ public final class NetworkUtil {
         });
     }
 
+    /** Callback for obtaining a new token after the current one was rejected. */
+    public interface TokenRefresher {
+
+        /**
+         * Obtain a new token after the backend has rejected the given one.
+         * This is called on the thread that performed the request, possibly
+         * from several threads at the same time; implementations must make
+         * sure that only one refresh is actually performed.
+         *
+         * @param rejectedToken The token that was rejected.
+         * @return The new token, or {@code null} if none could be obtained.
+         */
+        @Nullable
+        String refreshRejectedToken(@NonNull String rejectedToken);
+
+    }
+
 }
@@ -0,0 +1,249 @@
+/*
+ * Copyright (c) 2019 Felix Kopp <sandtler@sandtler.club>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package club.sandtler.devid.lib;
+
+import android.os.SystemClock;
+import android.util.Log;
+import android.view.Surface;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.Player;
+import com.google.android.exoplayer2.analytics.AnalyticsListener;
+import com.google.android.exoplayer2.source.MediaSourceEventListener;
+import com.google.android.exoplayer2.upstream.Allocator;
+
+import java.util.Locale;
+
+/**
+ * Collects metrics about a single playback session, such as startup latency,
+ * rebuffering and buffer memory usage, together with the
+ * {@link PlayerLoadProfile} that was in use.  This allows comparing the
+ * effect of the individual profiles.
+ */
+public final class PlaybackMetrics implements AnalyticsListener {
+
+    /** The load profile the player was created with. */
+    private final PlayerLoadProfile mProfile;
+    /** The allocator of the player's load control, for measuring memory use. */
+    @Nullable
+    private final Allocator mAllocator;
+
+    /** Elapsed realtime when the player was prepared. */
+    private long mPrepareTimeMs = C.TIME_UNSET;
+    /** Time from preparing until the player was ready for the first time. */
+    private long mStartupLatencyMs = C.TIME_UNSET;
+    /** Time from preparing until the first video frame was rendered. */
+    private long mFirstFrameLatencyMs = C.TIME_UNSET;
+    /** Elapsed realtime when the current rebuffer started. */
+    private long mRebufferStartMs = C.TIME_UNSET;
+    /** Whether a seek has started and the player hasn't been ready since. */
+    private boolean mSeeking = false;
+    /** The most recently reported playback state. */
+    private int mPlaybackState = Player.STATE_IDLE;
+    /** How often playback stalled after it had started. */
+    private int mRebufferCount = 0;
+    /** Total time spent rebuffering. */
+    private long mRebufferTimeMs = 0;
+    /** Total amount of media bytes loaded. */
+    private long mBytesLoaded = 0;
+    /** The highest amount of memory allocated for the media buffer. */
+    private long mPeakAllocatedBytes = 0;
+
+    /**
+     * Create a new metrics collector.
+     *
+     * @param profile The load profile used by the player.
+     * @param allocator The allocator of the player's load control.
+     */
+    public PlaybackMetrics(@NonNull PlayerLoadProfile profile, @Nullable Allocator allocator) {
+        mProfile = profile;
+        mAllocator = allocator;
+    }
+
+    /**
+     * Mark the point in time where the player was (re-)prepared.
+     * Startup latencies are measured relative to the most recent call.
+     */
+    public void onPrepare() {
+        mPrepareTimeMs = SystemClock.elapsedRealtime();
+        mStartupLatencyMs = C.TIME_UNSET;
+        mFirstFrameLatencyMs = C.TIME_UNSET;
+        mRebufferStartMs = C.TIME_UNSET;
+        mSeeking = false;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void onPlayerStateChanged(EventTime eventTime, boolean playWhenReady,
+                                     int playbackState) {
+        mPlaybackState = playbackState;
+        switch (playbackState) {
+            case Player.STATE_READY:
+                mSeeking = false;
+                if (mStartupLatencyMs == C.TIME_UNSET && mPrepareTimeMs != C.TIME_UNSET) {
+                    mStartupLatencyMs = eventTime.realtimeMs - mPrepareTimeMs;
+                }
+                if (mRebufferStartMs != C.TIME_UNSET) {
+                    mRebufferTimeMs += eventTime.realtimeMs - mRebufferStartMs;
+                    mRebufferStartMs = C.TIME_UNSET;
+                }
+                break;
+            case Player.STATE_BUFFERING:
+                // Only count stalls after playback has started, and not
+                // the buffering caused by seeks
+                if (mStartupLatencyMs != C.TIME_UNSET && mRebufferStartMs == C.TIME_UNSET
+                        && !mSeeking) {
+                    mRebufferCount++;
+                    mRebufferStartMs = eventTime.realtimeMs;
+                }
+                break;
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void onSeekStarted(EventTime eventTime) {
+        // A stall that is interrupted by a seek ends here
+        if (mRebufferStartMs != C.TIME_UNSET) {
+            mRebufferTimeMs += eventTime.realtimeMs - mRebufferStartMs;
+            mRebufferStartMs = C.TIME_UNSET;
+        }
+        mSeeking = true;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void onSeekProcessed(EventTime eventTime) {
+        if (mPlaybackState != Player.STATE_BUFFERING) {
+            // The seek target was buffered already, so there won't be a
+            // STATE_READY to clear the flag
+            mSeeking = false;
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void onRenderedFirstFrame(EventTime eventTime, @Nullable Surface surface) {
+        if (mFirstFrameLatencyMs == C.TIME_UNSET && mPrepareTimeMs != C.TIME_UNSET) {
+            mFirstFrameLatencyMs = eventTime.realtimeMs - mPrepareTimeMs;
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void onLoadCompleted(EventTime eventTime,
+                                MediaSourceEventListener.LoadEventInfo loadEventInfo,
+                                MediaSourceEventListener.MediaLoadData mediaLoadData) {
+        mBytesLoaded += loadEventInfo.bytesLoaded;
+        if (mAllocator != null) {
+            mPeakAllocatedBytes = Math.max(mPeakAllocatedBytes, mAllocator.getTotalBytesAllocated());
+        }
+    }
+
+    /**
+     * Return the load profile the player was created with.
+     *
+     * @return The profile.
+     */
+    @NonNull
+    public PlayerLoadProfile getProfile() {
+        return mProfile;
+    }
+
+    /**
+     * Return the time it took from preparing the player until it was ready.
+     *
+     * @return The startup latency in milliseconds, or {@link C#TIME_UNSET}.
+     */
+    public long getStartupLatencyMs() {
+        return mStartupLatencyMs;
+    }
+
+    /**
+     * Return the time it took from preparing the player until the first
+     * video frame was rendered.
+     *
+     * @return The first frame latency in milliseconds, or {@link C#TIME_UNSET}.
+     */
+    public long getFirstFrameLatencyMs() {
+        return mFirstFrameLatencyMs;
+    }
+
+    /**
+     * Return how often playback stalled because the buffer ran empty.
+     *
+     * @return The rebuffer count.
+     */
+    public int getRebufferCount() {
+        return mRebufferCount;
+    }
+
+    /**
+     * Return the total time playback was stalled because of an empty buffer.
+     *
+     * @return The rebuffer time in milliseconds.
+     */
+    public long getRebufferTimeMs() {
+        return mRebufferTimeMs;
+    }
+
+    /**
+     * Return the total amount of media data loaded.
+     *
+     * @return The amount of bytes loaded.
+     */
+    public long getBytesLoaded() {
+        return mBytesLoaded;
+    }
+
+    /**
+     * Return the highest amount of memory used by the media buffer.
+     *
+     * @return The peak buffer size in bytes.
+     */
+    public long getPeakAllocatedBytes() {
+        return mPeakAllocatedBytes;
+    }
+
+    /** Write a summary of all metrics to the log. */
+    public void log() {
+        Log.i(Constants.LOG_TAG, toString());
+    }
+
+    /** {@inheritDoc} */
+    @NonNull
+    @Override
+    public String toString() {
+        return String.format(
+                Locale.ROOT,
+                "PlaybackMetrics[profile=%s, startupMs=%d, firstFrameMs=%d, rebuffers=%d, "
+                        + "rebufferMs=%d, bytesLoaded=%d, peakBufferBytes=%d]",
+                mProfile,
+                mStartupLatencyMs,
+                mFirstFrameLatencyMs,
+                mRebufferCount,
+                mRebufferTimeMs,
+                mBytesLoaded,
+                mPeakAllocatedBytes
+        );
+    }
+
+}
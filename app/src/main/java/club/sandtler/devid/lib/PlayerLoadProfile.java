@@ -0,0 +1,137 @@
+/*
+ * Copyright (c) 2019 Felix Kopp <sandtler@sandtler.club>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package club.sandtler.devid.lib;
+
+import android.app.ActivityManager;
+import android.content.Context;
+import android.net.ConnectivityManager;
+import android.net.NetworkInfo;
+
+import androidx.annotation.NonNull;
+import androidx.core.net.ConnectivityManagerCompat;
+
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.DefaultLoadControl;
+import com.google.android.exoplayer2.LoadControl;
+import com.google.android.exoplayer2.upstream.DefaultAllocator;
+
+/**
+ * Buffering profiles for the video player.
+ * <p>
+ * Each profile defines how much media the player buffers ahead of (and
+ * behind) the current playback position.  The profile to use is chosen from
+ * the device's memory class and the type of network connection by
+ * {@link #select}, so that low-RAM devices keep their memory footprint small
+ * while devices on unmetered networks start playing as fast as possible.
+ */
+public enum PlayerLoadProfile {
+
+    /** Devices with little RAM: small buffers with a hard byte limit. */
+    LOW_MEMORY(10000, 20000, 2000, 4000, 8 * 1024 * 1024, 0),
+    /** Metered (usually cellular) networks: don't buffer too far ahead. */
+    METERED(15000, 30000, 2500, 5000, C.LENGTH_UNSET, 0),
+    /** Unmetered networks: start early, buffer a lot, keep a back buffer. */
+    UNMETERED(15000, 60000, 1000, 2500, C.LENGTH_UNSET, 30000),
+    /** No network (i.e. offline playback) or unknown connectivity. */
+    DEFAULT(
+            DefaultLoadControl.DEFAULT_MIN_BUFFER_MS,
+            DefaultLoadControl.DEFAULT_MAX_BUFFER_MS,
+            DefaultLoadControl.DEFAULT_BUFFER_FOR_PLAYBACK_MS,
+            DefaultLoadControl.DEFAULT_BUFFER_FOR_PLAYBACK_AFTER_REBUFFER_MS,
+            DefaultLoadControl.DEFAULT_TARGET_BUFFER_BYTES,
+            DefaultLoadControl.DEFAULT_BACK_BUFFER_DURATION_MS
+    );
+
+    /**
+     * Devices with a memory class (per-app heap limit in megabytes) less than
+     * or equal to this are treated as low-RAM devices.
+     */
+    private static final int LOW_MEMORY_CLASS_MB = 96;
+
+    /** The minimum duration of media to buffer ahead, in milliseconds. */
+    private final int mMinBufferMs;
+    /** The maximum duration of media to buffer ahead, in milliseconds. */
+    private final int mMaxBufferMs;
+    /** Buffered media required to start playback, in milliseconds. */
+    private final int mBufferForPlaybackMs;
+    /** Buffered media required to resume playback after a rebuffer. */
+    private final int mBufferForPlaybackAfterRebufferMs;
+    /** The maximum buffer size in bytes, or {@link C#LENGTH_UNSET}. */
+    private final int mTargetBufferBytes;
+    /** Duration of media to keep behind the playback position, in milliseconds. */
+    private final int mBackBufferMs;
+
+    PlayerLoadProfile(int minBufferMs, int maxBufferMs, int bufferForPlaybackMs,
+                      int bufferForPlaybackAfterRebufferMs, int targetBufferBytes,
+                      int backBufferMs) {
+        mMinBufferMs = minBufferMs;
+        mMaxBufferMs = maxBufferMs;
+        mBufferForPlaybackMs = bufferForPlaybackMs;
+        mBufferForPlaybackAfterRebufferMs = bufferForPlaybackAfterRebufferMs;
+        mTargetBufferBytes = targetBufferBytes;
+        mBackBufferMs = backBufferMs;
+    }
+
+    /**
+     * Choose the most appropriate profile for the current device and network.
+     *
+     * @param context The context.
+     * @return The profile.
+     */
+    @NonNull
+    public static PlayerLoadProfile select(@NonNull Context context) {
+        ActivityManager am = (ActivityManager) context.getSystemService(Context.ACTIVITY_SERVICE);
+        if (am != null && (am.isLowRamDevice() || am.getMemoryClass() <= LOW_MEMORY_CLASS_MB)) {
+            return LOW_MEMORY;
+        }
+
+        ConnectivityManager cm =
+                (ConnectivityManager) context.getSystemService(Context.CONNECTIVITY_SERVICE);
+        if (cm == null) {
+            return DEFAULT;
+        }
+        NetworkInfo networkInfo = cm.getActiveNetworkInfo();
+        if (networkInfo == null || !networkInfo.isConnected()) {
+            return DEFAULT;
+        }
+
+        return ConnectivityManagerCompat.isActiveNetworkMetered(cm) ? METERED : UNMETERED;
+    }
+
+    /**
+     * Create a new load control that implements this profile.
+     *
+     * @return The load control.
+     */
+    @NonNull
+    public LoadControl createLoadControl() {
+        return new DefaultLoadControl.Builder()
+                .setAllocator(new DefaultAllocator(true, C.DEFAULT_BUFFER_SEGMENT_SIZE))
+                .setBufferDurationsMs(
+                        mMinBufferMs,
+                        mMaxBufferMs,
+                        mBufferForPlaybackMs,
+                        mBufferForPlaybackAfterRebufferMs
+                )
+                .setTargetBufferBytes(mTargetBufferBytes)
+                .setPrioritizeTimeOverSizeThresholds(mTargetBufferBytes == C.LENGTH_UNSET)
+                .setBackBuffer(mBackBufferMs, true)
+                .createDefaultLoadControl();
+    }
+
+}
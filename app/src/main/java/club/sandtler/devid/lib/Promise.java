@@ -24,6 +24,8 @@ import android.util.Log;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
+import java.util.concurrent.Executor;
+
 /**
  * A JavaScript-style implementation of asynchronous operations.
  *
@@ -52,8 +54,6 @@ import androidx.annotation.Nullable;
  * Where the {@code expect()} line could actually be left out if you are on a
  * rush.  Both callbacks are executed on the same thread as the one where
  * {@code getSomething()} was called from.
- * <p>
- * This API is not used at all BTW, I wrote it because I had nothing else to do.
  *
  * @param <T> The type of the promised data.
  */
@@ -73,6 +73,17 @@ public final class Promise<T> {
      */
     private boolean mRunAsync;
 
+    /** The deadline for the Promise executor, if any. */
+    @Nullable
+    private Deadline mDeadline = null;
+
+    /**
+     * The executor to run the {@link AsyncTask} on, or {@code null} for
+     * {@link AsyncTask}'s default executor.
+     */
+    @Nullable
+    private Executor mAsyncExecutor = null;
+
     /**
      * Create a new Promise.
      * The {@code executor} will be run in a separate thread that is a child of
@@ -102,6 +113,39 @@ public final class Promise<T> {
         mRunAsync = runAsync;
     }
 
+    /**
+     * Set a deadline for the Promise executor.
+     * The deadline is attached to the thread running the executor, so all
+     * network requests made by it are limited to the time left.  If the
+     * deadline has already passed by the time the executor would be run
+     * (because it was queued behind other tasks, for example), it is not run
+     * at all and the Promise is rejected with a
+     * {@link Deadline.ExceededException}.
+     *
+     * @param timeoutMs The time from now on in milliseconds.
+     * @return The instance itself for chaining {@link #then}.
+     */
+    public Promise<T> withDeadline(long timeoutMs) {
+        mDeadline = Deadline.after(timeoutMs);
+        return this;
+    }
+
+    /**
+     * Run the Promise executor on the {@link NetworkDispatcher} rather than
+     * {@link AsyncTask}'s default executor.  This should be used for all
+     * Promises that perform network requests, so that more important
+     * requests are not stuck behind this one.
+     *
+     * @param host The host the executor is going to send requests to.
+     * @param priority The priority, one of the {@code PRIORITY_} constants
+     *                 in {@link NetworkDispatcher}.
+     * @return The instance itself for chaining {@link #then}.
+     */
+    public Promise<T> withPriority(@NonNull String host, int priority) {
+        mAsyncExecutor = NetworkDispatcher.getDefault().getExecutor(host, priority);
+        return this;
+    }
+
     /**
      * Set the resolve handler.
      * This changes the Promise to an incomplete state which allows to either
@@ -118,7 +162,29 @@ public final class Promise<T> {
         }
         mIsThenCalled = true;
 
-        return new IncompletePromiseState<>(mExecutor, resolveCallback, mRunAsync);
+        return new IncompletePromiseState<>(
+                wrapWithDeadline(mExecutor, mDeadline),
+                resolveCallback,
+                mRunAsync,
+                mAsyncExecutor
+        );
+    }
+
+    /**
+     * Wrap a Promise executor so that it runs with a deadline attached.
+     *
+     * @param executor The executor.
+     * @param deadline The deadline, or {@code null} if there is none.
+     * @param <T> The Promise data type.
+     * @return The wrapped executor.
+     */
+    private static <T> TypedRunnable<T> wrapWithDeadline(@NonNull TypedRunnable<T> executor,
+                                                         @Nullable Deadline deadline) {
+        if (deadline == null) {
+            return executor;
+        }
+
+        return () -> deadline.run(executor);
     }
 
     /**
@@ -139,19 +205,27 @@ public final class Promise<T> {
         private boolean mIsExecuted = false;
         /** Whether to run the Promise executor in a separate thread. */
         private final boolean mRunAsync;
+        /** The executor to run the {@link AsyncTask} on, if not the default. */
+        @Nullable
+        private final Executor mAsyncExecutor;
 
         /**
          * Create a new incomplete Promise state.
          *
          * @param executor The Promise executor.
          * @param resolveCallback The resolve callback.
+         * @param runAsync Whether to run the executor in a separate thread.
+         * @param asyncExecutor The executor to run the {@link AsyncTask} on,
+         *                      or {@code null} for the default one.
          */
         private IncompletePromiseState(TypedRunnable<T> executor,
                                        ResolveCallback<T> resolveCallback,
-                                       boolean runAsync) {
+                                       boolean runAsync,
+                                       @Nullable Executor asyncExecutor) {
             mExecutor = executor;
             mResolveCallback = resolveCallback;
             mRunAsync = runAsync;
+            mAsyncExecutor = asyncExecutor;
         }
 
         /**
@@ -176,7 +250,13 @@ public final class Promise<T> {
             }
 
             if (mRunAsync) {
-                new PromiseExecutorTask<>(mExecutor, mResolveCallback, mRejectCallback).execute();
+                PromiseExecutorTask<T> task =
+                        new PromiseExecutorTask<>(mExecutor, mResolveCallback, mRejectCallback);
+                if (mAsyncExecutor == null) {
+                    task.execute();
+                } else {
+                    task.executeOnExecutor(mAsyncExecutor);
+                }
             } else {
                 try {
                     mResolveCallback.onResolve(mExecutor.run());
@@ -0,0 +1,283 @@
+/*
+ * Copyright (c) 2019 Felix Kopp <sandtler@sandtler.club>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package club.sandtler.devid.lib;
+
+import androidx.annotation.NonNull;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Retries failed network requests with exponential backoff.
+ * <p>
+ * Delays are chosen at random between zero and an exponentially growing
+ * upper bound ("full jitter"), so clients that failed at the same time don't
+ * retry at the same time.  Retries are further limited by a budget: every
+ * request earns a fraction of a retry token, and every retry spends a whole
+ * one, so retries can never make up more than a fixed share of all traffic.
+ * Finally, every host has its own {@link CircuitBreaker} that makes requests
+ * fail fast while the host is known to be down.
+ * <p>
+ * Only transient failures are retried: connection errors, timeouts and
+ * server-side HTTP errors.  Client errors like 404 are reported right away,
+ * and so is every failure once the current {@link Deadline} would not leave
+ * enough time for another attempt.
+ * This class is thread safe.
+ */
+public final class RetryPolicy {
+
+    /**
+     * A single attempt at performing a request.
+     *
+     * @param <T> The result type.
+     */
+    public interface Attempt<T> {
+
+        /**
+         * Perform the request.
+         *
+         * @return The result.
+         * @throws IOException If the request failed.
+         */
+        T run() throws IOException;
+
+    }
+
+    /** Source of the current time. */
+    public interface Clock {
+
+        /**
+         * Return the current time.
+         *
+         * @return The current time in milliseconds.
+         */
+        long now();
+
+    }
+
+    /** Waits between two attempts. */
+    public interface Sleeper {
+
+        /**
+         * Block for the given amount of time.
+         *
+         * @param millis The time to wait in milliseconds.
+         * @throws InterruptedException If the thread was interrupted.
+         */
+        void sleep(long millis) throws InterruptedException;
+
+    }
+
+    /** The maximum amount of attempts per request, including the first one. */
+    private final int mMaxAttempts;
+    /** Upper bound of the delay before the first retry. */
+    private final long mBaseDelayMs;
+    /** Upper bound of the delay before any retry. */
+    private final long mMaxDelayMs;
+    /** Retry tokens earned per request. */
+    private final double mBudgetPerRequest;
+    /** The maximum amount of retry tokens that can be saved up. */
+    private final double mMaxBudget;
+    /** Consecutive failures after which a host's circuit opens. */
+    private final int mFailureThreshold;
+    /** How long a host's circuit stays open. */
+    private final long mOpenDurationMs;
+    /** The clock. */
+    private final Clock mClock;
+    /** The sleeper. */
+    private final Sleeper mSleeper;
+    /** Source of jitter. */
+    private final Random mRandom;
+
+    /** The circuit breakers, indexed by host. */
+    private final Map<String, CircuitBreaker> mCircuitBreakers = new HashMap<>();
+    /** The currently available retry tokens.  Guarded by {@code this}. */
+    private double mBudget;
+
+    /** Create a new retry policy with the default settings from {@link Constants.Retry}. */
+    public RetryPolicy() {
+        this(
+                Constants.Retry.MAX_ATTEMPTS,
+                Constants.Retry.BASE_DELAY_MS,
+                Constants.Retry.MAX_DELAY_MS,
+                Constants.Retry.BUDGET_PER_REQUEST,
+                Constants.Retry.MAX_BUDGET,
+                Constants.Retry.CIRCUIT_FAILURE_THRESHOLD,
+                Constants.Retry.CIRCUIT_OPEN_DURATION_MS,
+                System::currentTimeMillis,
+                Thread::sleep,
+                new Random()
+        );
+    }
+
+    /**
+     * Create a new retry policy.
+     *
+     * @param maxAttempts The maximum amount of attempts per request.
+     * @param baseDelayMs Upper bound of the delay before the first retry.
+     * @param maxDelayMs Upper bound of the delay before any retry.
+     * @param budgetPerRequest Retry tokens earned per request.
+     * @param maxBudget The maximum amount of retry tokens.
+     * @param failureThreshold Consecutive failures after which a circuit opens.
+     * @param openDurationMs How long a circuit stays open.
+     * @param clock The clock.
+     * @param sleeper The sleeper.
+     * @param random Source of jitter.
+     */
+    RetryPolicy(int maxAttempts, long baseDelayMs, long maxDelayMs, double budgetPerRequest,
+                double maxBudget, int failureThreshold, long openDurationMs,
+                Clock clock, Sleeper sleeper, Random random) {
+        mMaxAttempts = maxAttempts;
+        mBaseDelayMs = baseDelayMs;
+        mMaxDelayMs = maxDelayMs;
+        mBudgetPerRequest = budgetPerRequest;
+        mMaxBudget = maxBudget;
+        mBudget = maxBudget;
+        mFailureThreshold = failureThreshold;
+        mOpenDurationMs = openDurationMs;
+        mClock = clock;
+        mSleeper = sleeper;
+        mRandom = random;
+    }
+
+    /**
+     * Perform a request, retrying it if it fails transiently.
+     *
+     * @param host The host the request goes to.
+     * @param attempt The request.
+     * @param <T> The result type.
+     * @return The result of the first successful attempt.
+     * @throws IOException The exception of the last attempt if all of them
+     *                     failed, or {@link CircuitBreaker.OpenException} if
+     *                     the host's circuit is open.
+     */
+    public <T> T execute(@NonNull String host, @NonNull Attempt<T> attempt) throws IOException {
+        CircuitBreaker circuitBreaker = getCircuitBreaker(host);
+        earnBudget();
+
+        int attempts = 0;
+        while (true) {
+            circuitBreaker.acquire();
+            attempts++;
+
+            try {
+                T result = attempt.run();
+                circuitBreaker.onSuccess();
+                return result;
+            } catch (RuntimeException e) {
+                // Must be reported, or a half-open circuit would never close again
+                circuitBreaker.onFailure();
+                throw e;
+            } catch (IOException e) {
+                if (!isRetryable(e)) {
+                    // The host is fine, it's the request that is broken
+                    circuitBreaker.onSuccess();
+                    throw e;
+                }
+
+                circuitBreaker.onFailure();
+                if (attempts >= mMaxAttempts || !spendBudget()) {
+                    throw e;
+                }
+
+                long delay = getDelay(attempts);
+                Deadline deadline = Deadline.current();
+                if (deadline != null && deadline.remainingMillis() <= delay) {
+                    // We wouldn't have any time left for the retry anyway
+                    throw e;
+                }
+
+                try {
+                    mSleeper.sleep(delay);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    InterruptedIOException interrupted = new InterruptedIOException();
+                    interrupted.initCause(e);
+                    throw interrupted;
+                }
+            }
+        }
+    }
+
+    /**
+     * Return the circuit breaker for a host.
+     *
+     * @param host The host.
+     * @return The circuit breaker.
+     */
+    @NonNull
+    public synchronized CircuitBreaker getCircuitBreaker(@NonNull String host) {
+        CircuitBreaker circuitBreaker = mCircuitBreakers.get(host);
+        if (circuitBreaker == null) {
+            circuitBreaker = new CircuitBreaker(host, mFailureThreshold, mOpenDurationMs, mClock);
+            mCircuitBreakers.put(host, circuitBreaker);
+        }
+
+        return circuitBreaker;
+    }
+
+    /**
+     * Return the delay before a retry.
+     *
+     * @param attempts The number of attempts made so far (at least 1).
+     * @return The delay in milliseconds.
+     */
+    long getDelay(int attempts) {
+        int exponent = Math.min(attempts - 1, 30);
+        long bound = Math.min(mMaxDelayMs, mBaseDelayMs << exponent);
+        return (long) (mRandom.nextDouble() * bound);
+    }
+
+    /**
+     * Return whether a failed attempt may be retried.
+     *
+     * @param e The exception the attempt failed with.
+     * @return Whether the failure is transient.
+     */
+    public static boolean isRetryable(@NonNull IOException e) {
+        if (e instanceof HttpStatusException) {
+            return ((HttpStatusException) e).isRetryable();
+        }
+
+        return !(e instanceof CircuitBreaker.OpenException)
+                && !(e instanceof Deadline.ExceededException);
+    }
+
+    /** Earn the retry tokens for a new request. */
+    private synchronized void earnBudget() {
+        mBudget = Math.min(mMaxBudget, mBudget + mBudgetPerRequest);
+    }
+
+    /**
+     * Spend a retry token, if there is one.
+     *
+     * @return Whether a token was available.
+     */
+    private synchronized boolean spendBudget() {
+        if (mBudget < 1.0) {
+            return false;
+        }
+
+        mBudget -= 1.0;
+        return true;
+    }
+
+}
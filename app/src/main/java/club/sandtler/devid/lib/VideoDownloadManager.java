@@ -0,0 +1,396 @@
+/*
+ * Copyright (c) 2019 Felix Kopp <sandtler@sandtler.club>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package club.sandtler.devid.lib;
+
+import android.content.Context;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.google.android.exoplayer2.database.DatabaseProvider;
+import com.google.android.exoplayer2.database.ExoDatabaseProvider;
+import com.google.android.exoplayer2.offline.Download;
+import com.google.android.exoplayer2.offline.DownloadCursor;
+import com.google.android.exoplayer2.offline.DownloadManager;
+import com.google.android.exoplayer2.offline.DownloadRequest;
+import com.google.android.exoplayer2.offline.DownloadService;
+import com.google.android.exoplayer2.upstream.DataSource;
+import com.google.android.exoplayer2.upstream.DefaultDataSourceFactory;
+import com.google.android.exoplayer2.upstream.DefaultHttpDataSourceFactory;
+import com.google.android.exoplayer2.upstream.DummyDataSource;
+import com.google.android.exoplayer2.upstream.FileDataSourceFactory;
+import com.google.android.exoplayer2.upstream.cache.Cache;
+import com.google.android.exoplayer2.upstream.cache.CacheDataSource;
+import com.google.android.exoplayer2.upstream.cache.CacheDataSourceFactory;
+import com.google.android.exoplayer2.upstream.cache.NoOpCacheEvictor;
+import com.google.android.exoplayer2.upstream.cache.SimpleCache;
+import com.google.android.exoplayer2.util.Util;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+
+import club.sandtler.devid.R;
+
+import static club.sandtler.devid.lib.Constants.URLPaths;
+
+/**
+ * Manager for offline video downloads, built on top of ExoPlayer's download
+ * infrastructure.
+ * <p>
+ * Downloads are stored in a persistent {@link SimpleCache} that is never
+ * evicted automatically, and their state is tracked in ExoPlayer's download
+ * index database so that interrupted downloads are resumed where they left
+ * off.  The actual work is done by {@link VideoDownloadService}.
+ * <p>
+ * The player should always obtain its data source factory from
+ * {@link #buildDataSourceFactory}, which reads from the download cache first
+ * and does not touch the network at all for completely downloaded videos.
+ * <p>
+ * The state of existing downloads is read from the index in the background
+ * when the app starts, so it is never waited for on the UI thread.  Until
+ * {@link #isIndexLoaded()} returns {@code true}, downloads that haven't
+ * changed since the app was started are unknown; listeners are notified
+ * about each of them once the index has been read.
+ */
+public final class VideoDownloadManager implements DownloadManager.Listener {
+
+    /** The instance (singleton access). */
+    private static VideoDownloadManager sInstance;
+
+    /** The user agent to send with all HTTP requests. */
+    private final String mUserAgent;
+    /** The application context. */
+    private final Context mContext;
+    /** Database provider for both the download index and the cache index. */
+    private final DatabaseProvider mDatabaseProvider;
+    /** The cache holding all downloaded video data. */
+    private final Cache mDownloadCache;
+    /** ExoPlayer's download manager. */
+    private final DownloadManager mDownloadManager;
+    /** The state of every known download, indexed by video id. */
+    private final ConcurrentMap<String, Download> mDownloads = new ConcurrentHashMap<>();
+    /** Released once the persistent download index has been read into {@link #mDownloads}. */
+    private final CountDownLatch mIndexLoaded = new CountDownLatch(1);
+    /** Guards merging the download index with the listener events. */
+    private final Object mIndexLock = new Object();
+    /**
+     * Ids of downloads removed while the index was being read, so they aren't
+     * added back from the index.  Guarded by {@link #mIndexLock}.
+     */
+    private final Set<String> mRemovedWhileLoading = new HashSet<>();
+    /** The listeners registered with {@link #addListener}. */
+    private final List<DownloadManager.Listener> mListeners = new CopyOnWriteArrayList<>();
+    /** Handler for notifying listeners on the UI thread. */
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+
+    /**
+     * Private constructor for singleton access.
+     *
+     * @param context The context.
+     */
+    private VideoDownloadManager(Context context) {
+        mContext = context.getApplicationContext();
+        mUserAgent = Util.getUserAgent(mContext, mContext.getString(R.string.app_name));
+        mDatabaseProvider = new ExoDatabaseProvider(mContext);
+        mDownloadCache = new SimpleCache(
+                new File(mContext.getFilesDir(), Constants.Downloads.DIRECTORY),
+                new NoOpCacheEvictor(),
+                mDatabaseProvider
+        );
+
+        mDownloadManager = new DownloadManager(
+                mContext,
+                mDatabaseProvider,
+                mDownloadCache,
+                new DefaultHttpDataSourceFactory(mUserAgent)
+        );
+        mDownloadManager.setMaxParallelDownloads(Constants.Downloads.MAX_PARALLEL);
+        mDownloadManager.setMinRetryCount(Constants.Downloads.MIN_RETRY_COUNT);
+        mDownloadManager.addListener(this);
+
+        new Thread(this::loadDownloads, "VideoDownloadIndexLoader").start();
+    }
+
+    /**
+     * Return the instance of this manager.
+     * The instance must be created on the UI thread because listeners are
+     * notified on the thread the download manager was created on.
+     *
+     * @param context The context.
+     * @return The instance.
+     */
+    @NonNull
+    public static synchronized VideoDownloadManager getInstance(@NonNull Context context) {
+        if (sInstance == null) {
+            sInstance = new VideoDownloadManager(context);
+        }
+
+        return sInstance;
+    }
+
+    /**
+     * Return the full URI of a video file on the CDN.
+     *
+     * @param videoId The video id.
+     * @return The video URI.
+     */
+    @NonNull
+    public static Uri getVideoUri(@NonNull String videoId) {
+        return Uri.parse(URLPaths.CDN_ROOT + String.format(URLPaths.CDN_VIDEO_DEFAULT, videoId));
+    }
+
+    /**
+     * Return ExoPlayer's download manager.
+     * Only meant to be used by {@link VideoDownloadService}.
+     *
+     * @return The download manager.
+     */
+    @NonNull
+    DownloadManager getDownloadManager() {
+        return mDownloadManager;
+    }
+
+    /**
+     * Create a new data source factory for playing back a video.
+     * If the video has been downloaded completely, the data sources created
+     * by the returned factory read exclusively from local storage.
+     * Otherwise, any data that has already been downloaded is read from
+     * local storage while the rest is streamed from the CDN.
+     * <p>
+     * Whether the video has been downloaded is only decided when the player
+     * creates a data source on its own thread, which waits for the download
+     * index if it hasn't been read yet.  So this method never blocks.
+     *
+     * @param videoId The video id.
+     * @return The data source factory.
+     */
+    @NonNull
+    public DataSource.Factory buildDataSourceFactory(@NonNull String videoId) {
+        DataSource.Factory offlineFactory = buildCacheDataSourceFactory(DummyDataSource.FACTORY);
+        DataSource.Factory onlineFactory = buildCacheDataSourceFactory(
+                new DefaultDataSourceFactory(mContext, new DefaultHttpDataSourceFactory(mUserAgent))
+        );
+
+        return () -> {
+            awaitIndex();
+            return (isDownloaded(videoId) ? offlineFactory : onlineFactory).createDataSource();
+        };
+    }
+
+    /**
+     * Create a data source factory that reads from the download cache first.
+     *
+     * @param upstreamFactory The factory for data that isn't cached.
+     * @return The data source factory.
+     */
+    private DataSource.Factory buildCacheDataSourceFactory(DataSource.Factory upstreamFactory) {
+        return new CacheDataSourceFactory(
+                mDownloadCache,
+                upstreamFactory,
+                new FileDataSourceFactory(),
+                null, // Never write to the download cache during playback
+                CacheDataSource.FLAG_IGNORE_CACHE_ON_ERROR,
+                null
+        );
+    }
+
+    /**
+     * Start downloading a video in the background.
+     * This has no effect if the video is already being downloaded.
+     *
+     * @param videoId The video id.
+     * @param title The video title, to be shown in the download notification.
+     */
+    public void download(@NonNull String videoId, @Nullable String title) {
+        DownloadRequest request = new DownloadRequest(
+                videoId,
+                DownloadRequest.TYPE_PROGRESSIVE,
+                getVideoUri(videoId),
+                Collections.emptyList(),
+                null,
+                title == null ? null : Util.getUtf8Bytes(title)
+        );
+        DownloadService.sendAddDownload(mContext, VideoDownloadService.class, request, false);
+    }
+
+    /**
+     * Remove a downloaded video from local storage, or cancel its download
+     * if it is still in progress.
+     *
+     * @param videoId The video id.
+     */
+    public void remove(@NonNull String videoId) {
+        DownloadService.sendRemoveDownload(mContext, VideoDownloadService.class, videoId, false);
+    }
+
+    /**
+     * Return whether the state of all downloads has been read from the
+     * download index.  Before that, {@link #isDownloaded(String)} and
+     * {@link #isDownloading(String)} may return {@code false} for videos
+     * that have been downloaded in a previous session.
+     *
+     * @return Whether the download index has been read.
+     */
+    public boolean isIndexLoaded() {
+        return mIndexLoaded.getCount() == 0;
+    }
+
+    /**
+     * Return whether a video has been downloaded completely.
+     * This never blocks; see {@link #isIndexLoaded()}.
+     *
+     * @param videoId The video id.
+     * @return Whether the video is available offline.
+     */
+    public boolean isDownloaded(@NonNull String videoId) {
+        Download download = mDownloads.get(videoId);
+        return download != null && download.state == Download.STATE_COMPLETED;
+    }
+
+    /**
+     * Return whether a video is queued for download or being downloaded.
+     * This never blocks; see {@link #isIndexLoaded()}.
+     *
+     * @param videoId The video id.
+     * @return Whether the video download is pending.
+     */
+    public boolean isDownloading(@NonNull String videoId) {
+        Download download = mDownloads.get(videoId);
+        return download != null && (download.state == Download.STATE_QUEUED
+                || download.state == Download.STATE_DOWNLOADING
+                || download.state == Download.STATE_RESTARTING);
+    }
+
+    /**
+     * Register a listener for changes of any download's state.
+     * Only {@code onDownloadChanged} and {@code onDownloadRemoved} are
+     * forwarded, on the UI thread, after the state returned by
+     * {@link #isDownloaded(String)} has been updated.  Once the download
+     * index has been read, {@code onDownloadChanged} is called for every
+     * download in it.
+     *
+     * @param listener The listener.
+     */
+    public void addListener(@NonNull DownloadManager.Listener listener) {
+        mListeners.add(listener);
+    }
+
+    /**
+     * Remove a listener previously registered with {@link #addListener}.
+     *
+     * @param listener The listener.
+     */
+    public void removeListener(@NonNull DownloadManager.Listener listener) {
+        mListeners.remove(listener);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void onDownloadChanged(DownloadManager downloadManager, Download download) {
+        mDownloads.put(download.request.id, download);
+        for (DownloadManager.Listener listener : mListeners) {
+            listener.onDownloadChanged(downloadManager, download);
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void onDownloadRemoved(DownloadManager downloadManager, Download download) {
+        synchronized (mIndexLock) {
+            mDownloads.remove(download.request.id);
+            if (!isIndexLoaded()) {
+                mRemovedWhileLoading.add(download.request.id);
+            }
+        }
+        for (DownloadManager.Listener listener : mListeners) {
+            listener.onDownloadRemoved(downloadManager, download);
+        }
+    }
+
+    /**
+     * Read the state of all downloads from the persistent download index,
+     * and notify the listeners about them on the UI thread.
+     * This performs database I/O and must not be called from the UI thread.
+     */
+    private void loadDownloads() {
+        List<Download> loaded = new ArrayList<>();
+        try (DownloadCursor cursor = mDownloadManager.getDownloadIndex().getDownloads()) {
+            while (cursor.moveToNext()) {
+                loaded.add(cursor.getDownload());
+            }
+        } catch (IOException e) {
+            Log.e(Constants.LOG_TAG, "Unable to load the download index", e);
+        }
+
+        List<Download> merged = new ArrayList<>(loaded.size());
+        synchronized (mIndexLock) {
+            for (Download download : loaded) {
+                String id = download.request.id;
+                // Don't overwrite more recent state from the listener
+                if (!mRemovedWhileLoading.contains(id)
+                        && mDownloads.putIfAbsent(id, download) == null) {
+                    merged.add(download);
+                }
+            }
+            mRemovedWhileLoading.clear();
+            mIndexLoaded.countDown();
+        }
+
+        mMainHandler.post(() -> {
+            for (Download download : merged) {
+                for (DownloadManager.Listener listener : mListeners) {
+                    listener.onDownloadChanged(mDownloadManager, download);
+                }
+            }
+        });
+    }
+
+    /**
+     * Wait until {@link #loadDownloads()} has finished.  This only blocks
+     * during startup, and not for longer than a single database query,
+     * but it must still never be called from the UI thread.
+     */
+    private void awaitIndex() {
+        boolean interrupted = false;
+        while (true) {
+            try {
+                mIndexLoaded.await();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+}
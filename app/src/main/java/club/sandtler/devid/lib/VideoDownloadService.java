@@ -0,0 +1,94 @@
+/*
+ * Copyright (c) 2019 Felix Kopp <sandtler@sandtler.club>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package club.sandtler.devid.lib;
+
+import android.app.Notification;
+
+import androidx.annotation.Nullable;
+
+import com.google.android.exoplayer2.offline.Download;
+import com.google.android.exoplayer2.offline.DownloadManager;
+import com.google.android.exoplayer2.offline.DownloadService;
+import com.google.android.exoplayer2.scheduler.PlatformScheduler;
+import com.google.android.exoplayer2.scheduler.Scheduler;
+import com.google.android.exoplayer2.ui.DownloadNotificationHelper;
+import com.google.android.exoplayer2.util.Util;
+
+import java.util.List;
+
+import club.sandtler.devid.R;
+
+/**
+ * Foreground service that performs offline video downloads.
+ * Downloads are to be started and removed over {@link VideoDownloadManager}.
+ */
+public class VideoDownloadService extends DownloadService {
+
+    /** Notification id for the download progress notification. */
+    private static final int FOREGROUND_NOTIFICATION_ID = 1;
+    /** Job id for the platform scheduler. */
+    private static final int JOB_ID = 1;
+
+    /** Helper for building the progress notification. */
+    private DownloadNotificationHelper mNotificationHelper;
+
+    public VideoDownloadService() {
+        super(
+                FOREGROUND_NOTIFICATION_ID,
+                DEFAULT_FOREGROUND_NOTIFICATION_UPDATE_INTERVAL,
+                Constants.Downloads.NOTIFICATION_CHANNEL_ID,
+                R.string.download_channel_name
+        );
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void onCreate() {
+        super.onCreate();
+        mNotificationHelper = new DownloadNotificationHelper(
+                this,
+                Constants.Downloads.NOTIFICATION_CHANNEL_ID
+        );
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    protected DownloadManager getDownloadManager() {
+        return VideoDownloadManager.getInstance(this).getDownloadManager();
+    }
+
+    /** {@inheritDoc} */
+    @Nullable
+    @Override
+    protected Scheduler getScheduler() {
+        // Allows resuming downloads after the app process was killed
+        return Util.SDK_INT >= 21 ? new PlatformScheduler(this, JOB_ID) : null;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    protected Notification getForegroundNotification(List<Download> downloads) {
+        return mNotificationHelper.buildProgressNotification(
+                R.drawable.ic_file_download_24dp,
+                null,
+                null,
+                downloads
+        );
+    }
+
+}
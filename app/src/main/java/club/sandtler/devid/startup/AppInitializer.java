@@ -0,0 +1,193 @@
+/*
+ * Copyright (c) 2019 Felix Kopp <sandtler@sandtler.club>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package club.sandtler.devid.startup;
+
+import android.content.Context;
+import android.os.Process;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import club.sandtler.devid.lib.Constants;
+
+/**
+ * Runs all {@link Initializer}s when the app starts.
+ * <p>
+ * Initializers are run in an order that satisfies their dependencies.
+ * The ones that need to run on the UI thread are run right away, and all
+ * other ones are run one after another on a single low priority background
+ * thread, so they don't compete with the UI thread for drawing the first
+ * frame.  If an initializer fails, the error is logged and the initializers
+ * that depend on it are skipped.
+ */
+public final class AppInitializer {
+
+    /** All registered initializers, indexed by class. */
+    private final Map<Class<? extends Initializer>, Initializer> mInitializers = new HashMap<>();
+    /** All registered initializers, in the order they were added. */
+    private final List<Initializer> mOrder = new ArrayList<>();
+    /** Initializers that have failed or were skipped (background thread only). */
+    private final Set<Class<? extends Initializer>> mFailed = new HashSet<>();
+
+    /**
+     * Register an initializer.
+     * Initializers without dependencies between them are run in the order
+     * they were added.
+     *
+     * @param initializer The initializer.
+     * @return The instance itself for chaining.
+     */
+    @NonNull
+    public AppInitializer add(@NonNull Initializer initializer) {
+        if (mInitializers.put(initializer.getClass(), initializer) != null) {
+            throw new IllegalStateException(
+                    initializer.getClass().getSimpleName() + " was added twice"
+            );
+        }
+        mOrder.add(initializer);
+        return this;
+    }
+
+    /**
+     * Run all registered initializers.
+     * This must be called from {@code Application.onCreate()}.  It returns as
+     * soon as all UI thread initializers have been run.
+     *
+     * @param context The application context.
+     * @throws IllegalStateException If the dependencies are unsatisfiable.
+     */
+    public void start(@NonNull Context context) {
+        List<Initializer> sorted = sort();
+        List<Initializer> background = new ArrayList<>();
+
+        for (Initializer initializer : sorted) {
+            if (!initializer.runsOnMainThread()) {
+                background.add(initializer);
+                continue;
+            }
+
+            for (Class<? extends Initializer> dependency : initializer.getDependencies()) {
+                if (!mInitializers.get(dependency).runsOnMainThread()) {
+                    throw new IllegalStateException(
+                            initializer.getClass().getSimpleName()
+                                    + " runs on the main thread but depends on "
+                                    + dependency.getSimpleName()
+                    );
+                }
+            }
+            run(initializer, context);
+        }
+
+        if (!background.isEmpty()) {
+            new Thread(() -> {
+                Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                for (Initializer initializer : background) {
+                    run(initializer, context);
+                }
+            }, "AppInitializer").start();
+        }
+    }
+
+    /**
+     * Run a single initializer, unless one of its dependencies has failed.
+     *
+     * @param initializer The initializer.
+     * @param context The application context.
+     */
+    private void run(Initializer initializer, Context context) {
+        Class<? extends Initializer> cls = initializer.getClass();
+        for (Class<? extends Initializer> dependency : initializer.getDependencies()) {
+            if (mFailed.contains(dependency)) {
+                Log.w(Constants.LOG_TAG, "Skipping " + cls.getSimpleName()
+                        + " because " + dependency.getSimpleName() + " has failed");
+                mFailed.add(cls);
+                return;
+            }
+        }
+
+        try {
+            StartupTrace.section(cls.getSimpleName(), () -> initializer.initialize(context));
+        } catch (RuntimeException e) {
+            if (initializer.runsOnMainThread()) {
+                // The app can't work without it
+                throw e;
+            }
+            Log.e(Constants.LOG_TAG, cls.getSimpleName() + " has failed", e);
+            mFailed.add(cls);
+        }
+    }
+
+    /**
+     * Return all initializers in an order where every initializer comes
+     * after all of its dependencies.
+     *
+     * @return The sorted initializers.
+     * @throws IllegalStateException If a dependency is not registered, or
+     *                               there is a dependency cycle.
+     */
+    private List<Initializer> sort() {
+        List<Initializer> sorted = new ArrayList<>(mOrder.size());
+        Set<Class<? extends Initializer>> visited = new HashSet<>();
+        Set<Class<? extends Initializer>> visiting = new HashSet<>();
+
+        for (Initializer initializer : mOrder) {
+            visit(initializer.getClass(), sorted, visited, visiting);
+        }
+
+        return sorted;
+    }
+
+    /**
+     * Depth-first visit of an initializer and its dependencies.
+     *
+     * @param cls The initializer class to visit.
+     * @param sorted The list to append the initializer to.
+     * @param visited All initializers that have been appended already.
+     * @param visiting All initializers on the current path, for cycle detection.
+     */
+    private void visit(Class<? extends Initializer> cls, List<Initializer> sorted,
+                       Set<Class<? extends Initializer>> visited,
+                       Set<Class<? extends Initializer>> visiting) {
+        if (visited.contains(cls)) {
+            return;
+        }
+        if (!visiting.add(cls)) {
+            throw new IllegalStateException("Dependency cycle at " + cls.getSimpleName());
+        }
+
+        Initializer initializer = mInitializers.get(cls);
+        if (initializer == null) {
+            throw new IllegalStateException(cls.getSimpleName() + " is not registered");
+        }
+        for (Class<? extends Initializer> dependency : initializer.getDependencies()) {
+            visit(dependency, sorted, visited, visiting);
+        }
+
+        visiting.remove(cls);
+        visited.add(cls);
+        sorted.add(initializer);
+    }
+
+}
@@ -0,0 +1,55 @@
+/*
+ * Copyright (c) 2019 Felix Kopp <sandtler@sandtler.club>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package club.sandtler.devid.startup;
+
+import android.content.Context;
+
+import androidx.annotation.NonNull;
+
+import java.util.Collections;
+import java.util.List;
+
+import club.sandtler.devid.lib.AuthTokenManager;
+
+/**
+ * Restores the login state from the previous session.
+ */
+public final class AuthInitializer implements Initializer {
+
+    /** {@inheritDoc} */
+    @Override
+    public void initialize(@NonNull Context context) {
+        AuthTokenManager.getInstance(context).restore();
+    }
+
+    /** {@inheritDoc} */
+    @NonNull
+    @Override
+    public List<Class<? extends Initializer>> getDependencies() {
+        return Collections.emptyList();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public boolean runsOnMainThread() {
+        // The stored token is loaded asynchronously anyways, so nothing can
+        // rely on it being available before the first frame.
+        return false;
+    }
+
+}
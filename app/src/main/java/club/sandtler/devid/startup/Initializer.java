@@ -0,0 +1,60 @@
+/*
+ * Copyright (c) 2019 Felix Kopp <sandtler@sandtler.club>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package club.sandtler.devid.startup;
+
+import android.content.Context;
+
+import androidx.annotation.NonNull;
+
+import java.util.List;
+
+/**
+ * A component that has to be set up when the app starts.
+ * Initializers are run by {@link AppInitializer} after all of their
+ * dependencies have been run.
+ */
+public interface Initializer {
+
+    /**
+     * Set up the component.
+     * This is called exactly once per process, either on the UI thread or on
+     * a background thread, depending on {@link #runsOnMainThread()}.
+     *
+     * @param context The application context.
+     */
+    void initialize(@NonNull Context context);
+
+    /**
+     * Return the initializers that need to be run before this one.
+     *
+     * @return The dependencies, may be empty.
+     */
+    @NonNull
+    List<Class<? extends Initializer>> getDependencies();
+
+    /**
+     * Return whether this initializer must be run on the UI thread before
+     * {@code Application.onCreate()} returns.  This delays the first frame
+     * of the app, so only return {@code true} if the component is needed
+     * before any activity can be shown.
+     *
+     * @return Whether to run on the UI thread.
+     */
+    boolean runsOnMainThread();
+
+}
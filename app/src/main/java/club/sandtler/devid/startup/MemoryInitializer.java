@@ -0,0 +1,67 @@
+/*
+ * Copyright (c) 2019 Felix Kopp <sandtler@sandtler.club>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package club.sandtler.devid.startup;
+
+import android.app.ActivityManager;
+import android.content.Context;
+
+import androidx.annotation.NonNull;
+
+import java.util.Collections;
+import java.util.List;
+
+import club.sandtler.devid.lib.MemoryGovernor;
+
+/**
+ * Tells the {@link MemoryGovernor} how much memory the device has.
+ * This runs on the main thread, because the repositories size their caches
+ * by the memory class when they are created, and the UI may create them
+ * before the background initializers get to run.  It is a single call to a
+ * system service, so it doesn't delay the first frame noticeably.
+ */
+public final class MemoryInitializer implements Initializer {
+
+    /** {@inheritDoc} */
+    @Override
+    public void initialize(@NonNull Context context) {
+        ActivityManager activityManager =
+                (ActivityManager) context.getSystemService(Context.ACTIVITY_SERVICE);
+        if (activityManager == null) {
+            return;
+        }
+
+        MemoryGovernor.getDefault().setMemoryClass(
+                activityManager.getMemoryClass(),
+                activityManager.isLowRamDevice()
+        );
+    }
+
+    /** {@inheritDoc} */
+    @NonNull
+    @Override
+    public List<Class<? extends Initializer>> getDependencies() {
+        return Collections.emptyList();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public boolean runsOnMainThread() {
+        return true;
+    }
+
+}
@@ -0,0 +1,59 @@
+/*
+ * Copyright (c) 2019 Felix Kopp <sandtler@sandtler.club>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package club.sandtler.devid.startup;
+
+import android.content.Context;
+
+import androidx.annotation.NonNull;
+
+import java.util.Collections;
+import java.util.List;
+
+import club.sandtler.devid.data.DataContainer;
+
+/**
+ * Creates the repositories ahead of time, so the first screen doesn't have to
+ * pay for it on whichever thread happens to reach them first.  This depends
+ * on {@link MemoryInitializer} because the repositories size their caches
+ * according to the memory class.
+ */
+public final class RepositoryInitializer implements Initializer {
+
+    /** {@inheritDoc} */
+    @Override
+    public void initialize(@NonNull Context context) {
+        DataContainer container = DataContainer.get();
+        container.getVideoRepository();
+        container.getUserRepository();
+        container.getLoginRepository();
+    }
+
+    /** {@inheritDoc} */
+    @NonNull
+    @Override
+    public List<Class<? extends Initializer>> getDependencies() {
+        return Collections.singletonList(MemoryInitializer.class);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public boolean runsOnMainThread() {
+        return false;
+    }
+
+}
@@ -0,0 +1,135 @@
+/*
+ * Copyright (c) 2019 Felix Kopp <sandtler@sandtler.club>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package club.sandtler.devid.startup;
+
+import android.app.Activity;
+import android.os.Build;
+import android.os.SystemClock;
+import android.os.Trace;
+import android.util.Log;
+import android.view.View;
+import android.view.ViewTreeObserver;
+
+import androidx.annotation.NonNull;
+
+import java.util.Locale;
+
+import club.sandtler.devid.lib.Constants;
+
+/**
+ * Tracing for the app's cold start.
+ * <p>
+ * Every stage of the startup is wrapped in a {@link Trace} section, so it
+ * shows up in systrace and the profiler, and its duration is logged as well.
+ * The time from process start until the first frame of the launcher activity
+ * is logged once per process.
+ */
+public final class StartupTrace {
+
+    /** Uptime at which the process was started, or -1 if unknown. */
+    private static long sProcessStartMs = -1;
+    /** Whether the first frame has been reported already. */
+    private static boolean sFirstFrameReported = false;
+
+    private StartupTrace() {
+    }
+
+    /**
+     * Remember the current time as the process start time.
+     * This should be called as early as possible, from
+     * {@code Application.attachBaseContext()}.
+     */
+    public static void markProcessStart() {
+        if (sProcessStartMs == -1) {
+            sProcessStartMs = SystemClock.uptimeMillis();
+        }
+    }
+
+    /**
+     * Run a startup stage in a trace section and log its duration.
+     *
+     * @param name The name of the stage.
+     * @param stage The stage.
+     */
+    public static void section(@NonNull String name, @NonNull Runnable stage) {
+        long start = SystemClock.uptimeMillis();
+        Trace.beginSection(name);
+        try {
+            stage.run();
+        } finally {
+            Trace.endSection();
+            Log.d(Constants.LOG_TAG, String.format(
+                    Locale.ROOT,
+                    "Startup: %s took %d ms on %s",
+                    name,
+                    SystemClock.uptimeMillis() - start,
+                    Thread.currentThread().getName()
+            ));
+        }
+    }
+
+    /**
+     * Log the time from process start until the first frame of an activity
+     * is drawn.  Only the first activity to call this in a process is
+     * measured, so this is only meaningful for cold starts of the launcher
+     * activity.  Must be called from {@code onCreate()} on the UI thread.
+     *
+     * @param activity The activity.
+     */
+    public static void reportFirstFrame(@NonNull Activity activity) {
+        if (sFirstFrameReported || sProcessStartMs == -1) {
+            return;
+        }
+        sFirstFrameReported = true;
+
+        final String name = activity.getClass().getSimpleName();
+        final View decorView = activity.getWindow().getDecorView();
+        decorView.getViewTreeObserver().addOnPreDrawListener(
+                new ViewTreeObserver.OnPreDrawListener() {
+                    @Override
+                    public boolean onPreDraw() {
+                        decorView.getViewTreeObserver().removeOnPreDrawListener(this);
+                        // Posted runnables run after the frame has been drawn
+                        decorView.post(() -> onFirstFrame(activity, name));
+                        return true;
+                    }
+                }
+        );
+    }
+
+    /**
+     * Log the time to first frame.
+     *
+     * @param activity The activity.
+     * @param name The activity name.
+     */
+    private static void onFirstFrame(Activity activity, String name) {
+        Log.i(Constants.LOG_TAG, String.format(
+                Locale.ROOT,
+                "Startup: Time to first frame of %s: %d ms",
+                name,
+                SystemClock.uptimeMillis() - sProcessStartMs
+        ));
+
+        // reportFullyDrawn() requires a permission we don't hold on KitKat
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP && !activity.isFinishing()) {
+            activity.reportFullyDrawn();
+        }
+    }
+
+}
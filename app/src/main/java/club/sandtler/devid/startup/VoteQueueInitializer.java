@@ -0,0 +1,57 @@
+/*
+ * Copyright (c) 2019 Felix Kopp <sandtler@sandtler.club>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package club.sandtler.devid.startup;
+
+import android.content.Context;
+
+import androidx.annotation.NonNull;
+
+import java.util.Collections;
+import java.util.List;
+
+import club.sandtler.devid.data.DataContainer;
+import club.sandtler.devid.data.VoteQueue;
+
+/**
+ * Attaches the offline vote queue to the video repository and sends votes
+ * that were cast while offline in a previous session.
+ */
+public final class VoteQueueInitializer implements Initializer {
+
+    /** {@inheritDoc} */
+    @Override
+    public void initialize(@NonNull Context context) {
+        VoteQueue voteQueue = VoteQueue.getInstance(context);
+        DataContainer.get().getVideoRepository().setVoteQueue(voteQueue);
+        voteQueue.flush();
+    }
+
+    /** {@inheritDoc} */
+    @NonNull
+    @Override
+    public List<Class<? extends Initializer>> getDependencies() {
+        return Collections.singletonList(RepositoryInitializer.class);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public boolean runsOnMainThread() {
+        return false;
+    }
+
+}
@@ -38,11 +38,13 @@ import android.widget.Toast;
 import androidx.annotation.Nullable;
 
 import club.sandtler.devid.R;
-import club.sandtler.devid.data.LoginDataSource;
-import club.sandtler.devid.data.LoginRepository;
+import club.sandtler.devid.data.DataContainer;
 import club.sandtler.devid.data.Result;
 import club.sandtler.devid.data.model.LoggedInUser;
+import club.sandtler.devid.lib.AuthTokenManager;
 import club.sandtler.devid.lib.Constants;
+import club.sandtler.devid.lib.NetworkDispatcher;
+import club.sandtler.devid.lib.NetworkUtil;
 
 /**
  * The login activity screen w/ username and password prompt.
@@ -141,7 +143,14 @@ public class LoginActivity extends AccountAuthenticatorActivity {
         if (!TextUtils.isEmpty(userName) && !TextUtils.isEmpty(password)) {
             showProgress();
             mLoginTask = new LoginTask();
-            mLoginTask.execute(userName, password);
+            mLoginTask.executeOnExecutor(
+                    NetworkDispatcher.getDefault().getExecutor(
+                            NetworkUtil.BACKEND_HOST,
+                            NetworkDispatcher.PRIORITY_USER_ACTION
+                    ),
+                    userName,
+                    password
+            );
         }
     }
 
@@ -174,12 +183,13 @@ public class LoginActivity extends AccountAuthenticatorActivity {
     private void onAuthSuccess(LoggedInUser user) {
         final Account account = new Account(user.getUserName(), Constants.ACCOUNT_TYPE);
 
-        mAccountMgr.setAuthToken(account, Constants.AUTH_TOKEN_TYPE, user.getAuthToken());
         mAccountMgr.addAccountExplicitly(
                 account,
                 this.mPasswordEditText.getText().toString(),
                 user.toBundle()
         );
+        // Must come after adding the account, otherwise it is discarded
+        AuthTokenManager.getInstance(this).setAuthToken(account, user.getAuthToken());
 
         final Intent intent = new Intent();
         intent.putExtra(AccountManager.KEY_BOOLEAN_RESULT, true);
@@ -216,7 +226,7 @@ public class LoginActivity extends AccountAuthenticatorActivity {
 
         @Override
         protected Result<LoggedInUser> doInBackground(String... params) {
-            return LoginRepository.getInstance(new LoginDataSource()).login(params[0], params[1]);
+            return DataContainer.get().getLoginRepository().login(params[0], params[1]);
         }
 
         @Override
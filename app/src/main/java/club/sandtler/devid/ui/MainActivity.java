@@ -22,12 +22,12 @@ import android.os.Bundle;
 import android.view.Menu;
 import android.view.MenuInflater;
 import android.view.MenuItem;
-import android.view.View;
 import android.widget.Toast;
 
 import androidx.appcompat.app.AppCompatActivity;
 
 import club.sandtler.devid.R;
+import club.sandtler.devid.startup.StartupTrace;
 
 /**
  * The application's entry point activity.
@@ -38,6 +38,7 @@ public class MainActivity extends AppCompatActivity {
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_main);
+        StartupTrace.reportFirstFrame(this);
     }
 
     @Override
@@ -83,12 +84,4 @@ public class MainActivity extends AppCompatActivity {
         startActivity(intent);
     }
 
-    public void playVideo(View v) {
-        Intent intent;
-
-        intent = new Intent(this, VideoPlayerActivity.class);
-        intent.putExtra(VideoPlayerActivity.EXTRA_VIDEO_ID, "5d1d2339e710560cdf5c5b80");
-        startActivity(intent);
-    }
-
 }
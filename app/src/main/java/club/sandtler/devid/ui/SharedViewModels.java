@@ -0,0 +1,108 @@
+/*
+ * Copyright (c) 2019 Felix Kopp <sandtler@sandtler.club>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package club.sandtler.devid.ui;
+
+import androidx.annotation.NonNull;
+import androidx.fragment.app.FragmentActivity;
+import androidx.lifecycle.ViewModel;
+import androidx.lifecycle.ViewModelProvider;
+import androidx.lifecycle.ViewModelStoreOwner;
+
+import club.sandtler.devid.ui.user.UserViewModel;
+import club.sandtler.devid.ui.user.UserViewModelFactory;
+import club.sandtler.devid.ui.video.VideoViewModel;
+import club.sandtler.devid.ui.video.VideoViewModelFactory;
+
+/**
+ * Access to view models that are shared between all fragments of an
+ * activity showing the same entity.
+ * <p>
+ * A video screen consists of several fragments that all display parts of
+ * the same video and its uploader.  If every fragment had its own view
+ * model, every one of them would load the same data again.  View models
+ * obtained from here are scoped to the activity and keyed by the entity
+ * id instead, so all fragments showing the same entity share one instance
+ * and the data is loaded only once per screen.
+ */
+public final class SharedViewModels {
+
+    private SharedViewModels() {
+    }
+
+    /**
+     * Return the view model for a video, shared within an activity.
+     *
+     * @param activity The activity.
+     * @param videoId The video id.
+     * @return The view model.
+     */
+    @NonNull
+    public static VideoViewModel getVideoViewModel(@NonNull FragmentActivity activity,
+                                                   @NonNull String videoId) {
+        return get(activity, new VideoViewModelFactory(), VideoViewModel.class, videoId);
+    }
+
+    /**
+     * Return the view model for a user identified by their id,
+     * shared within an activity.
+     *
+     * @param activity The activity.
+     * @param userId The user id.
+     * @return The view model.
+     */
+    @NonNull
+    public static UserViewModel getUserViewModelById(@NonNull FragmentActivity activity,
+                                                     @NonNull String userId) {
+        return get(activity, new UserViewModelFactory(), UserViewModel.class, "id:" + userId);
+    }
+
+    /**
+     * Return the view model for a user identified by their user name,
+     * shared within an activity.
+     *
+     * @param activity The activity.
+     * @param userName The user name.
+     * @return The view model.
+     */
+    @NonNull
+    public static UserViewModel getUserViewModelByName(@NonNull FragmentActivity activity,
+                                                       @NonNull String userName) {
+        return get(activity, new UserViewModelFactory(), UserViewModel.class, "name:" + userName);
+    }
+
+    /**
+     * Return the view model of a specific class for an entity.
+     * The factory is only used if there is no such view model yet.
+     *
+     * @param owner The owner of the view models, usually the activity.
+     * @param factory The factory to create the view model with.
+     * @param modelClass The view model class.
+     * @param entityKey The key identifying the entity.
+     * @param <T> The view model type.
+     * @return The view model.
+     */
+    @NonNull
+    public static <T extends ViewModel> T get(@NonNull ViewModelStoreOwner owner,
+                                              @NonNull ViewModelProvider.Factory factory,
+                                              @NonNull Class<T> modelClass,
+                                              @NonNull String entityKey) {
+        return new ViewModelProvider(owner, factory)
+                .get(modelClass.getName() + ':' + entityKey, modelClass);
+    }
+
+}
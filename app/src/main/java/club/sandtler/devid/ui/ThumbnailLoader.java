@@ -0,0 +1,387 @@
+/*
+ * Copyright (c) 2019 Felix Kopp <sandtler@sandtler.club>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package club.sandtler.devid.ui;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+import android.view.ViewGroup;
+import android.widget.ImageView;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.collection.LruCache;
+
+import java.io.File;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import club.sandtler.devid.R;
+import club.sandtler.devid.data.DataContainer;
+import club.sandtler.devid.data.Result;
+import club.sandtler.devid.data.VideoRepository;
+import club.sandtler.devid.lib.Constants;
+import club.sandtler.devid.lib.Deadline;
+import club.sandtler.devid.lib.DiskCache;
+import club.sandtler.devid.lib.HttpStatusException;
+import club.sandtler.devid.lib.MemoryGovernor;
+import club.sandtler.devid.lib.NetworkDispatcher;
+import club.sandtler.devid.lib.NetworkUtil;
+
+import static club.sandtler.devid.lib.Constants.Thumbnails;
+
+/**
+ * Loads video thumbnails into image views, e.g. in lists.
+ * <p>
+ * The CDN provides every thumbnail in several widths, and the smallest one
+ * that is at least as wide as the image view is requested.  Thumbnails are
+ * decoded with the largest sample size that still covers the view, and
+ * without an alpha channel if they are JPEGs, which halves their memory.
+ * Decoded thumbnails are kept in memory and encoded ones on disk, both in
+ * LRU caches bounded by their size in bytes.  The memory cache is trimmed
+ * by the {@link MemoryGovernor} when the system is low on memory.
+ * <p>
+ * Every image view is bound to at most one request at a time: loading
+ * another thumbnail into it cancels the previous request, and so does
+ * {@link #cancel(ImageView)} when the view is recycled.  Requests that are
+ * cancelled before they have started never touch the disk or the network,
+ * so flinging through a list only loads the thumbnails that actually stay
+ * on screen.
+ * <p>
+ * All public methods must be called on the UI thread.
+ */
+public final class ThumbnailLoader implements MemoryGovernor.Trimmable {
+
+    /** The instance (singleton access). */
+    private static ThumbnailLoader sInstance;
+
+    /** The repository to retrieve thumbnails from. */
+    private final VideoRepository mRepository;
+    /** The dispatcher to run network requests on. */
+    private final NetworkDispatcher mDispatcher;
+    /** Executor for delivering results on the UI thread. */
+    private final Executor mMainExecutor;
+    /** Threads for reading thumbnails from disk and decoding them. */
+    private final ExecutorService mDecodeExecutor =
+            Executors.newFixedThreadPool(Thumbnails.DECODE_THREADS);
+    /** Encoded thumbnails, indexed by {@link #cacheKey}. */
+    private final DiskCache mDiskCache;
+    /** Decoded thumbnails, indexed by {@link #cacheKey}. */
+    private final LruCache<String, Bitmap> mMemoryCache =
+            new LruCache<String, Bitmap>(Thumbnails.MAX_MEM_CACHE_BYTES) {
+
+                @Override
+                protected int sizeOf(@NonNull String key, @NonNull Bitmap value) {
+                    return value.getAllocationByteCount();
+                }
+
+            };
+
+    /**
+     * Create a new loader.
+     *
+     * @param repository The repository to retrieve thumbnails from.
+     * @param dispatcher The dispatcher to run network requests on.
+     * @param mainExecutor Executor for delivering results on the UI thread.
+     * @param diskCache The cache for encoded thumbnails.
+     */
+    ThumbnailLoader(VideoRepository repository, NetworkDispatcher dispatcher,
+                    Executor mainExecutor, DiskCache diskCache) {
+        mRepository = repository;
+        mDispatcher = dispatcher;
+        mMainExecutor = mainExecutor;
+        mDiskCache = diskCache;
+        MemoryGovernor.getDefault().register(this);
+    }
+
+    /**
+     * Return the instance of this loader.
+     *
+     * @param context The context.
+     * @return The instance.
+     */
+    @NonNull
+    public static synchronized ThumbnailLoader getInstance(@NonNull Context context) {
+        if (sInstance == null) {
+            sInstance = new ThumbnailLoader(
+                    DataContainer.get().getVideoRepository(),
+                    NetworkDispatcher.getDefault(),
+                    new Handler(Looper.getMainLooper())::post,
+                    new DiskCache(
+                            new File(context.getCacheDir(), Thumbnails.DISK_CACHE_DIRECTORY),
+                            Thumbnails.MAX_DISK_CACHE_BYTES
+                    )
+            );
+        }
+
+        return sInstance;
+    }
+
+    /**
+     * Load the thumbnail of a video into an image view.
+     * If the view is already bound to the same thumbnail, this has no effect.
+     *
+     * @param videoId The video id.
+     * @param target The image view.
+     */
+    public void load(@NonNull String videoId, @NonNull ImageView target) {
+        final int targetWidth = getTargetWidth(target);
+        final int variantWidth = getVariantWidth(targetWidth);
+        final String key = cacheKey(videoId, variantWidth);
+
+        Request current = (Request) target.getTag(R.id.thumbnail_request);
+        if (current != null) {
+            if (current.mKey.equals(key)) {
+                return;
+            }
+            current.mCancelled = true;
+        }
+
+        Request request = new Request(videoId, variantWidth, targetWidth, key, target);
+        target.setTag(R.id.thumbnail_request, request);
+
+        Bitmap cached = mMemoryCache.get(key);
+        if (cached != null) {
+            target.setImageBitmap(cached);
+            return;
+        }
+
+        target.setImageDrawable(null);
+        mDecodeExecutor.execute(request::loadFromDisk);
+    }
+
+    /**
+     * Cancel the request bound to an image view and clear its image.
+     * This should be called when the view is recycled.
+     *
+     * @param target The image view.
+     */
+    public void cancel(@NonNull ImageView target) {
+        Request request = (Request) target.getTag(R.id.thumbnail_request);
+        if (request != null) {
+            request.mCancelled = true;
+            target.setTag(R.id.thumbnail_request, null);
+        }
+        target.setImageDrawable(null);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public long trimMemory(float keepFraction) {
+        long before = mMemoryCache.size();
+        if (keepFraction <= 0f) {
+            mMemoryCache.evictAll();
+        } else if (keepFraction < 1f) {
+            mMemoryCache.trimToSize((int) (before * keepFraction));
+        }
+
+        return before - mMemoryCache.size();
+    }
+
+    /**
+     * Return the smallest thumbnail variant that is at least as wide as
+     * the target, or the largest one if there is none.
+     *
+     * @param targetWidth The target width in pixels.
+     * @return The variant width, one of {@link Thumbnails#WIDTHS}.
+     */
+    static int getVariantWidth(int targetWidth) {
+        for (int width : Thumbnails.WIDTHS) {
+            if (width >= targetWidth) {
+                return width;
+            }
+        }
+        return Thumbnails.WIDTHS[Thumbnails.WIDTHS.length - 1];
+    }
+
+    /**
+     * Return the largest power of two an image can be scaled down by while
+     * still being at least as wide as the target.
+     *
+     * @param width The image width in pixels.
+     * @param targetWidth The target width in pixels.
+     * @return The sample size.
+     */
+    static int getSampleSize(int width, int targetWidth) {
+        int sampleSize = 1;
+        while (width / (sampleSize * 2) >= targetWidth) {
+            sampleSize *= 2;
+        }
+        return sampleSize;
+    }
+
+    /**
+     * Return the width a thumbnail has to cover in an image view.
+     * If the view has not been laid out yet, its layout parameters are
+     * used, or the screen width if they don't specify a fixed width.
+     *
+     * @param target The image view.
+     * @return The width in pixels.
+     */
+    private static int getTargetWidth(ImageView target) {
+        if (target.getWidth() > 0) {
+            return target.getWidth();
+        }
+
+        ViewGroup.LayoutParams params = target.getLayoutParams();
+        if (params != null && params.width > 0) {
+            return params.width;
+        }
+
+        return target.getResources().getDisplayMetrics().widthPixels;
+    }
+
+    /**
+     * Return the key for a thumbnail variant in both caches.
+     *
+     * @param videoId The video id.
+     * @param width The variant width.
+     * @return The key.
+     */
+    private static String cacheKey(String videoId, int width) {
+        return videoId + '_' + width;
+    }
+
+    /**
+     * Decode a thumbnail.
+     *
+     * @param data The encoded image data.
+     * @param targetWidth The width the thumbnail has to cover in pixels.
+     * @return The decoded thumbnail, or {@code null} if the data is not an image.
+     */
+    @Nullable
+    private static Bitmap decode(byte[] data, int targetWidth) {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeByteArray(data, 0, data.length, options);
+        if (options.outWidth <= 0) {
+            return null;
+        }
+
+        options.inJustDecodeBounds = false;
+        options.inSampleSize = getSampleSize(options.outWidth, targetWidth);
+        // JPEGs can't be transparent anyway
+        options.inPreferredConfig = "image/jpeg".equals(options.outMimeType)
+                ? Bitmap.Config.RGB_565
+                : Bitmap.Config.ARGB_8888;
+        return BitmapFactory.decodeByteArray(data, 0, data.length, options);
+    }
+
+    /** A request for loading a thumbnail variant into an image view. */
+    private final class Request {
+
+        /** The video id. */
+        private final String mVideoId;
+        /** The variant width. */
+        private final int mVariantWidth;
+        /** The width the thumbnail has to cover in pixels. */
+        private final int mTargetWidth;
+        /** The cache key. */
+        private final String mKey;
+        /** The image view to show the thumbnail in. */
+        private final ImageView mTarget;
+        /** Set when the image view has been bound to something else. */
+        private volatile boolean mCancelled = false;
+
+        private Request(String videoId, int variantWidth, int targetWidth, String key,
+                        ImageView target) {
+            mVideoId = videoId;
+            mVariantWidth = variantWidth;
+            mTargetWidth = targetWidth;
+            mKey = key;
+            mTarget = target;
+        }
+
+        /**
+         * Load the thumbnail from the disk cache, or hand the request over
+         * to the network dispatcher if it isn't there.
+         * Must only be called from {@link #mDecodeExecutor}.
+         */
+        private void loadFromDisk() {
+            if (mCancelled) {
+                return;
+            }
+
+            byte[] data = mDiskCache.get(mKey);
+            if (data != null) {
+                deliver(decode(data, mTargetWidth));
+            } else if (!mCancelled) {
+                mDispatcher.execute(
+                        NetworkUtil.CDN_HOST,
+                        NetworkDispatcher.PRIORITY_IMAGE,
+                        Deadline.after(Constants.Timeouts.UI_DEADLINE_MS),
+                        this::loadFromNetwork
+                );
+            }
+        }
+
+        /**
+         * Download the thumbnail and store it in the disk cache.
+         * Must only be called from a dispatcher thread.
+         */
+        private void loadFromNetwork() {
+            if (mCancelled) {
+                return;
+            }
+
+            Result<byte[]> result = mRepository.getThumbnail(mVideoId, mVariantWidth);
+            if (result instanceof Result.Error) {
+                Exception e = ((Result.Error) result).getError();
+                if (!(e instanceof HttpStatusException
+                        && ((HttpStatusException) e).getStatusCode() == 404)) {
+                    Log.w(Constants.LOG_TAG, "Unable to load thumbnail of video " + mVideoId, e);
+                }
+                return;
+            }
+
+            byte[] data = ((Result.Success<byte[]>) result).getData();
+            // Cached even if cancelled by now, the view is likely to come back
+            mDecodeExecutor.execute(() -> {
+                mDiskCache.put(mKey, data);
+                if (!mCancelled) {
+                    deliver(decode(data, mTargetWidth));
+                }
+            });
+        }
+
+        /**
+         * Cache a decoded thumbnail and show it, unless the request has been
+         * cancelled in the meantime.
+         *
+         * @param bitmap The thumbnail, or {@code null} if it could not be decoded.
+         */
+        private void deliver(@Nullable Bitmap bitmap) {
+            if (bitmap == null) {
+                return;
+            }
+
+            mMemoryCache.put(mKey, bitmap);
+            mMainExecutor.execute(() -> {
+                if (!mCancelled && mTarget.getTag(R.id.thumbnail_request) == this) {
+                    mTarget.setImageBitmap(bitmap);
+                }
+            });
+        }
+
+    }
+
+}
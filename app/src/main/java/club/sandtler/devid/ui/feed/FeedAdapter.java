@@ -0,0 +1,186 @@
+/*
+ * Copyright (c) 2019 Felix Kopp <sandtler@sandtler.club>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package club.sandtler.devid.ui.feed;
+
+import android.text.TextUtils;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.ImageView;
+import android.widget.TextView;
+
+import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.DiffUtil;
+import androidx.recyclerview.widget.ListAdapter;
+import androidx.recyclerview.widget.RecyclerView;
+
+import club.sandtler.devid.R;
+import club.sandtler.devid.data.model.Video;
+import club.sandtler.devid.lib.DateFormatter;
+import club.sandtler.devid.ui.ThumbnailLoader;
+
+/**
+ * Adapter for the videos in the home feed.
+ * <p>
+ * New lists are diffed against the current one on a background thread, and
+ * items have stable ids derived from the video ids, so that updates of the
+ * feed window only rebind the rows that have actually changed.
+ */
+final class FeedAdapter extends ListAdapter<Video, FeedAdapter.VideoViewHolder> {
+
+    /** Compares videos by the data that is shown in the feed. */
+    private static final DiffUtil.ItemCallback<Video> DIFF_CALLBACK =
+            new DiffUtil.ItemCallback<Video>() {
+
+                @Override
+                public boolean areItemsTheSame(@NonNull Video oldItem, @NonNull Video newItem) {
+                    return oldItem.getId().equals(newItem.getId());
+                }
+
+                @Override
+                public boolean areContentsTheSame(@NonNull Video oldItem, @NonNull Video newItem) {
+                    return TextUtils.equals(oldItem.getTitle(), newItem.getTitle())
+                            && oldItem.getUploadTime() == newItem.getUploadTime();
+                }
+
+            };
+
+    /** Listener for clicks on a video. */
+    interface OnVideoClickListener {
+        /**
+         * Called when the user has clicked on a video.
+         *
+         * @param video The video.
+         */
+        void onVideoClick(@NonNull Video video);
+    }
+
+    /** The loader for all thumbnails. */
+    private final ThumbnailLoader mThumbnailLoader;
+    /** The formatter for upload times. */
+    private final DateFormatter mDateFormatter;
+    /** The listener for clicks on videos. */
+    private final OnVideoClickListener mListener;
+
+    /**
+     * Create a new adapter.
+     *
+     * @param thumbnailLoader The loader for all thumbnails.
+     * @param dateFormatter The formatter for upload times.
+     * @param listener The listener for clicks on videos.
+     */
+    FeedAdapter(@NonNull ThumbnailLoader thumbnailLoader, @NonNull DateFormatter dateFormatter,
+                @NonNull OnVideoClickListener listener) {
+        super(DIFF_CALLBACK);
+        mThumbnailLoader = thumbnailLoader;
+        mDateFormatter = dateFormatter;
+        mListener = listener;
+        setHasStableIds(true);
+    }
+
+    /**
+     * Derive a stable item id from a video id.
+     * Video ids are 12 byte object ids in hex, consisting of a 4 byte
+     * timestamp followed by 8 bytes that are unique within that second.
+     * The latter are used as they are, mixed with the timestamp.
+     *
+     * @param videoId The video id.
+     * @return The item id.
+     */
+    static long stableIdOf(@NonNull String videoId) {
+        if (videoId.length() != 24) {
+            return videoId.hashCode();
+        }
+
+        long timestamp = 0;
+        long unique = 0;
+        for (int i = 0; i < 24; i++) {
+            int digit = Character.digit(videoId.charAt(i), 16);
+            if (digit < 0) {
+                return videoId.hashCode();
+            }
+            if (i < 8) {
+                timestamp = (timestamp << 4) | digit;
+            } else {
+                unique = (unique << 4) | digit;
+            }
+        }
+
+        return unique ^ (timestamp * 0x9E3779B97F4A7C15L);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public long getItemId(int position) {
+        return stableIdOf(getItem(position).getId());
+    }
+
+    /** {@inheritDoc} */
+    @NonNull
+    @Override
+    public VideoViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
+        View view = LayoutInflater.from(parent.getContext())
+                .inflate(R.layout.item_feed_video, parent, false);
+        VideoViewHolder holder = new VideoViewHolder(view);
+        // Set up once per view instead of once per bind
+        view.setOnClickListener(v -> {
+            int position = holder.getAdapterPosition();
+            if (position != RecyclerView.NO_POSITION) {
+                mListener.onVideoClick(getItem(position));
+            }
+        });
+        return holder;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void onBindViewHolder(@NonNull VideoViewHolder holder, int position) {
+        Video video = getItem(position);
+        holder.mTitle.setText(video.getTitle());
+        holder.mUploadTime.setText(mDateFormatter.formatRelative(video.getUploadTime()));
+        mThumbnailLoader.load(video.getId(), holder.mThumbnail);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void onViewRecycled(@NonNull VideoViewHolder holder) {
+        super.onViewRecycled(holder);
+        // Don't load thumbnails for rows that are not on screen anymore
+        mThumbnailLoader.cancel(holder.mThumbnail);
+    }
+
+    /** View holder for a single video row. */
+    static final class VideoViewHolder extends RecyclerView.ViewHolder {
+
+        /** The thumbnail view. */
+        private final ImageView mThumbnail;
+        /** The title view. */
+        private final TextView mTitle;
+        /** The upload time view. */
+        private final TextView mUploadTime;
+
+        private VideoViewHolder(@NonNull View itemView) {
+            super(itemView);
+            mThumbnail = itemView.findViewById(R.id.feed_item_thumbnail);
+            mTitle = itemView.findViewById(R.id.feed_item_title);
+            mUploadTime = itemView.findViewById(R.id.feed_item_upload_time);
+        }
+
+    }
+
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright (c) 2019 Felix Kopp <sandtler@sandtler.club>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package club.sandtler.devid.ui.feed;
+
+import android.content.Intent;
+import android.os.Bundle;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+
+import androidx.annotation.NonNull;
+import androidx.fragment.app.Fragment;
+import androidx.lifecycle.ViewModelProvider;
+import androidx.recyclerview.widget.LinearLayoutManager;
+import androidx.recyclerview.widget.RecyclerView;
+import androidx.swiperefreshlayout.widget.SwipeRefreshLayout;
+
+import club.sandtler.devid.R;
+import club.sandtler.devid.data.model.Video;
+import club.sandtler.devid.lib.DateFormatter;
+import club.sandtler.devid.ui.ThumbnailLoader;
+import club.sandtler.devid.ui.VideoPlayerActivity;
+
+/**
+ * Fragment for displaying the home feed.
+ */
+public class FeedFragment extends Fragment {
+
+    /** The view model. */
+    private FeedViewModel mViewModel;
+    /** The adapter for the feed list. */
+    private FeedAdapter mAdapter;
+    /** The layout manager of the feed list. */
+    private LinearLayoutManager mLayoutManager;
+    /** The pull-to-refresh container of the feed list. */
+    private SwipeRefreshLayout mRefreshLayout;
+
+    @Override
+    public void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        mViewModel = new ViewModelProvider(this, new FeedViewModelFactory())
+                .get(FeedViewModel.class);
+    }
+
+    @Override
+    public View onCreateView(@NonNull LayoutInflater inflater, ViewGroup container,
+                             Bundle savedInstanceState) {
+        View root = inflater.inflate(R.layout.fragment_feed, container, false);
+
+        mRefreshLayout = root.findViewById(R.id.feed_refresh_layout);
+        mRefreshLayout.setOnRefreshListener(mViewModel::refresh);
+
+        mLayoutManager = new LinearLayoutManager(requireContext());
+        // Lets rows be created and bound between frames, before they scroll in
+        mLayoutManager.setItemPrefetchEnabled(true);
+        mAdapter = new FeedAdapter(
+                ThumbnailLoader.getInstance(requireContext()),
+                DateFormatter.getInstance(requireContext()),
+                this::openVideo
+        );
+
+        RecyclerView recyclerView = root.findViewById(R.id.feed_recycler_view);
+        recyclerView.setHasFixedSize(true);
+        recyclerView.setLayoutManager(mLayoutManager);
+        recyclerView.setAdapter(mAdapter);
+        // Also called after every layout that changes the visible range
+        recyclerView.addOnScrollListener(new RecyclerView.OnScrollListener() {
+            @Override
+            public void onScrolled(@NonNull RecyclerView recyclerView, int dx, int dy) {
+                mViewModel.onVisibleRangeChanged(
+                        mLayoutManager.findFirstVisibleItemPosition(),
+                        mLayoutManager.findLastVisibleItemPosition()
+                );
+            }
+        });
+
+        return root;
+    }
+
+    @Override
+    public void onViewCreated(@NonNull View view, Bundle savedInstanceState) {
+        super.onViewCreated(view, savedInstanceState);
+
+        mViewModel.getVideos().observe(getViewLifecycleOwner(), mAdapter::submitList);
+        mViewModel.isLoading().observe(getViewLifecycleOwner(), loading -> {
+            // Only show the spinner when there is nothing to see yet;
+            // prefetching the next page should go unnoticed
+            if (!loading || mAdapter.getItemCount() == 0) {
+                mRefreshLayout.setRefreshing(loading);
+            }
+        });
+    }
+
+    /**
+     * Open the player for a video.
+     *
+     * @param video The video.
+     */
+    private void openVideo(@NonNull Video video) {
+        Intent intent = new Intent(requireContext(), VideoPlayerActivity.class);
+        intent.putExtra(VideoPlayerActivity.EXTRA_VIDEO_ID, video.getId());
+        startActivity(intent);
+    }
+
+}
@@ -0,0 +1,233 @@
+/*
+ * Copyright (c) 2019 Felix Kopp <sandtler@sandtler.club>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package club.sandtler.devid.ui.feed;
+
+import android.util.Log;
+
+import androidx.lifecycle.LiveData;
+import androidx.lifecycle.MutableLiveData;
+import androidx.lifecycle.ViewModel;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import club.sandtler.devid.data.Result;
+import club.sandtler.devid.data.VideoRepository;
+import club.sandtler.devid.data.model.Video;
+import club.sandtler.devid.lib.Constants;
+import club.sandtler.devid.lib.Deadline;
+import club.sandtler.devid.lib.NetworkDispatcher;
+import club.sandtler.devid.lib.NetworkUtil;
+
+import static club.sandtler.devid.lib.Constants.Feed;
+
+/**
+ * View model for the home feed.
+ * <p>
+ * The feed is loaded in pages as the user scrolls, starting with the next
+ * page shortly before the end of the loaded ones is reached.  Only a window
+ * of at most {@link Feed#MAX_PAGES} pages is kept in memory: when a page is
+ * added at one end of the window, the page at the other end is dropped, and
+ * it is loaded again if the user scrolls back.  This keeps memory usage
+ * constant no matter how far the user scrolls.
+ */
+public class FeedViewModel extends ViewModel {
+
+    /** The repository to pull data from. */
+    private final VideoRepository mRepository;
+    /** The dispatcher to run network requests on. */
+    private final NetworkDispatcher mDispatcher;
+    /** Executor for delivering results on the UI thread. */
+    private final Executor mMainExecutor;
+
+    /** The videos in the current window, exposed to the UI layer. */
+    private final MutableLiveData<List<Video>> mVideos = new MutableLiveData<>();
+    /** Whether a page is being loaded, exposed to the UI layer. */
+    private final MutableLiveData<Boolean> mLoading = new MutableLiveData<>();
+
+    /** The pages in the current window, in feed order. */
+    private final ArrayList<List<Video>> mPages = new ArrayList<>();
+    /** The index of the first page in {@link #mPages}. */
+    private int mFirstPage = 0;
+    /** The amount of videos in {@link #mVideos}. */
+    private int mVideoCount = 0;
+    /** Whether the last page of the feed is in the window. */
+    private boolean mEndReached = false;
+    /** The index of the page that is being loaded, or -1 if there is none. */
+    private int mLoadingPage = -1;
+    /** Incremented on every refresh, so that stale pages are dropped. */
+    private int mGeneration = 0;
+
+    /**
+     * Create a new view model.
+     *
+     * To be called from {@link FeedViewModelFactory} only.
+     * @param repository The repository to pull data from.
+     * @param dispatcher The dispatcher to run network requests on.
+     * @param mainExecutor Executor for delivering results on the UI thread.
+     */
+    FeedViewModel(VideoRepository repository, NetworkDispatcher dispatcher,
+                  Executor mainExecutor) {
+        mRepository = repository;
+        mDispatcher = dispatcher;
+        mMainExecutor = mainExecutor;
+    }
+
+    /**
+     * Return the videos in the current window of the feed.
+     * The first page is loaded when this is called for the first time.
+     *
+     * @return The videos.
+     */
+    public LiveData<List<Video>> getVideos() {
+        if (mPages.isEmpty() && mLoadingPage < 0) {
+            loadPage(0);
+        }
+
+        return mVideos;
+    }
+
+    /**
+     * Return whether a page is being loaded.
+     *
+     * @return Whether the feed is loading.
+     */
+    public LiveData<Boolean> isLoading() {
+        return mLoading;
+    }
+
+    /**
+     * Drop all loaded pages and load the feed again from the start.
+     */
+    public void refresh() {
+        mGeneration++;
+        mPages.clear();
+        mFirstPage = 0;
+        mEndReached = false;
+        mLoadingPage = -1;
+        loadPage(0);
+    }
+
+    /**
+     * Notify the view model which videos are visible, so that it can load
+     * the pages next to the window in time.
+     *
+     * @param first The position of the first visible video.
+     * @param last The position of the last visible video.
+     */
+    public void onVisibleRangeChanged(int first, int last) {
+        if (mLoadingPage >= 0 || mPages.isEmpty()) {
+            return;
+        }
+
+        if (!mEndReached && last >= mVideoCount - Feed.PREFETCH_DISTANCE) {
+            loadPage(mFirstPage + mPages.size());
+        } else if (mFirstPage > 0 && first < Feed.PREFETCH_DISTANCE) {
+            loadPage(mFirstPage - 1);
+        }
+    }
+
+    /**
+     * Start loading a page that is adjacent to the window.
+     *
+     * @param page The page index.
+     */
+    private void loadPage(int page) {
+        final int generation = mGeneration;
+        // Only the first page is actually waited for, all others are prefetched
+        final int priority = mPages.isEmpty()
+                ? NetworkDispatcher.PRIORITY_VISIBLE
+                : NetworkDispatcher.PRIORITY_PREFETCH;
+
+        mLoadingPage = page;
+        mLoading.setValue(true);
+        Deadline deadline = Deadline.after(Constants.Timeouts.UI_DEADLINE_MS);
+        mDispatcher.execute(NetworkUtil.BACKEND_HOST, priority, deadline, () -> {
+            Result<List<Video>> result = mRepository.getFeedPage(page);
+            mMainExecutor.execute(() -> onPageLoaded(generation, page, result));
+        });
+    }
+
+    /**
+     * Callback for loaded pages.
+     *
+     * @param generation The value of {@link #mGeneration} when the page was requested.
+     * @param page The page index.
+     * @param result The result returned by the repository.
+     */
+    private void onPageLoaded(int generation, int page, Result<List<Video>> result) {
+        if (generation != mGeneration) {
+            return;
+        }
+
+        mLoadingPage = -1;
+        mLoading.setValue(false);
+        if (result instanceof Result.Error) {
+            // Retried once the user scrolls or refreshes
+            Log.w(Constants.LOG_TAG, "Unable to load feed page " + page,
+                    ((Result.Error) result).getError());
+            return;
+        }
+
+        List<Video> videos = ((Result.Success<List<Video>>) result).getData();
+        if (page == mFirstPage + mPages.size()) {
+            mPages.add(videos);
+            if (videos.size() < Feed.PAGE_SIZE) {
+                mEndReached = true;
+            }
+            if (mPages.size() > Feed.MAX_PAGES) {
+                mPages.remove(0);
+                mFirstPage++;
+            }
+        } else if (page == mFirstPage - 1) {
+            mPages.add(0, videos);
+            mFirstPage--;
+            if (mPages.size() > Feed.MAX_PAGES) {
+                mPages.remove(mPages.size() - 1);
+                mEndReached = false;
+            }
+        } else {
+            return;
+        }
+
+        publish();
+    }
+
+    /**
+     * Publish the videos of all pages in the window.
+     * Videos that have moved to another page since an earlier page was
+     * loaded would show up twice; only their first occurrence is kept.
+     */
+    private void publish() {
+        ArrayList<Video> videos = new ArrayList<>(mPages.size() * Feed.PAGE_SIZE);
+        HashSet<String> ids = new HashSet<>();
+        for (List<Video> page : mPages) {
+            for (Video video : page) {
+                if (ids.add(video.getId())) {
+                    videos.add(video);
+                }
+            }
+        }
+
+        mVideoCount = videos.size();
+        mVideos.setValue(videos);
+    }
+
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright (c) 2019 Felix Kopp <sandtler@sandtler.club>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package club.sandtler.devid.ui.feed;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import androidx.annotation.NonNull;
+import androidx.lifecycle.ViewModel;
+import androidx.lifecycle.ViewModelProvider;
+
+import java.util.concurrent.Executor;
+
+import club.sandtler.devid.data.DataContainer;
+import club.sandtler.devid.data.VideoRepository;
+import club.sandtler.devid.lib.NetworkDispatcher;
+
+public class FeedViewModelFactory implements ViewModelProvider.Factory {
+
+    /** The repository for all created view models. */
+    private final VideoRepository mRepository;
+    /** The dispatcher for all created view models. */
+    private final NetworkDispatcher mDispatcher;
+    /** Executor for delivering results on the UI thread. */
+    private final Executor mMainExecutor;
+
+    /**
+     * Create a new factory for view models that use the app's repository
+     * and dispatcher.
+     */
+    public FeedViewModelFactory() {
+        this(
+                DataContainer.get().getVideoRepository(),
+                NetworkDispatcher.getDefault(),
+                new Handler(Looper.getMainLooper())::post
+        );
+    }
+
+    /**
+     * Create a new factory for view models that use the given dependencies.
+     *
+     * @param repository The repository.
+     * @param dispatcher The dispatcher to run network requests on.
+     * @param mainExecutor Executor for delivering results on the UI thread.
+     */
+    public FeedViewModelFactory(@NonNull VideoRepository repository,
+                                @NonNull NetworkDispatcher dispatcher,
+                                @NonNull Executor mainExecutor) {
+        mRepository = repository;
+        mDispatcher = dispatcher;
+        mMainExecutor = mainExecutor;
+    }
+
+    @NonNull
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T extends ViewModel> T create(@NonNull Class<T> modelClass) {
+        if (modelClass.isAssignableFrom(FeedViewModel.class)) {
+            return (T) new FeedViewModel(mRepository, mDispatcher, mMainExecutor);
+        } else {
+            throw new IllegalArgumentException("Invalid ViewModel class");
+        }
+    }
+
+}
@@ -28,11 +28,11 @@ import android.widget.TextView;
 import androidx.annotation.NonNull;
 import androidx.fragment.app.Fragment;
 import androidx.lifecycle.Observer;
-import androidx.lifecycle.ViewModelProviders;
 
 import club.sandtler.devid.R;
 import club.sandtler.devid.data.Result;
 import club.sandtler.devid.data.model.User;
+import club.sandtler.devid.ui.SharedViewModels;
 
 /**
  * Fragment class for displaying a brief and compact user summary
@@ -72,14 +72,6 @@ public class UserBriefFragment extends Fragment {
         // required public empty constructor
     }
 
-    @Override
-    public void onCreate(Bundle savedInstanceState) {
-        super.onCreate(savedInstanceState);
-
-        mViewModel = ViewModelProviders.of(this, new UserViewModelFactory())
-                .get(UserViewModel.class);
-    }
-
     @Override
     public View onCreateView(@NonNull LayoutInflater inflater, ViewGroup container,
                              Bundle savedInstanceState) {
@@ -104,6 +96,7 @@ public class UserBriefFragment extends Fragment {
      */
     private void handleFragmentArgs(@NonNull Bundle args) {
         String userId = args.getString(KEY_USER_ID);
+        mViewModel = SharedViewModels.getUserViewModelById(requireActivity(), userId);
 
         mViewModel.getById(userId).observe(this, userResult -> {
             if (userResult instanceof Result.Success) {
@@ -31,12 +31,12 @@ import androidx.annotation.Nullable;
 import androidx.fragment.app.Fragment;
 import androidx.lifecycle.LiveData;
 import androidx.lifecycle.Observer;
-import androidx.lifecycle.ViewModelProviders;
 
 import club.sandtler.devid.DEvidApp;
 import club.sandtler.devid.R;
 import club.sandtler.devid.data.Result;
 import club.sandtler.devid.data.model.User;
+import club.sandtler.devid.ui.SharedViewModels;
 import club.sandtler.devid.ui.UserViewActivity;
 
 /**
@@ -80,14 +80,6 @@ public class UserOverviewFragment extends Fragment {
         return frag;
     }
 
-    @Override
-    public void onCreate(Bundle savedInstanceState) {
-        super.onCreate(savedInstanceState);
-
-        this.mViewModel = ViewModelProviders.of(this, new UserViewModelFactory())
-                .get(UserViewModel.class);
-    }
-
     @Override
     public View onCreateView(@NonNull LayoutInflater inflater, ViewGroup container,
                              Bundle savedInstanceState) {
@@ -114,10 +106,14 @@ public class UserOverviewFragment extends Fragment {
 
         LiveData<Result<User>> data;
         if (args.containsKey(KEY_USER_ID)) {
-            data = this.mViewModel.getById(args.getString(KEY_USER_ID));
-            retrievePP(args.getString(KEY_USER_ID));
+            String userId = args.getString(KEY_USER_ID);
+            this.mViewModel = SharedViewModels.getUserViewModelById(requireActivity(), userId);
+            data = this.mViewModel.getById(userId);
+            retrievePP(userId);
         } else if (args.containsKey(KEY_USER_NAME)) {
-            data = this.mViewModel.getByUserName(args.getString(KEY_USER_NAME));
+            String userName = args.getString(KEY_USER_NAME);
+            this.mViewModel = SharedViewModels.getUserViewModelByName(requireActivity(), userName);
+            data = this.mViewModel.getByUserName(userName);
         } else {
             return;
         }
@@ -18,24 +18,38 @@
 package club.sandtler.devid.ui.user;
 
 import android.graphics.Bitmap;
-import android.os.AsyncTask;
 
 import androidx.lifecycle.LiveData;
 import androidx.lifecycle.MutableLiveData;
 import androidx.lifecycle.ViewModel;
 
+import java.util.concurrent.Executor;
+
 import club.sandtler.devid.data.Result;
 import club.sandtler.devid.data.UserRepository;
 import club.sandtler.devid.data.model.User;
-import club.sandtler.devid.ui.UserViewActivity;
+import club.sandtler.devid.lib.Constants;
+import club.sandtler.devid.lib.Deadline;
+import club.sandtler.devid.lib.NetworkDispatcher;
+import club.sandtler.devid.lib.NetworkUtil;
 
 /**
  * View model for users.
+ * <p>
+ * Instances should be obtained over
+ * {@link club.sandtler.devid.ui.SharedViewModels#getUserViewModelById} or
+ * {@link club.sandtler.devid.ui.SharedViewModels#getUserViewModelByName}, so
+ * that all fragments showing the same user share a single instance and the user
+ * data and profile picture are only loaded once per screen.
  */
 public class UserViewModel extends ViewModel {
 
     /** The data repository from which to pull the data from. */
-    private UserRepository mRepository;
+    private final UserRepository mRepository;
+    /** The dispatcher to run network requests on. */
+    private final NetworkDispatcher mDispatcher;
+    /** Executor for delivering results on the UI thread. */
+    private final Executor mMainExecutor;
 
     /** The user data that is to be exposed to the activity. */
     private MutableLiveData<Result<User>> mUser;
@@ -46,9 +60,14 @@ public class UserViewModel extends ViewModel {
      * Create a new View model.
      *
      * @param repository The repository from which to pull the data from.
+     * @param dispatcher The dispatcher to run network requests on.
+     * @param mainExecutor Executor for delivering results on the UI thread.
      */
-    UserViewModel(UserRepository repository) {
+    UserViewModel(UserRepository repository, NetworkDispatcher dispatcher,
+                  Executor mainExecutor) {
         this.mRepository = repository;
+        this.mDispatcher = dispatcher;
+        this.mMainExecutor = mainExecutor;
     }
 
     /**
@@ -61,7 +80,8 @@ public class UserViewModel extends ViewModel {
     public LiveData<Result<User>> getByUserName(String userName) {
         if (this.mUser == null) {
             this.mUser = new MutableLiveData<>();
-            new UserLoadTask().execute(UserViewActivity.EXTRA_USER_NAME, userName);
+            load(NetworkUtil.BACKEND_HOST, NetworkDispatcher.PRIORITY_VISIBLE, this.mUser,
+                    () -> mRepository.getByUserName(userName));
         }
 
         return this.mUser;
@@ -77,75 +97,58 @@ public class UserViewModel extends ViewModel {
     public LiveData<Result<User>> getById(String id) {
         if (this.mUser == null) {
             this.mUser = new MutableLiveData<>();
-            new UserLoadTask().execute(UserViewActivity.EXTRA_USER_ID, id);
+            load(NetworkUtil.BACKEND_HOST, NetworkDispatcher.PRIORITY_VISIBLE, this.mUser,
+                    () -> mRepository.getById(id));
         }
 
         return this.mUser;
     }
 
+    /**
+     * Retrieve a user's profile picture and return LiveData
+     * that is updated as soon as the picture is ready.
+     *
+     * @param userId The user id.
+     * @return The LiveData.
+     */
     public LiveData<Result<Bitmap>> getPP(String userId) {
         if (this.mPP == null) {
             this.mPP = new MutableLiveData<>();
-            new PPLoadTask().execute(userId);
+            load(NetworkUtil.CDN_HOST, NetworkDispatcher.PRIORITY_IMAGE, this.mPP,
+                    () -> mRepository.getPP(userId));
         }
 
         return this.mPP;
     }
 
     /**
-     * Asynchronous task class for retrieving the
-     * requested user data from the repository.
+     * Run a repository call on the dispatcher and publish its result on
+     * the UI thread.  The call fails if it takes longer than
+     * {@link Constants.Timeouts#UI_DEADLINE_MS}, including the time it waits
+     * in the queue.
      *
-     * The task takes two String arguments: The first is either
-     * {@link UserViewActivity#EXTRA_USER_ID} or
-     * {@link UserViewActivity#EXTRA_USER_NAME},
-     * depending on whether
-     * {@link UserViewModel#getById} or
-     * {@link UserViewModel#getByUserName}
-     * was called.
-     * The second one is either the user id or the user name.
+     * @param host The host the call sends requests to.
+     * @param priority The dispatcher priority.
+     * @param target The LiveData to publish the result to.
+     * @param call The repository call.
+     * @param <T> The result data type.
      */
-    private class UserLoadTask extends AsyncTask<String, Void, Result<User>> {
-
-        @Override
-        protected Result<User> doInBackground(String... args) {
-            if (args.length < 2) {
-                return new Result.Error(new IllegalArgumentException());
-            }
-
-            switch (args[0]) {
-                case UserViewActivity.EXTRA_USER_ID:
-                    return mRepository.getById(args[1]);
-                case UserViewActivity.EXTRA_USER_NAME:
-                    return mRepository.getByUserName(args[1]);
-            }
-
-            return new Result.Error(new IllegalArgumentException());
-        }
-
-        @Override
-        protected void onPostExecute(Result<User> result) {
-            mUser.setValue(result);
-        }
-
+    private <T> void load(String host, int priority, MutableLiveData<Result<T>> target,
+                          RepositoryCall<T> call) {
+        Deadline deadline = Deadline.after(Constants.Timeouts.UI_DEADLINE_MS);
+        mDispatcher.execute(host, priority, deadline, () -> {
+            Result<T> result = call.run();
+            mMainExecutor.execute(() -> target.setValue(result));
+        });
     }
 
-    private class PPLoadTask extends AsyncTask<String, Void, Result<Bitmap>> {
-
-        @Override
-        protected Result<Bitmap> doInBackground(String... args) {
-            if (args.length < 1) {
-                return new Result.Error(new IllegalArgumentException());
-            }
-
-            return mRepository.getPP(args[0]);
-        }
-
-        @Override
-        protected void onPostExecute(Result<Bitmap> result) {
-            mPP.setValue(result);
-        }
-
+    /**
+     * A blocking call to the repository.
+     *
+     * @param <T> The result data type.
+     */
+    private interface RepositoryCall<T> {
+        Result<T> run();
     }
 
 }
@@ -17,13 +17,18 @@
 
 package club.sandtler.devid.ui.user;
 
+import android.os.Handler;
+import android.os.Looper;
+
 import androidx.annotation.NonNull;
 import androidx.lifecycle.ViewModel;
 import androidx.lifecycle.ViewModelProvider;
 
-import club.sandtler.devid.data.UserDataSource;
+import java.util.concurrent.Executor;
+
+import club.sandtler.devid.data.DataContainer;
 import club.sandtler.devid.data.UserRepository;
-import club.sandtler.devid.ui.login.LoginViewModel;
+import club.sandtler.devid.lib.NetworkDispatcher;
 
 /**
  * ViewModel provider factory to instantiate UserViewModel.
@@ -31,12 +36,46 @@ import club.sandtler.devid.ui.login.LoginViewModel;
  */
 public class UserViewModelFactory implements ViewModelProvider.Factory {
 
+    /** The repository for all created view models. */
+    private final UserRepository mRepository;
+    /** The dispatcher for all created view models. */
+    private final NetworkDispatcher mDispatcher;
+    /** Executor for delivering results on the UI thread. */
+    private final Executor mMainExecutor;
+
+    /**
+     * Create a new factory for view models that use the app's repository
+     * and dispatcher.
+     */
+    public UserViewModelFactory() {
+        this(
+                DataContainer.get().getUserRepository(),
+                NetworkDispatcher.getDefault(),
+                new Handler(Looper.getMainLooper())::post
+        );
+    }
+
+    /**
+     * Create a new factory for view models that use the given dependencies.
+     *
+     * @param repository The repository.
+     * @param dispatcher The dispatcher to run network requests on.
+     * @param mainExecutor Executor for delivering results on the UI thread.
+     */
+    public UserViewModelFactory(@NonNull UserRepository repository,
+                                @NonNull NetworkDispatcher dispatcher,
+                                @NonNull Executor mainExecutor) {
+        mRepository = repository;
+        mDispatcher = dispatcher;
+        mMainExecutor = mainExecutor;
+    }
+
     @NonNull
     @Override
     @SuppressWarnings("unchecked")
     public <T extends ViewModel> T create(@NonNull Class<T> modelClass) {
         if (modelClass.isAssignableFrom(UserViewModel.class)) {
-            return (T) new UserViewModel(UserRepository.getInstance(new UserDataSource()));
+            return (T) new UserViewModel(mRepository, mDispatcher, mMainExecutor);
         } else {
             throw new IllegalArgumentException("Unknown ViewModel class");
         }
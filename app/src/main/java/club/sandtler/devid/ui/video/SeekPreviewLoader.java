@@ -0,0 +1,279 @@
+/*
+ * Copyright (c) 2019 Felix Kopp <sandtler@sandtler.club>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package club.sandtler.devid.ui.video;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.BitmapRegionDecoder;
+import android.graphics.Rect;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.collection.LruCache;
+
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import club.sandtler.devid.data.Result;
+import club.sandtler.devid.data.VideoRepository;
+import club.sandtler.devid.lib.Constants;
+import club.sandtler.devid.lib.HttpStatusException;
+import club.sandtler.devid.lib.MemoryGovernor;
+
+import static club.sandtler.devid.lib.Constants.SeekPreview;
+
+/**
+ * Loads seek preview thumbnails of a single video from the CDN's sprite sheets.
+ * <p>
+ * Sprite sheets are kept in memory in their encoded form, and individual
+ * tiles are only decoded when they are requested.  Decoded tiles are kept in
+ * a small LRU cache.  All network and decoding work happens on a background
+ * thread, and requests that have been superseded by a newer one before they
+ * could be processed are skipped, so scrubbing quickly through the video
+ * never piles up work.  Decoded tiles are released when the system is low
+ * on memory, see {@link MemoryGovernor}.
+ */
+final class SeekPreviewLoader implements MemoryGovernor.Trimmable {
+
+    /** Callback for loaded preview tiles. */
+    interface Callback {
+        /**
+         * Called on the UI thread when a requested tile has been loaded.
+         *
+         * @param tile The thumbnail tile.
+         */
+        void onTileLoaded(@NonNull Bitmap tile);
+    }
+
+    /** The repository to retrieve sprite sheets from. */
+    private final VideoRepository mRepository;
+    /** The video id. */
+    private final String mVideoId;
+    /** Background thread for downloading sheets and decoding tiles. */
+    private final ExecutorService mExecutor = Executors.newSingleThreadExecutor();
+    /** Handler for posting results to the UI thread. */
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+
+    /** Decoded tiles, indexed by their global tile index. */
+    private final LruCache<Integer, Bitmap> mTileCache =
+            new LruCache<Integer, Bitmap>(SeekPreview.MAX_TILE_CACHE_BYTES) {
+
+                @Override
+                protected int sizeOf(@NonNull Integer key, @NonNull Bitmap value) {
+                    return value.getByteCount();
+                }
+
+            };
+    /** Region decoders for the sprite sheets, indexed by sheet index. */
+    private final LruCache<Integer, BitmapRegionDecoder> mSheetCache =
+            new LruCache<Integer, BitmapRegionDecoder>(SeekPreview.MAX_SHEET_CACHE_ENTRIES) {
+
+                @Override
+                protected void entryRemoved(boolean evicted, @NonNull Integer key,
+                                            @NonNull BitmapRegionDecoder oldValue,
+                                            @Nullable BitmapRegionDecoder newValue) {
+                    oldValue.recycle();
+                }
+
+            };
+    /** Decoder options for tiles.  Only used on the background thread. */
+    private final BitmapFactory.Options mDecodeOptions = new BitmapFactory.Options();
+    /** Tile region buffer.  Only used on the background thread. */
+    private final Rect mRegion = new Rect();
+
+    /** The most recently requested tile index. */
+    private volatile int mRequestedTile = -1;
+    /** Set if the video has no sprite sheets, so we don't keep trying. */
+    private volatile boolean mUnavailable = false;
+
+    /**
+     * Create a new loader.
+     *
+     * @param repository The repository to retrieve sprite sheets from.
+     * @param videoId The video id.
+     */
+    SeekPreviewLoader(@NonNull VideoRepository repository, @NonNull String videoId) {
+        mRepository = repository;
+        mVideoId = videoId;
+        mDecodeOptions.inPreferredConfig = Bitmap.Config.RGB_565;
+        MemoryGovernor.getDefault().register(this);
+    }
+
+    /**
+     * Request the preview tile for a playback position.
+     * If the tile is in memory already, the callback is invoked right away.
+     * Otherwise, it is invoked once the tile has been loaded, unless another
+     * tile has been requested in the meantime.
+     *
+     * @param positionMs The playback position in milliseconds.
+     * @param callback The callback.
+     */
+    void request(long positionMs, @NonNull Callback callback) {
+        if (mUnavailable || positionMs < 0) {
+            return;
+        }
+
+        final int tile = (int) (positionMs / SeekPreview.TILE_INTERVAL_MS);
+        Bitmap cached = mTileCache.get(tile);
+        if (cached != null) {
+            mRequestedTile = tile;
+            callback.onTileLoaded(cached);
+            return;
+        }
+        if (tile == mRequestedTile) {
+            return; // Already being loaded
+        }
+
+        mRequestedTile = tile;
+        mExecutor.execute(() -> {
+            if (tile != mRequestedTile) {
+                return; // The user has scrubbed on already
+            }
+
+            Bitmap bitmap = decodeTile(tile);
+            if (bitmap == null) {
+                // Let the next request for this tile try again
+                mMainHandler.post(() -> {
+                    if (tile == mRequestedTile) {
+                        mRequestedTile = -1;
+                    }
+                });
+                return;
+            }
+
+            mTileCache.put(tile, bitmap);
+            mMainHandler.post(() -> {
+                if (tile == mRequestedTile) {
+                    callback.onTileLoaded(bitmap);
+                }
+            });
+        });
+    }
+
+    /**
+     * Release decoded tiles.  The sprite sheets are only released if
+     * everything is to be released, because they are expensive to reload.
+     *
+     * @param keepFraction The fraction of cached data to keep.
+     * @return The amount of memory released in bytes, not including sheets.
+     */
+    @Override
+    public long trimMemory(float keepFraction) {
+        long before = mTileCache.size();
+        if (keepFraction <= 0f) {
+            mTileCache.evictAll();
+            if (!mExecutor.isShutdown()) {
+                // The decoders may only be recycled once no tile is being decoded
+                mExecutor.execute(mSheetCache::evictAll);
+            }
+        } else if (keepFraction < 1f) {
+            mTileCache.trimToSize((int) (before * keepFraction));
+        }
+
+        return before - mTileCache.size();
+    }
+
+    /**
+     * Stop all pending work and free all cached data.
+     * The loader must not be used anymore after calling this.
+     */
+    void release() {
+        mUnavailable = true;
+        mRequestedTile = -1; // Makes all pending requests skip themselves
+        mMainHandler.removeCallbacksAndMessages(null);
+        mTileCache.evictAll();
+        // The decoders may only be recycled once no tile is being decoded
+        mExecutor.execute(mSheetCache::evictAll);
+        mExecutor.shutdown();
+    }
+
+    /**
+     * Decode a single tile, downloading its sprite sheet if necessary.
+     * Must only be called from {@link #mExecutor}.
+     *
+     * @param tile The global tile index.
+     * @return The decoded tile, or {@code null} if it could not be loaded.
+     */
+    @Nullable
+    private Bitmap decodeTile(int tile) {
+        final int tilesPerSheet = SeekPreview.TILE_COLUMNS * SeekPreview.TILE_ROWS;
+        final int sheetIndex = tile / tilesPerSheet;
+        final int indexInSheet = tile % tilesPerSheet;
+
+        BitmapRegionDecoder decoder = mSheetCache.get(sheetIndex);
+        if (decoder == null) {
+            decoder = loadSheet(sheetIndex);
+            if (decoder == null) {
+                return null;
+            }
+            mSheetCache.put(sheetIndex, decoder);
+        }
+
+        final int tileWidth = decoder.getWidth() / SeekPreview.TILE_COLUMNS;
+        final int tileHeight = decoder.getHeight() / SeekPreview.TILE_ROWS;
+        final int column = indexInSheet % SeekPreview.TILE_COLUMNS;
+        final int row = indexInSheet / SeekPreview.TILE_COLUMNS;
+        mRegion.set(
+                column * tileWidth,
+                row * tileHeight,
+                (column + 1) * tileWidth,
+                (row + 1) * tileHeight
+        );
+
+        return decoder.decodeRegion(mRegion, mDecodeOptions);
+    }
+
+    /**
+     * Download a sprite sheet and create a region decoder for it.
+     * Must only be called from {@link #mExecutor}.
+     *
+     * @param sheetIndex The sprite sheet index.
+     * @return The decoder, or {@code null} if the sheet could not be loaded.
+     */
+    @Nullable
+    private BitmapRegionDecoder loadSheet(int sheetIndex) {
+        Result<byte[]> result = mRepository.getSeekSprite(mVideoId, sheetIndex);
+        if (result instanceof Result.Error) {
+            Exception e = ((Result.Error) result).getError();
+            if ((e instanceof HttpStatusException
+                    && ((HttpStatusException) e).getStatusCode() == 404)
+                    || e instanceof IllegalArgumentException) {
+                // No sprites for this video, or the position is out of range
+                if (sheetIndex == 0) {
+                    mUnavailable = true;
+                }
+            } else {
+                Log.w(Constants.LOG_TAG, "Unable to load seek preview sprite", e);
+            }
+            return null;
+        }
+
+        byte[] data = ((Result.Success<byte[]>) result).getData();
+        try {
+            return BitmapRegionDecoder.newInstance(data, 0, data.length, false);
+        } catch (IOException e) {
+            Log.w(Constants.LOG_TAG, "Malformed seek preview sprite", e);
+            return null;
+        }
+    }
+
+}
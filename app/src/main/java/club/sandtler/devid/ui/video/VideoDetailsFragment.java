@@ -18,6 +18,7 @@
 package club.sandtler.devid.ui.video;
 
 import android.os.Bundle;
+import android.text.TextUtils;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
@@ -27,13 +28,12 @@ import androidx.annotation.NonNull;
 import androidx.fragment.app.Fragment;
 import androidx.fragment.app.FragmentManager;
 import androidx.fragment.app.FragmentTransaction;
-import androidx.lifecycle.ViewModelProviders;
-
-import java.text.SimpleDateFormat;
 
 import club.sandtler.devid.R;
 import club.sandtler.devid.data.Result;
 import club.sandtler.devid.data.model.Video;
+import club.sandtler.devid.lib.DateFormatter;
+import club.sandtler.devid.ui.SharedViewModels;
 import club.sandtler.devid.ui.user.UserBriefFragment;
 
 /**
@@ -45,6 +45,13 @@ public class VideoDetailsFragment extends Fragment {
     public static final String KEY_VIDEO_ID =
             "club.sandtler.devid.ui.video.VideoDetailsFragment.VIDEO_ID";
 
+    /** Saved state key for {@link #mChildUserId}. */
+    private static final String STATE_CHILD_USER_ID =
+            "club.sandtler.devid.ui.video.VideoDetailsFragment.CHILD_USER_ID";
+    /** Saved state key for {@link #mChildVideoId}. */
+    private static final String STATE_CHILD_VIDEO_ID =
+            "club.sandtler.devid.ui.video.VideoDetailsFragment.CHILD_VIDEO_ID";
+
     /** The video id. */
     private String mVideoId;
 
@@ -56,9 +63,13 @@ public class VideoDetailsFragment extends Fragment {
     private TextView mVideoUploadDateView;
     /** View element for the video description. */
     private TextView mVideoDescriptionView;
-    /** View root for the user brief fragment. */
-    private UserBriefFragment mUserBriefFragment;
-    private VideoToolboxFragment mVideoToolboxFragment;
+
+    /** The video data currently shown by the views, if any. */
+    private Video mBoundVideo;
+    /** The user id the current {@link UserBriefFragment} was created for. */
+    private String mChildUserId;
+    /** The video id the current {@link VideoToolboxFragment} was created for. */
+    private String mChildVideoId;
 
     /**
      * Create a new instance of this fragment.
@@ -82,8 +93,11 @@ public class VideoDetailsFragment extends Fragment {
     public void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
 
-        mViewModel = ViewModelProviders.of(this, new VideoViewModelFactory())
-                .get(VideoViewModel.class);
+        // The child fragments themselves are restored by the fragment manager
+        if (savedInstanceState != null) {
+            mChildUserId = savedInstanceState.getString(STATE_CHILD_USER_ID);
+            mChildVideoId = savedInstanceState.getString(STATE_CHILD_VIDEO_ID);
+        }
     }
 
     @Override
@@ -94,13 +108,27 @@ public class VideoDetailsFragment extends Fragment {
         mVideoTitleView = root.findViewById(R.id.video_details_title);
         mVideoUploadDateView = root.findViewById(R.id.video_details_upload_date);
         mVideoDescriptionView = null;
+        // The new views don't show anything yet
+        mBoundVideo = null;
+
+        return root;
+    }
+
+    @Override
+    public void onViewCreated(@NonNull View view, Bundle savedInstanceState) {
+        super.onViewCreated(view, savedInstanceState);
 
         Bundle args = getArguments();
         if (args != null) {
             handleFragmentArgs(args);
         }
+    }
 
-        return root;
+    @Override
+    public void onSaveInstanceState(@NonNull Bundle outState) {
+        super.onSaveInstanceState(outState);
+        outState.putString(STATE_CHILD_USER_ID, mChildUserId);
+        outState.putString(STATE_CHILD_VIDEO_ID, mChildVideoId);
     }
 
     /**
@@ -110,8 +138,10 @@ public class VideoDetailsFragment extends Fragment {
      */
     private void handleFragmentArgs(@NonNull Bundle args) {
         mVideoId = args.getString(KEY_VIDEO_ID);
+        mViewModel = SharedViewModels.getVideoViewModel(requireActivity(), mVideoId);
 
-        mViewModel.getVideo(mVideoId).observe(this, videoResult -> {
+        // Scoped to the view, so there is only one observer per view hierarchy
+        mViewModel.getVideo(mVideoId).observe(getViewLifecycleOwner(), videoResult -> {
             if (videoResult instanceof Result.Success) {
                 updateUiWithVideo(((Result.Success<Video>) videoResult).getData());
             } else if (videoResult instanceof Result.Error) {
@@ -123,38 +153,59 @@ public class VideoDetailsFragment extends Fragment {
     /**
      * Update the UI to show the video information after
      * the ViewModel's LiveData changed.
+     * This is called again for every vote, so only the views whose data has
+     * actually changed are touched.
      *
      * @param video The video.
      */
     private void updateUiWithVideo(Video video) {
-        mVideoTitleView.setText(video.getTitle());
-        SimpleDateFormat sdf = (SimpleDateFormat) SimpleDateFormat.getDateTimeInstance();
-        mVideoUploadDateView.setText(String.format(
-                getResources().getString(R.string.upload_date),
-                sdf.format(video.getUploadDate())
-        ));
-        setupFragments(video);
+        Video old = mBoundVideo;
+        mBoundVideo = video;
+
+        if (old == null || !TextUtils.equals(old.getTitle(), video.getTitle())) {
+            mVideoTitleView.setText(video.getTitle());
+        }
+        if (old == null || old.getUploadTime() != video.getUploadTime()) {
+            mVideoUploadDateView.setText(getString(
+                    R.string.upload_date,
+                    DateFormatter.getInstance(requireContext()).formatDateTime(video.getUploadTime())
+            ));
+        }
+
+        bindFragments(video);
     }
 
     /**
-     * Instantiate all child fragments and add them to the layout.
+     * Make sure the child fragments show the given video and its uploader.
+     * Child fragments are only created if there are none yet, or if they
+     * were created for a different video or user; otherwise, this is a no-op.
      *
      * @param video The video.
      */
-    private void setupFragments(Video video) {
+    private void bindFragments(Video video) {
+        boolean userChanged = !video.getUserId().equals(mChildUserId);
+        boolean videoChanged = !video.getId().equals(mChildVideoId);
+        if (!userChanged && !videoChanged) {
+            return;
+        }
+
         FragmentManager fragmentManager = getChildFragmentManager();
         FragmentTransaction fragmentTransaction = fragmentManager.beginTransaction();
 
-        mUserBriefFragment = UserBriefFragment.newInstance(video.getUserId());
-        fragmentTransaction.add(
-                R.id.video_details_user_brief_fragment_container,
-                mUserBriefFragment
-        );
-        mVideoToolboxFragment = VideoToolboxFragment.newInstance(video.getId());
-        fragmentTransaction.add(
-                R.id.video_details_toolbox_fragment_container,
-                mVideoToolboxFragment
-        );
+        if (userChanged) {
+            fragmentTransaction.replace(
+                    R.id.video_details_user_brief_fragment_container,
+                    UserBriefFragment.newInstance(video.getUserId())
+            );
+            mChildUserId = video.getUserId();
+        }
+        if (videoChanged) {
+            fragmentTransaction.replace(
+                    R.id.video_details_toolbox_fragment_container,
+                    VideoToolboxFragment.newInstance(video.getId())
+            );
+            mChildVideoId = video.getId();
+        }
 
         fragmentTransaction.commit();
     }
@@ -20,34 +20,48 @@ package club.sandtler.devid.ui.video;
 import android.content.Context;
 import android.net.Uri;
 import android.os.Bundle;
+import android.os.Handler;
 import android.util.Log;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
+import android.widget.ImageView;
 import android.widget.ProgressBar;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 import androidx.fragment.app.Fragment;
 
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.DefaultRenderersFactory;
 import com.google.android.exoplayer2.ExoPlayerFactory;
+import com.google.android.exoplayer2.LoadControl;
 import com.google.android.exoplayer2.Player;
 import com.google.android.exoplayer2.SimpleExoPlayer;
 import com.google.android.exoplayer2.source.MediaSource;
 import com.google.android.exoplayer2.source.ProgressiveMediaSource;
+import com.google.android.exoplayer2.trackselection.DefaultTrackSelector;
+import com.google.android.exoplayer2.ui.DefaultTimeBar;
 import com.google.android.exoplayer2.ui.PlayerView;
+import com.google.android.exoplayer2.ui.TimeBar;
 import com.google.android.exoplayer2.upstream.DataSource;
-import com.google.android.exoplayer2.upstream.DefaultDataSourceFactory;
-import com.google.android.exoplayer2.util.Util;
 
 import club.sandtler.devid.R;
+import club.sandtler.devid.data.DataContainer;
+import club.sandtler.devid.data.WatchProgressRepository;
+import club.sandtler.devid.data.db.AppDatabase;
+import club.sandtler.devid.lib.BackgroundPlaybackService;
 import club.sandtler.devid.lib.Constants;
-
-import static club.sandtler.devid.lib.Constants.URLPaths;
+import club.sandtler.devid.lib.PlaybackMetrics;
+import club.sandtler.devid.lib.PlayerLoadProfile;
+import club.sandtler.devid.lib.Promise;
+import club.sandtler.devid.lib.VideoDownloadManager;
 
 /**
  * Fragment for the video player w/ controls.
  */
-public class VideoPlayerFragment extends Fragment implements Player.EventListener {
+public class VideoPlayerFragment extends Fragment
+        implements Player.EventListener, TimeBar.OnScrubListener {
 
     /** Fragment argument for specifying the video id. */
     public static final String KEY_VIDEO_ID =
@@ -55,10 +69,18 @@ public class VideoPlayerFragment extends Fragment implements Player.EventListene
 
     /** The player instance. */
     private SimpleExoPlayer mPlayer;
+    /** Metrics of the current playback session. */
+    private PlaybackMetrics mMetrics;
     /** The player's view root. */
     private PlayerView mPlayerView;
     private ProgressBar mProgressBar;
 //    private SeekBar mSeekBar;
+    /** The seek preview thumbnail shown above the time bar while scrubbing. */
+    private ImageView mSeekPreview;
+    /** The loader for seek preview thumbnails. */
+    private SeekPreviewLoader mSeekPreviewLoader;
+    /** Whether the user is currently scrubbing through the time bar. */
+    private boolean mScrubbing = false;
     /**
      * The current playback position.
      * Used for recreating the player on configuration changes.
@@ -67,6 +89,28 @@ public class VideoPlayerFragment extends Fragment implements Player.EventListene
     /** The video id. */
     private String mVideoId = null;
 
+    /** The repository for persisting the playback position across sessions. */
+    private WatchProgressRepository mProgressRepository;
+    /** Whether the stored playback position has been loaded already. */
+    private boolean mPositionLoaded = false;
+    /** Whether the fragment is in started state. */
+    private boolean mStarted = false;
+    /** Handler for periodically saving the playback position. */
+    private final Handler mHandler = new Handler();
+    /** Saves the playback position and reschedules itself. */
+    private final Runnable mSaveProgressRunnable = new Runnable() {
+
+        @Override
+        public void run() {
+            if (!mPositionLoaded) {
+                return; // Rescheduled by startPlayback()
+            }
+            saveProgress();
+            mHandler.postDelayed(this, Constants.Playback.PROGRESS_SAVE_INTERVAL_MS);
+        }
+
+    };
+
     /**
      * Create a new instance of this fragment.
      *
@@ -86,7 +130,17 @@ public class VideoPlayerFragment extends Fragment implements Player.EventListene
     public void onAttach(Context context) {
         super.onAttach(context);
 
-        mPlayer = ExoPlayerFactory.newSimpleInstance(context);
+        PlayerLoadProfile loadProfile = PlayerLoadProfile.select(context);
+        LoadControl loadControl = loadProfile.createLoadControl();
+        mPlayer = ExoPlayerFactory.newSimpleInstance(
+                context,
+                new DefaultRenderersFactory(context),
+                new DefaultTrackSelector(),
+                loadControl
+        );
+
+        mMetrics = new PlaybackMetrics(loadProfile, loadControl.getAllocator());
+        mPlayer.addAnalyticsListener(mMetrics);
     }
 
     /** {@inheritDoc} */
@@ -100,6 +154,18 @@ public class VideoPlayerFragment extends Fragment implements Player.EventListene
         if (args != null) {
             mVideoId = args.getString(KEY_VIDEO_ID);
         }
+
+        mProgressRepository = WatchProgressRepository.getInstance(
+                AppDatabase.getInstance(requireContext()).watchProgressDao()
+        );
+        loadStoredPosition();
+
+        if (mVideoId != null) {
+            mSeekPreviewLoader = new SeekPreviewLoader(
+                    DataContainer.get().getVideoRepository(),
+                    mVideoId
+            );
+        }
     }
 
     /** {@inheritDoc} */
@@ -111,6 +177,9 @@ public class VideoPlayerFragment extends Fragment implements Player.EventListene
         mPlayerView = root.findViewById(R.id.player_view);
         mProgressBar = root.findViewById(R.id.player_view_loading_bar);
 //        mSeekBar = root.findViewById(R.id.video_player_seek_bar);
+        mSeekPreview = mPlayerView.findViewById(R.id.player_seek_preview);
+        DefaultTimeBar timeBar = mPlayerView.findViewById(R.id.exo_progress);
+        timeBar.addListener(this);
 
         return root;
     }
@@ -120,8 +189,42 @@ public class VideoPlayerFragment extends Fragment implements Player.EventListene
     public void onStart() {
         super.onStart();
 
-        setupPlayer();
-        mPlayer.setPlayWhenReady(true);
+        mStarted = true;
+        Long backgroundPosition = BackgroundPlaybackService.takeOver(requireContext(), mVideoId);
+        if (backgroundPosition != null) {
+            mCurrentPosition = backgroundPosition;
+        }
+        // Otherwise, playback is started as soon as the position is loaded
+        if (mPositionLoaded) {
+            startPlayback();
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void onStop() {
+        super.onStop();
+
+        mStarted = false;
+        mHandler.removeCallbacks(mSaveProgressRunnable);
+        // Before the stored position is loaded, the player is still at 0
+        if (mPlayer != null && mPositionLoaded) {
+            mCurrentPosition = mPlayer.getCurrentPosition();
+            saveProgress();
+            mProgressRepository.flush();
+            continueInBackground();
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void onDestroy() {
+        super.onDestroy();
+
+        if (mSeekPreviewLoader != null) {
+            mSeekPreviewLoader.release();
+            mSeekPreviewLoader = null;
+        }
     }
 
     /** {@inheritDoc} */
@@ -129,11 +232,26 @@ public class VideoPlayerFragment extends Fragment implements Player.EventListene
     public void onDetach() {
         super.onDetach();
 
-        mCurrentPosition = mPlayer.getCurrentPosition();
+        mHandler.removeCallbacks(mSaveProgressRunnable);
+        if (mPositionLoaded) {
+            mCurrentPosition = mPlayer.getCurrentPosition();
+        }
+        mMetrics.log();
         mPlayer.release();
         mPlayer = null;
     }
 
+    /**
+     * Return the metrics of the current playback session, including the
+     * buffering profile that was chosen for the player.
+     *
+     * @return The playback metrics, or {@code null} if there is no player.
+     */
+    @Nullable
+    public PlaybackMetrics getPlaybackMetrics() {
+        return mPlayer == null ? null : mMetrics;
+    }
+
     /** {@inheritDoc} */
     @Override
     public void onPlayerStateChanged(boolean playWhenReady, int playbackState) {
@@ -157,25 +275,71 @@ public class VideoPlayerFragment extends Fragment implements Player.EventListene
         }
     }
 
+    /** {@inheritDoc} */
+    @Override
+    public void onScrubStart(TimeBar timeBar, long position) {
+        mScrubbing = true;
+        updateSeekPreview(timeBar, position);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void onScrubMove(TimeBar timeBar, long position) {
+        updateSeekPreview(timeBar, position);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void onScrubStop(TimeBar timeBar, long position, boolean canceled) {
+        mScrubbing = false;
+        mSeekPreview.setVisibility(View.GONE);
+    }
+
+    /**
+     * Move the seek preview thumbnail above the scrubber position and
+     * request the matching tile from the loader.  The thumbnail only becomes
+     * visible once the first tile has arrived.
+     *
+     * @param timeBar The time bar being scrubbed.
+     * @param position The scrubber position in milliseconds.
+     */
+    private void updateSeekPreview(TimeBar timeBar, long position) {
+        if (mSeekPreviewLoader == null || mPlayer == null) {
+            return;
+        }
+
+        long duration = mPlayer.getDuration();
+        if (duration != C.TIME_UNSET && duration > 0) {
+            View bar = (View) timeBar;
+            View parent = (View) mSeekPreview.getParent();
+            float center = ((View) bar.getParent()).getLeft() + bar.getLeft()
+                    + bar.getWidth() * ((float) position / duration);
+            float maxX = parent.getWidth() - mSeekPreview.getWidth();
+            mSeekPreview.setX(Math.max(0f, Math.min(maxX, center - mSeekPreview.getWidth() / 2f)));
+        }
+
+        mSeekPreviewLoader.request(position, tile -> {
+            if (!mScrubbing) {
+                return; // Arrived too late
+            }
+            mSeekPreview.setImageBitmap(tile);
+            mSeekPreview.setVisibility(View.VISIBLE);
+        });
+    }
+
     /**
      * Craft a new {@code MediaSource} to be used with the {@code ExoPlayer}
      * instance.  The source URI will be generated from the current video id.
+     * If the video has been downloaded for offline use, it is played from
+     * local storage without touching the network.
      *
      * @return The MediaSource.
      * @see #mVideoId
      */
     private MediaSource createMediaSource() {
-        DataSource.Factory dataSourceFactory = new DefaultDataSourceFactory(
-                requireContext(),
-                Util.getUserAgent(
-                        requireContext(),
-                        getString(R.string.app_name)
-                )
-        );
-        Uri videoUri = Uri.parse(
-                URLPaths.CDN_ROOT
-                        + String.format(URLPaths.CDN_VIDEO_DEFAULT, mVideoId)
-        );
+        DataSource.Factory dataSourceFactory = VideoDownloadManager.getInstance(requireContext())
+                .buildDataSourceFactory(mVideoId);
+        Uri videoUri = VideoDownloadManager.getVideoUri(mVideoId);
         return new ProgressiveMediaSource.Factory(dataSourceFactory)
                 .createMediaSource(videoUri);
     }
@@ -187,8 +351,103 @@ public class VideoPlayerFragment extends Fragment implements Player.EventListene
     private void setupPlayer() {
         mPlayer.addListener(this);
         mPlayerView.setPlayer(mPlayer);
-        mPlayer.prepare(createMediaSource());
+        // Seeking before preparing makes the player start loading at the
+        // requested position rather than at the beginning of the stream
         mPlayer.seekTo(mCurrentPosition);
+        mMetrics.onPrepare();
+        mPlayer.prepare(createMediaSource(), false, false);
+    }
+
+    /**
+     * Prepare the player and start playing, and periodically save the
+     * playback position from now on.
+     */
+    private void startPlayback() {
+        if (mPlayer == null) {
+            return;
+        }
+
+        setupPlayer();
+        mPlayer.setPlayWhenReady(true);
+
+        mHandler.removeCallbacks(mSaveProgressRunnable);
+        mHandler.postDelayed(mSaveProgressRunnable, Constants.Playback.PROGRESS_SAVE_INTERVAL_MS);
+    }
+
+    /**
+     * Hand playback over to {@link BackgroundPlaybackService} if the video is
+     * playing and the user is leaving the activity (rather than just rotating
+     * the screen).  Our own player is stopped, which releases its decoders
+     * and detaches the surface, and is prepared again in {@link #onStart()}.
+     */
+    private void continueInBackground() {
+        boolean isPlaying = mPlayer.getPlayWhenReady()
+                && mPlayer.getPlaybackState() != Player.STATE_IDLE
+                && mPlayer.getPlaybackState() != Player.STATE_ENDED;
+        if (mVideoId == null || !isPlaying || requireActivity().isChangingConfigurations()) {
+            return;
+        }
+
+        BackgroundPlaybackService.start(requireContext(), mVideoId, mCurrentPosition);
+        mPlayerView.setPlayer(null);
+        mPlayer.removeListener(this);
+        mPlayer.stop();
+    }
+
+    /**
+     * Asynchronously load the playback position stored from a previous
+     * session and start playback once it is available.
+     */
+    private void loadStoredPosition() {
+        if (mVideoId == null) {
+            mPositionLoaded = true;
+            return;
+        }
+
+        new Promise<>(() -> mProgressRepository.getPosition(mVideoId))
+                .then(position -> {
+                    if (position != null) {
+                        mCurrentPosition = position;
+                    }
+                    onStoredPositionLoaded();
+                })
+                .expect(error -> {
+                    Log.e(Constants.LOG_TAG, "Unable to load watch progress", error);
+                    onStoredPositionLoaded();
+                })
+                .execute();
+    }
+
+    /**
+     * Callback for when the attempt to load the stored playback position
+     * has finished, regardless of whether it was successful.
+     */
+    private void onStoredPositionLoaded() {
+        mPositionLoaded = true;
+        if (mStarted) {
+            startPlayback();
+        }
+    }
+
+    /**
+     * Hand the current playback position over to the repository.
+     * If the video is (almost) over, the position is reset so the video
+     * starts from the beginning the next time.  Nothing is saved before the
+     * stored position has been loaded, because it would be overwritten.
+     */
+    private void saveProgress() {
+        if (mPlayer == null || mVideoId == null || !mPositionLoaded) {
+            return;
+        }
+
+        long position = mPlayer.getCurrentPosition();
+        long duration = mPlayer.getDuration();
+        if (duration != C.TIME_UNSET
+                && duration - position < Constants.Playback.PROGRESS_END_THRESHOLD_MS) {
+            position = 0L;
+        }
+
+        mProgressRepository.setPosition(mVideoId, position);
     }
 
 }
@@ -28,17 +28,21 @@ import android.widget.TextView;
 import androidx.annotation.NonNull;
 import androidx.fragment.app.Fragment;
 import androidx.lifecycle.LiveData;
-import androidx.lifecycle.ViewModelProviders;
+
+import com.google.android.exoplayer2.offline.Download;
+import com.google.android.exoplayer2.offline.DownloadManager;
 
 import club.sandtler.devid.R;
 import club.sandtler.devid.data.Result;
 import club.sandtler.devid.data.model.Video;
 import club.sandtler.devid.lib.Constants;
+import club.sandtler.devid.lib.VideoDownloadManager;
+import club.sandtler.devid.ui.SharedViewModels;
 
 /**
  * Fragment containing a box of various video tool buttons like vote or share.
  */
-public class VideoToolboxFragment extends Fragment {
+public class VideoToolboxFragment extends Fragment implements DownloadManager.Listener {
 
     /** Bundle key for the video id. */
     private static final String KEY_VIDEO_ID =
@@ -48,6 +52,10 @@ public class VideoToolboxFragment extends Fragment {
     private VideoViewModel mViewModel;
     /** The video id. */
     private String mVideoId;
+    /** The most recent video data, if they have been loaded already. */
+    private Video mVideo;
+    /** The offline download manager. */
+    private VideoDownloadManager mDownloadManager;
 
     /** The upvote button. */
     private ImageView mUpvoteButton;
@@ -57,6 +65,10 @@ public class VideoToolboxFragment extends Fragment {
     private TextView mUpvotesText;
     /** The downvote counter. */
     private TextView mDownvotesText;
+    /** The download button. */
+    private ImageView mDownloadButton;
+    /** The download button label. */
+    private TextView mDownloadText;
 
     /**
      * Create a new instance of this fragment.
@@ -86,8 +98,11 @@ public class VideoToolboxFragment extends Fragment {
             return;
         }
 
-        mViewModel = ViewModelProviders.of(this, new VideoViewModelFactory())
-                .get(VideoViewModel.class);
+        mViewModel = SharedViewModels.getVideoViewModel(
+                requireActivity(),
+                args.getString(KEY_VIDEO_ID)
+        );
+        mDownloadManager = VideoDownloadManager.getInstance(requireContext());
 
         handleFragmentArgs(args);
     }
@@ -103,6 +118,8 @@ public class VideoToolboxFragment extends Fragment {
 
         mUpvoteButton = root.findViewById(R.id.video_toolbox_upvote_button);
         mDownvoteButton = root.findViewById(R.id.video_toolbox_downvote_button);
+        mDownloadButton = root.findViewById(R.id.video_toolbox_download_button);
+        mDownloadText = root.findViewById(R.id.video_toolbox_download_text);
 
         View.OnClickListener clickListener = v -> {
             switch (v.getId()) {
@@ -112,6 +129,9 @@ public class VideoToolboxFragment extends Fragment {
                 case R.id.video_toolbox_downvote_container:
                     vote(Video.RATING_DISLIKE);
                     break;
+                case R.id.video_toolbox_download_container:
+                    toggleDownload();
+                    break;
                 case R.id.video_toolbox_share_container:
                     shareVideo();
                     break;
@@ -121,12 +141,51 @@ public class VideoToolboxFragment extends Fragment {
                 .setOnClickListener(clickListener);
         root.findViewById(R.id.video_toolbox_downvote_container)
                 .setOnClickListener(clickListener);
+        root.findViewById(R.id.video_toolbox_download_container)
+                .setOnClickListener(clickListener);
         root.findViewById(R.id.video_toolbox_share_container)
                 .setOnClickListener(clickListener);
 
         return root;
     }
 
+    /** {@inheritDoc} */
+    @Override
+    public void onStart() {
+        super.onStart();
+
+        if (mDownloadManager != null) {
+            mDownloadManager.addListener(this);
+            updateDownloadButton();
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void onStop() {
+        super.onStop();
+
+        if (mDownloadManager != null) {
+            mDownloadManager.removeListener(this);
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void onDownloadChanged(DownloadManager downloadManager, Download download) {
+        if (download.request.id.equals(mVideoId)) {
+            updateDownloadButton();
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void onDownloadRemoved(DownloadManager downloadManager, Download download) {
+        if (download.request.id.equals(mVideoId)) {
+            updateDownloadButton();
+        }
+    }
+
     /**
      * Handle arguments passed to this fragment.
      *
@@ -149,6 +208,7 @@ public class VideoToolboxFragment extends Fragment {
      * @param video The video to display
      */
     private void updateUiWithVideo(Video video) {
+        mVideo = video;
         mUpvotesText.setText(String.valueOf(video.getLikes()));
         mDownvotesText.setText(String.valueOf(video.getDislikes()));
 
@@ -168,6 +228,46 @@ public class VideoToolboxFragment extends Fragment {
         }
     }
 
+    /**
+     * Update the download button to reflect the video's offline state.
+     * Until the download index has been read, the video is shown as not
+     * downloaded; {@link #onDownloadChanged} updates it once it is known.
+     */
+    private void updateDownloadButton() {
+        if (mDownloadButton == null) {
+            return;
+        }
+
+        if (mDownloadManager.isDownloaded(mVideoId)) {
+            mDownloadButton.setImageResource(R.drawable.ic_offline_pin_color_24dp);
+            mDownloadText.setText(R.string.action_downloaded);
+        } else if (mDownloadManager.isDownloading(mVideoId)) {
+            mDownloadButton.setImageResource(R.drawable.ic_file_download_24dp);
+            mDownloadText.setText(R.string.action_downloading);
+        } else {
+            mDownloadButton.setImageResource(R.drawable.ic_file_download_24dp);
+            mDownloadText.setText(R.string.action_download);
+        }
+    }
+
+    /**
+     * Callback for download button clicks.
+     * Starts downloading the video, or removes it from local storage if it
+     * has already been downloaded or is being downloaded right now.
+     * Clicks are ignored until the download index has been read, because
+     * the current state is not known yet.
+     */
+    private void toggleDownload() {
+        if (!mDownloadManager.isIndexLoaded()) {
+            return;
+        }
+        if (mDownloadManager.isDownloaded(mVideoId) || mDownloadManager.isDownloading(mVideoId)) {
+            mDownloadManager.remove(mVideoId);
+        } else {
+            mDownloadManager.download(mVideoId, mVideo == null ? null : mVideo.getTitle());
+        }
+    }
+
     /**
      * Dispatch a new Intent to share the currently viewing video.
      */
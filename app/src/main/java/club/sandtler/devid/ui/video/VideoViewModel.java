@@ -17,37 +17,133 @@
 
 package club.sandtler.devid.ui.video;
 
-import android.annotation.SuppressLint;
-import android.os.AsyncTask;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
 
+import androidx.annotation.NonNull;
 import androidx.lifecycle.LiveData;
 import androidx.lifecycle.MutableLiveData;
 import androidx.lifecycle.ViewModel;
 
+import java.util.concurrent.Executor;
+
 import club.sandtler.devid.data.Result;
 import club.sandtler.devid.data.VideoRepository;
+import club.sandtler.devid.data.VoteQueue;
 import club.sandtler.devid.data.model.Video;
+import club.sandtler.devid.lib.Constants;
+import club.sandtler.devid.lib.Deadline;
+import club.sandtler.devid.lib.NetworkDispatcher;
+import club.sandtler.devid.lib.NetworkUtil;
 
 /**
  * View model for videos.
+ * <p>
+ * Votes are shown on the UI right away and only sent to the backend once
+ * the user has stopped tapping the vote buttons for
+ * {@link Constants.Votes#DEBOUNCE_MS} milliseconds.  Only the final state is
+ * sent, and if that fails, the UI is rolled back to the last state the
+ * backend has confirmed.
+ * <p>
+ * Instances should be obtained over
+ * {@link club.sandtler.devid.ui.SharedViewModels#getVideoViewModel}, so that
+ * all fragments showing the same video share a single instance and the video
+ * data is only loaded once per screen.
  */
 public class VideoViewModel extends ViewModel {
 
+    /**
+     * Runs tasks on the UI thread after a delay.
+     */
+    interface Scheduler {
+        /**
+         * Run a task after a delay.
+         *
+         * @param task The task.
+         * @param delayMs The delay in milliseconds.
+         */
+        void postDelayed(@NonNull Runnable task, long delayMs);
+
+        /**
+         * Cancel all scheduled runs of a task.
+         *
+         * @param task The task.
+         */
+        void removeCallbacks(@NonNull Runnable task);
+    }
+
     /** The repository to pull data from. */
-    private VideoRepository mRepository;
+    private final VideoRepository mRepository;
+    /** The dispatcher to run network requests on. */
+    private final NetworkDispatcher mDispatcher;
+    /** Executor for delivering results on the UI thread. */
+    private final Executor mMainExecutor;
     /** The video view data exposed to the UI layer. */
     private MutableLiveData<Result<Video>> mVideo;
 
-    private VideoVoteTask mVoteTask;
+    /** The last video state that was confirmed by the backend. */
+    private Video mConfirmedVideo;
+    /** The own rating the user has chosen most recently. */
+    private byte mPendingVote;
+    /** The id of the video {@link #mPendingVote} applies to. */
+    private String mPendingVideoId;
+    /** Whether a vote request is currently in flight. */
+    private boolean mVoteInFlight = false;
+    /** The rating sent with the vote request in flight. */
+    private byte mSentVote;
+    /** Whether the pending vote has to be sent once the request in flight is done. */
+    private boolean mFlushAfterVoteRequest = false;
+
+    /** Scheduler for debouncing votes. */
+    private final Scheduler mScheduler;
+    /** Sends the pending vote after the debounce period. */
+    private final Runnable mFlushVoteRunnable = () -> {
+        mFlushVoteScheduled = false;
+        flushVote();
+    };
+    /** Whether {@link #mFlushVoteRunnable} is scheduled. */
+    private boolean mFlushVoteScheduled = false;
 
     /**
      * Create a new view model.
      *
      * To be called from {@link VideoViewModelFactory} only.
      * @param repository The repository to pull data from.
+     * @param dispatcher The dispatcher to run network requests on.
+     * @param mainExecutor Executor for delivering results on the UI thread.
+     */
+    VideoViewModel(VideoRepository repository, NetworkDispatcher dispatcher,
+                   Executor mainExecutor) {
+        this(repository, dispatcher, mainExecutor, new Scheduler() {
+            private final Handler mHandler = new Handler(Looper.getMainLooper());
+
+            @Override
+            public void postDelayed(@NonNull Runnable task, long delayMs) {
+                mHandler.postDelayed(task, delayMs);
+            }
+
+            @Override
+            public void removeCallbacks(@NonNull Runnable task) {
+                mHandler.removeCallbacks(task);
+            }
+        });
+    }
+
+    /**
+     * Create a new view model with a custom scheduler for debouncing votes.
+     *
+     * @param repository The repository to pull data from.
+     * @param dispatcher The dispatcher to run network requests on.
+     * @param mainExecutor Executor for delivering results on the UI thread.
+     * @param scheduler Scheduler for debouncing votes on the UI thread.
      */
-    VideoViewModel(VideoRepository repository) {
+    VideoViewModel(VideoRepository repository, NetworkDispatcher dispatcher,
+                   Executor mainExecutor, Scheduler scheduler) {
         mRepository = repository;
+        mDispatcher = dispatcher;
+        mMainExecutor = mainExecutor;
+        mScheduler = scheduler;
     }
 
     /**
@@ -58,74 +154,147 @@ public class VideoViewModel extends ViewModel {
     public LiveData<Result<Video>> getVideo(String videoId) {
         if (mVideo == null) {
             mVideo = new MutableLiveData<>();
-            new VideoRetrieveTask().execute(videoId);
+            mDispatcher.execute(
+                    NetworkUtil.BACKEND_HOST,
+                    NetworkDispatcher.PRIORITY_VISIBLE,
+                    Deadline.after(Constants.Timeouts.UI_DEADLINE_MS),
+                    () -> {
+                        Result<Video> result = mRepository.getById(videoId);
+                        mMainExecutor.execute(() -> onVideoLoaded(result));
+                    }
+            );
         }
 
         return mVideo;
     }
 
+    /**
+     * Vote for a video.
+     * Voting for the same rating the user has already chosen resets the vote.
+     * The change is visible on the returned live data right away, while the
+     * request to the backend is deferred until the user has stopped tapping.
+     *
+     * @param videoId The video id.
+     * @param vote The rating.
+     * @return The video data.
+     */
     public LiveData<Result<Video>> vote(String videoId, byte vote) {
         if (mVideo == null) {
             mVideo = new MutableLiveData<>();
-        } else {
-            Result<Video> videoResult = mVideo.getValue();
-            if (videoResult instanceof Result.Success) {
-                // User has clicked the video
-                if (((Result.Success<Video>) videoResult).getData().getOwnRating() == vote) {
-                    vote = Video.RATING_NEUTRAL;
-                }
-            }
         }
 
-        if (mVoteTask == null) {
-            mVoteTask = new VideoVoteTask();
-            mVoteTask.execute(videoId, vote);
+        Result<Video> videoResult = mVideo.getValue();
+        if (!(videoResult instanceof Result.Success) || mConfirmedVideo == null) {
+            // We can't vote before we know the current state
+            return mVideo;
         }
+
+        Video current = ((Result.Success<Video>) videoResult).getData();
+        if (current.getOwnRating() == vote) {
+            // User has clicked the same rating again
+            vote = Video.RATING_NEUTRAL;
+        }
+
+        mPendingVideoId = videoId;
+        mPendingVote = vote;
+        mVideo.setValue(new Result.Success<>(current.withOwnRating(vote)));
+
+        mScheduler.removeCallbacks(mFlushVoteRunnable);
+        mScheduler.postDelayed(mFlushVoteRunnable, Constants.Votes.DEBOUNCE_MS);
+        mFlushVoteScheduled = true;
         return mVideo;
     }
 
-    /**
-     * Async task to fetch video data from the repository.
-     */
-    @SuppressLint("StaticFieldLeak")
-    private class VideoRetrieveTask extends AsyncTask<String, Void, Result<Video>> {
-
-        @Override
-        @SuppressWarnings("unchecked")
-        public Result<Video> doInBackground(String... args) {
-            if (args.length < 1) {
-                return new Result.Error(new IllegalArgumentException());
-            }
+    /** {@inheritDoc} */
+    @Override
+    protected void onCleared() {
+        super.onCleared();
 
-            return mRepository.getById(args[0]);
+        // Don't lose a vote that is still being debounced
+        if (mFlushVoteScheduled) {
+            mScheduler.removeCallbacks(mFlushVoteRunnable);
+            mFlushVoteScheduled = false;
+            flushVote();
         }
+    }
 
-        @Override
-        public void onPostExecute(Result<Video> result) {
-            mVideo.setValue(result);
+    /**
+     * Send the pending vote to the backend, unless it is what the backend
+     * has confirmed already.  If another vote request is in flight, this is
+     * deferred until it has finished.
+     */
+    private void flushVote() {
+        if (mPendingVideoId == null || mConfirmedVideo == null) {
+            return;
+        }
+        if (mVoteInFlight) {
+            mFlushAfterVoteRequest = true;
+            return;
+        }
+        if (mPendingVote == mConfirmedVideo.getOwnRating()) {
+            // The user has tapped back to where they started
+            mVideo.setValue(new Result.Success<>(mConfirmedVideo));
+            return;
         }
 
+        String videoId = mPendingVideoId;
+        byte vote = mPendingVote;
+        mSentVote = vote;
+        mVoteInFlight = true;
+        mDispatcher.execute(
+                NetworkUtil.BACKEND_HOST,
+                NetworkDispatcher.PRIORITY_USER_ACTION,
+                Deadline.after(Constants.Timeouts.UI_DEADLINE_MS),
+                () -> {
+                    Result<Video> result = mRepository.vote(videoId, vote);
+                    mMainExecutor.execute(() -> onVoteResult(result));
+                }
+        );
+    }
+
+    /**
+     * Callback for the initial video data load.
+     *
+     * @param result The result returned by the repository.
+     */
+    private void onVideoLoaded(Result<Video> result) {
+        if (result instanceof Result.Success) {
+            mConfirmedVideo = ((Result.Success<Video>) result).getData();
+        }
+        mVideo.setValue(result);
     }
 
-    @SuppressLint("StaticFieldLeak")
-    private class VideoVoteTask extends AsyncTask<Object, Void, Result<Video>> {
+    /**
+     * Callback for finished vote requests.
+     *
+     * @param result The result returned by the backend.
+     */
+    private void onVoteResult(Result<Video> result) {
+        mVoteInFlight = false;
 
-        @Override
-        @SuppressWarnings("unchecked")
-        public Result<Video> doInBackground(Object... args) {
-            if (args.length < 2 || !(args[0] instanceof String) || !(args[1] instanceof Byte)) {
-                return new Result.Error(new IllegalArgumentException());
+        if (result instanceof Result.Success) {
+            mConfirmedVideo = ((Result.Success<Video>) result).getData();
+        } else if (result instanceof Result.Error
+                && ((Result.Error) result).getError() instanceof VoteQueue.QueuedException) {
+            // The vote queue will send it later, so there is nothing to roll back
+            mConfirmedVideo = mConfirmedVideo.withOwnRating(mSentVote);
+        } else if (result instanceof Result.Error) {
+            Log.w(Constants.LOG_TAG, "Vote failed, rolling back", ((Result.Error) result).getError());
+            // Drop the vote, unless the user has voted again in the meantime
+            if (!mFlushAfterVoteRequest && !mFlushVoteScheduled) {
+                mPendingVote = mConfirmedVideo.getOwnRating();
             }
-
-            return mRepository.vote((String) args[0], (Byte) args[1]);
         }
 
-        @Override
-        public void onPostExecute(Result<Video> result) {
-            mVoteTask = null;
-            mVideo.setValue(result);
+        if (mFlushAfterVoteRequest) {
+            mFlushAfterVoteRequest = false;
+            if (!mFlushVoteScheduled) {
+                flushVote();
+            }
         }
 
+        // Keep showing votes that are still to be sent
+        mVideo.setValue(new Result.Success<>(mConfirmedVideo.withOwnRating(mPendingVote)));
     }
 
 }
@@ -17,21 +17,61 @@
 
 package club.sandtler.devid.ui.video;
 
+import android.os.Handler;
+import android.os.Looper;
+
 import androidx.annotation.NonNull;
 import androidx.lifecycle.ViewModel;
 import androidx.lifecycle.ViewModelProvider;
 
-import club.sandtler.devid.data.VideoDataSource;
+import java.util.concurrent.Executor;
+
+import club.sandtler.devid.data.DataContainer;
 import club.sandtler.devid.data.VideoRepository;
+import club.sandtler.devid.lib.NetworkDispatcher;
 
 public class VideoViewModelFactory implements ViewModelProvider.Factory {
 
+    /** The repository for all created view models. */
+    private final VideoRepository mRepository;
+    /** The dispatcher for all created view models. */
+    private final NetworkDispatcher mDispatcher;
+    /** Executor for delivering results on the UI thread. */
+    private final Executor mMainExecutor;
+
+    /**
+     * Create a new factory for view models that use the app's repository
+     * and dispatcher.
+     */
+    public VideoViewModelFactory() {
+        this(
+                DataContainer.get().getVideoRepository(),
+                NetworkDispatcher.getDefault(),
+                new Handler(Looper.getMainLooper())::post
+        );
+    }
+
+    /**
+     * Create a new factory for view models that use the given dependencies.
+     *
+     * @param repository The repository.
+     * @param dispatcher The dispatcher to run network requests on.
+     * @param mainExecutor Executor for delivering results on the UI thread.
+     */
+    public VideoViewModelFactory(@NonNull VideoRepository repository,
+                                 @NonNull NetworkDispatcher dispatcher,
+                                 @NonNull Executor mainExecutor) {
+        mRepository = repository;
+        mDispatcher = dispatcher;
+        mMainExecutor = mainExecutor;
+    }
+
     @NonNull
     @Override
     @SuppressWarnings("unchecked")
     public <T extends ViewModel> T create(@NonNull Class<T> modelClass) {
         if (modelClass.isAssignableFrom(VideoViewModel.class)) {
-            return (T) new VideoViewModel(VideoRepository.getInstance(new VideoDataSource()));
+            return (T) new VideoViewModel(mRepository, mDispatcher, mMainExecutor);
         } else {
             throw new IllegalArgumentException("Invalid ViewModel class");
         }
@@ -0,0 +1,115 @@
+/*
+ * Copyright (c) 2019 Felix Kopp <sandtler@sandtler.club>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package club.sandtler.devid.data;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import club.sandtler.devid.lib.NetworkUtil;
+
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for {@link DataContainer}, using stand-in network utilities.
+ */
+public class DataContainerTest {
+
+    private static final int THREADS = 32;
+    private static final int ROUNDS = 50;
+
+    @Test
+    public void concurrentFirstAccessSharesOneRepository() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            for (int round = 0; round < ROUNDS; round++) {
+                NetworkUtil standIn = NetworkUtil.newInstance();
+                DataContainer container = new DataContainer(standIn, standIn);
+
+                assertAllSame(getConcurrently(executor, container::getVideoRepository));
+                assertAllSame(getConcurrently(executor, container::getUserRepository));
+                assertAllSame(getConcurrently(executor, container::getLoginRepository));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void containersDoNotShareRepositories() {
+        NetworkUtil standIn = NetworkUtil.newInstance();
+        DataContainer first = new DataContainer(standIn, standIn);
+        DataContainer second = new DataContainer(standIn, standIn);
+
+        assertNotSame(first.getVideoRepository(), second.getVideoRepository());
+        assertNotSame(DataContainer.get().getVideoRepository(), first.getVideoRepository());
+    }
+
+    @Test
+    public void defaultContainerIsShared() {
+        assertSame(DataContainer.get(), DataContainer.get());
+        assertSame(
+                DataContainer.get().getVideoRepository(),
+                DataContainer.get().getVideoRepository()
+        );
+    }
+
+    private static <T> void assertAllSame(List<Future<T>> results) throws Exception {
+        T first = results.get(0).get();
+        for (Future<T> result : results) {
+            assertSame(first, result.get());
+        }
+    }
+
+    /**
+     * Run a getter from {@link #THREADS} threads at once.
+     *
+     * @param executor The executor with at least {@link #THREADS} threads.
+     * @param getter The getter.
+     * @param <T> The value type.
+     * @return The results of all threads.
+     */
+    private static <T> List<Future<T>> getConcurrently(ExecutorService executor,
+                                                       Callable<T> getter)
+            throws InterruptedException {
+        CountDownLatch ready = new CountDownLatch(THREADS);
+        CountDownLatch go = new CountDownLatch(1);
+        List<Future<T>> results = new ArrayList<>();
+        for (int i = 0; i < THREADS; i++) {
+            results.add(executor.submit(() -> {
+                ready.countDown();
+                go.await();
+                return getter.call();
+            }));
+        }
+
+        assertTrue(ready.await(5, TimeUnit.SECONDS));
+        go.countDown();
+        return results;
+    }
+
+}
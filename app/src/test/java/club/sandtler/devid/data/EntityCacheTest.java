@@ -0,0 +1,153 @@
+/*
+ * Copyright (c) 2019 Felix Kopp <sandtler@sandtler.club>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package club.sandtler.devid.data;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for {@link EntityCache}.
+ */
+public class EntityCacheTest {
+
+    @Test
+    public void evictsLeastRecentlyUsedEntry() {
+        EntityCache<String> cache = new EntityCache<>(2, String::length);
+        cache.put("a", "1");
+        cache.put("b", "2");
+        cache.get("a");
+        cache.put("c", "3");
+
+        assertNotNull(cache.get("a"));
+        assertNull(cache.get("b"));
+        assertNotNull(cache.get("c"));
+    }
+
+    @Test
+    public void tracksEstimatedBytes() {
+        EntityCache<String> cache = new EntityCache<>(10, String::length);
+        cache.put("a", "1234");
+        cache.put("b", "12");
+        assertEquals(6L, cache.getEstimatedBytes());
+
+        cache.put("a", "1");
+        assertEquals(3L, cache.getEstimatedBytes());
+
+        cache.remove("b");
+        assertEquals(1L, cache.getEstimatedBytes());
+
+        cache.clear();
+        assertEquals(0L, cache.getEstimatedBytes());
+    }
+
+    @Test
+    public void evictsByWeight() {
+        EntityCache<String> cache = new EntityCache<>(10, String::length);
+        cache.put("a", "123");
+        cache.put("b", "123");
+        cache.put("c", "123");
+        cache.put("d", "12345");
+
+        assertNull(cache.get("a"));
+        assertNull(cache.get("b"));
+        assertNotNull(cache.get("c"));
+        assertNotNull(cache.get("d"));
+        assertEquals(8L, cache.getEstimatedBytes());
+
+        cache.put("e", "12345678901");
+        assertNull(cache.get("e"));
+        assertEquals(8L, cache.getEstimatedBytes());
+    }
+
+    @Test
+    public void resizesAtRuntime() {
+        EntityCache<String> cache = new EntityCache<>(10, String::length);
+        cache.put("a", "1234");
+        cache.put("b", "1234");
+
+        cache.resize(5);
+        assertEquals(5, cache.getMaxBytes());
+        assertNull(cache.get("a"));
+        assertNotNull(cache.get("b"));
+
+        cache.resize(20);
+        cache.put("c", "1234567890");
+        assertEquals(14L, cache.getEstimatedBytes());
+    }
+
+    @Test
+    public void trimsToFractionOfSize() {
+        EntityCache<String> cache = new EntityCache<>(32, String::length);
+        for (int i = 0; i < 8; i++) {
+            cache.put(Integer.toString(i), "xx");
+        }
+
+        assertEquals(0L, cache.trim(1f));
+        assertEquals(8L, cache.trim(0.5f));
+        assertEquals(8L, cache.getEstimatedBytes());
+        assertNull(cache.get("0"));
+        assertNotNull(cache.get("7"));
+
+        assertEquals(8L, cache.trim(0f));
+        assertEquals(0L, cache.getEstimatedBytes());
+    }
+
+    @Test
+    public void keysDoNotAffectEvictionOrder() {
+        EntityCache<String> cache = new EntityCache<>(2, String::length);
+        cache.put("a", "1");
+        cache.put("b", "2");
+
+        assertEquals(2, cache.keys().size());
+
+        cache.put("c", "3");
+        assertNull(cache.get("a"));
+    }
+
+    @Test
+    public void notifiesAboutRemovedEntries() {
+        List<String> removed = new ArrayList<>();
+        EntityCache<String> cache = new EntityCache<>(4, String::length,
+                (key, oldValue, newValue) -> removed.add(key + "=" + oldValue + "->" + newValue));
+        cache.put("a", "12");
+        cache.put("b", "12");
+        cache.put("a", "1");
+        cache.put("c", "123");
+        cache.remove("c");
+
+        assertEquals(Arrays.asList("a=12->1", "b=12->null", "c=123->null"), removed);
+    }
+
+    @Test
+    public void reportsWhetherEntryWasCached() {
+        EntityCache<String> cache = new EntityCache<>(4, String::length);
+        assertTrue(cache.put("a", "1234"));
+        assertFalse(cache.put("a", "12345"));
+        assertNull(cache.get("a"));
+    }
+
+}
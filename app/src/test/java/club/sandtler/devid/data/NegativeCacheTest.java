@@ -0,0 +1,106 @@
+/*
+ * Copyright (c) 2019 Felix Kopp <sandtler@sandtler.club>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package club.sandtler.devid.data;
+
+import org.json.JSONException;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+
+import club.sandtler.devid.lib.HttpStatusException;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for {@link NegativeCache}.
+ */
+public class NegativeCacheTest {
+
+    private static final long TTL_MS = 1000L;
+
+    private long mNow;
+    private NegativeCache mCache;
+
+    @Before
+    public void setUp() {
+        mNow = 0L;
+        mCache = new NegativeCache(TTL_MS, 2, () -> mNow);
+    }
+
+    @Test
+    public void separatesNotFoundFromTransientErrors() {
+        assertTrue(NegativeCache.isPermanent(new HttpStatusException(404, "Not Found")));
+        assertTrue(NegativeCache.isPermanent(new HttpStatusException(410, "Gone")));
+        assertTrue(NegativeCache.isPermanent(new JSONException("Empty response")));
+
+        assertFalse(NegativeCache.isPermanent(new HttpStatusException(500, null)));
+        assertFalse(NegativeCache.isPermanent(new HttpStatusException(429, null)));
+        assertFalse(NegativeCache.isPermanent(new SocketTimeoutException()));
+        assertFalse(NegativeCache.isPermanent(new IOException()));
+    }
+
+    @Test
+    public void remembersNotFoundUntilExpired() {
+        Exception error = new HttpStatusException(404, "Not Found");
+        mCache.put("a", error);
+
+        mNow = TTL_MS - 1;
+        assertSame(error, mCache.get("a"));
+
+        mNow = TTL_MS;
+        assertNull(mCache.get("a"));
+    }
+
+    @Test
+    public void ignoresTransientErrors() {
+        mCache.put("a", new HttpStatusException(503, "Service Unavailable"));
+        mCache.put("b", new IOException());
+
+        assertNull(mCache.get("a"));
+        assertNull(mCache.get("b"));
+    }
+
+    @Test
+    public void forgetsRemovedEntries() {
+        mCache.put("a", new HttpStatusException(404, null));
+        mCache.remove("a");
+
+        assertNull(mCache.get("a"));
+    }
+
+    @Test
+    public void evictsOldestEntries() {
+        mCache.put("a", new HttpStatusException(404, null));
+        mCache.put("b", new HttpStatusException(404, null));
+        mCache.put("c", new HttpStatusException(404, null));
+
+        assertNull(mCache.get("a"));
+        assertNotNull(mCache.get("b"));
+        assertNotNull(mCache.get("c"));
+
+        mCache.clear();
+        assertNull(mCache.get("b"));
+    }
+
+}
@@ -0,0 +1,184 @@
+/*
+ * Copyright (c) 2019 Felix Kopp <sandtler@sandtler.club>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package club.sandtler.devid.data;
+
+import android.graphics.Bitmap;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import club.sandtler.devid.data.model.User;
+import club.sandtler.devid.data.model.Video;
+import club.sandtler.devid.lib.Constants;
+import club.sandtler.devid.lib.NetworkUtil;
+
+/**
+ * Repositories that count their calls instead of talking to the backend,
+ * for tests outside of this package.
+ */
+public final class StandInRepositories {
+
+    private StandInRepositories() {
+    }
+
+    /** Video repository that counts how often video data is loaded. */
+    public static final class Videos extends VideoRepository {
+
+        private final AtomicInteger mGetByIdCalls = new AtomicInteger();
+
+        public Videos() {
+            super(new VideoDataSource(NetworkUtil.newInstance()));
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public Result<Video> getById(String id) {
+            mGetByIdCalls.incrementAndGet();
+            return new Result.Error(new IOException("Stand-in"));
+        }
+
+        public int getByIdCalls() {
+            return mGetByIdCalls.get();
+        }
+
+    }
+
+    /** Video repository that serves a feed of generated videos. */
+    public static final class Feed extends VideoRepository {
+
+        private final int mLength;
+        private final AtomicInteger mPageCalls = new AtomicInteger();
+
+        /**
+         * @param length The total amount of videos in the feed.
+         */
+        public Feed(int length) {
+            super(new VideoDataSource(NetworkUtil.newInstance()));
+            mLength = length;
+        }
+
+        /** Return the id of the video at a position in the feed. */
+        public static String videoIdAt(int position) {
+            return String.format(Locale.ROOT, "%024x", position);
+        }
+
+        @Override
+        public Result<List<Video>> getFeedPage(int page) {
+            mPageCalls.incrementAndGet();
+            List<Video> videos = new ArrayList<>();
+            int end = Math.min(mLength, (page + 1) * Constants.Feed.PAGE_SIZE);
+            for (int i = page * Constants.Feed.PAGE_SIZE; i < end; i++) {
+                videos.add(new Video(videoIdAt(i), "user", "Video " + i, "", 0L, 0L, 0L, 0L));
+            }
+            return new Result.Success<>(videos);
+        }
+
+        public int getPageCalls() {
+            return mPageCalls.get();
+        }
+
+    }
+
+    /** Video repository that records the votes sent to the backend. */
+    public static final class Votes extends VideoRepository {
+
+        private final List<Byte> mVotes = new CopyOnWriteArrayList<>();
+        private volatile boolean mFailing = false;
+
+        public Votes() {
+            super(new VideoDataSource(NetworkUtil.newInstance()));
+        }
+
+        @Override
+        public Result<Video> getById(String id) {
+            return new Result.Success<>(video(id));
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public Result<Video> vote(String id, byte vote) {
+            mVotes.add(vote);
+            if (mFailing) {
+                return new Result.Error(new IOException("Stand-in"));
+            }
+            return new Result.Success<>(video(id).withOwnRating(vote));
+        }
+
+        private static Video video(String id) {
+            return new Video(id, "user", "Video", "", 0L, 0L, 0L, 0L);
+        }
+
+        /** Make all following votes fail, or succeed again. */
+        public void setFailing(boolean failing) {
+            mFailing = failing;
+        }
+
+        /** Return the ratings of all votes sent so far, in order. */
+        public List<Byte> getVotes() {
+            return mVotes;
+        }
+
+    }
+
+    /** User repository that counts how often user data is loaded. */
+    public static final class Users extends UserRepository {
+
+        private final AtomicInteger mGetUserCalls = new AtomicInteger();
+        private final AtomicInteger mGetPPCalls = new AtomicInteger();
+
+        public Users() {
+            super(new UserDataSource(NetworkUtil.newInstance()));
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public Result<User> getById(String id) {
+            mGetUserCalls.incrementAndGet();
+            return new Result.Error(new IOException("Stand-in"));
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public Result<User> getByUserName(String userName) {
+            mGetUserCalls.incrementAndGet();
+            return new Result.Error(new IOException("Stand-in"));
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public Result<Bitmap> getPP(String userId) {
+            mGetPPCalls.incrementAndGet();
+            return new Result.Error(new IOException("Stand-in"));
+        }
+
+        /** Return the amount of calls to {@link #getById} and {@link #getByUserName}. */
+        public int getUserCalls() {
+            return mGetUserCalls.get();
+        }
+
+        public int getPPCalls() {
+            return mGetPPCalls.get();
+        }
+
+    }
+
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright (c) 2019 Felix Kopp <sandtler@sandtler.club>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package club.sandtler.devid.lib;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for the expiry parsing and refresh scheduling of {@link AuthTokenManager}.
+ */
+public class AuthTokenManagerTest {
+
+    private static final long NOW = 1560000000000L;
+    private static final long MINUTE = 60 * 1000;
+
+    private static final AuthTokenManager.Base64Decoder DECODER =
+            encoded -> Base64.getUrlDecoder().decode(encoded);
+
+    @Test
+    public void readsExpiryFromJwt() {
+        String token = jwt("{\"sub\":\"me\",\"exp\":1560003600}");
+        assertEquals(1560003600000L, AuthTokenManager.parseExpiry(token, NOW, DECODER));
+    }
+
+    @Test
+    public void assumesDefaultLifetimeWithoutExpiryClaim() {
+        String token = jwt("{\"sub\":\"me\"}");
+        assertEquals(NOW + Constants.Auth.DEFAULT_TOKEN_LIFETIME_MS,
+                AuthTokenManager.parseExpiry(token, NOW, DECODER));
+    }
+
+    @Test
+    public void assumesDefaultLifetimeForOpaqueToken() {
+        assertEquals(NOW + Constants.Auth.DEFAULT_TOKEN_LIFETIME_MS,
+                AuthTokenManager.parseExpiry("0123456789abcdef", NOW, DECODER));
+    }
+
+    @Test
+    public void assumesDefaultLifetimeForMalformedJwt() {
+        assertEquals(NOW + Constants.Auth.DEFAULT_TOKEN_LIFETIME_MS,
+                AuthTokenManager.parseExpiry("a.!!!.c", NOW, DECODER));
+        assertEquals(NOW + Constants.Auth.DEFAULT_TOKEN_LIFETIME_MS,
+                AuthTokenManager.parseExpiry(jwt("not json"), NOW, DECODER));
+    }
+
+    @Test
+    public void refreshesShortlyBeforeExpiry() {
+        long expiresAt = NOW + 60 * MINUTE;
+        assertEquals(60 * MINUTE - Constants.Auth.TOKEN_REFRESH_MARGIN_MS,
+                AuthTokenManager.getRefreshDelay(expiresAt, NOW, 0));
+    }
+
+    @Test
+    public void neverRefreshesRightAwayForShortLivedToken() {
+        long expiresAt = NOW + Constants.Auth.TOKEN_REFRESH_MARGIN_MS - MINUTE;
+        assertEquals(Constants.Auth.MIN_REFRESH_DELAY_MS,
+                AuthTokenManager.getRefreshDelay(expiresAt, NOW, 0));
+        assertEquals(Constants.Auth.MIN_REFRESH_DELAY_MS,
+                AuthTokenManager.getRefreshDelay(NOW - MINUTE, NOW, 0));
+    }
+
+    @Test
+    public void backsOffAfterFailedRefreshes() {
+        long expiresAt = NOW + Constants.Auth.TOKEN_REFRESH_MARGIN_MS;
+        long previous = AuthTokenManager.getRefreshDelay(expiresAt, NOW, 0);
+        for (int failures = 1; failures < 4; failures++) {
+            long delay = AuthTokenManager.getRefreshDelay(expiresAt, NOW, failures);
+            assertEquals(previous * 2, delay);
+            previous = delay;
+        }
+    }
+
+    @Test
+    public void capsBackoff() {
+        assertEquals(Constants.Auth.MAX_REFRESH_BACKOFF_MS, AuthTokenManager.getBackoffDelay(30));
+        assertEquals(Constants.Auth.MAX_REFRESH_BACKOFF_MS, AuthTokenManager.getBackoffDelay(1000));
+        assertTrue(AuthTokenManager.getBackoffDelay(1) < Constants.Auth.MAX_REFRESH_BACKOFF_MS);
+    }
+
+    /**
+     * Build an unsigned JWT.
+     *
+     * @param payload The payload JSON.
+     * @return The token.
+     */
+    private static String jwt(String payload) {
+        Base64.Encoder encoder = Base64.getUrlEncoder().withoutPadding();
+        return encoder.encodeToString("{\"alg\":\"none\"}".getBytes(StandardCharsets.UTF_8))
+                + "." + encoder.encodeToString(payload.getBytes(StandardCharsets.UTF_8))
+                + ".signature";
+    }
+
+}
@@ -0,0 +1,146 @@
+/*
+ * Copyright (c) 2019 Felix Kopp <sandtler@sandtler.club>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package club.sandtler.devid.lib;
+
+import android.content.res.Resources;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Locale;
+
+import club.sandtler.devid.R;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Tests for {@link DateFormatter}.
+ */
+public class DateFormatterTest {
+
+    private static final long MINUTE = 60 * 1000L;
+    private static final long HOUR = 60 * MINUTE;
+    private static final long DAY = 24 * HOUR;
+    private static final long NOW = 1560000000000L;
+
+    private Locale mDefaultLocale;
+    private CountingResources mResources;
+    private DateFormatter mFormatter;
+
+    @Before
+    public void setUp() {
+        mDefaultLocale = Locale.getDefault();
+        Locale.setDefault(Locale.US);
+        mResources = new CountingResources();
+        mFormatter = new DateFormatter(mResources);
+    }
+
+    @After
+    public void tearDown() {
+        Locale.setDefault(mDefaultLocale);
+    }
+
+    @Test
+    public void picksTheLargestFittingUnit() {
+        assertUnit(DateFormatter.UNIT_NOW, 0, 59 * 1000L);
+        assertUnit(DateFormatter.UNIT_MINUTES, 1, MINUTE);
+        assertUnit(DateFormatter.UNIT_MINUTES, 59, HOUR - 1);
+        assertUnit(DateFormatter.UNIT_HOURS, 23, DAY - 1);
+        assertUnit(DateFormatter.UNIT_DAYS, 3, 3 * DAY + HOUR);
+        assertUnit(DateFormatter.UNIT_WEEKS, 2, 15 * DAY);
+        assertUnit(DateFormatter.UNIT_MONTHS, 2, 61 * DAY);
+        assertUnit(DateFormatter.UNIT_YEARS, 4, 4 * 365 * DAY);
+    }
+
+    @Test
+    public void futureTimesAreJustNow() {
+        assertEquals(DateFormatter.UNIT_NOW, DateFormatter.relativeUnit(-DAY));
+        assertEquals("now", mFormatter.formatRelative(NOW + DAY, NOW));
+    }
+
+    @Test
+    public void rendersEachRelativeTimeOnlyOnce() {
+        String first = mFormatter.formatRelative(NOW - 3 * DAY, NOW);
+        assertEquals("3 days ago", first);
+
+        for (int i = 0; i < 100; i++) {
+            assertSame(first, mFormatter.formatRelative(NOW - 3 * DAY - i * MINUTE, NOW));
+        }
+        assertEquals(1, mResources.mLookups);
+    }
+
+    @Test
+    public void rendersRelativeTimesAgainAfterLocaleChange() {
+        mFormatter.formatRelative(NOW - HOUR, NOW);
+        Locale.setDefault(Locale.GERMANY);
+        mFormatter.formatRelative(NOW - HOUR, NOW);
+
+        assertEquals(2, mResources.mLookups);
+    }
+
+    @Test
+    public void reusesTheLastDateTimeResult() {
+        String first = mFormatter.formatDateTime(NOW);
+        assertSame(first, mFormatter.formatDateTime(NOW));
+        assertNotEquals(first, mFormatter.formatDateTime(NOW + DAY));
+    }
+
+    @Test
+    public void followsTheDefaultLocale() {
+        String us = mFormatter.formatDateTime(NOW);
+        Locale.setDefault(Locale.GERMANY);
+        String german = mFormatter.formatDateTime(NOW);
+
+        assertNotEquals(us, german);
+    }
+
+    private static void assertUnit(int unit, long amount, long delta) {
+        assertEquals(unit, DateFormatter.relativeUnit(delta));
+        assertEquals(amount, DateFormatter.relativeAmount(delta, unit));
+    }
+
+    /**
+     * Resources that render relative times without any formatting
+     * and count how often they were asked to.
+     */
+    private static final class CountingResources extends Resources {
+
+        private int mLookups = 0;
+
+        CountingResources() {
+            super(null, null, null);
+        }
+
+        @Override
+        public String getString(int id) {
+            mLookups++;
+            return "now";
+        }
+
+        @Override
+        public String getQuantityString(int id, int quantity, Object... formatArgs) {
+            mLookups++;
+            return quantity + (id == R.plurals.time_days_ago ? " days ago" : " ago");
+        }
+
+    }
+
+}
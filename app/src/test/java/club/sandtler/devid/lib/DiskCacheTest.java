@@ -0,0 +1,162 @@
+/*
+ * Copyright (c) 2019 Felix Kopp <sandtler@sandtler.club>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package club.sandtler.devid.lib;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for {@link DiskCache}.
+ */
+public class DiskCacheTest {
+
+    private File mDirectory;
+
+    @Before
+    public void setUp() throws IOException {
+        mDirectory = Files.createTempDirectory("disk-cache").toFile();
+    }
+
+    @After
+    public void tearDown() {
+        File[] files = mDirectory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                //noinspection ResultOfMethodCallIgnored
+                file.delete();
+            }
+        }
+        //noinspection ResultOfMethodCallIgnored
+        mDirectory.delete();
+    }
+
+    @Test
+    public void returnsWhatWasStored() {
+        DiskCache cache = new DiskCache(mDirectory, 100);
+        cache.put("a", bytes(10, 1));
+
+        assertArrayEquals(bytes(10, 1), cache.get("a"));
+        assertNull(cache.get("b"));
+        assertEquals(10, cache.getSize());
+    }
+
+    @Test
+    public void replacesExistingEntries() {
+        DiskCache cache = new DiskCache(mDirectory, 100);
+        cache.put("a", bytes(10, 1));
+        cache.put("a", bytes(20, 2));
+
+        assertArrayEquals(bytes(20, 2), cache.get("a"));
+        assertEquals(20, cache.getSize());
+    }
+
+    @Test
+    public void evictsLeastRecentlyUsedEntries() {
+        DiskCache cache = new DiskCache(mDirectory, 30);
+        cache.put("a", bytes(10, 1));
+        cache.put("b", bytes(10, 2));
+        cache.put("c", bytes(10, 3));
+        cache.get("a");
+        cache.put("d", bytes(10, 4));
+
+        assertNull(cache.get("b"));
+        assertArrayEquals(bytes(10, 1), cache.get("a"));
+        assertArrayEquals(bytes(10, 3), cache.get("c"));
+        assertArrayEquals(bytes(10, 4), cache.get("d"));
+        assertEquals(30, cache.getSize());
+        assertFalse(new File(mDirectory, "b").exists());
+    }
+
+    @Test
+    public void skipsDataLargerThanTheCache() {
+        DiskCache cache = new DiskCache(mDirectory, 30);
+        cache.put("a", bytes(10, 1));
+        cache.put("b", bytes(31, 2));
+
+        assertNull(cache.get("b"));
+        assertArrayEquals(bytes(10, 1), cache.get("a"));
+    }
+
+    @Test
+    public void restoresEntriesFromDisk() {
+        DiskCache cache = new DiskCache(mDirectory, 100);
+        cache.put("a", bytes(10, 1));
+        cache.put("b", bytes(15, 2));
+
+        DiskCache restored = new DiskCache(mDirectory, 100);
+        assertEquals(25, restored.getSize());
+        assertArrayEquals(bytes(15, 2), restored.get("b"));
+    }
+
+    @Test
+    public void trimsToALowerLimitOnRestore() {
+        DiskCache cache = new DiskCache(mDirectory, 100);
+        for (int i = 0; i < 10; i++) {
+            cache.put("key" + i, bytes(10, i));
+        }
+
+        DiskCache restored = new DiskCache(mDirectory, 50);
+        assertTrue(restored.getSize() <= 50);
+    }
+
+    @Test
+    public void forgetsFilesDeletedFromOutside() {
+        DiskCache cache = new DiskCache(mDirectory, 100);
+        cache.put("a", bytes(10, 1));
+        assertTrue(new File(mDirectory, "a").delete());
+
+        assertNull(cache.get("a"));
+        assertEquals(0, cache.getSize());
+    }
+
+    @Test
+    public void clearDeletesAllFiles() {
+        DiskCache cache = new DiskCache(mDirectory, 100);
+        cache.put("a", bytes(10, 1));
+        cache.put("b", bytes(10, 2));
+        cache.clear();
+
+        assertEquals(0, cache.getSize());
+        assertEquals(0, mDirectory.listFiles().length);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsKeysThatAreNoFileNames() {
+        new DiskCache(mDirectory, 100).put("../a", bytes(1, 1));
+    }
+
+    private static byte[] bytes(int length, int value) {
+        byte[] data = new byte[length];
+        for (int i = 0; i < length; i++) {
+            data[i] = (byte) (value + i);
+        }
+        return data;
+    }
+
+}
@@ -0,0 +1,170 @@
+/*
+ * Copyright (c) 2019 Felix Kopp <sandtler@sandtler.club>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package club.sandtler.devid.lib;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests for {@link Lazy}.
+ */
+public class LazyTest {
+
+    private static final int THREADS = 32;
+    private static final int ROUNDS = 200;
+
+    @Test
+    public void createsExactlyOneInstanceUnderContention() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            for (int round = 0; round < ROUNDS; round++) {
+                AtomicInteger creations = new AtomicInteger();
+                Lazy<Object> lazy = new Lazy<>(() -> {
+                    creations.incrementAndGet();
+                    // Widen the window for races
+                    Thread.yield();
+                    return new Object();
+                });
+
+                List<Future<Object>> results = getConcurrently(executor, lazy);
+                Object first = results.get(0).get();
+                for (Future<Object> result : results) {
+                    assertSame(first, result.get());
+                }
+                assertEquals(1, creations.get());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void retriesAfterFailedCreation() {
+        AtomicInteger attempts = new AtomicInteger();
+        Lazy<String> lazy = new Lazy<>(() -> {
+            if (attempts.incrementAndGet() == 1) {
+                throw new IllegalStateException("First attempt fails");
+            }
+            return "value";
+        });
+
+        try {
+            lazy.get();
+            fail("Expected the factory exception");
+        } catch (IllegalStateException e) {
+            // Expected
+        }
+        assertFalse(lazy.isCreated());
+
+        assertEquals("value", lazy.get());
+        assertEquals("value", lazy.get());
+        assertTrue(lazy.isCreated());
+        assertEquals(2, attempts.get());
+    }
+
+    @Test
+    public void detectsFactoryThatDependsOnItself() {
+        AtomicReference<Lazy<String>> self = new AtomicReference<>();
+        Lazy<String> lazy = new Lazy<>(() -> self.get().get());
+        self.set(lazy);
+
+        try {
+            lazy.get();
+            fail("Expected the recursion to be detected");
+        } catch (IllegalStateException e) {
+            // Expected
+        }
+        assertFalse(lazy.isCreated());
+    }
+
+    @Test
+    public void blocksOtherThreadsWhileCreating() throws Exception {
+        CountDownLatch creating = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Lazy<String> lazy = new Lazy<>(() -> {
+            creating.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return "value";
+        });
+
+        Thread creator = new Thread(lazy::get);
+        creator.start();
+        assertTrue(creating.await(5, TimeUnit.SECONDS));
+
+        Thread waiter = new Thread(lazy::get);
+        waiter.start();
+        long deadline = System.currentTimeMillis() + 5000;
+        while (waiter.getState() != Thread.State.BLOCKED
+                && System.currentTimeMillis() < deadline) {
+            Thread.sleep(1);
+        }
+        assertEquals(Thread.State.BLOCKED, waiter.getState());
+
+        release.countDown();
+        creator.join(5000);
+        waiter.join(5000);
+        assertEquals("value", lazy.get());
+    }
+
+    /**
+     * Call {@link Lazy#get()} from {@link #THREADS} threads at once.
+     *
+     * @param executor The executor with at least {@link #THREADS} threads.
+     * @param lazy The lazy value.
+     * @param <T> The value type.
+     * @return The results of all threads.
+     */
+    private static <T> List<Future<T>> getConcurrently(ExecutorService executor,
+                                                       Lazy<T> lazy)
+            throws InterruptedException {
+        CountDownLatch ready = new CountDownLatch(THREADS);
+        CountDownLatch go = new CountDownLatch(1);
+        List<Future<T>> results = new ArrayList<>();
+        for (int i = 0; i < THREADS; i++) {
+            results.add(executor.submit(() -> {
+                ready.countDown();
+                go.await();
+                return lazy.get();
+            }));
+        }
+
+        assertTrue(ready.await(5, TimeUnit.SECONDS));
+        go.countDown();
+        return results;
+    }
+
+}
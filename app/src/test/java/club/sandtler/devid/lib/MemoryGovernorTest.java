@@ -0,0 +1,148 @@
+/*
+ * Copyright (c) 2019 Felix Kopp <sandtler@sandtler.club>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package club.sandtler.devid.lib;
+
+import android.content.ComponentCallbacks2;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for {@link MemoryGovernor}.
+ */
+public class MemoryGovernorTest {
+
+    private static final float DELTA = 0.0001f;
+
+    private MemoryGovernor mGovernor;
+
+    @Before
+    public void setUp() {
+        mGovernor = new MemoryGovernor();
+    }
+
+    @Test
+    public void keepsLessTheMoreUrgentTheLevel() {
+        float moderate = MemoryGovernor.getKeepFraction(
+                ComponentCallbacks2.TRIM_MEMORY_RUNNING_MODERATE, false);
+        float low = MemoryGovernor.getKeepFraction(
+                ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW, false);
+        float critical = MemoryGovernor.getKeepFraction(
+                ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL, false);
+
+        assertTrue(moderate < 1f);
+        assertTrue(low < moderate);
+        assertTrue(critical < low);
+        assertTrue(critical > 0f);
+        assertEquals(0f, MemoryGovernor.getKeepFraction(
+                ComponentCallbacks2.TRIM_MEMORY_MODERATE, false), DELTA);
+        assertEquals(0f, MemoryGovernor.getKeepFraction(
+                ComponentCallbacks2.TRIM_MEMORY_COMPLETE, false), DELTA);
+    }
+
+    @Test
+    public void ignoresUnknownLevels() {
+        assertEquals(1f, MemoryGovernor.getKeepFraction(0, false), DELTA);
+
+        FakeTrimmable trimmable = new FakeTrimmable(100);
+        mGovernor.register(trimmable);
+
+        assertEquals(0L, mGovernor.onTrimMemory(0));
+        assertTrue(trimmable.mKeepFractions.isEmpty());
+    }
+
+    @Test
+    public void trimsHarderOnLowMemoryDevices() {
+        int level = ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN;
+        float normal = MemoryGovernor.getKeepFraction(level, false);
+
+        assertEquals(normal / 2, MemoryGovernor.getKeepFraction(level, true), DELTA);
+
+        FakeTrimmable trimmable = new FakeTrimmable(0);
+        mGovernor.register(trimmable);
+        mGovernor.setMemoryClass(Constants.Memory.LOW_MEMORY_CLASS_MB, false);
+        mGovernor.onTrimMemory(level);
+
+        assertEquals(normal / 2, trimmable.mKeepFractions.get(0), DELTA);
+    }
+
+    @Test
+    public void trimsAllComponentsAndRecordsFreedBytes() {
+        FakeTrimmable first = new FakeTrimmable(100);
+        FakeTrimmable second = new FakeTrimmable(250);
+        mGovernor.register(first);
+        mGovernor.register(second);
+        mGovernor.register(first);
+
+        int level = ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW;
+        assertEquals(350L, mGovernor.onTrimMemory(level));
+        assertEquals(350L, mGovernor.onTrimMemory(level));
+
+        assertEquals(2, first.mKeepFractions.size());
+        assertEquals(2, second.mKeepFractions.size());
+        assertEquals(700L, mGovernor.getFreedBytes(level));
+        assertEquals(0L, mGovernor.getFreedBytes(ComponentCallbacks2.TRIM_MEMORY_COMPLETE));
+    }
+
+    @Test
+    public void scalesCacheBudgetWithMemoryClass() {
+        assertEquals(512 * 1024, MemoryGovernor.getCacheBudget(64, 1f / 128, 0, Integer.MAX_VALUE));
+        assertEquals(2 * 1024 * 1024,
+                MemoryGovernor.getCacheBudget(256, 1f / 128, 0, Integer.MAX_VALUE));
+        assertEquals(1024 * 1024, MemoryGovernor.getCacheBudget(16, 1f / 128, 1024 * 1024, 4096 * 1024));
+        assertEquals(4096 * 1024, MemoryGovernor.getCacheBudget(1024, 1f / 128, 1024 * 1024, 4096 * 1024));
+
+        mGovernor.setMemoryClass(256, false);
+        assertEquals(256, mGovernor.getMemoryClassMb());
+        assertEquals(2 * 1024 * 1024, mGovernor.getCacheBudget(1f / 128, 0, Integer.MAX_VALUE));
+    }
+
+    @Test
+    public void releasesEverythingOnLowMemory() {
+        FakeTrimmable trimmable = new FakeTrimmable(42);
+        mGovernor.register(trimmable);
+
+        assertEquals(42L, mGovernor.onLowMemory());
+        assertEquals(0f, trimmable.mKeepFractions.get(0), DELTA);
+        assertEquals(42L, mGovernor.getFreedBytes(ComponentCallbacks2.TRIM_MEMORY_COMPLETE));
+    }
+
+    private static final class FakeTrimmable implements MemoryGovernor.Trimmable {
+
+        private final long mFreedBytes;
+        private final List<Float> mKeepFractions = new ArrayList<>();
+
+        private FakeTrimmable(long freedBytes) {
+            mFreedBytes = freedBytes;
+        }
+
+        @Override
+        public long trimMemory(float keepFraction) {
+            mKeepFractions.add(keepFraction);
+            return mFreedBytes;
+        }
+
+    }
+
+}
@@ -0,0 +1,285 @@
+/*
+ * Copyright (c) 2019 Felix Kopp <sandtler@sandtler.club>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package club.sandtler.devid.lib;
+
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for {@link NetworkDispatcher}, including one against a local HTTP
+ * server that is flooded with background requests.
+ */
+public class NetworkDispatcherTest {
+
+    private static final String HOST_A = "a.example";
+    private static final String HOST_B = "b.example";
+
+    /** Time every request to the local server takes. */
+    private static final long SERVER_DELAY_MS = 20;
+    /** Amount of background requests to flood the queue with. */
+    private static final int BACKGROUND_REQUESTS = 60;
+
+    private HttpServer mServer;
+    private URL mUrl;
+
+    /** Fake time for aging. */
+    private volatile long mNow = 0L;
+    /** Names of all finished tasks, in the order they have run. */
+    private final List<String> mOrder = Collections.synchronizedList(new ArrayList<>());
+
+    @Before
+    public void setUp() throws IOException {
+        mServer = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        mServer.createContext("/", exchange -> {
+            try {
+                Thread.sleep(SERVER_DELAY_MS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            byte[] body = "ok".getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        mServer.setExecutor(Executors.newCachedThreadPool());
+        mServer.start();
+        mUrl = new URL("http://127.0.0.1:" + mServer.getAddress().getPort() + "/");
+    }
+
+    @After
+    public void tearDown() {
+        mServer.stop(0);
+    }
+
+    @Test
+    public void runsMoreImportantTasksFirst() throws InterruptedException {
+        NetworkDispatcher dispatcher = newDispatcher(1, 1, 0L);
+        CountDownLatch blocker = block(dispatcher, HOST_A);
+
+        CountDownLatch done = new CountDownLatch(3);
+        dispatcher.execute(HOST_A, NetworkDispatcher.PRIORITY_PREFETCH, record("prefetch", done));
+        dispatcher.execute(HOST_A, NetworkDispatcher.PRIORITY_IMAGE, record("image", done));
+        dispatcher.execute(HOST_A, NetworkDispatcher.PRIORITY_VISIBLE, record("visible", done));
+        assertEquals(3, dispatcher.getQueuedCount());
+
+        blocker.countDown();
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(Arrays.asList("visible", "image", "prefetch"), mOrder);
+    }
+
+    @Test
+    public void runsTasksWithSamePriorityInOrder() throws InterruptedException {
+        NetworkDispatcher dispatcher = newDispatcher(1, 1, 0L);
+        CountDownLatch blocker = block(dispatcher, HOST_A);
+
+        CountDownLatch done = new CountDownLatch(5);
+        List<String> expected = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            dispatcher.execute(HOST_A, NetworkDispatcher.PRIORITY_IMAGE, record("task" + i, done));
+            expected.add("task" + i);
+        }
+
+        blocker.countDown();
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(expected, mOrder);
+    }
+
+    @Test
+    public void saturatedHostDoesNotBlockOtherHosts() throws InterruptedException {
+        NetworkDispatcher dispatcher = newDispatcher(4, 1, 0L);
+        CountDownLatch blocker = block(dispatcher, HOST_A);
+
+        CountDownLatch doneA = new CountDownLatch(1);
+        CountDownLatch doneB = new CountDownLatch(1);
+        dispatcher.execute(HOST_A, NetworkDispatcher.PRIORITY_VISIBLE, record("a", doneA));
+        dispatcher.execute(HOST_B, NetworkDispatcher.PRIORITY_PREFETCH, record("b", doneB));
+
+        // The less important task for the other host runs right away ...
+        assertTrue(doneB.await(5, TimeUnit.SECONDS));
+        // ... while the one for the saturated host has to wait
+        assertEquals(1, doneA.getCount());
+        assertEquals(1, dispatcher.getQueuedCount());
+
+        blocker.countDown();
+        assertTrue(doneA.await(5, TimeUnit.SECONDS));
+        assertEquals(Arrays.asList("b", "a"), mOrder);
+    }
+
+    @Test
+    public void waitingTasksAreNotStarved() throws InterruptedException {
+        NetworkDispatcher dispatcher = newDispatcher(1, 1, 1000L);
+        CountDownLatch blocker = block(dispatcher, HOST_A);
+
+        CountDownLatch done = new CountDownLatch(3);
+        dispatcher.execute(HOST_A, NetworkDispatcher.PRIORITY_PREFETCH, record("old", done));
+        mNow = 2000L;
+        dispatcher.execute(HOST_A, NetworkDispatcher.PRIORITY_IMAGE, record("image", done));
+        mNow = 3000L;
+        dispatcher.execute(HOST_A, NetworkDispatcher.PRIORITY_VISIBLE, record("visible", done));
+
+        // After waiting three intervals, the prefetch task is as important
+        // as a fresh visible one and has been waiting longer.
+        blocker.countDown();
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(Arrays.asList("old", "visible", "image"), mOrder);
+    }
+
+    @Test
+    public void attachesDeadlineToTask() throws InterruptedException {
+        NetworkDispatcher dispatcher = newDispatcher(1, 1, 0L);
+        Deadline deadline = Deadline.after(60000L);
+        AtomicReference<Deadline> attached = new AtomicReference<>();
+        CountDownLatch done = new CountDownLatch(1);
+
+        dispatcher.execute(HOST_A, NetworkDispatcher.PRIORITY_VISIBLE, deadline, () -> {
+            attached.set(Deadline.current());
+            done.countDown();
+        });
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertSame(deadline, attached.get());
+    }
+
+    @Test
+    public void runsTaskWhoseDeadlineExpiredWhileWaiting() throws InterruptedException {
+        NetworkDispatcher dispatcher = newDispatcher(1, 1, 0L);
+        CountDownLatch blocker = block(dispatcher, HOST_A);
+        AtomicBoolean exceeded = new AtomicBoolean(false);
+        CountDownLatch done = new CountDownLatch(1);
+
+        dispatcher.execute(HOST_A, NetworkDispatcher.PRIORITY_VISIBLE, Deadline.after(1L), () -> {
+            try {
+                Deadline.clampTimeout(1000);
+            } catch (Deadline.ExceededException e) {
+                exceeded.set(true);
+            }
+            done.countDown();
+        });
+        Thread.sleep(10L);
+
+        blocker.countDown();
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertTrue(exceeded.get());
+    }
+
+    @Test
+    public void visibleRequestOvertakesQueuedPrefetches() throws InterruptedException {
+        NetworkDispatcher dispatcher = new NetworkDispatcher(
+                Constants.Dispatcher.MAX_REQUESTS,
+                Constants.Dispatcher.MAX_REQUESTS_PER_HOST,
+                Constants.Dispatcher.AGING_INTERVAL_MS,
+                System::currentTimeMillis
+        );
+        String host = mUrl.getHost();
+
+        CountDownLatch done = new CountDownLatch(BACKGROUND_REQUESTS + 1);
+        for (int i = 0; i < BACKGROUND_REQUESTS; i++) {
+            dispatcher.execute(host, NetworkDispatcher.PRIORITY_PREFETCH, () -> {
+                fetch();
+                record("prefetch", done).run();
+            });
+        }
+        dispatcher.execute(host, NetworkDispatcher.PRIORITY_VISIBLE, () -> {
+            fetch();
+            record("visible", done).run();
+        });
+        assertTrue(done.await(30, TimeUnit.SECONDS));
+
+        // It only has to wait for a slot, not for the whole queue
+        int position = mOrder.indexOf("visible");
+        assertTrue("Finished at position " + position,
+                position <= 3 * Constants.Dispatcher.MAX_REQUESTS_PER_HOST);
+    }
+
+    /**
+     * Perform a request to the local server.
+     */
+    private void fetch() {
+        try {
+            HttpURLConnection conn = (HttpURLConnection) mUrl.openConnection();
+            try (InputStream in = conn.getInputStream()) {
+                while (in.read() != -1) {
+                    // Drain the response so the connection can be reused
+                }
+            }
+        } catch (IOException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    private NetworkDispatcher newDispatcher(int maxRequests, int maxRequestsPerHost,
+                                            long agingIntervalMs) {
+        return new NetworkDispatcher(maxRequests, maxRequestsPerHost, agingIntervalMs, () -> mNow);
+    }
+
+    /**
+     * Occupy a slot of a dispatcher until the returned latch is released.
+     *
+     * @param dispatcher The dispatcher.
+     * @param host The host to occupy a slot for.
+     * @return The latch to count down in order to free the slot.
+     */
+    private CountDownLatch block(NetworkDispatcher dispatcher, String host)
+            throws InterruptedException {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch blocker = new CountDownLatch(1);
+        dispatcher.execute(host, NetworkDispatcher.PRIORITY_VISIBLE, () -> {
+            started.countDown();
+            try {
+                blocker.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        return blocker;
+    }
+
+    private Runnable record(String name, CountDownLatch done) {
+        return () -> {
+            mOrder.add(name);
+            done.countDown();
+        };
+    }
+
+}
@@ -0,0 +1,138 @@
+/*
+ * Copyright (c) 2019 Felix Kopp <sandtler@sandtler.club>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package club.sandtler.devid.lib;
+
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for the token refresh of {@link NetworkUtil} against a local HTTP
+ * server that rejects the old token.
+ */
+public class NetworkUtilTest {
+
+    private static final String OLD_TOKEN = "old";
+    private static final String NEW_TOKEN = "new";
+    /** Amount of requests to send at the same time. */
+    private static final int REQUESTS = 8;
+    /** Time the token refresh takes. */
+    private static final long REFRESH_DELAY_MS = 100;
+
+    private HttpServer mServer;
+    private String mRootUrl;
+    /** Requests the server has rejected because of the old token. */
+    private final AtomicInteger mRejected = new AtomicInteger();
+    /** Requests the server has accepted with the new token. */
+    private final AtomicInteger mAccepted = new AtomicInteger();
+    /** Released once every request has arrived with the old token. */
+    private final CountDownLatch mAllRejected = new CountDownLatch(REQUESTS);
+
+    @Before
+    public void setUp() throws IOException {
+        mServer = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        mServer.createContext("/", exchange -> {
+            String auth = exchange.getRequestHeaders().getFirst("Authentication");
+            if (("Bearer " + NEW_TOKEN).equals(auth)) {
+                mAccepted.incrementAndGet();
+                byte[] body = "{}".getBytes(StandardCharsets.UTF_8);
+                exchange.sendResponseHeaders(200, body.length);
+                try (OutputStream out = exchange.getResponseBody()) {
+                    out.write(body);
+                }
+                return;
+            }
+
+            mRejected.incrementAndGet();
+            mAllRejected.countDown();
+            try {
+                // Make sure all requests are sent with the old token
+                mAllRejected.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            exchange.sendResponseHeaders(401, -1);
+            exchange.close();
+        });
+        mServer.setExecutor(Executors.newCachedThreadPool());
+        mServer.start();
+        mRootUrl = "http://127.0.0.1:" + mServer.getAddress().getPort();
+    }
+
+    @After
+    public void tearDown() {
+        mServer.stop(0);
+    }
+
+    @Test
+    public void refreshesOnceForConcurrentRejections() throws Exception {
+        NetworkUtil networkUtil = NetworkUtil.newInstance(mRootUrl);
+        networkUtil.setAuthToken(OLD_TOKEN);
+        AtomicInteger refreshes = new AtomicInteger();
+        networkUtil.setTokenRefresher(rejectedToken -> {
+            assertEquals(OLD_TOKEN, rejectedToken);
+            refreshes.incrementAndGet();
+            try {
+                // A real refresh takes a round trip to the backend
+                Thread.sleep(REFRESH_DELAY_MS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return NEW_TOKEN;
+        });
+
+        ExecutorService executor = Executors.newFixedThreadPool(REQUESTS);
+        try {
+            List<Future<?>> results = new ArrayList<>();
+            for (int i = 0; i < REQUESTS; i++) {
+                results.add(executor.submit(() -> networkUtil.get("/video/" + REQUESTS)));
+            }
+            for (Future<?> result : results) {
+                // Throws if any request has failed
+                result.get(10, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertEquals(1, refreshes.get());
+        assertEquals(REQUESTS, mRejected.get());
+        assertEquals(REQUESTS, mAccepted.get());
+        assertTrue(networkUtil.isAuthenticated());
+    }
+
+}
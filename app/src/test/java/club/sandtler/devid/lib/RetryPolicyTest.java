@@ -0,0 +1,304 @@
+/*
+ * Copyright (c) 2019 Felix Kopp <sandtler@sandtler.club>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package club.sandtler.devid.lib;
+
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests for {@link RetryPolicy} and {@link CircuitBreaker} against a local
+ * HTTP server that fails a configurable amount of requests.
+ */
+public class RetryPolicyTest {
+
+    private static final String HOST = "localhost";
+
+    private HttpServer mServer;
+    private URL mUrl;
+    /** Total amount of requests the server has received. */
+    private final AtomicInteger mRequests = new AtomicInteger();
+    /** Amount of requests the server will still fail. */
+    private final AtomicInteger mFailuresLeft = new AtomicInteger();
+    /** Status code the server fails requests with. */
+    private volatile int mFailureStatus = 503;
+
+    /** Fake time for the circuit breaker. */
+    private long mNow = 0L;
+    /** All delays the policy has waited for. */
+    private final List<Long> mDelays = new ArrayList<>();
+
+    @Before
+    public void setUp() throws IOException {
+        mServer = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        mServer.createContext("/", exchange -> {
+            mRequests.incrementAndGet();
+            boolean fail = mFailuresLeft.getAndDecrement() > 0;
+            byte[] body = (fail ? "error" : "ok").getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(fail ? mFailureStatus : 200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        mServer.start();
+        mUrl = new URL("http://127.0.0.1:" + mServer.getAddress().getPort() + "/");
+    }
+
+    @After
+    public void tearDown() {
+        mServer.stop(0);
+    }
+
+    private RetryPolicy createPolicy(int maxAttempts, double maxBudget, int failureThreshold) {
+        return new RetryPolicy(
+                maxAttempts,
+                100,
+                400,
+                0.0,
+                maxBudget,
+                failureThreshold,
+                1000,
+                () -> mNow,
+                mDelays::add,
+                new Random(42)
+        );
+    }
+
+    private String fetch() throws IOException {
+        HttpURLConnection conn = (HttpURLConnection) mUrl.openConnection();
+        try {
+            int status = conn.getResponseCode();
+            if (status >= 400) {
+                throw new HttpStatusException(status, conn.getResponseMessage());
+            }
+            try (InputStream in = conn.getInputStream()) {
+                byte[] buf = new byte[16];
+                int n = in.read(buf);
+                return new String(buf, 0, n, StandardCharsets.UTF_8);
+            }
+        } finally {
+            conn.disconnect();
+        }
+    }
+
+    @Test
+    public void retriesTransientFailuresUntilSuccess() throws IOException {
+        RetryPolicy policy = createPolicy(4, 10, 10);
+        mFailuresLeft.set(2);
+
+        assertEquals("ok", policy.execute(HOST, this::fetch));
+        assertEquals(3, mRequests.get());
+        assertEquals(2, mDelays.size());
+    }
+
+    @Test
+    public void givesUpAfterMaxAttempts() {
+        RetryPolicy policy = createPolicy(3, 10, 10);
+        mFailuresLeft.set(100);
+
+        try {
+            policy.execute(HOST, this::fetch);
+            fail("Expected an exception");
+        } catch (IOException e) {
+            assertTrue(e instanceof HttpStatusException);
+            assertEquals(503, ((HttpStatusException) e).getStatusCode());
+        }
+        assertEquals(3, mRequests.get());
+    }
+
+    @Test
+    public void doesNotRetryClientErrors() {
+        RetryPolicy policy = createPolicy(4, 10, 10);
+        mFailureStatus = 404;
+        mFailuresLeft.set(1);
+
+        try {
+            policy.execute(HOST, this::fetch);
+            fail("Expected an exception");
+        } catch (IOException e) {
+            assertEquals(404, ((HttpStatusException) e).getStatusCode());
+        }
+        assertEquals(1, mRequests.get());
+        assertEquals(CircuitBreaker.STATE_CLOSED, policy.getCircuitBreaker(HOST).getState());
+    }
+
+    @Test
+    public void delaysAreJitteredWithinExponentialBounds() throws IOException {
+        RetryPolicy policy = createPolicy(6, 10, 10);
+        mFailuresLeft.set(5);
+
+        policy.execute(HOST, this::fetch);
+
+        long[] bounds = {100, 200, 400, 400, 400};
+        assertEquals(bounds.length, mDelays.size());
+        for (int i = 0; i < bounds.length; i++) {
+            long delay = mDelays.get(i);
+            assertTrue("Delay " + delay + " out of bounds", delay >= 0 && delay <= bounds[i]);
+        }
+    }
+
+    @Test
+    public void retryBudgetLimitsRetries() {
+        // Enough budget for exactly one retry, and none is ever earned back
+        RetryPolicy policy = createPolicy(4, 1, 10);
+        mFailuresLeft.set(100);
+
+        try {
+            policy.execute(HOST, this::fetch);
+            fail("Expected an exception");
+        } catch (IOException expected) {
+            // expected
+        }
+        assertEquals(2, mRequests.get());
+
+        try {
+            policy.execute(HOST, this::fetch);
+            fail("Expected an exception");
+        } catch (IOException expected) {
+            // expected
+        }
+        assertEquals(3, mRequests.get());
+    }
+
+    @Test
+    public void circuitOpensFailsFastAndRecovers() throws IOException {
+        RetryPolicy policy = createPolicy(1, 0, 3);
+        mFailuresLeft.set(3);
+
+        for (int i = 0; i < 3; i++) {
+            try {
+                policy.execute(HOST, this::fetch);
+                fail("Expected an exception");
+            } catch (HttpStatusException expected) {
+                // expected
+            }
+        }
+        assertEquals(CircuitBreaker.STATE_OPEN, policy.getCircuitBreaker(HOST).getState());
+
+        // Requests fail without reaching the server while the circuit is open
+        try {
+            policy.execute(HOST, this::fetch);
+            fail("Expected an exception");
+        } catch (CircuitBreaker.OpenException expected) {
+            // expected
+        }
+        assertEquals(3, mRequests.get());
+
+        // After the cool-down, a trial request closes the circuit again
+        mNow += 1000;
+        assertEquals("ok", policy.execute(HOST, this::fetch));
+        assertEquals(CircuitBreaker.STATE_CLOSED, policy.getCircuitBreaker(HOST).getState());
+        assertEquals(4, mRequests.get());
+    }
+
+    @Test
+    public void failedTrialRequestReopensCircuit() {
+        RetryPolicy policy = createPolicy(1, 0, 1);
+        mFailuresLeft.set(2);
+
+        for (int i = 0; i < 2; i++) {
+            try {
+                policy.execute(HOST, this::fetch);
+                fail("Expected an exception");
+            } catch (IOException expected) {
+                // expected
+            }
+            mNow += 1000;
+        }
+
+        // The failed trial at t=1000 restarted the cool-down
+        mNow = 1999;
+        assertEquals(CircuitBreaker.STATE_OPEN, policy.getCircuitBreaker(HOST).getState());
+        try {
+            policy.execute(HOST, this::fetch);
+            fail("Expected an exception");
+        } catch (CircuitBreaker.OpenException expected) {
+            // expected
+        } catch (IOException e) {
+            fail("Request should not have been sent");
+        }
+        assertEquals(2, mRequests.get());
+    }
+
+    @Test
+    public void crashingTrialRequestReopensCircuit() throws IOException {
+        RetryPolicy policy = createPolicy(1, 0, 1);
+        mFailuresLeft.set(1);
+        try {
+            policy.execute(HOST, this::fetch);
+            fail("Expected an exception");
+        } catch (HttpStatusException expected) {
+            // expected
+        }
+
+        mNow += 1000;
+        try {
+            policy.execute(HOST, () -> {
+                throw new IllegalStateException("Broken response");
+            });
+            fail("Expected an exception");
+        } catch (IllegalStateException expected) {
+            // expected
+        }
+        assertEquals(CircuitBreaker.STATE_OPEN, policy.getCircuitBreaker(HOST).getState());
+
+        mNow += 1000;
+        assertEquals("ok", policy.execute(HOST, this::fetch));
+        assertEquals(CircuitBreaker.STATE_CLOSED, policy.getCircuitBreaker(HOST).getState());
+    }
+
+    @Test
+    public void lostTrialRequestDoesNotBlockCircuitForever() throws IOException {
+        CircuitBreaker circuitBreaker = new CircuitBreaker(HOST, 1, 1000, () -> mNow);
+        circuitBreaker.onFailure();
+
+        mNow += 1000;
+        circuitBreaker.acquire(); // The trial, whose outcome is never reported
+        assertEquals(CircuitBreaker.STATE_HALF_OPEN, circuitBreaker.getState());
+        try {
+            circuitBreaker.acquire();
+            fail("Expected an exception");
+        } catch (CircuitBreaker.OpenException expected) {
+            // expected
+        }
+
+        mNow += 1000;
+        circuitBreaker.acquire();
+        circuitBreaker.onSuccess();
+        assertEquals(CircuitBreaker.STATE_CLOSED, circuitBreaker.getState());
+    }
+
+}
@@ -0,0 +1,170 @@
+/*
+ * Copyright (c) 2019 Felix Kopp <sandtler@sandtler.club>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package club.sandtler.devid.ui;
+
+import androidx.arch.core.executor.testing.InstantTaskExecutorRule;
+import androidx.lifecycle.ViewModelStore;
+import androidx.lifecycle.ViewModelStoreOwner;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.util.concurrent.Executor;
+
+import club.sandtler.devid.data.StandInRepositories;
+import club.sandtler.devid.lib.NetworkDispatcher;
+import club.sandtler.devid.ui.user.UserViewModel;
+import club.sandtler.devid.ui.user.UserViewModelFactory;
+import club.sandtler.devid.ui.video.VideoViewModel;
+import club.sandtler.devid.ui.video.VideoViewModelFactory;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Counts the repository calls made by the fragments of a screen, which all
+ * obtain their view models over {@link SharedViewModels}.
+ */
+public class SharedViewModelsTest {
+
+    private static final String VIDEO_ID = "5d1d2339e710560cdf5c5b80";
+    private static final String OTHER_VIDEO_ID = "5d1d2339e710560cdf5c5b81";
+    private static final String USER_ID = "5d1d2339e710560cdf5c5b7f";
+
+    /** Lets LiveData be updated from the dispatcher threads. */
+    @Rule
+    public final InstantTaskExecutorRule mInstantTaskExecutorRule = new InstantTaskExecutorRule();
+
+    private final NetworkDispatcher mDispatcher = new NetworkDispatcher();
+    private final Executor mMainExecutor = Runnable::run;
+
+    private StandInRepositories.Videos mVideos;
+    private StandInRepositories.Users mUsers;
+    /** The view model store of the simulated activity. */
+    private ViewModelStore mStore;
+    private ViewModelStoreOwner mActivity;
+
+    @Before
+    public void setUp() {
+        mVideos = new StandInRepositories.Videos();
+        mUsers = new StandInRepositories.Users();
+        mStore = new ViewModelStore();
+        mActivity = () -> mStore;
+    }
+
+    @Test
+    public void videoScreenLoadsEverythingOnce() throws InterruptedException {
+        openVideoScreen(VIDEO_ID);
+        awaitIdle();
+
+        assertEquals(1, mVideos.getByIdCalls());
+        assertEquals(1, mUsers.getUserCalls());
+        assertEquals(1, mUsers.getPPCalls());
+    }
+
+    @Test
+    public void recreatedFragmentsDoNotLoadAgain() throws InterruptedException {
+        openVideoScreen(VIDEO_ID);
+        awaitIdle();
+        // Fragments are recreated on configuration changes, the activity's
+        // view model store survives them.
+        openVideoScreen(VIDEO_ID);
+        awaitIdle();
+
+        assertEquals(1, mVideos.getByIdCalls());
+        assertEquals(1, mUsers.getUserCalls());
+        assertEquals(1, mUsers.getPPCalls());
+    }
+
+    @Test
+    public void differentEntitiesAreNotShared() throws InterruptedException {
+        VideoViewModel first = videoViewModel(VIDEO_ID);
+        VideoViewModel second = videoViewModel(OTHER_VIDEO_ID);
+        assertNotSame(first, second);
+        assertSame(first, videoViewModel(VIDEO_ID));
+
+        first.getVideo(VIDEO_ID);
+        second.getVideo(OTHER_VIDEO_ID);
+        awaitIdle();
+
+        assertEquals(2, mVideos.getByIdCalls());
+    }
+
+    @Test
+    public void newActivityLoadsAgain() throws InterruptedException {
+        openVideoScreen(VIDEO_ID);
+        awaitIdle();
+
+        // The activity was finished, and the user opened the video again
+        mStore.clear();
+        openVideoScreen(VIDEO_ID);
+        awaitIdle();
+
+        assertEquals(2, mVideos.getByIdCalls());
+    }
+
+    /**
+     * Make the same calls as the fragments of the video player activity do.
+     *
+     * @param videoId The video id.
+     */
+    private void openVideoScreen(String videoId) {
+        // VideoDetailsFragment
+        videoViewModel(videoId).getVideo(videoId);
+        // VideoToolboxFragment
+        videoViewModel(videoId).getVideo(videoId);
+        // UserBriefFragment
+        UserViewModel user = userViewModel(USER_ID);
+        user.getById(USER_ID);
+        user.getPP(USER_ID);
+    }
+
+    private VideoViewModel videoViewModel(String videoId) {
+        return SharedViewModels.get(
+                mActivity,
+                new VideoViewModelFactory(mVideos, mDispatcher, mMainExecutor),
+                VideoViewModel.class,
+                videoId
+        );
+    }
+
+    private UserViewModel userViewModel(String userId) {
+        return SharedViewModels.get(
+                mActivity,
+                new UserViewModelFactory(mUsers, mDispatcher, mMainExecutor),
+                UserViewModel.class,
+                "id:" + userId
+        );
+    }
+
+    /**
+     * Wait until the dispatcher has run all queued requests.
+     */
+    private void awaitIdle() throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (mDispatcher.getQueuedCount() > 0 || mDispatcher.getRunningCount() > 0) {
+            if (System.currentTimeMillis() > deadline) {
+                throw new AssertionError("Dispatcher did not become idle");
+            }
+            Thread.sleep(10);
+        }
+    }
+
+}
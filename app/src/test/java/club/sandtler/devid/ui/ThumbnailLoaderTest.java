@@ -0,0 +1,52 @@
+/*
+ * Copyright (c) 2019 Felix Kopp <sandtler@sandtler.club>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package club.sandtler.devid.ui;
+
+import org.junit.Test;
+
+import static club.sandtler.devid.lib.Constants.Thumbnails;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests for the variant and sample size selection of {@link ThumbnailLoader}.
+ */
+public class ThumbnailLoaderTest {
+
+    @Test
+    public void picksTheSmallestVariantThatCoversTheView() {
+        assertEquals(Thumbnails.WIDTHS[0], ThumbnailLoader.getVariantWidth(1));
+        assertEquals(Thumbnails.WIDTHS[0], ThumbnailLoader.getVariantWidth(Thumbnails.WIDTHS[0]));
+        assertEquals(Thumbnails.WIDTHS[1], ThumbnailLoader.getVariantWidth(Thumbnails.WIDTHS[0] + 1));
+    }
+
+    @Test
+    public void picksTheLargestVariantForHugeViews() {
+        int largest = Thumbnails.WIDTHS[Thumbnails.WIDTHS.length - 1];
+        assertEquals(largest, ThumbnailLoader.getVariantWidth(largest * 3));
+    }
+
+    @Test
+    public void samplesDownOnlyWhileTheViewIsCovered() {
+        assertEquals(1, ThumbnailLoader.getSampleSize(640, 640));
+        assertEquals(1, ThumbnailLoader.getSampleSize(640, 321));
+        assertEquals(2, ThumbnailLoader.getSampleSize(640, 320));
+        assertEquals(4, ThumbnailLoader.getSampleSize(1280, 300));
+        assertEquals(1, ThumbnailLoader.getSampleSize(100, 1080));
+    }
+
+}
@@ -0,0 +1,155 @@
+/*
+ * Copyright (c) 2019 Felix Kopp <sandtler@sandtler.club>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package club.sandtler.devid.ui.feed;
+
+import androidx.arch.core.executor.testing.InstantTaskExecutorRule;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import club.sandtler.devid.data.StandInRepositories;
+import club.sandtler.devid.data.model.Video;
+import club.sandtler.devid.lib.NetworkDispatcher;
+
+import static club.sandtler.devid.lib.Constants.Feed;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for the paging window of {@link FeedViewModel}.
+ * The test thread plays the UI thread: results are only delivered when
+ * the test runs the tasks posted to it.
+ */
+public class FeedViewModelTest {
+
+    /** Lets LiveData be updated from the test thread. */
+    @Rule
+    public final InstantTaskExecutorRule mInstantTaskExecutorRule = new InstantTaskExecutorRule();
+
+    private final BlockingQueue<Runnable> mMainQueue = new LinkedBlockingQueue<>();
+    private StandInRepositories.Feed mRepository;
+    private FeedViewModel mViewModel;
+
+    @Before
+    public void setUp() {
+        mRepository = new StandInRepositories.Feed(100 * Feed.PAGE_SIZE);
+        mViewModel = new FeedViewModel(mRepository, new NetworkDispatcher(), mMainQueue::add);
+    }
+
+    @Test
+    public void loadsTheFirstPageOnce() throws InterruptedException {
+        mViewModel.getVideos();
+        mViewModel.getVideos();
+        runNextMainTask();
+
+        assertEquals(1, mRepository.getPageCalls());
+        assertWindow(0, Feed.PAGE_SIZE);
+    }
+
+    @Test
+    public void prefetchesBeforeTheEnd() throws InterruptedException {
+        mViewModel.getVideos();
+        runNextMainTask();
+
+        mViewModel.onVisibleRangeChanged(0, Feed.PAGE_SIZE - Feed.PREFETCH_DISTANCE - 1);
+        assertEquals(1, mRepository.getPageCalls());
+
+        mViewModel.onVisibleRangeChanged(1, Feed.PAGE_SIZE - Feed.PREFETCH_DISTANCE);
+        runNextMainTask();
+        assertEquals(2, mRepository.getPageCalls());
+        assertWindow(0, 2 * Feed.PAGE_SIZE);
+    }
+
+    @Test
+    public void keepsTheWindowBounded() throws InterruptedException {
+        mViewModel.getVideos();
+        runNextMainTask();
+
+        for (int i = 0; i < 3 * Feed.MAX_PAGES; i++) {
+            scrollToEnd();
+            assertTrue(videos().size() <= Feed.MAX_PAGES * Feed.PAGE_SIZE);
+        }
+
+        int firstPage = 3 * Feed.MAX_PAGES + 1 - Feed.MAX_PAGES;
+        assertWindow(firstPage * Feed.PAGE_SIZE, Feed.MAX_PAGES * Feed.PAGE_SIZE);
+    }
+
+    @Test
+    public void loadsDroppedPagesWhenScrollingBack() throws InterruptedException {
+        mViewModel.getVideos();
+        runNextMainTask();
+        for (int i = 0; i < Feed.MAX_PAGES; i++) {
+            scrollToEnd();
+        }
+        assertWindow(Feed.PAGE_SIZE, Feed.MAX_PAGES * Feed.PAGE_SIZE);
+
+        mViewModel.onVisibleRangeChanged(0, 3);
+        runNextMainTask();
+
+        assertWindow(0, Feed.MAX_PAGES * Feed.PAGE_SIZE);
+    }
+
+    @Test
+    public void stopsAtTheEndOfTheFeed() throws InterruptedException {
+        mRepository = new StandInRepositories.Feed(Feed.PAGE_SIZE + 5);
+        mViewModel = new FeedViewModel(mRepository, new NetworkDispatcher(), mMainQueue::add);
+        mViewModel.getVideos();
+        runNextMainTask();
+
+        scrollToEnd();
+        assertWindow(0, Feed.PAGE_SIZE + 5);
+
+        int last = videos().size() - 1;
+        mViewModel.onVisibleRangeChanged(last - 3, last);
+        assertEquals(2, mRepository.getPageCalls());
+    }
+
+    /** Make the last video visible and deliver the next page. */
+    private void scrollToEnd() throws InterruptedException {
+        int last = videos().size() - 1;
+        mViewModel.onVisibleRangeChanged(last - 3, last);
+        runNextMainTask();
+    }
+
+    private void runNextMainTask() throws InterruptedException {
+        Runnable task = mMainQueue.poll(5, TimeUnit.SECONDS);
+        assertNotNull("No result was delivered", task);
+        task.run();
+    }
+
+    private List<Video> videos() {
+        return mViewModel.getVideos().getValue();
+    }
+
+    /** Assert that the window contains exactly the given range of the feed. */
+    private void assertWindow(int first, int count) {
+        List<Video> videos = videos();
+        assertEquals(count, videos.size());
+        for (int i = 0; i < count; i++) {
+            assertEquals(StandInRepositories.Feed.videoIdAt(first + i), videos.get(i).getId());
+        }
+    }
+
+}
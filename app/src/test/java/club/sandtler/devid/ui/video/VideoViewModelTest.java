@@ -0,0 +1,193 @@
+/*
+ * Copyright (c) 2019 Felix Kopp <sandtler@sandtler.club>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package club.sandtler.devid.ui.video;
+
+import androidx.annotation.NonNull;
+import androidx.arch.core.executor.testing.InstantTaskExecutorRule;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import club.sandtler.devid.data.Result;
+import club.sandtler.devid.data.StandInRepositories;
+import club.sandtler.devid.data.model.Video;
+import club.sandtler.devid.lib.NetworkDispatcher;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for vote debouncing and rollback in {@link VideoViewModel}.
+ * The test thread plays the UI thread: results are only delivered when
+ * the test runs the tasks posted to it, and the debounce period is only
+ * over when the test runs the scheduled tasks.
+ */
+public class VideoViewModelTest {
+
+    private static final String VIDEO_ID = "000000000000000000000000";
+
+    /** Lets LiveData be updated from the test thread. */
+    @Rule
+    public final InstantTaskExecutorRule mInstantTaskExecutorRule = new InstantTaskExecutorRule();
+
+    private final BlockingQueue<Runnable> mMainQueue = new LinkedBlockingQueue<>();
+    private final List<Runnable> mScheduled = new ArrayList<>();
+    private StandInRepositories.Votes mRepository;
+    private VideoViewModel mViewModel;
+
+    @Before
+    public void setUp() throws InterruptedException {
+        mRepository = new StandInRepositories.Votes();
+        mViewModel = new VideoViewModel(
+                mRepository,
+                new NetworkDispatcher(),
+                mMainQueue::add,
+                new VideoViewModel.Scheduler() {
+                    @Override
+                    public void postDelayed(@NonNull Runnable task, long delayMs) {
+                        mScheduled.add(task);
+                    }
+
+                    @Override
+                    public void removeCallbacks(@NonNull Runnable task) {
+                        mScheduled.removeAll(Collections.singleton(task));
+                    }
+                }
+        );
+        mViewModel.getVideo(VIDEO_ID);
+        nextMainTask().run();
+    }
+
+    @Test
+    public void sendsOneRequestForRapidTaps() throws InterruptedException {
+        mViewModel.vote(VIDEO_ID, Video.RATING_LIKE);
+        mViewModel.vote(VIDEO_ID, Video.RATING_DISLIKE);
+        mViewModel.vote(VIDEO_ID, Video.RATING_LIKE);
+        assertEquals(Video.RATING_LIKE, ownRating());
+        assertEquals(1, mScheduled.size());
+
+        runScheduled();
+        nextMainTask().run();
+
+        assertEquals(Collections.singletonList(Video.RATING_LIKE), mRepository.getVotes());
+        assertEquals(Video.RATING_LIKE, ownRating());
+    }
+
+    @Test
+    public void sendsNothingWhenTappingBackToTheConfirmedRating() {
+        mViewModel.vote(VIDEO_ID, Video.RATING_LIKE);
+        mViewModel.vote(VIDEO_ID, Video.RATING_LIKE);
+        assertEquals(Video.RATING_NEUTRAL, ownRating());
+
+        runScheduled();
+
+        assertTrue(mRepository.getVotes().isEmpty());
+        assertTrue(mMainQueue.isEmpty());
+        assertEquals(Video.RATING_NEUTRAL, ownRating());
+    }
+
+    @Test
+    public void rollsBackFailedVote() throws InterruptedException {
+        mRepository.setFailing(true);
+        mViewModel.vote(VIDEO_ID, Video.RATING_LIKE);
+        runScheduled();
+        nextMainTask().run();
+
+        assertEquals(Collections.singletonList(Video.RATING_LIKE), mRepository.getVotes());
+        assertEquals(Video.RATING_NEUTRAL, ownRating());
+    }
+
+    @Test
+    public void keepsDebouncedVoteWhenEarlierVoteFails() throws InterruptedException {
+        mRepository.setFailing(true);
+        mViewModel.vote(VIDEO_ID, Video.RATING_LIKE);
+        runScheduled();
+        Runnable failure = nextMainTask();
+
+        // The user votes again while the first request is in flight
+        mViewModel.vote(VIDEO_ID, Video.RATING_DISLIKE);
+        mRepository.setFailing(false);
+        failure.run();
+        assertEquals(Video.RATING_DISLIKE, ownRating());
+
+        runScheduled();
+        nextMainTask().run();
+
+        assertEquals(
+                Arrays.asList(Video.RATING_LIKE, Video.RATING_DISLIKE),
+                mRepository.getVotes()
+        );
+        assertEquals(Video.RATING_DISLIKE, ownRating());
+    }
+
+    @Test
+    public void keepsWaitingVoteWhenEarlierVoteFails() throws InterruptedException {
+        mRepository.setFailing(true);
+        mViewModel.vote(VIDEO_ID, Video.RATING_LIKE);
+        runScheduled();
+        Runnable failure = nextMainTask();
+
+        // The second vote is debounced while the first request is in flight
+        mViewModel.vote(VIDEO_ID, Video.RATING_DISLIKE);
+        runScheduled();
+        mRepository.setFailing(false);
+        failure.run();
+        assertEquals(Video.RATING_DISLIKE, ownRating());
+
+        nextMainTask().run();
+
+        assertEquals(
+                Arrays.asList(Video.RATING_LIKE, Video.RATING_DISLIKE),
+                mRepository.getVotes()
+        );
+        assertEquals(Video.RATING_DISLIKE, ownRating());
+    }
+
+    /** End the debounce period by running all scheduled tasks. */
+    private void runScheduled() {
+        List<Runnable> scheduled = new ArrayList<>(mScheduled);
+        mScheduled.clear();
+        for (Runnable task : scheduled) {
+            task.run();
+        }
+    }
+
+    private Runnable nextMainTask() throws InterruptedException {
+        Runnable task = mMainQueue.poll(5, TimeUnit.SECONDS);
+        assertNotNull("No result was delivered", task);
+        return task;
+    }
+
+    @SuppressWarnings("unchecked")
+    private byte ownRating() {
+        Result<Video> result = mViewModel.getVideo(VIDEO_ID).getValue();
+        assertTrue(result instanceof Result.Success);
+        return ((Result.Success<Video>) result).getData().getOwnRating();
+    }
+
+}